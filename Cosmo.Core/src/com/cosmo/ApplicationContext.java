@@ -0,0 +1,154 @@
+package com.cosmo;
+
+import javax.servlet.ServletContext;
+
+import org.apache.log4j.Logger;
+
+import com.cosmo.WorkspaceProperties.ServiceType;
+import com.cosmo.comm.CommunicationsFactory;
+import com.cosmo.data.DataFactory;
+import com.cosmo.logging.LogFactory;
+import com.cosmo.security.auth.AuthenticationFactory;
+import com.cosmo.security.auth.AuthorizationFactory;
+import com.cosmo.ui.templates.TemplateFactory;
+
+/**
+ * Representa el contexto de aplicacin de Cosmo.<br />
+ * Existe una nica instancia por aplicacin web (almacenada en el contexto del servlet) que contiene el estado 
+ * compartido por todas las sesiones: la configuracin del workspace y su gestor de recarga.
+ * 
+ * @author Gerard Llort
+ */
+public class ApplicationContext 
+{
+   // Declaracin de variables locales
+   private ServletContext context;
+   private WorkspacePropertiesReloader reloader;
+   private Workspace workspace;
+
+   Logger log = LogFactory.getLogger(getClass());
+
+   //==============================================
+   // Constructors
+   //==============================================
+
+   /**
+    * Constructor de la clase {@link ApplicationContext}.
+    * 
+    * @param context Una instancia de {@link ServletContext} que representa el contexto del servlet.
+    * 
+    * @throws WorkspaceLoadException
+    */
+   public ApplicationContext(ServletContext context) throws WorkspaceLoadException
+   {
+      this.context = context;
+      this.reloader = new WorkspacePropertiesReloader(context);
+      this.workspace = new Workspace(this);
+
+      LogFactory.initialize(this.workspace);
+   }
+
+
+   //==============================================
+   // Properties
+   //==============================================
+
+   /**
+    * Devuelve la instancia de {@link ServletContext} que representa el contexto del servlet.
+    */
+   public ServletContext getServletContext()
+   {
+      return this.context;
+   }
+
+   /**
+    * Devuelve la versin vigente de la configuracin del workspace.
+    */
+   public WorkspaceProperties getProperties()
+   {
+      return this.reloader.getProperties();
+   }
+
+   /**
+    * Devuelve el gestor de recarga de la configuracin del workspace.
+    */
+   public WorkspacePropertiesReloader getPropertiesReloader()
+   {
+      return this.reloader;
+   }
+
+   /**
+    * Devuelve un workspace de mbito de aplicacin (sin peticin ni sesin asociadas).<br />
+    * Es el workspace que deben conservar los objetos de vida larga (p. ej. los agentes <em>singleton</em>), 
+    * ya que siempre devuelve la versin vigente de la configuracin.
+    */
+   public Workspace getWorkspace()
+   {
+      return this.workspace;
+   }
+
+
+   //==============================================
+   // Methods
+   //==============================================
+
+   /**
+    * Carga los servicios indicados en el parmetro {@link WorkspaceProperties#PROPERTY_SERVICES_PREWARM}, de forma 
+    * que la primera peticin no tenga que asumir el coste de su inicializacin.<br />
+    * Los errores se registran pero no se propagan: el servicio se volver a intentar cargar cuando se use.
+    */
+   public void prewarm()
+   {
+      WorkspaceProperties properties = getProperties();
+
+      for (ServiceType service : properties.getPrewarmServices())
+      {
+         try
+         {
+            properties.loadService(service);
+
+            switch (service)
+            {
+               case UI:
+                  for (String templateId : properties.getUiProperties().getTemplateIds())
+                  {
+                     TemplateFactory.getTemplate(this.context, templateId);
+                  }
+                  break;
+
+               case Security:
+                  AuthenticationFactory.getInstance(this.workspace);
+                  AuthorizationFactory.getInstance(this.workspace);
+                  break;
+
+               case Data:
+                  DataFactory.getInstance(this.workspace);
+                  break;
+
+               case Comm:
+                  CommunicationsFactory.getInstance(this.workspace);
+                  break;
+
+               default:
+                  break;
+            }
+
+            log.info("Service prewarmed: " + service);
+         }
+         catch (Exception ex)
+         {
+            log.warn("Service prewarm failed (" + service + "): " + ex.getMessage());
+         }
+      }
+
+      log.debug(this.workspace.toString());
+   }
+
+   /**
+    * Libera los recursos asociados al contexto de aplicacin.
+    */
+   public void destroy()
+   {
+      this.reloader.stop();
+   }
+}
@@ -79,8 +79,12 @@ public interface Cosmo
    // Tokens de cach
    //==============================================
 
-   /** Clave de Cach para almacenar el workspace (en sesin) */
-   public static final String KEY_CACHE_SESSION_WORKSPACE = "cosmo.cache.session.workspace";
+   /** Clave de Cach para almacenar el contexto de aplicacin (en contexto de aplicacin) */
+   public static final String KEY_CACHE_CONTEXT_APPLICATION = "cosmo.cache.context.application";
+   /** Clave de Cach para almacenar el estado de la sesin (en sesin) */
+   public static final String KEY_CACHE_SESSION_CONTEXT = "cosmo.cache.session.context";
+   /** Clave de Cach para almacenar el workspace (en peticin) */
+   public static final String KEY_CACHE_REQUEST_WORKSPACE = "cosmo.cache.request.workspace";
    /** Clave de Cach para almacenar la ltima excepcin capturada (en sesin) */
    public static final String KEY_CACHE_SESSION_LASTEXCEPTION = "cosmo.cache.session.lastException";
    /** Clave de Cach para almacenar datos de formularios (se almacenan en sesin) */
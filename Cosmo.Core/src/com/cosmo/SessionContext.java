@@ -0,0 +1,105 @@
+package com.cosmo;
+
+import javax.servlet.ServletContext;
+
+import com.cosmo.security.UserSession;
+import com.cosmo.ui.templates.Template;
+import com.cosmo.ui.templates.TemplateFactory;
+import com.cosmo.ui.templates.TemplateLoadException;
+import com.cosmo.ui.templates.TemplateUnavailableException;
+
+/**
+ * Representa el estado de Cosmo asociado a una sesin HTTP.<br />
+ * Slo contiene los datos propios de la sesin (sesin de usuario y plantilla de presentacin), de manera que 
+ * el tamao de la sesin se mantiene reducido. El estado de aplicacin se encuentra en {@link ApplicationContext}.
+ * 
+ * @author Gerard Llort
+ */
+public class SessionContext 
+{
+   // Declaracin de variables locales
+   private volatile UserSession userSession;
+   private String templateId;
+   private WorkspaceProperties templateProperties;
+
+
+   //==============================================
+   // Constructors
+   //==============================================
+
+   /**
+    * Constructor de la clase {@link SessionContext}.
+    */
+   public SessionContext()
+   {
+      this.userSession = null;
+      this.templateId = null;
+      this.templateProperties = null;
+   }
+
+
+   //==============================================
+   // Properties
+   //==============================================
+
+   /**
+    * Devuelve la sesin de usuario iniciada o {@code null} si no hay ninguna sesin de usuario iniciada.
+    */
+   public UserSession getUserSession()
+   {
+      return this.userSession;
+   }
+
+   /**
+    * Establece la sesin de usuario.
+    */
+   public void setUserSession(UserSession userSession)
+   {
+      this.userSession = userSession;
+   }
+
+   /**
+    * Establece la plantilla de presentacin aplicada a la sesin.
+    */
+   public synchronized void setTemplate(Template template)
+   {
+      this.templateId = template.getId();
+   }
+
+
+   //==============================================
+   // Methods
+   //==============================================
+
+   /**
+    * Obtiene la plantilla de presentacin aplicada a la sesin.<br />
+    * La plantilla se determina en la primera peticin de la sesin y se vuelve a determinar si la configuracin
+    * del workspace ha cambiado. La sesin slo guarda el identificador: la instancia se obtiene del registro 
+    * compartido {@link TemplateFactory}.
+    * 
+    * @param properties Una instancia de {@link WorkspaceProperties} que contiene la configuracin vigente.
+    * @param context Una instancia de {@link ServletContext} que representa el contexto del servlet.
+    * @param browserAgent Una cadena que contiene el identificador del navegador (<em>User-Agent</em>).
+    * 
+    * @return Una instancia de {@link Template} que representa la plantilla a aplicar.
+    * 
+    * @throws TemplateUnavailableException
+    * @throws TemplateLoadException
+    */
+   public Template getTemplate(WorkspaceProperties properties, ServletContext context, String browserAgent) throws TemplateUnavailableException, TemplateLoadException
+   {
+      String id;
+
+      synchronized (this)
+      {
+         if (this.templateId == null || this.templateProperties != properties)
+         {
+            this.templateId = properties.getUiProperties().getTemplateId(browserAgent);
+            this.templateProperties = properties;
+         }
+         id = this.templateId;
+      }
+
+      return TemplateFactory.getTemplate(context, id);
+   }
+}
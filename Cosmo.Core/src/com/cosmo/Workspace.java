@@ -5,39 +5,36 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
-import org.apache.log4j.Logger;
-
-import com.cosmo.logging.LogFactory;
+import com.cosmo.WorkspaceProperties.ServiceType;
 import com.cosmo.security.User;
 import com.cosmo.security.UserNotFoundException;
 import com.cosmo.security.UserSession;
 import com.cosmo.security.auth.AuthenticationException;
 import com.cosmo.security.auth.AuthorizationException;
-import com.cosmo.ui.templates.RulesLoadException;
 import com.cosmo.ui.templates.Template;
 import com.cosmo.ui.templates.TemplateLoadException;
 import com.cosmo.ui.templates.TemplateUnavailableException;
-import com.cosmo.ui.widgets.providers.MenuProviderException;
 import com.cosmo.util.StringUtils;
 
 /**
  * Representa un espacio de trabajo de Cosmo.<br /> 
  * Los espacios de trabajo de Cosmo ponen a disposicin de la/s aplicacin/es los servicios del framework.
+ * <br /><br />
+ * Cada peticin dispone de su propia instancia, que se limita a relacionar el estado de aplicacin 
+ * ({@link ApplicationContext}), el estado de sesin ({@link SessionContext}) y la peticin en curso. La 
+ * configuracin se fija al crear la instancia, de forma que toda la peticin trabaja con la misma versin.
  * 
  * @author Gerard Llort
  */
 public class Workspace 
 {
-   private ServletContext context;
-   private Template template;
+   private ApplicationContext application;
+   private SessionContext session;
    private WorkspaceProperties properties;
+   private Template template;
    private HttpServletRequest srvRequest;
    private HttpServletResponse srvResponse;
-   private UserSession usrSession;
    private String requestedUrl;
-   private String url;
-   private String name;
-   private String mail;
 
 
    //==============================================
@@ -45,31 +42,42 @@ public class Workspace
    //==============================================
 
    /**
-    * Constructor de la clase {@link Workspace}.
+    * Constructor de la clase {@link Workspace}.<br />
+    * Crea un workspace de mbito de aplicacin: no tiene peticin ni sesin asociadas y siempre usa la versin 
+    * vigente de la configuracin.
+    * 
+    * @param application Una instancia de {@link ApplicationContext} que representa el contexto de aplicacin.
     */
-   public Workspace()
+   public Workspace(ApplicationContext application)
    {
       initialize();
+
+      this.application = application;
    }
 
    /**
     * Constructor de la clase {@link Workspace}.
     * 
-    * @param context Una instancia de {@link ServletContext} que representa el contexto del servlet.
+    * @param application Una instancia de {@link ApplicationContext} que representa el contexto de aplicacin.
+    * @param session Una instancia de {@link SessionContext} que representa el estado de la sesin.
     * @param request Una instancia de {@link HttpServletRequest} que representa el contexto de la llamada.
     * @param response Una instancia de {@link HttpServletResponse} que representa el contexto de la respuesta.
     * 
-    * @throws WorkspaceLoadException 
-    * @throws RulesLoadException
     * @throws TemplateUnavailableException
     * @throws TemplateLoadException
-    * @throws MenuProviderException
     */
-   public Workspace(ServletContext context, HttpServletRequest request, HttpServletResponse response) throws WorkspaceLoadException, RulesLoadException, TemplateUnavailableException, TemplateLoadException, MenuProviderException
+   public Workspace(ApplicationContext application, SessionContext session, HttpServletRequest request, HttpServletResponse response) throws TemplateUnavailableException, TemplateLoadException
    {
       initialize();
 
-      reloadContext(context, request, response);
+      this.application = application;
+      this.session = session;
+      this.srvRequest = request;
+      this.srvResponse = response;
+
+      // Fija la versin de la configuracin y la plantilla para toda la peticin
+      this.properties = application.getProperties();
+      this.template = session.getTemplate(this.properties, application.getServletContext(), request.getHeader("User-Agent"));
    }
 
 
@@ -86,35 +94,49 @@ public class Workspace
    }
 
    /**
-    * Establece la plantilla de presentacin aplicada.
+    * Establece la plantilla de presentacin aplicada (para la peticin y la sesin actuales).
     */
    public void setTemplate(Template template) 
    {
       this.template = template;
+
+      if (this.session != null)
+      {
+         this.session.setTemplate(template);
+      }
    }
 
    /**
-    * Devuelve la instancia de {@link ServletContext} usada para generar la instancia de Workspace actual.
+    * Devuelve la instancia de {@link ApplicationContext} que representa el contexto de aplicacin.
     */
-   public ServletContext getServerContext() 
+   public ApplicationContext getApplicationContext()
    {
-      return this.context;
+      return this.application;
    }
 
    /**
-    * Devuelve la instancia de {@link HttpServletRequest} que corresponde a la llamada.
+    * Devuelve la instancia de {@link SessionContext} que representa el estado de la sesin o {@code null} si 
+    * se trata de un workspace de mbito de aplicacin.
     */
-   public HttpServletRequest getServerRequest()
+   public SessionContext getSessionContext()
    {
-      return this.srvRequest;
+      return this.session;
+   }
+
+   /**
+    * Devuelve la instancia de {@link ServletContext} usada para generar la instancia de Workspace actual.
+    */
+   public ServletContext getServerContext() 
+   {
+      return this.application.getServletContext();
    }
 
    /**
-    * Establece la instancia de {@link HttpServletRequest} que corresponde a la llamada.
+    * Devuelve la instancia de {@link HttpServletRequest} que corresponde a la llamada.
     */
-   public void setServerRequest(HttpServletRequest request)
+   public HttpServletRequest getServerRequest()
    {
-      this.srvRequest = request;
+      return this.srvRequest;
    }
 
    /**
@@ -130,7 +152,7 @@ public class Workspace
     */
    public HttpSession getServerSession()
    {
-      return this.srvRequest.getSession();
+      return (this.srvRequest != null ? this.srvRequest.getSession() : null);
    }
 
    /**
@@ -138,7 +160,7 @@ public class Workspace
     */
    public WorkspaceProperties getProperties()
    {
-      return this.properties;
+      return (this.properties != null ? this.properties : this.application.getProperties());
    }
 
    /**
@@ -146,7 +168,7 @@ public class Workspace
     */
    public String getUrl() 
    {
-      return this.url;
+      return getProperties().getString(Cosmo.PROPERTY_WORKSPACE_URL);
    }
 
    /**
@@ -154,7 +176,7 @@ public class Workspace
     */
    public String getName() 
    {
-      return this.name;
+      return getProperties().getString(Cosmo.PROPERTY_WORKSPACE_TITLE);
    }
 
    /**
@@ -162,7 +184,7 @@ public class Workspace
     */
    public String getMail() 
    {
-      return this.mail;
+      return getProperties().getString(Cosmo.PROPERTY_WORKSPACE_MAIL);
    }
 
    /**
@@ -170,7 +192,7 @@ public class Workspace
     */
    public String getCharset()
    {
-      String charSet = this.properties.getString(Cosmo.PROPERTY_WORKSPACE_UI_CHARSET);
+      String charSet = getProperties().getString(Cosmo.PROPERTY_WORKSPACE_UI_CHARSET);
       return (StringUtils.isNullOrEmptyTrim(charSet) ? Cosmo.CHARSET_UTF_8 : charSet);
    }
 
@@ -181,6 +203,11 @@ public class Workspace
     */
    public String getRequestedUrl()
    {
+      if (this.requestedUrl == null)
+      {
+         this.requestedUrl = (this.srvRequest != null ? getRequestedUrl(this.srvRequest) : "");
+      }
+
       return this.requestedUrl;
    }
 
@@ -191,9 +218,11 @@ public class Workspace
     */
    public boolean isValidUserSession()
    {
-      if (this.usrSession != null)
+      UserSession usrSession = getUserSession();
+
+      if (usrSession != null)
       {
-         if (this.usrSession.isValidSession())
+         if (usrSession.isValidSession())
          {
             return true;
          }
@@ -214,7 +243,7 @@ public class Workspace
     */
    public UserSession getUserSession() 
    {
-      return this.usrSession;
+      return (this.session != null ? this.session.getUserSession() : null);
    }
 
 
@@ -233,7 +262,7 @@ public class Workspace
     */
    public void createUserSession(User user) throws UserNotFoundException, AuthenticationException, AuthorizationException
    {
-      this.usrSession = new UserSession(this, user);
+      this.session.setUserSession(new UserSession(this, user));
    }
 
    /**
@@ -248,7 +277,7 @@ public class Workspace
     */
    public void createUserSession(String login, String password) throws UserNotFoundException, AuthenticationException, AuthorizationException
    {
-      this.usrSession = new UserSession(this, login, password);
+      this.session.setUserSession(new UserSession(this, login, password));
    }
 
    /**
@@ -256,96 +285,94 @@ public class Workspace
     */
    public void closeUserSession()
    {
-      this.usrSession.destroy();
-      this.usrSession = null;
+      UserSession usrSession = getUserSession();
+
+      if (usrSession != null)
+      {
+         usrSession.destroy(this);
+         this.session.setUserSession(null);
+      }
    }
 
    /**
-    * Convierte la instancia en una cadena de texto.
+    * Convierte la instancia en una cadena de texto.<br />
+    * Slo se describen los servicios cuya configuracin ya ha sido cargada (no provoca la carga de ningn servicio).
     */
    @Override
    public String toString()
    {
-      return "[Cosmo Workspace]\n" +
-             " Name    : " + this.name + "\n" +
-             " Services:\n" +
-             "  - Logging        -> " + getProperties().getLogProperties().getLoggingAgentsCount() + " appender(s) listening\n" +
-             "                      status: running\n" +
-             "  - UI             -> template: " + this.template.getName() + "\n" +
-             "                      status: running\n" +
-             "  - Data           -> " + getProperties().getDataProperties().getDataAgentCount() + " datasource(s) loaded\n" +
-             "                      " + getProperties().getDataProperties().getDataListCount() + " datalist(s) loaded\n" +
-             "                      status: running\n" +
-             "  - Communications -> " + getProperties().getCommProperties().getCommunicationsAgentCount() + " agent(s) loaded\n" +
-             "                      status: running\n" +
-             "  - Security       -> authentication module: " + getProperties().getSecurityProperties().getAuthenticationAgent().getId() + " / " + getProperties().getSecurityProperties().getAuthenticationAgent().getModuleClass() + "\n" +
-             "                      authorization module : " + getProperties().getSecurityProperties().getAuthorizationAgent().getId() + " / " + getProperties().getSecurityProperties().getAuthorizationAgent().getModuleClass() + "\n" +
-             "                      status: running\n";
-   }
+      WorkspaceProperties props = getProperties();
+      StringBuilder str = new StringBuilder();
 
+      str.append("[Cosmo Workspace]\n");
+      str.append(" Name    : ").append(getName()).append("\n");
+      str.append(" Services:\n");
+
+      if (props.isServiceLoaded(ServiceType.Logging))
+      {
+         str.append("  - Logging        -> ").append(props.getLogProperties().getLoggingAgentsCount()).append(" appender(s) listening\n");
+         str.append("                      status: running\n");
+      }
+      if (props.isServiceLoaded(ServiceType.UI))
+      {
+         str.append("  - UI             -> template: ").append(this.template != null ? this.template.getName() : "-").append("\n");
+         str.append("                      status: running\n");
+      }
+      if (props.isServiceLoaded(ServiceType.Data))
+      {
+         str.append("  - Data           -> ").append(props.getDataProperties().getDataAgentCount()).append(" datasource(s) loaded\n");
+         str.append("                      ").append(props.getDataProperties().getDataListCount()).append(" datalist(s) loaded\n");
+         str.append("                      status: running\n");
+      }
+      if (props.isServiceLoaded(ServiceType.Comm))
+      {
+         str.append("  - Communications -> ").append(props.getCommProperties().getCommunicationsAgentCount()).append(" agent(s) loaded\n");
+         str.append("                      status: running\n");
+      }
+      if (props.isServiceLoaded(ServiceType.Security))
+      {
+         str.append("  - Security       -> authentication module: ").append(props.getSecurityProperties().getAuthenticationAgent().getId()).append(" / ").append(props.getSecurityProperties().getAuthenticationAgent().getModuleClass()).append("\n");
+         str.append("                      authorization module : ").append(props.getSecurityProperties().getAuthorizationAgent().getId()).append(" / ").append(props.getSecurityProperties().getAuthorizationAgent().getModuleClass()).append("\n");
+         str.append("                      status: running\n");
+      }
+      if (props.isServiceLoaded(ServiceType.Orm))
+      {
+         str.append("  - ORM            -> status: running\n");
+      }
+
+      return str.toString();
+   }
 
-   //==============================================
-   // Private members
-   //==============================================
 
    /**
-    * Recarga el contexto.
-    * 
-    * @param context Una instancia de {@link ServletContext} que representa el contexto del servlet.
-    * @param request Una instancia de {@link HttpServletRequest} que representa el contexto de la llamada.
-    * @param response Una instancia de {@link HttpServletResponse} que representa el contexto de la respuesta.
-    * 
-    * @throws WorkspaceLoadException
-    * @throws RulesLoadException
-    * @throws TemplateUnavailableException
-    * @throws TemplateLoadException
-    * @throws MenuProviderException
+    * Desvincula el workspace de la peticin y la respuesta al finalizar la peticin.<br />
+    * Los controles y pginas guardados en la sesin conservan su workspace, que no debe mantener accesibles objetos
+    * que el contenedor reutiliza en peticiones posteriores.
     */
-   private void reloadContext(ServletContext context, HttpServletRequest request, HttpServletResponse response) throws WorkspaceLoadException, RulesLoadException, TemplateUnavailableException, TemplateLoadException, MenuProviderException
+   void release()
    {
-      Logger log = LogFactory.getLogger("reloadContext");
-
-      this.context = context;
-      this.srvRequest = request;
-      this.srvResponse = response;
-
-      // Lee la configuracin del workspace
-      this.properties = new WorkspaceProperties(context);
-
-      LogFactory.initialize(this);
-      log.info("Loading workspace context (session ID: " + request.getSession().getId() + ")...");
-      log.info("Logging Services: running");
-
-      this.template = this.properties.getUiProperties().checkRules(context, request.getHeader("User-Agent"));
-      log.info("UI Services: running (template: " + this.template.getName() + ")");
+      this.srvRequest = null;
+      this.srvResponse = null;
+   }
 
-      this.requestedUrl = getRequestedUrl(request);
-      this.url = this.properties.getString(Cosmo.PROPERTY_WORKSPACE_URL);
-      this.name = this.properties.getString(Cosmo.PROPERTY_WORKSPACE_TITLE);
-      this.mail = this.properties.getString(Cosmo.PROPERTY_WORKSPACE_MAIL);
 
-      log.info("Context reloaded for workspace " + this.name);
-      
-      log.info(this.toString());
-   }
+   //==============================================
+   // Private members
+   //==============================================
 
    /**
     * Inicializa la instancia de la clase.
     */
    private void initialize()
    {
-      this.template = null;
+      this.application = null;
+      this.session = null;
       this.properties = null;
-      this.usrSession = null;
+      this.template = null;
 
-      this.context = null;
       this.srvRequest = null;
       this.srvResponse = null;
-
-      this.requestedUrl = "";
-      this.url = "";
-      this.name = "";
-      this.mail = "";
+      this.requestedUrl = null;
    }
 
    /**
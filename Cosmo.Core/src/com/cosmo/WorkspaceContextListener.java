@@ -0,0 +1,67 @@
+package com.cosmo;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+import org.apache.log4j.Logger;
+
+import com.cosmo.comm.CommunicationsFactory;
+import com.cosmo.data.DataFactory;
+import com.cosmo.logging.LogFactory;
+
+/**
+ * Gestiona el ciclo de vida de los recursos de Cosmo compartidos por toda la aplicacin.
+ * 
+ * @author Gerard Llort
+ */
+@WebListener
+public class WorkspaceContextListener implements ServletContextListener
+{
+   Logger log = LogFactory.getLogger(getClass());
+
+
+   //==============================================
+   // Methods
+   //==============================================
+
+   /**
+    * Se invoca al iniciar la aplicacin.<br />
+    * Carga la configuracin y los servicios indicados en {@link WorkspaceProperties#PROPERTY_SERVICES_PREWARM}.
+    */
+   @Override
+   public void contextInitialized(ServletContextEvent event)
+   {
+      try
+      {
+         WorkspaceFactory.getApplicationContext(event.getServletContext()).prewarm();
+      }
+      catch (WorkspaceLoadException ex)
+      {
+         // La configuracin se volver a intentar cargar con la primera peticin
+         log.error("Cosmo application context could not be initialized: " + ex.getMessage());
+      }
+   }
+
+   /**
+    * Se invoca al detener la aplicacin.<br />
+    * Libera los recursos del contexto de aplicacin y de los agentes compartidos.
+    */
+   @Override
+   public void contextDestroyed(ServletContextEvent event)
+   {
+      ServletContext context = event.getServletContext();
+
+      ApplicationContext application = (ApplicationContext) context.getAttribute(Cosmo.KEY_CACHE_CONTEXT_APPLICATION);
+      if (application != null)
+      {
+         application.destroy();
+         context.removeAttribute(Cosmo.KEY_CACHE_CONTEXT_APPLICATION);
+      }
+
+      // Cierra los agentes de datos (pools de conexiones) y de comunicaciones
+      DataFactory.shutdown();
+      CommunicationsFactory.shutdown();
+   }
+}
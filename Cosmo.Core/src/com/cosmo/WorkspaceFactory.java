@@ -12,18 +12,39 @@ import com.cosmo.ui.widgets.providers.MenuProviderException;
 
 /**
  * Implementa un proveedor para workspaces.
+ * <br /><br />
+ * El estado de Cosmo se reparte en tres mbitos:
+ * <ul>
+ * <li>{@link ApplicationContext}: nico para la aplicacin, se almacena en el contexto del servlet.</li>
+ * <li>{@link SessionContext}: uno por sesin HTTP, se almacena en la sesin.</li>
+ * <li>{@link Workspace}: uno por peticin, se almacena como atributo de la peticin.</li>
+ * </ul>
  * 
  * @author Gerard Llort
  */
 public class WorkspaceFactory 
 {
+   // Objetos de sincronizacin para la creacin de los contextos compartidos
+   private static final Object applicationLock = new Object();
+   private static final Object sessionLock = new Object();
+
+   // Workspace asociado a la peticin que atiende el hilo actual
+   private static final ThreadLocal<Workspace> current = new ThreadLocal<Workspace>();
+
+
+   //==============================================
+   // Static members
+   //==============================================
+
    /**
     * Obtiene una instancia de {@link Workspace}.
+    * <br /><br />
+    * Las llamadas sucesivas durante una misma peticin devuelven la misma instancia.
     * 
     * @param context Una instancia de {@link ServletContext} que permite acceder al contexto.
     * @param request Una instancia de {@link HttpServletRequest} que permite acceder al contexto de la llamada.
     * @param response Una instancia de {@link HttpServletResponse} que permite acceder al contexto de la respuesta.
-    * @return Una instancia de {@link Workspace} para el usuario actual.
+    * @return Una instancia de {@link Workspace} para la peticin actual.
     * 
     * @throws WorkspaceLoadException 
     */
@@ -31,7 +52,15 @@ public class WorkspaceFactory
    {
       Workspace ws;
       HttpSession session;
-      
+
+      // Obtiene el workspace de la peticin
+      ws = (Workspace) request.getAttribute(Cosmo.KEY_CACHE_REQUEST_WORKSPACE);
+      if (ws != null)
+      {
+         current.set(ws);
+         return ws;
+      }
+
       // Obtiene la sessin de usuario
       session = request.getSession(true);
       
@@ -39,22 +68,132 @@ public class WorkspaceFactory
       {
          throw new WorkspaceLoadException("No session detected");
       }
-      
-      // Obtiene el workspace de la cache
-      ws = (Workspace) session.getAttribute(Cosmo.KEY_CACHE_SESSION_WORKSPACE);
 
-      // Si existe en la cache, devuelve el workspace
+      // Crea el workspace y lo guarda en la peticin
+      ws = new Workspace(getApplicationContext(context), getSessionContext(session), request, response);
+      request.setAttribute(Cosmo.KEY_CACHE_REQUEST_WORKSPACE, ws);
+      current.set(ws);
+
+      return ws;
+   }
+
+   /**
+    * Devuelve el workspace de la peticin que atiende el hilo actual o {@code null} si el hilo no est 
+    * atendiendo ninguna peticin.
+    */
+   public static Workspace getCurrentWorkspace()
+   {
+      return current.get();
+   }
+
+   /**
+    * Desvincula el workspace del hilo actual.<br />
+    * Debe invocarse al finalizar la peticin.
+    */
+   public static void releaseCurrentWorkspace()
+   {
+      Workspace ws = current.get();
       if (ws != null)
       {
-         ws.setServerRequest(request);
+         ws.release();
+      }
 
-         return ws;
+      current.remove();
+   }
+
+   /**
+    * Obtiene el contexto de aplicacin.
+    * <br /><br />
+    * El archivo de configuracin slo se lee y analiza la primera vez que se solicita. El contexto resultante 
+    * se almacena en el contexto del servlet y es compartido por todos los workspaces.
+    * 
+    * @param context Una instancia de {@link ServletContext} que permite acceder al contexto.
+    * 
+    * @return Una instancia de {@link ApplicationContext}.
+    * 
+    * @throws WorkspaceLoadException
+    */
+   public static ApplicationContext getApplicationContext(ServletContext context) throws WorkspaceLoadException
+   {
+      ApplicationContext application;
+
+      // Obtiene el contexto de aplicacin de la cache
+      application = (ApplicationContext) context.getAttribute(Cosmo.KEY_CACHE_CONTEXT_APPLICATION);
+      if (application != null)
+      {
+         return application;
       }
 
-      // Inicializa el workspace y lo guarda en la sesin
-      ws = new Workspace(context, request, response);
-      session.setAttribute(Cosmo.KEY_CACHE_SESSION_WORKSPACE, ws);
-      
-      return ws;
+      synchronized (applicationLock)
+      {
+         // Comprueba que ningn otro hilo haya creado el contexto mientras se esperaba
+         application = (ApplicationContext) context.getAttribute(Cosmo.KEY_CACHE_CONTEXT_APPLICATION);
+         if (application == null)
+         {
+            application = new ApplicationContext(context);
+            context.setAttribute(Cosmo.KEY_CACHE_CONTEXT_APPLICATION, application);
+         }
+      }
+
+      return application;
+   }
+
+   /**
+    * Obtiene el estado de Cosmo asociado a una sesin HTTP.
+    * 
+    * @param session Una instancia de {@link HttpSession} que representa la sesin.
+    * 
+    * @return Una instancia de {@link SessionContext}.
+    */
+   public static SessionContext getSessionContext(HttpSession session)
+   {
+      SessionContext sessionContext;
+
+      sessionContext = (SessionContext) session.getAttribute(Cosmo.KEY_CACHE_SESSION_CONTEXT);
+      if (sessionContext != null)
+      {
+         return sessionContext;
+      }
+
+      synchronized (sessionLock)
+      {
+         // Evita que dos peticiones simultneas de la misma sesin creen contextos distintos
+         sessionContext = (SessionContext) session.getAttribute(Cosmo.KEY_CACHE_SESSION_CONTEXT);
+         if (sessionContext == null)
+         {
+            sessionContext = new SessionContext();
+            session.setAttribute(Cosmo.KEY_CACHE_SESSION_CONTEXT, sessionContext);
+         }
+      }
+
+      return sessionContext;
+   }
+
+   /**
+    * Obtiene la versin vigente de la configuracin del workspace.
+    * 
+    * @param context Una instancia de {@link ServletContext} que permite acceder al contexto.
+    * 
+    * @return Una instancia de {@link WorkspaceProperties} que contiene la configuracin del workspace.
+    * 
+    * @throws WorkspaceLoadException
+    */
+   public static WorkspaceProperties getProperties(ServletContext context) throws WorkspaceLoadException
+   {
+      return getApplicationContext(context).getProperties();
+   }
+
+   /**
+    * Obtiene el gestor de la configuracin del workspace.
+    * 
+    * @param context Una instancia de {@link ServletContext} que permite acceder al contexto.
+    * 
+    * @return Una instancia de {@link WorkspacePropertiesReloader}.
+    * 
+    * @throws WorkspaceLoadException
+    */
+   public static WorkspacePropertiesReloader getPropertiesReloader(ServletContext context) throws WorkspaceLoadException
+   {
+      return getApplicationContext(context).getPropertiesReloader();
    }
 }
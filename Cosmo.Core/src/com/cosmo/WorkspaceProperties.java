@@ -4,8 +4,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.servlet.ServletContext;
 import javax.xml.parsers.DocumentBuilder;
@@ -29,9 +31,16 @@ import com.cosmo.ui.UIServiceProperties;
 import com.cosmo.util.IOUtils;
 import com.cosmo.util.KeyValue;
 import com.cosmo.util.PluginProperties;
+import com.cosmo.util.StringUtils;
 
 /**
- * Representa la configuracin del workspace.
+ * Representa la configuracin del workspace.<br />
+ * Una vez cargada, la instancia no se modifica y puede ser compartida por todas las sesiones de la aplicacin 
+ * (ver {@link WorkspaceFactory#getProperties(ServletContext)}).
+ * <br /><br />
+ * La configuracin de cada servicio se lee del documento XML la primera vez que se solicita, de manera que los 
+ * servicios que no se usan no tienen ningn coste. Los servicios indicados en el parmetro 
+ * {@link #PROPERTY_SERVICES_PREWARM} se cargan al iniciar la aplicacin.
  * 
  * @author Gerard Llort
  */
@@ -40,6 +49,28 @@ public class WorkspaceProperties
    /** Nombre del archivo de configuracin de Cosmo (sin path) */
    public static final String PROPERTIES_FILENAME = "cosmo.config.xml";
 
+   /** Lista (separada por comas) de servicios a cargar al iniciar la aplicacin ({@code all} para cargarlos todos) */
+   public static final String PROPERTY_SERVICES_PREWARM = "ws.services.prewarm";
+
+   /**
+    * Enumera los servicios del workspace.
+    */
+   public enum ServiceType
+   {
+      /** UI Services */
+      UI,
+      /** Security Services */
+      Security,
+      /** Data Services */
+      Data,
+      /** Communication Services */
+      Comm,
+      /** ORM Services */
+      Orm,
+      /** Logging Services */
+      Logging
+   }
+
    private static final String XML_TAG_PARAMETER = "param";
 
    private static final String XML_ATT_ID = "id";
@@ -48,13 +79,14 @@ public class WorkspaceProperties
    private static final String XML_ATT_VALUE = "value";
 
    // Declaracin de variables locales
-   private HashMap<String, String> properties;
-   private UIServiceProperties uiProps;
-   private SecurityServiceProperties securityProps;
-   private DataServiceProperties dataProps;
-   private CommServiceProperties commProps;
-   private OrmServiceProperties ormProps;
-   private LogServiceProperties logProps;
+   private Map<String, String> properties;
+   private ServiceHolder<UIServiceProperties> uiProps;
+   private ServiceHolder<SecurityServiceProperties> securityProps;
+   private ServiceHolder<DataServiceProperties> dataProps;
+   private ServiceHolder<CommServiceProperties> commProps;
+   private ServiceHolder<OrmServiceProperties> ormProps;
+   private ServiceHolder<LogServiceProperties> logProps;
+   private long version;
 
    Logger log = LogFactory.getLogger(getClass());
 
@@ -141,7 +173,7 @@ public class WorkspaceProperties
     */
    public UIServiceProperties getUiProperties()
    {
-      return uiProps;
+      return uiProps.get();
    }
 
    /**
@@ -149,7 +181,7 @@ public class WorkspaceProperties
     */
    public SecurityServiceProperties getSecurityProperties()
    {
-      return securityProps;
+      return securityProps.get();
    }
 
    /**
@@ -157,15 +189,15 @@ public class WorkspaceProperties
     */
    public DataServiceProperties getDataProperties()
    {
-      return dataProps;
+      return dataProps.get();
    }
 
    /**
-    * Devuelve las propiedades de configuracin de Data Services.
+    * Devuelve las propiedades de configuracin de Communication Services.
     */
    public CommServiceProperties getCommProperties()
    {
-      return commProps;
+      return commProps.get();
    }
 
    /**
@@ -173,7 +205,7 @@ public class WorkspaceProperties
     */
    public OrmServiceProperties getOrmProperties()
    {
-      return ormProps;
+      return ormProps.get();
    }
 
    /**
@@ -181,7 +213,24 @@ public class WorkspaceProperties
     */
    public LogServiceProperties getLogProperties()
    {
-      return this.logProps;
+      return this.logProps.get();
+   }
+
+   /**
+    * Devuelve el nmero de versin de la configuracin (ver {@link WorkspacePropertiesReloader#getVersion()}) o 0 si 
+    * no se ha publicado.
+    */
+   public long getVersion()
+   {
+      return this.version;
+   }
+
+   /**
+    * Establece el nmero de versin de la configuracin al publicarla.
+    */
+   void setVersion(long version)
+   {
+      this.version = version;
    }
 
    /**
@@ -197,6 +246,61 @@ public class WorkspaceProperties
    // Methods
    //==============================================
 
+   /**
+    * Indica si la configuracin de un servicio ya ha sido cargada.
+    * 
+    * @param service Servicio a consultar.
+    * 
+    * @return {@code true} si la configuracin del servicio est cargada o {@code false} en cualquier otro caso.
+    */
+   public boolean isServiceLoaded(ServiceType service)
+   {
+      return getServiceHolder(service).isLoaded();
+   }
+
+   /**
+    * Carga la configuracin de un servicio (si no estaba cargada).
+    * 
+    * @param service Servicio a cargar.
+    */
+   public void loadService(ServiceType service)
+   {
+      getServiceHolder(service).get();
+   }
+
+   /**
+    * Obtiene la lista de servicios que deben cargarse al iniciar la aplicacin.
+    * 
+    * @return Una lista de {@link ServiceType} con los servicios indicados en {@link #PROPERTY_SERVICES_PREWARM}.
+    */
+   public List<ServiceType> getPrewarmServices()
+   {
+      List<ServiceType> services = new ArrayList<ServiceType>();
+      String value = getString(PROPERTY_SERVICES_PREWARM);
+
+      if (StringUtils.isNullOrEmptyTrim(value))
+      {
+         return services;
+      }
+
+      for (String name : value.split(","))
+      {
+         name = name.trim();
+         for (ServiceType service : ServiceType.values())
+         {
+            if (name.equalsIgnoreCase("all") || name.equalsIgnoreCase(service.name()))
+            {
+               if (!services.contains(service))
+               {
+                  services.add(service);
+               }
+            }
+         }
+      }
+
+      return services;
+   }
+
    /**
     * Devuelve una lista de todos los valores de configuracin de la aplicacin.
     * 
@@ -328,7 +432,7 @@ public class WorkspaceProperties
       Node nNode;
       Element eElement;
       NodeList nList;
-      // InputStream iStream = null;
+      HashMap<String, String> values = new HashMap<String, String>();
 
       try
       {
@@ -348,27 +452,65 @@ public class WorkspaceProperties
                String name = eElement.getAttribute(WorkspaceProperties.XML_ATT_KEY);
                String val = eElement.getAttribute(WorkspaceProperties.XML_ATT_VALUE); 
 
-               this.properties.put(name, val);
+               values.put(name, val);
             }
          }
+         this.properties = Collections.unmodifiableMap(values);
+
+         // La configuracin de cada servicio se lee del documento cuando se solicita por primera vez
+         uiProps = new ServiceHolder<UIServiceProperties>(doc)
+         {
+            @Override
+            protected UIServiceProperties create(Document doc)
+            {
+               return new UIServiceProperties(doc);
+            }
+         };
 
-         // Lectura de la configuracin de UI Services
-         uiProps = new UIServiceProperties(doc);
+         securityProps = new ServiceHolder<SecurityServiceProperties>(doc)
+         {
+            @Override
+            protected SecurityServiceProperties create(Document doc)
+            {
+               return new SecurityServiceProperties(doc);
+            }
+         };
 
-         // Lectura de la configuracin de Security Services
-         securityProps = new SecurityServiceProperties(doc);
+         dataProps = new ServiceHolder<DataServiceProperties>(doc)
+         {
+            @Override
+            protected DataServiceProperties create(Document doc)
+            {
+               return new DataServiceProperties(doc);
+            }
+         };
 
-         // Lectura de la configuracin de Data Services
-         dataProps = new DataServiceProperties(doc);
+         commProps = new ServiceHolder<CommServiceProperties>(doc)
+         {
+            @Override
+            protected CommServiceProperties create(Document doc)
+            {
+               return new CommServiceProperties(doc);
+            }
+         };
 
-         // Lectura de la configuracin de Communication Services
-         commProps = new CommServiceProperties(doc);
+         ormProps = new ServiceHolder<OrmServiceProperties>(doc)
+         {
+            @Override
+            protected OrmServiceProperties create(Document doc)
+            {
+               return new OrmServiceProperties(doc);
+            }
+         };
 
-         // Lectura de la configuracin de Communication Services
-         ormProps = new OrmServiceProperties(doc);
-         
-         // Lectura de la configuracin de Logging Services
-         logProps = new LogServiceProperties(doc);
+         logProps = new ServiceHolder<LogServiceProperties>(doc)
+         {
+            @Override
+            protected LogServiceProperties create(Document doc)
+            {
+               return new LogServiceProperties(doc);
+            }
+         };
       }
       catch (ParserConfigurationException ex)
       {
@@ -384,6 +526,22 @@ public class WorkspaceProperties
       }
    }
 
+   /**
+    * Obtiene el contenedor de la configuracin de un servicio.
+    */
+   private ServiceHolder<?> getServiceHolder(ServiceType service)
+   {
+      switch (service)
+      {
+         case UI:       return this.uiProps;
+         case Security: return this.securityProps;
+         case Data:     return this.dataProps;
+         case Comm:     return this.commProps;
+         case Orm:      return this.ormProps;
+         default:       return this.logProps;
+      }
+   }
+
    /**
     * Inicializa la instancia.
     */
@@ -395,7 +553,66 @@ public class WorkspaceProperties
       this.commProps = null;
       this.ormProps = null;
       this.logProps = null;
+      this.version = 0;
+
+      properties = Collections.emptyMap();
+   }
 
-      properties = new HashMap<String, String>();
+
+   //==============================================
+   // Inner classes
+   //==============================================
+
+   /**
+    * Contenedor que crea la configuracin de un servicio la primera vez que se solicita.<br />
+    * Todos los contenedores de una misma configuracin se sincronizan sobre el documento XML, ya que el 
+    * rbol DOM no admite lecturas concurrentes.
+    */
+   private static abstract class ServiceHolder<T>
+   {
+      private final Document document;
+      private volatile T instance;
+
+      ServiceHolder(Document document)
+      {
+         this.document = document;
+         this.instance = null;
+      }
+
+      /**
+       * Crea la configuracin del servicio a partir del documento XML.
+       */
+      protected abstract T create(Document doc);
+
+      /**
+       * Indica si la configuracin ya ha sido creada.
+       */
+      boolean isLoaded()
+      {
+         return (this.instance != null);
+      }
+
+      /**
+       * Devuelve la configuracin del servicio, crendola si es necesario.
+       */
+      T get()
+      {
+         T result = this.instance;
+
+         if (result == null)
+         {
+            synchronized (this.document)
+            {
+               result = this.instance;
+               if (result == null)
+               {
+                  result = create(this.document);
+                  this.instance = result;
+               }
+            }
+         }
+
+         return result;
+      }
    }
 }
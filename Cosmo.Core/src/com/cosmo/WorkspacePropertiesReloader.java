@@ -0,0 +1,389 @@
+package com.cosmo;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.ServletContext;
+
+import org.apache.log4j.Logger;
+
+import com.cosmo.logging.LogFactory;
+import com.cosmo.util.StringUtils;
+
+/**
+ * Implementa la recarga en caliente del archivo de configuracin del workspace ({@code cosmo.config.xml}).
+ * <br /><br />
+ * Un hilo en segundo plano comprueba peridicamente la fecha de modificacin y el tamao del archivo. Cuando detecta
+ * un cambio (y el archivo se mantiene estable durante un ciclo completo), lo vuelve a analizar, valida la nueva
+ * configuracin y, si es correcta, la publica de forma atmica como una nueva versin. Si la nueva configuracin no
+ * es vlida se mantiene la versin anterior.
+ * <br /><br />
+ * Las peticiones en curso conservan la instancia de {@link WorkspaceProperties} que obtuvieron al empezar, por lo
+ * que siempre disponen de una vista coherente de la configuracin.
+ *
+ * @author Gerard Llort
+ */
+public class WorkspacePropertiesReloader
+{
+   /** Intervalo (en segundos) entre comprobaciones del archivo de configuracin. Si es 0 no se recarga. */
+   public static final String PROPERTY_RELOAD_INTERVAL = "ws.config.reload.interval";
+
+   private static final int DEFAULT_RELOAD_INTERVAL = 10;
+
+   // Declaracin de variables locales
+   private File file;
+   private long fileModified;
+   private long fileLength;
+   private boolean pendingChange;
+   private ScheduledExecutorService scheduler;
+   private final AtomicReference<WorkspaceProperties> current;
+   private final AtomicLong version;
+   private final AtomicLong reloadCount;
+   private final AtomicLong failureCount;
+   private final AtomicLong lastReloadTime;
+   private final AtomicLong totalReloadTime;
+   private volatile long lastReloadDate;
+   private volatile String lastError;
+
+   Logger log = LogFactory.getLogger(getClass());
+
+
+   //==============================================
+   // Constructors
+   //==============================================
+
+   /**
+    * Constructor de la clase {@link WorkspacePropertiesReloader}.<br />
+    * Carga la configuracin inicial y, si as se indica en la configuracin, inicia la vigilancia del archivo.
+    *
+    * @param context Una instancia de {@link ServletContext} que representa el contexto del servlet.
+    *
+    * @throws WorkspaceLoadException
+    */
+   public WorkspacePropertiesReloader(ServletContext context) throws WorkspaceLoadException
+   {
+      this.file = new File(context.getRealPath(File.separator + "WEB-INF" + File.separator + WorkspaceProperties.PROPERTIES_FILENAME));
+      this.current = new AtomicReference<WorkspaceProperties>();
+      this.version = new AtomicLong(0);
+      this.reloadCount = new AtomicLong(0);
+      this.failureCount = new AtomicLong(0);
+      this.lastReloadTime = new AtomicLong(0);
+      this.totalReloadTime = new AtomicLong(0);
+      this.lastReloadDate = 0;
+      this.lastError = null;
+      this.pendingChange = false;
+      this.scheduler = null;
+
+      // Carga inicial: si falla, se propaga el error (no hay versin anterior que mantener)
+      this.fileModified = file.lastModified();
+      this.fileLength = file.length();
+      publish(load());
+
+      start(current.get().getInt(PROPERTY_RELOAD_INTERVAL, DEFAULT_RELOAD_INTERVAL));
+   }
+
+
+   //==============================================
+   // Properties
+   //==============================================
+
+   /**
+    * Devuelve la versin vigente de la configuracin del workspace.
+    */
+   public WorkspaceProperties getProperties()
+   {
+      return this.current.get();
+   }
+
+   /**
+    * Devuelve el nmero de versin de la configuracin vigente (empieza en 1 y se incrementa en cada recarga).
+    */
+   public long getVersion()
+   {
+      return this.version.get();
+   }
+
+   /**
+    * Devuelve el nmero de recargas realizadas correctamente (sin contar la carga inicial).
+    */
+   public long getReloadCount()
+   {
+      return this.reloadCount.get();
+   }
+
+   /**
+    * Devuelve el nmero de recargas fallidas.
+    */
+   public long getFailureCount()
+   {
+      return this.failureCount.get();
+   }
+
+   /**
+    * Devuelve el tiempo (en milisegundos) empleado en la ltima recarga, correcta o fallida.
+    */
+   public long getLastReloadTime()
+   {
+      return this.lastReloadTime.get();
+   }
+
+   /**
+    * Devuelve el tiempo medio (en milisegundos) empleado en las recargas.
+    */
+   public long getAverageReloadTime()
+   {
+      long count = this.reloadCount.get() + this.failureCount.get();
+      return (count > 0 ? this.totalReloadTime.get() / count : 0);
+   }
+
+   /**
+    * Devuelve la fecha (en milisegundos) de publicacin de la versin vigente.
+    */
+   public long getLastReloadDate()
+   {
+      return this.lastReloadDate;
+   }
+
+   /**
+    * Devuelve el mensaje de error de la ltima recarga fallida o {@code null} si no se ha producido ninguno.
+    */
+   public String getLastError()
+   {
+      return this.lastError;
+   }
+
+   /**
+    * Indica si la vigilancia del archivo de configuracin est activa.
+    */
+   public boolean isWatching()
+   {
+      return (this.scheduler != null && !this.scheduler.isShutdown());
+   }
+
+
+   //==============================================
+   // Methods
+   //==============================================
+
+   /**
+    * Comprueba si el archivo de configuracin ha cambiado y, en tal caso, lo recarga.<br />
+    * Este mtodo es invocado peridicamente por el hilo de vigilancia.
+    *
+    * @return {@code true} si se ha publicado una nueva versin de la configuracin o {@code false} en cualquier otro caso.
+    */
+   public synchronized boolean checkForChanges()
+   {
+      long modified = file.lastModified();
+      long length = file.length();
+
+      if (modified == 0)
+      {
+         // El archivo no existe (p. ej. se est reemplazando): se mantiene la versin vigente
+         return false;
+      }
+
+      if (modified != this.fileModified || length != this.fileLength)
+      {
+         // Espera a que el archivo se mantenga estable durante un ciclo para no leer una escritura a medias
+         this.fileModified = modified;
+         this.fileLength = length;
+         this.pendingChange = true;
+         return false;
+      }
+
+      if (!this.pendingChange)
+      {
+         return false;
+      }
+      this.pendingChange = false;
+
+      return reload();
+   }
+
+   /**
+    * Fuerza la recarga del archivo de configuracin.
+    *
+    * @return {@code true} si se ha publicado una nueva versin de la configuracin o {@code false} si la nueva
+    *    configuracin no es vlida (en este caso se mantiene la versin vigente).
+    */
+   public synchronized boolean reload()
+   {
+      long start = System.currentTimeMillis();
+
+      try
+      {
+         log.info("Reloading application configuration (" + file.getName() + ")...");
+
+         WorkspaceProperties properties = load();
+         validateServices(properties);
+
+         publish(properties);
+         reloadCount.incrementAndGet();
+         lastError = null;
+
+         log.info("Application configuration reloaded (version " + version.get() + ")");
+
+         return true;
+      }
+      catch (WorkspaceLoadException ex)
+      {
+         failureCount.incrementAndGet();
+         lastError = ex.getMessage();
+
+         log.error("Invalid application configuration, keeping version " + version.get() + ": " + ex.getMessage());
+
+         return false;
+      }
+      finally
+      {
+         long elapsed = System.currentTimeMillis() - start;
+         lastReloadTime.set(elapsed);
+         totalReloadTime.addAndGet(elapsed);
+      }
+   }
+
+   /**
+    * Detiene la vigilancia del archivo de configuracin.
+    */
+   public synchronized void stop()
+   {
+      if (this.scheduler != null)
+      {
+         this.scheduler.shutdownNow();
+         this.scheduler = null;
+      }
+   }
+
+
+   //==============================================
+   // Private members
+   //==============================================
+
+   /**
+    * Inicia el hilo de vigilancia del archivo de configuracin.
+    *
+    * @param interval Intervalo (en segundos) entre comprobaciones.
+    */
+   private synchronized void start(int interval)
+   {
+      if (interval <= 0)
+      {
+         log.info("Configuration hot-reload disabled");
+         return;
+      }
+
+      this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+      {
+         @Override
+         public Thread newThread(Runnable runnable)
+         {
+            Thread thread = new Thread(runnable, "cosmo-config-reloader");
+            thread.setDaemon(true);
+            return thread;
+         }
+      });
+
+      this.scheduler.scheduleWithFixedDelay(new Runnable()
+      {
+         @Override
+         public void run()
+         {
+            try
+            {
+               checkForChanges();
+            }
+            catch (RuntimeException ex)
+            {
+               // Evita que una excepcin no prevista detenga la vigilancia
+               log.error("Configuration hot-reload error: " + ex.getMessage(), ex);
+            }
+         }
+      }, interval, interval, TimeUnit.SECONDS);
+
+      log.info("Configuration hot-reload enabled (every " + interval + "s)");
+   }
+
+   /**
+    * Lee, analiza y valida el archivo de configuracin.
+    *
+    * @return Una nueva instancia de {@link WorkspaceProperties}.
+    *
+    * @throws WorkspaceLoadException
+    */
+   private WorkspaceProperties load() throws WorkspaceLoadException
+   {
+      WorkspaceProperties properties;
+
+      try
+      {
+         properties = new WorkspaceProperties(new FileInputStream(file));
+      }
+      catch (FileNotFoundException ex)
+      {
+         throw new WorkspaceLoadException(ex.getMessage(), ex);
+      }
+
+      validate(properties);
+
+      return properties;
+   }
+
+   /**
+    * Valida la coherencia de una configuracin antes de publicarla.
+    *
+    * @param properties La instancia de {@link WorkspaceProperties} a validar.
+    *
+    * @throws WorkspaceLoadException
+    */
+   private void validate(WorkspaceProperties properties) throws WorkspaceLoadException
+   {
+      String dataAgentId = properties.getDataProperties().getDefaultDataAgentId();
+
+      if (!StringUtils.isNullOrEmptyTrim(dataAgentId) && properties.getDataProperties().getDataAgent(dataAgentId) == null)
+      {
+         throw new WorkspaceLoadException("Data Services Configuration Exception: default connection '" + dataAgentId + "' not found");
+      }
+   }
+
+   /**
+    * Carga las configuraciones de todos los servicios de una configuracin recargada.<br />
+    * En la carga inicial los servicios se crean la primera vez que se solicitan (o al iniciar la aplicacin, segn 
+    * {@link WorkspaceProperties#PROPERTY_SERVICES_PREWARM}); en una recarga se cargan antes de publicarla, de manera 
+    * que un error en cualquiera de ellos mantiene la versin vigente.
+    *
+    * @param properties La instancia de {@link WorkspaceProperties} a validar.
+    *
+    * @throws WorkspaceLoadException
+    */
+   private void validateServices(WorkspaceProperties properties) throws WorkspaceLoadException
+   {
+      for (WorkspaceProperties.ServiceType service : WorkspaceProperties.ServiceType.values())
+      {
+         try
+         {
+            properties.loadService(service);
+         }
+         catch (RuntimeException ex)
+         {
+            throw new WorkspaceLoadException(service + " Services Configuration Exception: " + ex.getMessage(), ex);
+         }
+      }
+   }
+
+   /**
+    * Publica de forma atmica una nueva versin de la configuracin.
+    */
+   private void publish(WorkspaceProperties properties)
+   {
+      properties.setVersion(this.version.incrementAndGet());
+      this.current.set(properties);
+      this.lastReloadDate = System.currentTimeMillis();
+   }
+}
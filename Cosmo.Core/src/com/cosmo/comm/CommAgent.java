@@ -39,6 +39,16 @@ public abstract class CommAgent
     */
    public abstract void sendMessage(Message message) throws Exception;
 
+   /**
+    * Libera los recursos usados por el agente.<br />
+    * Se invoca al detener la aplicacin o al sustituir el agente por una nueva configuracin. La implementacin 
+    * por defecto no hace nada.
+    */
+   public void close()
+   {
+      // No hace nada
+   }
+
    /**
     * Obtiene las propiedades de configuracin del servidor.
     * 
@@ -1,7 +1,7 @@
 package com.cosmo.comm;
 
 import java.lang.reflect.InvocationTargetException;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.cosmo.Workspace;
 import com.cosmo.util.PluginProperties;
@@ -18,7 +18,10 @@ import com.cosmo.util.StringUtils;
 public abstract class CommunicationsFactory 
 {
    // Mapa con las instancias nicas de los agentes de comunicaciones
-   private static HashMap<String, CommAgent> agents = null;
+   private static final ConcurrentHashMap<String, CommAgent> agents = new ConcurrentHashMap<String, CommAgent>();
+
+   // Objeto de sincronizacin para la creacin de agentes
+   private static final Object createLock = new Object();
 
 
    //==============================================
@@ -84,79 +87,124 @@ public abstract class CommunicationsFactory
    }
 
 
+   /**
+    * Cierra todos los agentes de comunicaciones.<br />
+    * Se invoca al detener la aplicacin.
+    */
+   public static void shutdown()
+   {
+      synchronized (createLock)
+      {
+         for (CommAgent agent : agents.values())
+         {
+            agent.close();
+         }
+         agents.clear();
+      }
+   }
+
+
    //==============================================
    // Private members
    //==============================================
 
    /**
-    * Carga el controlador de usuarios.
+    * Carga el agente solicitado.
+    * <br /><br />
+    * La consulta de un agente existente no requiere ningn bloqueo. La creacin se realiza de forma exclusiva, 
+    * de manera que nunca se crean dos instancias del mismo agente.
     *
     * @throws CommunicationsException
     */
    private static CommAgent loadProvider(Workspace workspace, String agentId) throws CommunicationsException
    {
-      String className;
-
-      // Inicializa el diccionario de agentes de comunicacin
-      if (agents == null)
-      {
-         agents = new HashMap<String, CommAgent>();
-      }
-
       // Si no se proporciona un identificador de agente, se usa el especificado por defecto en la configuracin.
       if (StringUtils.isNullOrEmptyTrim(agentId))
       {
          agentId = workspace.getProperties().getCommProperties().getDefaultCommunicationsAgentId();
       }
 
-      if (agents.containsKey(agentId))
+      PluginProperties agent = workspace.getProperties().getCommProperties().getCommunicationAgent(agentId);
+
+      // Reutiliza la instancia existente salvo que la configuracin se haya recargado desde su creacin
+      CommAgent current = agents.get(agentId);
+      if (current != null && (agent == null || current.getProperties() == agent))
       {
-         return agents.get(agentId);
+         return current;
       }
-      else
-      {
-         PluginProperties agent = workspace.getProperties().getCommProperties().getCommunicationAgent(agentId);
 
-         className = agent.getModuleClass();
-         if (StringUtils.isNullOrEmptyTrim(className))
+      synchronized (createLock)
+      {
+         // Comprueba que ningn otro hilo haya creado el agente mientras se esperaba
+         current = agents.get(agentId);
+         if (current != null && (agent == null || current.getProperties() == agent))
          {
-            throw new CommunicationsException("Communications Configuration Exception: No communications driver found");
+            return current;
          }
 
-         try
-         {
-            Class<?> cls = Class.forName(className);
-
-            // Genera la instancia del agente solicitado
-            Class<?>[] types = { PluginProperties.class };
-            Object[] arguments = { agent };
-            CommAgent server = (CommAgent) cls.getDeclaredConstructor(types).newInstance(arguments);
+         CommAgent server = createAgent(agent);
 
-            // Almacena la instancia en la lista de instancias de agentes (Singleton)
-            agents.put(agentId, server);
+         // Almacena la instancia en la lista de instancias de agentes (Singleton)
+         agents.put(agentId, server);
 
-            return server;
-         }
-         catch (NoSuchMethodException ex)
-         {
-            throw new CommunicationsException("NoSuchMethodException: " + className, ex);
-         }
-         catch (InvocationTargetException ex)
-         {
-            throw new CommunicationsException("InvocationTargetException: " + className, ex);
-         }
-         catch (ClassNotFoundException ex)
-         {
-            throw new CommunicationsException("ClassNotFoundException: " + className, ex);
-         }
-         catch (InstantiationException ex)
-         {
-            throw new CommunicationsException("InstantiationException: " + className, ex);
-         }
-         catch (IllegalAccessException ex)
+         // Si la instancia sustituye a otra (configuracin recargada), la cierra
+         if (current != null)
          {
-            throw new CommunicationsException("IllegalAccessException: " + className, ex);
+            current.close();
          }
+
+         return server;
+      }
+   }
+
+   /**
+    * Crea una instancia del agente.
+    *
+    * @throws CommunicationsException
+    */
+   private static CommAgent createAgent(PluginProperties agent) throws CommunicationsException
+   {
+      String className;
+
+      if (agent == null)
+      {
+         throw new CommunicationsException("Communications Configuration Exception: agent not found");
+      }
+
+      className = agent.getModuleClass();
+      if (StringUtils.isNullOrEmptyTrim(className))
+      {
+         throw new CommunicationsException("Communications Configuration Exception: No communications driver found");
+      }
+
+      try
+      {
+         Class<?> cls = Class.forName(className);
+
+         // Genera la instancia del agente solicitado
+         Class<?>[] types = { PluginProperties.class };
+         Object[] arguments = { agent };
+         return (CommAgent) cls.getDeclaredConstructor(types).newInstance(arguments);
+      }
+      catch (NoSuchMethodException ex)
+      {
+         throw new CommunicationsException("NoSuchMethodException: " + className, ex);
+      }
+      catch (InvocationTargetException ex)
+      {
+         throw new CommunicationsException("InvocationTargetException: " + className, ex);
+      }
+      catch (ClassNotFoundException ex)
+      {
+         throw new CommunicationsException("ClassNotFoundException: " + className, ex);
+      }
+      catch (InstantiationException ex)
+      {
+         throw new CommunicationsException("InstantiationException: " + className, ex);
+      }
+      catch (IllegalAccessException ex)
+      {
+         throw new CommunicationsException("IllegalAccessException: " + className, ex);
       }
    }
 }
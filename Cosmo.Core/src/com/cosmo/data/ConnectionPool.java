@@ -0,0 +1,811 @@
+package com.cosmo.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.cosmo.util.PluginProperties;
+
+/**
+ * Implementa un pool de conexiones JDBC de tamao limitado.
+ * <br /><br />
+ * Cada {@link DataAgent} dispone de su propio pool. Las conexiones fsicas se obtienen mediante
+ * {@link DataAgent#openConnection()} y se reutilizan mientras no superen el tiempo mximo de vida ni
+ * permanezcan inactivas ms tiempo del permitido. Los parmetros del pool se leen de la configuracin de la conexin:
+ * <ul>
+ * <li>{@code pool.size.min}: nmero mnimo de conexiones inactivas que se conservan (por defecto, 0).</li>
+ * <li>{@code pool.size.max}: nmero mximo de conexiones abiertas simultneamente (por defecto, 10).</li>
+ * <li>{@code pool.idle.timeout}: segundos que una conexin puede permanecer inactiva (por defecto, 600).</li>
+ * <li>{@code pool.max.lifetime}: segundos de vida mxima de una conexin (por defecto, 1800).</li>
+ * <li>{@code pool.lease.timeout}: milisegundos de espera mxima para obtener una conexin (por defecto, 30000).</li>
+ * <li>{@code pool.statement.cache}: nmero mximo de sentncias preparadas que se conservan abiertas en cada 
+ * conexin (por defecto, 50; 0 desactiva la cach).</li>
+ * <li>{@code pool.validation.timeout}: segundos de espera mxima al validar una conexin inactiva antes de cederla 
+ * (por defecto, 5; 0 desactiva la validacin).</li>
+ * <li>{@code pool.validation.idle}: milisegundos de inactividad a partir de los cuales se valida una conexin antes 
+ * de cederla (por defecto, 1000). Las conexiones usadas ms recientemente se ceden sin validar.</li>
+ * <li>{@code pool.eviction.interval}: segundos entre revisiones en segundo plano de las conexiones inactivas, que 
+ * descartan las caducadas (por defecto, 60; 0 las desactiva).</li>
+ * </ul>
+ * Las conexiones que fallan por prdida de conexin (ver {@link #isConnectionLoss(SQLException)}) se descartan al 
+ * devolverlas al pool.
+ *
+ * @author Gerard Llort
+ */
+public class ConnectionPool
+{
+   private static final String POOL_SIZE_MIN = "pool.size.min";
+   private static final String POOL_SIZE_MAX = "pool.size.max";
+   private static final String POOL_IDLE_TIMEOUT = "pool.idle.timeout";
+   private static final String POOL_MAX_LIFETIME = "pool.max.lifetime";
+   private static final String POOL_LEASE_TIMEOUT = "pool.lease.timeout";
+   private static final String POOL_STATEMENT_CACHE = "pool.statement.cache";
+   private static final String POOL_VALIDATION_TIMEOUT = "pool.validation.timeout";
+   private static final String POOL_VALIDATION_IDLE = "pool.validation.idle";
+   private static final String POOL_EVICTION_INTERVAL = "pool.eviction.interval";
+
+   // Hilo compartido por todos los pools para la revisin de las conexiones inactivas
+   private static ScheduledExecutorService evictor = null;
+
+   // Declaracin de variables locales
+   private DataAgent agent;
+   private int minSize;
+   private int maxSize;
+   private long idleTimeout;
+   private long maxLifetime;
+   private long leaseTimeout;
+   private int statementCacheSize;
+   private int validationTimeout;
+   private long validationIdle;
+   private Semaphore permits;
+   private LinkedList<Entry> idle;
+   private ScheduledFuture<?> eviction;
+   private volatile boolean closed;
+
+   // Mtricas
+   private final AtomicInteger activeCount = new AtomicInteger(0);
+   private final AtomicLong leaseCount = new AtomicLong(0);
+   private final AtomicLong createdCount = new AtomicLong(0);
+   private final AtomicLong timeoutCount = new AtomicLong(0);
+   private final AtomicLong totalWaitTime = new AtomicLong(0);
+   private final AtomicLong maxWaitTime = new AtomicLong(0);
+   private final AtomicLong statementHits = new AtomicLong(0);
+   private final AtomicLong statementMisses = new AtomicLong(0);
+   private final AtomicLong validationFailures = new AtomicLong(0);
+   private final AtomicLong evictedCount = new AtomicLong(0);
+
+
+   //==============================================
+   // Constructors
+   //==============================================
+
+   /**
+    * Constructor de la clase {@link ConnectionPool}.
+    *
+    * @param agent Agente de datos que proporciona las conexiones fsicas.
+    * @param properties Una instancia de {@link PluginProperties} que contiene los parmetros de configuracin.
+    */
+   public ConnectionPool(DataAgent agent, PluginProperties properties)
+   {
+      this.agent = agent;
+      this.minSize = Math.max(0, properties.getParamInteger(POOL_SIZE_MIN, 0));
+      this.maxSize = Math.max(1, properties.getParamInteger(POOL_SIZE_MAX, 10));
+      this.idleTimeout = properties.getParamInteger(POOL_IDLE_TIMEOUT, 600) * 1000L;
+      this.maxLifetime = properties.getParamInteger(POOL_MAX_LIFETIME, 1800) * 1000L;
+      this.leaseTimeout = properties.getParamInteger(POOL_LEASE_TIMEOUT, 30000);
+      this.statementCacheSize = Math.max(0, properties.getParamInteger(POOL_STATEMENT_CACHE, 50));
+      this.validationTimeout = Math.max(0, properties.getParamInteger(POOL_VALIDATION_TIMEOUT, 5));
+      this.validationIdle = Math.max(0, properties.getParamInteger(POOL_VALIDATION_IDLE, 1000));
+      this.permits = new Semaphore(this.maxSize, true);
+      this.idle = new LinkedList<Entry>();
+      this.closed = false;
+
+      int interval = properties.getParamInteger(POOL_EVICTION_INTERVAL, 60);
+      this.eviction = (interval > 0 ? scheduleEviction(this, interval) : null);
+   }
+
+
+   //==============================================
+   // Properties
+   //==============================================
+
+   /**
+    * Devuelve el nmero mximo de conexiones del pool.
+    */
+   public int getMaxSize()
+   {
+      return this.maxSize;
+   }
+
+   /**
+    * Devuelve el tiempo mximo de espera (en segundos) al validar una conexin (0 si la validacin est desactivada).
+    */
+   public int getValidationTimeout()
+   {
+      return this.validationTimeout;
+   }
+
+   /**
+    * Devuelve el nmero mnimo de conexiones inactivas que conserva el pool.
+    */
+   public int getMinSize()
+   {
+      return this.minSize;
+   }
+
+   /**
+    * Devuelve el nmero de conexiones cedidas actualmente.
+    */
+   public int getActiveCount()
+   {
+      return this.activeCount.get();
+   }
+
+   /**
+    * Devuelve el nmero de conexiones inactivas disponibles en el pool.
+    */
+   public int getIdleCount()
+   {
+      synchronized (this.idle)
+      {
+         return this.idle.size();
+      }
+   }
+
+   /**
+    * Devuelve el nmero total de cesiones de conexin realizadas.
+    */
+   public long getLeaseCount()
+   {
+      return this.leaseCount.get();
+   }
+
+   /**
+    * Devuelve el nmero de conexiones fsicas abiertas desde la creacin del pool.
+    */
+   public long getCreatedCount()
+   {
+      return this.createdCount.get();
+   }
+
+   /**
+    * Devuelve el nmero de peticiones de conexin que han superado el tiempo de espera.
+    */
+   public long getTimeoutCount()
+   {
+      return this.timeoutCount.get();
+   }
+
+   /**
+    * Devuelve el tiempo total (en milisegundos) de espera para obtener conexiones.
+    */
+   public long getTotalWaitTime()
+   {
+      return this.totalWaitTime.get();
+   }
+
+   /**
+    * Devuelve el tiempo medio (en milisegundos) de espera para obtener una conexin.
+    */
+   public long getAverageWaitTime()
+   {
+      long count = this.leaseCount.get();
+      return (count > 0 ? this.totalWaitTime.get() / count : 0);
+   }
+
+   /**
+    * Devuelve el tiempo mximo (en milisegundos) de espera para obtener una conexin.
+    */
+   public long getMaxWaitTime()
+   {
+      return this.maxWaitTime.get();
+   }
+
+   /**
+    * Devuelve el nmero de sentncias preparadas que se han reutilizado desde la cach.
+    */
+   public long getStatementCacheHits()
+   {
+      return this.statementHits.get();
+   }
+
+   /**
+    * Devuelve el nmero de sentncias preparadas que se han tenido que preparar por no estar en la cach.
+    */
+   public long getStatementCacheMisses()
+   {
+      return this.statementMisses.get();
+   }
+
+   /**
+    * Devuelve el nmero de conexiones inactivas descartadas al no superar la validacin previa a su cesin.
+    */
+   public long getValidationFailures()
+   {
+      return this.validationFailures.get();
+   }
+
+   /**
+    * Devuelve el nmero de conexiones inactivas descartadas por la revisin en segundo plano.
+    */
+   public long getEvictedCount()
+   {
+      return this.evictedCount.get();
+   }
+
+
+   //==============================================
+   // Methods
+   //==============================================
+
+   /**
+    * Obtiene una conexin del pool.<br />
+    * Si no hay ninguna conexin inactiva y no se ha alcanzado el tamao mximo, se abre una nueva conexin fsica.
+    * En caso contrario, espera hasta que se libere una conexin o se supere el tiempo de espera.
+    *
+    * @return Una instancia de {@link Entry} que contiene la conexin cedida.
+    *
+    * @throws DataException
+    */
+   public Entry lease() throws DataException
+   {
+      long start = System.currentTimeMillis();
+      Entry entry;
+
+      if (this.closed)
+      {
+         throw new DataException("Connection pool is closed");
+      }
+
+      try
+      {
+         if (!this.permits.tryAcquire(this.leaseTimeout, TimeUnit.MILLISECONDS))
+         {
+            this.timeoutCount.incrementAndGet();
+            throw new DataException("Connection pool exhausted: no connection available after " + this.leaseTimeout + " ms (max. " + this.maxSize + " connections)");
+         }
+      }
+      catch (InterruptedException ex)
+      {
+         Thread.currentThread().interrupt();
+         throw new DataException("Interrupted while waiting for a connection", ex);
+      }
+
+      try
+      {
+         entry = takeIdle();
+         if (entry == null)
+         {
+            entry = create();
+         }
+      }
+      catch (DataException ex)
+      {
+         this.permits.release();
+         throw ex;
+      }
+
+      long waited = System.currentTimeMillis() - start;
+      this.totalWaitTime.addAndGet(waited);
+      updateMaxWaitTime(waited);
+      this.leaseCount.incrementAndGet();
+      this.activeCount.incrementAndGet();
+
+      return entry;
+   }
+
+   /**
+    * Devuelve una conexin al pool.<br />
+    * Si la conexin est cerrada, ha fallado por prdida de conexin o ha superado su tiempo de vida, se descarta.
+    *
+    * @param entry La instancia de {@link Entry} obtenida mediante {@link #lease()}.
+    */
+   public void release(Entry entry)
+   {
+      long now = System.currentTimeMillis();
+
+      try
+      {
+         if (this.closed || entry.broken || isBroken(entry) || isExpired(entry, now))
+         {
+            entry.close();
+            return;
+         }
+
+         entry.lastUsed = now;
+         synchronized (this.idle)
+         {
+            this.idle.addLast(entry);
+         }
+      }
+      finally
+      {
+         this.activeCount.decrementAndGet();
+         this.permits.release();
+      }
+   }
+
+   /**
+    * Descarta una conexin cedida (p. ej. porque ha dejado de funcionar) sin devolverla al pool.
+    *
+    * @param entry La instancia de {@link Entry} obtenida mediante {@link #lease()}.
+    */
+   public void discard(Entry entry)
+   {
+      try
+      {
+         entry.close();
+      }
+      finally
+      {
+         this.activeCount.decrementAndGet();
+         this.permits.release();
+      }
+   }
+
+   /**
+    * Cierra el pool y todas las conexiones inactivas.<br />
+    * Las conexiones cedidas se cerrarn cuando se devuelvan.
+    */
+   public void close()
+   {
+      this.closed = true;
+
+      if (this.eviction != null)
+      {
+         this.eviction.cancel(false);
+         this.eviction = null;
+      }
+
+      synchronized (this.idle)
+      {
+         for (Entry entry : this.idle)
+         {
+            entry.close();
+         }
+         this.idle.clear();
+      }
+   }
+
+
+   /**
+    * Obtiene una sentncia preparada para una conexin cedida.<br />
+    * Si la sentncia se encuentra en la cach de la conexin, se retira de la cach mientras est en uso (de manera 
+    * que la misma sentncia pueda ejecutarse de forma anidada); en caso contrario, se prepara de nuevo.
+    *
+    * @param entry La instancia de {@link Entry} obtenida mediante {@link #lease()}.
+    * @param sql Una cadena que contiene la sentncia SQL (con parmetros {@code ?}).
+    *
+    * @return Una instancia de {@link PreparedStatement} que debe devolverse mediante {@link #recycleStatement(Entry, String, PreparedStatement)}.
+    *
+    * @throws SQLException
+    */
+   PreparedStatement prepareStatement(Entry entry, String sql) throws SQLException
+   {
+      PreparedStatement ps = entry.takeStatement(sql);
+
+      if (ps != null)
+      {
+         this.statementHits.incrementAndGet();
+         return ps;
+      }
+
+      this.statementMisses.incrementAndGet();
+      return entry.connection.prepareStatement(sql);
+   }
+
+   /**
+    * Devuelve una sentncia preparada a la cach de la conexin.
+    *
+    * @param entry La instancia de {@link Entry} a la que pertenece la sentncia.
+    * @param sql Una cadena que contiene la sentncia SQL.
+    * @param ps La instancia de {@link PreparedStatement} obtenida mediante {@link #prepareStatement(Entry, String)}.
+    */
+   void recycleStatement(Entry entry, String sql, PreparedStatement ps)
+   {
+      entry.putStatement(sql, ps);
+   }
+
+   /**
+    * Revisa las conexiones inactivas: descarta las que han superado su tiempo de vida o de inactividad (conservando 
+    * el mnimo configurado).<br />
+    * Se invoca peridicamente en segundo plano (parmetro {@code pool.eviction.interval}).
+    */
+   void evict()
+   {
+      long now = System.currentTimeMillis();
+      int count = 0;
+
+      synchronized (this.idle)
+      {
+         Iterator<Entry> it = this.idle.iterator();
+         while (it.hasNext())
+         {
+            Entry entry = it.next();
+            if (isExpired(entry, now))
+            {
+               it.remove();
+               entry.close();
+               count++;
+            }
+         }
+
+         int size = this.idle.size();
+         evictIdle(now);
+         count += size - this.idle.size();
+      }
+
+      this.evictedCount.addAndGet(count);
+   }
+
+   /**
+    * Indica si una excepcin se debe a la prdida de la conexin con la base de datos (SQLState de la clase 
+    * {@code 08}, o excepciones de tipo {@link SQLRecoverableException} o {@link SQLNonTransientConnectionException}).
+    *
+    * @param ex La excepcin a comprobar (se revisan tambin sus causas).
+    */
+   public static boolean isConnectionLoss(SQLException ex)
+   {
+      Throwable cause = ex;
+
+      while (cause != null)
+      {
+         if (cause instanceof SQLRecoverableException || cause instanceof SQLNonTransientConnectionException)
+         {
+            return true;
+         }
+         if (cause instanceof SQLException)
+         {
+            String state = ((SQLException) cause).getSQLState();
+            if (state != null && state.startsWith("08"))
+            {
+               return true;
+            }
+         }
+         cause = (cause.getCause() == cause ? null : cause.getCause());
+      }
+
+      return false;
+   }
+
+   /**
+    * Detiene el hilo de revisin de las conexiones inactivas compartido por todos los pools.<br />
+    * Se invoca al detener la aplicacin (ver {@link DataFactory#shutdown()}).
+    */
+   static synchronized void shutdownEvictor()
+   {
+      if (evictor != null)
+      {
+         evictor.shutdownNow();
+         evictor = null;
+      }
+   }
+
+
+   //==============================================
+   // Private members
+   //==============================================
+
+   /**
+    * Obtiene la conexin inactiva usada ms recientemente, descartando las caducadas y las que no superan la 
+    * validacin.
+    */
+   private Entry takeIdle()
+   {
+      while (true)
+      {
+         long now = System.currentTimeMillis();
+         Entry entry = null;
+
+         synchronized (this.idle)
+         {
+            while (entry == null && !this.idle.isEmpty())
+            {
+               entry = this.idle.removeLast();
+               if (isExpired(entry, now))
+               {
+                  entry.close();
+                  entry = null;
+               }
+            }
+            evictIdle(now);
+         }
+
+         if (entry == null)
+         {
+            return null;
+         }
+
+         // La validacin se realiza fuera del bloqueo, ya que requiere comunicarse con el servidor
+         if (isValid(entry, now))
+         {
+            return entry;
+         }
+
+         this.validationFailures.incrementAndGet();
+         entry.close();
+      }
+   }
+
+   /**
+    * Comprueba que una conexin inactiva sigue operativa (slo si ha superado el tiempo de inactividad indicado en 
+    * {@code pool.validation.idle}).
+    */
+   private boolean isValid(Entry entry, long now)
+   {
+      if (this.validationTimeout <= 0 || now - entry.lastUsed < this.validationIdle)
+      {
+         return true;
+      }
+
+      try
+      {
+         return entry.connection.isValid(this.validationTimeout);
+      }
+      catch (SQLException ex)
+      {
+         return false;
+      }
+      catch (AbstractMethodError err)
+      {
+         // Drivers anteriores a JDBC 4: se considera vlida si no est cerrada
+         return !isBroken(entry);
+      }
+   }
+
+   /**
+    * Programa la revisin peridica de las conexiones inactivas de un pool.
+    */
+   private static synchronized ScheduledFuture<?> scheduleEviction(final ConnectionPool pool, int interval)
+   {
+      if (evictor == null)
+      {
+         evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+         {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+               Thread thread = new Thread(runnable, "cosmo-pool-evictor");
+               thread.setDaemon(true);
+               return thread;
+            }
+         });
+      }
+
+      return evictor.scheduleWithFixedDelay(new Runnable()
+      {
+         @Override
+         public void run()
+         {
+            try
+            {
+               pool.evict();
+            }
+            catch (RuntimeException ex)
+            {
+               // Evita que una excepcin no prevista detenga la revisin
+            }
+         }
+      }, interval, interval, TimeUnit.SECONDS);
+   }
+
+   /**
+    * Descarta las conexiones inactivas que han superado el tiempo de inactividad, conservando el mnimo configurado.
+    * Debe invocarse con el bloqueo de la lista de conexiones inactivas.
+    */
+   private void evictIdle(long now)
+   {
+      while (this.idle.size() > this.minSize)
+      {
+         Entry oldest = this.idle.getFirst();
+         if (this.idleTimeout <= 0 || now - oldest.lastUsed < this.idleTimeout)
+         {
+            break;
+         }
+         this.idle.removeFirst().close();
+      }
+   }
+
+   /**
+    * Abre una nueva conexin fsica.
+    */
+   private Entry create() throws DataException
+   {
+      Connection conn = this.agent.openConnection();
+      this.createdCount.incrementAndGet();
+
+      return new Entry(conn, this.statementCacheSize);
+   }
+
+   /**
+    * Indica si una conexin ha superado su tiempo mximo de vida.
+    */
+   private boolean isExpired(Entry entry, long now)
+   {
+      return (this.maxLifetime > 0 && now - entry.created >= this.maxLifetime);
+   }
+
+   /**
+    * Indica si una conexin se ha cerrado.
+    */
+   private boolean isBroken(Entry entry)
+   {
+      try
+      {
+         return entry.connection.isClosed();
+      }
+      catch (SQLException ex)
+      {
+         return true;
+      }
+   }
+
+   /**
+    * Actualiza el tiempo mximo de espera.
+    */
+   private void updateMaxWaitTime(long waited)
+   {
+      long max = this.maxWaitTime.get();
+      while (waited > max && !this.maxWaitTime.compareAndSet(max, waited))
+      {
+         max = this.maxWaitTime.get();
+      }
+   }
+
+
+   //==============================================
+   // Inner classes
+   //==============================================
+
+   /**
+    * Representa una conexin fsica gestionada por el pool, junto con su cach de sentncias preparadas.
+    * <br /><br />
+    * La cach no est sincronizada: una conexin slo la usa el hilo al que est cedida.
+    */
+   public static class Entry
+   {
+      private final Connection connection;
+      private final long created;
+      private long lastUsed;
+      private volatile boolean broken;
+      private final Map<String, PreparedStatement> statements;
+
+      Entry(Connection connection, final int statementCacheSize)
+      {
+         this.connection = connection;
+         this.created = System.currentTimeMillis();
+         this.lastUsed = this.created;
+
+         if (statementCacheSize <= 0)
+         {
+            this.statements = null;
+         }
+         else
+         {
+            this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true)
+            {
+               private static final long serialVersionUID = 1L;
+
+               @Override
+               protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest)
+               {
+                  if (size() > statementCacheSize)
+                  {
+                     closeStatement(eldest.getValue());
+                     return true;
+                  }
+                  return false;
+               }
+            };
+         }
+      }
+
+      /**
+       * Devuelve la conexin JDBC.
+       */
+      public Connection getConnection()
+      {
+         return this.connection;
+      }
+
+      /**
+       * Marca la conexin como no operativa, de manera que se descarte al devolverla al pool.
+       */
+      void invalidate()
+      {
+         this.broken = true;
+      }
+
+      /**
+       * Retira una sentncia de la cach.
+       */
+      PreparedStatement takeStatement(String sql)
+      {
+         return (this.statements == null ? null : this.statements.remove(sql));
+      }
+
+      /**
+       * Guarda una sentncia en la cach (o la cierra si la cach est desactivada).
+       */
+      void putStatement(String sql, PreparedStatement ps)
+      {
+         if (this.statements == null)
+         {
+            closeStatement(ps);
+            return;
+         }
+
+         try
+         {
+            ps.clearParameters();
+         }
+         catch (SQLException ex)
+         {
+            closeStatement(ps);
+            return;
+         }
+
+         PreparedStatement old = this.statements.put(sql, ps);
+         if (old != null && old != ps)
+         {
+            closeStatement(old);
+         }
+      }
+
+      /**
+       * Cierra las sentncias de la cach y la conexin fsica.
+       */
+      void close()
+      {
+         if (this.statements != null)
+         {
+            for (PreparedStatement ps : this.statements.values())
+            {
+               closeStatement(ps);
+            }
+            this.statements.clear();
+         }
+
+         try
+         {
+            if (!this.connection.isClosed())
+            {
+               this.connection.close();
+            }
+         }
+         catch (SQLException ex)
+         {
+            // Descarta la excepcin
+         }
+      }
+
+      /**
+       * Cierra una sentncia descartando los errores.
+       */
+      private static void closeStatement(PreparedStatement ps)
+      {
+         try
+         {
+            ps.close();
+         }
+         catch (SQLException ex)
+         {
+            // Descarta la excepcin
+         }
+      }
+   }
+}
@@ -1,28 +1,87 @@
 package com.cosmo.data;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
+import org.apache.log4j.Logger;
+
+import com.cosmo.logging.LogFactory;
 import com.cosmo.util.PluginProperties;
 
 /**
  * Implementa la estructura abstracta de un agente de conexin a datos.<br />
  * Todas las implementaciones de agentes de conexin debern extender de esta clase.
+ * <br /><br />
+ * Existe una nica instancia de agente por conexin configurada, compartida por todos los hilos. Cada agente 
+ * dispone de un {@link ConnectionPool}: {@link #connect()} cede una conexin del pool al hilo actual y 
+ * {@link #disconnect()} la devuelve, de manera que una misma conexin nunca es usada por dos hilos a la vez. 
+ * Las llamadas a {@link #connect()} pueden anidarse; la conexin se devuelve al pool cuando se cierra la ms externa.
+ * <br /><br />
+ * Si al devolver la conexin todava hay consultas abiertas (obtenidas con {@link #executeSql(String)}), la 
+ * devolucin se aplaza hasta que finaliza la peticin (ver {@link DataFactory#releaseConnections()}).
+ * <br /><br />
+ * Los mtodos que aceptan parmetros ({@code executeSql(String, Object...)}, etc.) usan sentncias preparadas que 
+ * se conservan en una cach por conexin (ver {@link ConnectionPool}), de manera que el SGBD reutiliza el plan de 
+ * ejecucin y no es necesario formatear los valores en la sentncia SQL.
+ * <br /><br />
+ * Para agrupar varias operaciones (del propio agente o del ORM) en una nica transaccin debe usarse 
+ * {@link #beginTransaction()} o {@link #withTransaction(TransactionCallback)}.
+ * <br /><br />
+ * Para recorrer consultas de gran tamao debe usarse {@link #query(String, Object[], RowHandler)}, que lee las filas 
+ * por bloques (parmetro {@code query.fetch.size}, 500 por defecto) y cierra la consulta al finalizar.
+ * <br /><br />
+ * Si la conexin declara rplicas de lectura (ver {@link ReplicaSet}), las consultas de slo lectura pueden obtener 
+ * el agente mediante {@link DataFactory#getReadInstance(com.cosmo.Workspace, String)}.
+ * <br /><br />
+ * Todas las sentncias ejecutadas se miden y se acumulan en las estadsticas del agente (ver {@link QueryStatistics}); 
+ * las que superan el umbral {@code query.slow.threshold} se registran en el log.
+ * <br /><br />
+ * Las cargas de datos independientes pueden ejecutarse en paralelo mediante {@link #executeAsync(DataCallback)}.
+ * <br /><br />
+ * Las consultas de lectura que fallan por prdida de la conexin (ver {@link ConnectionPool#isConnectionLoss(SQLException)}) 
+ * se reintentan con una nueva conexin hasta {@code query.retry} veces (1 por defecto; 0 lo desactiva), siempre que el 
+ * hilo no conserve la conexin (transacciones, llamadas a {@link #connect()} o consultas abiertas).
  * 
  * @author Gerard Llort
  */
 public abstract class DataAgent
 {
+   /** Lista de parmetros vaca: permite ejecutar una consulta sin parmetros mediante una sentncia preparada (y su cach). */
+   public static final Object[] NO_PARAMS = new Object[0];
+
    private static final String DATASOURCE_CORM_DRIVER = "corm.driver";
+   private static final String QUERY_FETCH_SIZE = "query.fetch.size";
+   private static final String BATCH_SIZE = "batch.size";
+   private static final String ASYNC_THREADS = "async.threads";
+   private static final String ASYNC_QUEUE_SIZE = "async.queue.size";
+   private static final String QUERY_RETRY = "query.retry";
 
    // Declaracin de variables locales
    private boolean autoCommit;
-   private String lastSqlStatement;
+   private volatile String lastSqlStatement;
    private PluginProperties properties;
-   private Connection conn;
+   private ConnectionPool pool;
+   private ReplicaSet replicas;
+   private QueryResultCache queryCache;
+   private QueryStatistics statistics;
+   private DataExecutor executor;
+   private int retries;
+   private volatile long configVersion;
+   private final ThreadLocal<Lease> lease;
 
+   Logger log = LogFactory.getLogger(getClass());
 
    //==============================================
    // Constructors
@@ -35,10 +94,17 @@ public abstract class DataAgent
     */
    public DataAgent(PluginProperties properties)
    {
-      this.conn = null;
       this.properties = properties;
       this.autoCommit = true;
       this.lastSqlStatement = "";
+      this.pool = new ConnectionPool(this, properties);
+      this.replicas = new ReplicaSet(properties);
+      this.queryCache = new QueryResultCache(properties);
+      this.statistics = new QueryStatistics(properties);
+      this.executor = null;
+      this.retries = Math.max(0, properties.getParamInteger(QUERY_RETRY, 1));
+      this.configVersion = 0;
+      this.lease = new ThreadLocal<Lease>();
    }
 
 
@@ -82,62 +148,441 @@ public abstract class DataAgent
       return properties.getParamString(DATASOURCE_CORM_DRIVER);
    }
 
+   /**
+    * Devuelve el nmero de filas que se leen de la base de datos en cada bloque al recorrer una consulta mediante 
+    * {@link #query(String, Object[], RowHandler)}.
+    */
+   public int getFetchSize()
+   {
+      return properties.getParamInteger(QUERY_FETCH_SIZE, 500);
+   }
+
+   /**
+    * Devuelve el nmero mximo de sentncias que se envan a la base de datos en cada lote al ejecutar 
+    * {@link #executeBatch(String, Iterable)}.
+    */
+   public int getBatchSize()
+   {
+      return Math.max(1, properties.getParamInteger(BATCH_SIZE, 500));
+   }
+
+   /**
+    * Devuelve el nmero de versin de la configuracin a partir de la que se cre el agente (ver 
+    * {@link com.cosmo.WorkspaceProperties#getVersion()}).
+    */
+   long getConfigVersion()
+   {
+      return this.configVersion;
+   }
+
+   /**
+    * Establece el nmero de versin de la configuracin a partir de la que se cre el agente.
+    */
+   void setConfigVersion(long configVersion)
+   {
+      this.configVersion = configVersion;
+   }
+
+   /**
+    * Devuelve el pool de conexiones del agente (permite consultar sus mtricas).
+    */
+   public ConnectionPool getPool()
+   {
+      return this.pool;
+   }
+
+   /**
+    * Devuelve el conjunto de rplicas de lectura de la conexin (ver {@link DataFactory#getReadInstance(com.cosmo.Workspace, String)}).
+    */
+   public ReplicaSet getReplicas()
+   {
+      return this.replicas;
+   }
+
+   /**
+    * Devuelve la cach de resultados de consultas de la conexin (ver {@link DataQuery}).
+    */
+   public QueryResultCache getQueryCache()
+   {
+      return this.queryCache;
+   }
+
+   /**
+    * Devuelve las estadsticas de tiempos de ejecucin de las sentncias del agente.
+    */
+   public QueryStatistics getStatistics()
+   {
+      return this.statistics;
+   }
+
 
    //==============================================
    // Methods
    //==============================================
 
    /**
-    * Permite ontener la conexin JDBC a datos.
+    * Permite ontener la conexin JDBC a datos cedida al hilo actual.
     * 
-    * @return Una instancia de {@link Connection} que permite usar la conexin a base de datos.
+    * @return Una instancia de {@link Connection} que permite usar la conexin a base de datos o {@code null} si 
+    *    el hilo actual no dispone de ninguna conexin.
     */
    public Connection getConnection()
    {
-      return this.conn;
+      Lease current = this.lease.get();
+
+      return (current == null ? null : current.entry.getConnection());
    }
 
    /**
-    * Establece la conexin JDBC que se usar para operar con la base de datos.
+    * Genera la excepcin correspondiente a un error producido al usar directamente la conexin cedida al hilo actual 
+    * (ver {@link #getConnection()}), p. ej. mediante APIs especficas del driver JDBC.<br />
+    * Si el error se debe a la prdida de la conexin, sta se descarta al devolverla al pool.
+    * 
+    * @param ex La excepcin producida.
+    * 
+    * @return Una instancia de {@link DataException} que debe lanzarse.
     */
-   public void setConnection(Connection connection)
+   public DataException failure(SQLException ex)
    {
-      this.conn = connection;
+      return failure(this.lease.get(), ex);
    }
 
    /**
-    * Abre una conexin con la base de datos usando el mecanismo implementado por el driver especfico.
+    * Abre una nueva conexin fsica con la base de datos usando el mecanismo implementado por el driver especfico.
     * <br /><br />
     * Este mtodo lo implementa cada <em>driver</em> dado que cada tipo de SGBD puede tener formas de conexin distintas. 
-    * Los datos de la conexin deben estar contenidos en las propiedades especficas del agente.
+    * Los datos de la conexin deben estar contenidos en las propiedades especficas del agente. Slo lo invoca 
+    * el pool de conexiones ({@link ConnectionPool}).
+    * 
+    * @return Una instancia de {@link Connection} que representa la nueva conexin.
+    * 
+    * @throws DataException 
+    */
+   protected abstract Connection openConnection() throws DataException; 
+
+   /**
+    * Obtiene una conexin del pool para el hilo actual.
+    * <br /><br />
+    * Si el hilo ya dispone de una conexin, se reutiliza. Cada llamada a este mtodo debe ir acompaada de una 
+    * llamada a {@link #disconnect()}.
     * 
     * @throws DataException 
     */
-   public abstract void connect() throws DataException; 
+   public void connect() throws DataException
+   {
+      acquire().depth++;
+   }
+
+   /**
+    * Devuelve al pool la conexin del hilo actual.
+    * <br /><br />
+    * Si las llamadas a {@link #connect()} estn anidadas, la conexin no se devuelve hasta cerrar la ms externa. 
+    */
+   public void disconnect()
+   {
+      Lease current = this.lease.get();
+
+      if (current == null)
+      {
+         return;
+      }
+
+      if (current.depth > 0)
+      {
+         current.depth--;
+      }
+
+      releaseIfUnused(current);
+   }
+
+   /**
+    * Devuelve al pool la conexin del hilo actual, aunque tenga consultas abiertas o llamadas a 
+    * {@link #connect()} pendientes de cerrar.<br />
+    * Se invoca al finalizar cada peticin (ver {@link DataFactory#releaseConnections()}).
+    */
+   public void releaseConnection()
+   {
+      Lease current = this.lease.get();
+
+      if (current != null)
+      {
+         release(current);
+      }
+   }
+
+   /**
+    * Retira el agente cuando se sustituye por otro (configuracin recargada).<br />
+    * A diferencia de {@link #shutdown()}, no interrumpe el trabajo en curso: cierra las conexiones inactivas, las 
+    * cedidas se cierran al devolverse y las tareas asncronas pendientes terminan su ejecucin.
+    */
+   void drain()
+   {
+      synchronized (this)
+      {
+         if (this.executor != null)
+         {
+            this.executor.shutdown();
+            this.executor = null;
+         }
+      }
+
+      this.pool.close();
+   }
+
+   /**
+    * Indica si un agente retirado mediante {@link #drain()} ya ha recuperado todas sus conexiones cedidas.
+    */
+   boolean isDrained()
+   {
+      return (this.pool.getActiveCount() == 0);
+   }
+
+   /**
+    * Cierra el pool de conexiones del agente.
+    */
+   public void shutdown()
+   {
+      releaseConnection();
+
+      synchronized (this)
+      {
+         if (this.executor != null)
+         {
+            this.executor.shutdownNow();
+            this.executor = null;
+         }
+      }
+
+      this.pool.close();
+   }
 
    /**
-    * Cierra la conexin con la base de datos.
+    * Inicia una transaccin en la conexin del hilo actual.
     * <br /><br />
-    * Este mtodo lo implementa cada <em>driver</em> dado que cada tipo de SGBD puede tener formas de desconexin distintas. 
-    * Los datos de la conexin deben estar contenidos en las propiedades especficas del agente.
+    * La conexin permanece cedida al hilo hasta que se cierra la transaccin. Si el hilo ya dispone de una 
+    * transaccin abierta, la nueva transaccin se une a ella.
+    * 
+    * @return Una instancia de {@link TransactionScope} que debe cerrarse mediante {@link TransactionScope#close()}.
+    * 
+    * @throws DataException
+    */
+   public TransactionScope beginTransaction() throws DataException
+   {
+      Lease current = acquire();
+
+      if (current.transactions == 0)
+      {
+         try
+         {
+            current.entry.getConnection().setAutoCommit(false);
+         }
+         catch (SQLException ex)
+         {
+            releaseIfUnused(current);
+            throw new DataException(ex.getMessage(), ex);
+         }
+         current.rollbackOnly = false;
+      }
+
+      current.transactions++;
+      current.depth++;
+
+      return new TransactionScope(this);
+   }
+
+   /**
+    * Ejecuta una unidad de trabajo en una transaccin.<br />
+    * La transaccin se confirma si la unidad de trabajo finaliza correctamente y se descarta si lanza una excepcin.
+    * 
+    * @param callback Una instancia de {@link TransactionCallback} que implementa la unidad de trabajo.
+    * 
+    * @return El resultado de la unidad de trabajo.
+    * 
+    * @throws DataException
+    */
+   public <T> T withTransaction(TransactionCallback<T> callback) throws DataException
+   {
+      TransactionScope tx = beginTransaction();
+
+      try
+      {
+         T result = callback.execute(this);
+         tx.commit();
+
+         return result;
+      }
+      catch (DataException ex)
+      {
+         throw ex;
+      }
+      catch (RuntimeException ex)
+      {
+         throw ex;
+      }
+      catch (Exception ex)
+      {
+         throw new DataException(ex.getMessage(), ex);
+      }
+      finally
+      {
+         tx.close();
+      }
+   }
+
+   /**
+    * Indica si el hilo actual tiene una transaccin abierta en este agente.
+    */
+   public boolean isInTransaction()
+   {
+      Lease current = this.lease.get();
+
+      return (current != null && current.transactions > 0);
+   }
+
+   /**
+    * Descarta de la cach de resultados (ver {@link QueryResultCache}) las consultas que dependen de una tabla.<br />
+    * Debe invocarse despus de modificar la tabla. Si el hilo actual tiene una transaccin abierta, la invalidacin 
+    * se repite al cerrarla, para descartar los resultados que otros hilos hayan ledo antes de confirmarse los cambios.
+    * 
+    * @param table Nombre de la tabla modificada.
+    */
+   public void invalidateQueryCache(String table)
+   {
+      Lease current = this.lease.get();
+
+      this.queryCache.invalidate(table);
+
+      if (current != null && current.transactions > 0)
+      {
+         current.invalidations.add(table);
+      }
+   }
+
+   /**
+    * Descarta datos de una cach externa al agente que dependen de las escrituras realizadas (p. ej. las instancias 
+    * de la cach de CORM, ver {@link com.cosmo.orm.EntityCache}).<br />
+    * La invalidacin se ejecuta de inmediato y, igual que en {@link #invalidateQueryCache(String)}, se repite al 
+    * cerrar la transaccin abierta en el hilo actual.
+    * 
+    * @param invalidation Un {@link Runnable} que descarta los datos afectados.
+    */
+   public void invalidateCache(Runnable invalidation)
+   {
+      Lease current = this.lease.get();
+
+      invalidation.run();
+
+      if (current != null && current.transactions > 0)
+      {
+         current.cacheInvalidations.add(invalidation);
+      }
+   }
+
+   /**
+    * Cierra una transaccin abierta mediante {@link #beginTransaction()}.<br />
+    * Slo la transaccin ms externa confirma o descarta los cambios.
+    * 
+    * @param commit {@code true} para confirmar la transaccin o {@code false} para descartarla.
+    * 
+    * @throws DataException
     */
-   public abstract void disconnect();
+   void endTransaction(boolean commit) throws DataException
+   {
+      Lease current = this.lease.get();
+
+      if (current == null || current.transactions == 0)
+      {
+         // La conexin ya se ha devuelto al pool (p. ej. al finalizar la peticin)
+         return;
+      }
+
+      if (!commit)
+      {
+         current.rollbackOnly = true;
+      }
+
+      current.transactions--;
+
+      try
+      {
+         if (current.transactions == 0)
+         {
+            Connection conn = current.entry.getConnection();
+
+            try
+            {
+               if (current.rollbackOnly)
+               {
+                  conn.rollback();
+                  if (commit)
+                  {
+                     throw new DataException("The transaction has been rolled back because a nested transaction was not committed");
+                  }
+               }
+               else
+               {
+                  conn.commit();
+               }
+            }
+            catch (SQLException ex)
+            {
+               rollback(conn);
+               throw new DataException(ex.getMessage(), ex);
+            }
+            finally
+            {
+               try
+               {
+                  conn.setAutoCommit(this.autoCommit);
+               }
+               catch (SQLException ex)
+               {
+                  // Descarta la excepcin
+               }
+
+               for (String table : current.invalidations)
+               {
+                  this.queryCache.invalidate(table);
+               }
+               current.invalidations.clear();
+
+               for (Runnable invalidation : current.cacheInvalidations)
+               {
+                  invalidation.run();
+               }
+               current.cacheInvalidations.clear();
+            }
+         }
+      }
+      finally
+      {
+         if (current.depth > 0)
+         {
+            current.depth--;
+         }
+         releaseIfUnused(current);
+      }
+   }
 
    /**
-    * Indica si la connexin est abierta y disponible.
+    * Indica si la connexin est abierta y disponible.<br />
+    * La comprobacin se realiza contra el servidor (ver {@link Connection#isValid(int)}).
     * 
     * @return Devuelve {@code true} si la connexin est disponible o {@code false} en cualquier otro caso.
     */
    public boolean isConnected()
    {
-      if (this.conn == null)
+      Connection conn = getConnection();
+
+      if (conn == null)
       {
          return false;
       }
 
       try
       {
-         return !(this.conn.isClosed());
+         int timeout = this.pool.getValidationTimeout();
+         return !(conn.isClosed()) && (timeout <= 0 || conn.isValid(timeout));
       } 
       catch (SQLException e)
       {
@@ -152,11 +597,19 @@ public abstract class DataAgent
     */
    public void commit() throws SQLException
    {
-      this.conn.commit();
+      Connection conn = getConnection();
+
+      if (conn != null)
+      {
+         conn.commit();
+      }
    }
 
    /**
     * Ejecuta una sentncia SQL que puede devolver un conjunto de datos o no.
+    * <br /><br />
+    * La conexin permanece cedida al hilo actual hasta que se invoca {@link #disconnect()} y la peticin finaliza, 
+    * ya que el {@link ResultSet} devuelto necesita la conexin abierta.
     * 
     * @param sql Una cadena que contiene la sentncia SQL a ejecutar.
     * 
@@ -166,24 +619,52 @@ public abstract class DataAgent
     */
    public ResultSet executeSql(String sql) throws DataException
    {
+      for (int attempt = 1; ; attempt++)
+      {
+         try
+         {
+            return executeSqlOnce(sql);
+         }
+         catch (DataException ex)
+         {
+            checkRetry(ex, attempt);
+         }
+      }
+   }
+
+   /**
+    * Ejecuta una consulta SQL sin reintentos (ver {@link #executeSql(String)}).
+    */
+   private ResultSet executeSqlOnce(String sql) throws DataException
+   {
+      Statement st = null;
+
       // Memoriza la sentncia SQL
       this.lastSqlStatement = sql;
 
-      // Obliga a tener la conexin abierta
-      if (this.conn == null)
-      {
-         this.connect();
-      }
+      Lease current = acquire();
+      long start = System.nanoTime();
 
       try
       {
-         Statement st = conn.createStatement();
+         st = current.entry.getConnection().createStatement();
 
-         return st.executeQuery(sql);
+         // La consulta slo queda abierta en la conexin si se ha ejecutado correctamente
+         ResultSet rs = st.executeQuery(sql);
+         current.cursors.add(new Cursor(st, null, rs));
+
+         return rs;
       }
       catch (SQLException ex)
       {
-         throw new DataException(ex.getMessage(), ex);
+         DataException failure = failure(current, ex);
+         closeStatement(st);
+         releaseIfUnused(current);
+         throw failure;
+      }
+      finally
+      {
+         this.statistics.record(sql, start, -1);
       }
    }
 
@@ -198,26 +679,29 @@ public abstract class DataAgent
     */
    public boolean execute(String sql) throws DataException
    {
+      Statement st = null;
+
       // Memoriza la sentncia SQL
       this.lastSqlStatement = sql;
 
-      // Obliga a tener la conexin abierta
-      if (this.conn == null)
-      {
-         this.connect();
-      }
+      Lease current = acquire();
+      long start = System.nanoTime();
 
-      Statement st;
       try
       {
-         st = this.conn.createStatement();
+         st = current.entry.getConnection().createStatement();
          return st.execute(sql);
       }
       catch (SQLException ex)
       {
-         throw new DataException(ex.getMessage(), ex);
+         throw failure(current, ex);
+      }
+      finally
+      {
+         this.statistics.record(sql, start, -1);
+         closeStatement(st);
+         releaseIfUnused(current);
       }
-      
    }
 
    /**
@@ -231,18 +715,35 @@ public abstract class DataAgent
     */
    public Integer executeScalar(String sql) throws DataException 
    {
+      for (int attempt = 1; ; attempt++)
+      {
+         try
+         {
+            return executeScalarOnce(sql);
+         }
+         catch (DataException ex)
+         {
+            checkRetry(ex, attempt);
+         }
+      }
+   }
+
+   /**
+    * Ejecuta una consulta SQL sin reintentos (ver {@link #executeScalar(String)}).
+    */
+   private Integer executeScalarOnce(String sql) throws DataException
+   {
+      Statement st = null;
+
       // Memoritza la sentncia SQL
       this.lastSqlStatement = sql;
 
-      // Obliga a tener la conexin abierta
-      if (this.conn == null)
-      {
-         this.connect();
-      }
+      Lease current = acquire();
+      long start = System.nanoTime();
 
       try
       {
-         Statement st = this.conn.createStatement();
+         st = current.entry.getConnection().createStatement();
          ResultSet rs = st.executeQuery(sql);
          if (!rs.next())
          {
@@ -253,7 +754,13 @@ public abstract class DataAgent
       }
       catch (SQLException ex)
       {
-         throw new DataException(ex.getMessage(), ex);
+         throw failure(current, ex);
+      }
+      finally
+      {
+         this.statistics.record(sql, start, -1);
+         closeStatement(st);
+         releaseIfUnused(current);
       }
    }
 
@@ -268,18 +775,35 @@ public abstract class DataAgent
     */
    public String executeString(String sql) throws DataException
    {
+      for (int attempt = 1; ; attempt++)
+      {
+         try
+         {
+            return executeStringOnce(sql);
+         }
+         catch (DataException ex)
+         {
+            checkRetry(ex, attempt);
+         }
+      }
+   }
+
+   /**
+    * Ejecuta una consulta SQL sin reintentos (ver {@link #executeString(String)}).
+    */
+   private String executeStringOnce(String sql) throws DataException
+   {
+      Statement st = null;
+
       // Memoritza la sentncia SQL
       this.lastSqlStatement = sql;
 
-      // Obliga a tener la conexin abierta
-      if (this.conn == null)
-      {
-         this.connect();
-      }
+      Lease current = acquire();
+      long start = System.nanoTime();
 
       try
       {
-         Statement st = this.conn.createStatement();
+         st = current.entry.getConnection().createStatement();
          ResultSet rs = st.executeQuery(sql);
          if (!rs.next())
          {
@@ -290,10 +814,485 @@ public abstract class DataAgent
       }
       catch (SQLException ex)
       {
-         throw new DataException(ex.getMessage(), ex);
+         throw failure(current, ex);
+      }
+      finally
+      {
+         this.statistics.record(sql, start, -1);
+         closeStatement(st);
+         releaseIfUnused(current);
+      }
+   }
+
+
+   /**
+    * Ejecuta una consulta SQL parametrizada mediante una sentncia preparada.
+    * <br /><br />
+    * La conexin permanece cedida al hilo actual hasta que se invoca {@link #disconnect()} y la peticin finaliza, 
+    * ya que el {@link ResultSet} devuelto necesita la conexin abierta.
+    * 
+    * @param sql Una cadena que contiene la sentncia SQL a ejecutar (los parmetros se indican con {@code ?}).
+    * @param params Los valores de los parmetros (en el mismo orden que en la sentncia).
+    * 
+    * @return Una instancia de {@link ResultSet} con los datos obtenidos.
+    * 
+    * @throws DataException
+    */
+   public ResultSet executeSql(String sql, Object... params) throws DataException
+   {
+      for (int attempt = 1; ; attempt++)
+      {
+         try
+         {
+            return executeSqlOnce(sql, params);
+         }
+         catch (DataException ex)
+         {
+            checkRetry(ex, attempt);
+         }
+      }
+   }
+
+   /**
+    * Ejecuta una consulta SQL parametrizada sin reintentos (ver {@link #executeSql(String, Object...)}).
+    */
+   private ResultSet executeSqlOnce(String sql, Object[] params) throws DataException
+   {
+      PreparedStatement ps = null;
+
+      // Memoriza la sentncia SQL
+      this.lastSqlStatement = sql;
+
+      Lease current = acquire();
+      long start = System.nanoTime();
+
+      try
+      {
+         ps = this.pool.prepareStatement(current.entry, sql);
+         bind(ps, params);
+
+         ResultSet rs = ps.executeQuery();
+         current.cursors.add(new Cursor(ps, sql, rs));
+
+         return rs;
+      }
+      catch (SQLException ex)
+      {
+         DataException failure = failure(current, ex);
+         closeStatement(ps);
+         releaseIfUnused(current);
+         throw failure;
+      }
+      finally
+      {
+         this.statistics.record(sql, start, -1);
+      }
+   }
+
+   /**
+    * Ejecuta una sentncia SQL parametrizada de la que no se espera ningn resultado (p. ej. INSERT, UPDATE, DELETE).
+    * 
+    * @param sql Una cadena que contiene la sentncia SQL a ejecutar (los parmetros se indican con {@code ?}).
+    * @param params Los valores de los parmetros (en el mismo orden que en la sentncia).
+    * 
+    * @return El nmero de registros afectados.
+    * 
+    * @throws DataException
+    */
+   public int execute(String sql, Object... params) throws DataException
+   {
+      PreparedStatement ps = null;
+
+      // Memoriza la sentncia SQL
+      this.lastSqlStatement = sql;
+
+      Lease current = acquire();
+      long start = System.nanoTime();
+      int count = -1;
+
+      try
+      {
+         ps = this.pool.prepareStatement(current.entry, sql);
+         bind(ps, params);
+
+         count = ps.executeUpdate();
+         this.pool.recycleStatement(current.entry, sql, ps);
+         ps = null;
+
+         return count;
+      }
+      catch (SQLException ex)
+      {
+         throw failure(current, ex);
+      }
+      finally
+      {
+         this.statistics.record(sql, start, count);
+         closeStatement(ps);
+         releaseIfUnused(current);
+      }
+   }
+
+   /**
+    * Ejecuta una sentncia SQL parametrizada de modificacin que devuelve filas (p. ej. {@code INSERT ... RETURNING}) 
+    * y procesa las filas devueltas.
+    * <br /><br />
+    * A diferencia de {@link #query(String, Object[], RowHandler)}, la sentncia no se reintenta si se pierde la 
+    * conexin, ya que podra haberse ejecutado.
+    * 
+    * @param sql Una cadena que contiene la sentncia SQL a ejecutar (los parmetros se indican con {@code ?}).
+    * @param params Los valores de los parmetros (en el mismo orden que en la sentncia).
+    * @param handler Una instancia de {@link RowHandler} que procesa cada fila devuelta.
+    * 
+    * @return El nmero de filas procesadas.
+    * 
+    * @throws DataException
+    */
+   public int executeReturning(String sql, Object[] params, RowHandler handler) throws DataException
+   {
+      PreparedStatement ps = null;
+      ResultSet rs = null;
+      int rows = 0;
+
+      // Memoriza la sentncia SQL
+      this.lastSqlStatement = sql;
+
+      Lease current = acquire();
+      long start = System.nanoTime();
+
+      try
+      {
+         ps = this.pool.prepareStatement(current.entry, sql);
+         bind(ps, params);
+
+         rs = ps.executeQuery();
+         while (rs.next())
+         {
+            rows++;
+            if (!handler.processRow(rs))
+            {
+               break;
+            }
+         }
+
+         closeResultSet(rs);
+         rs = null;
+         this.pool.recycleStatement(current.entry, sql, ps);
+         ps = null;
+
+         return rows;
+      }
+      catch (SQLException ex)
+      {
+         throw failure(current, ex);
+      }
+      finally
+      {
+         this.statistics.record(sql, start, rows);
+         closeResultSet(rs);
+         closeStatement(ps);
+         releaseIfUnused(current);
+      }
+   }
+
+   /**
+    * Ejecuta una consulta SQL parametrizada y devuelve el valor entero de la primera fila y primera columna.
+    * 
+    * @param sql Una cadena que contiene la sentncia SQL a ejecutar (los parmetros se indican con {@code ?}).
+    * @param params Los valores de los parmetros (en el mismo orden que en la sentncia).
+    * 
+    * @return Un valor entero que corresponde al valor de la posicin fila 1 y columna 1.
+    * 
+    * @throws DataException
+    */
+   public Integer executeScalar(String sql, Object... params) throws DataException 
+   {
+      return (Integer) executeFirstValue(sql, params, true);
+   }
+
+   /**
+    * Ejecuta una consulta SQL parametrizada y devuelve la cadena de texto de la primera fila y primera columna.
+    * 
+    * @param sql Una cadena que contiene la sentncia SQL a ejecutar (los parmetros se indican con {@code ?}).
+    * @param params Los valores de los parmetros (en el mismo orden que en la sentncia).
+    * 
+    * @return Una cadena de texto que corresponde al valor de la posicin fila 1 y columna 1.
+    * 
+    * @throws DataException
+    */
+   public String executeString(String sql, Object... params) throws DataException
+   {
+      return (String) executeFirstValue(sql, params, false);
+   }
+
+   /**
+    * Ejecuta una consulta SQL parametrizada y procesa sus filas una a una.
+    * <br /><br />
+    * Las filas se leen de la base de datos por bloques de {@link #getFetchSize()} filas con un cursor de slo 
+    * avance, de manera que el consumo de memoria es constante sea cual sea el tamao de la consulta. Al finalizar 
+    * (incluso si se produce un error) se cierra la consulta y, si no hay llamadas a {@link #connect()} pendientes, 
+    * se devuelve la conexin al pool.
+    * 
+    * @param sql Una cadena que contiene la sentncia SQL a ejecutar (los parmetros se indican con {@code ?}).
+    * @param params Los valores de los parmetros (en el mismo orden que en la sentncia) o {@code null} si no tiene parmetros.
+    * @param handler Una instancia de {@link RowHandler} que procesa cada fila.
+    * 
+    * @return El nmero de filas procesadas.
+    * 
+    * @throws DataException
+    */
+   public int query(String sql, Object[] params, RowHandler handler) throws DataException
+   {
+      int[] rows = new int[1];
+
+      for (int attempt = 1; ; attempt++)
+      {
+         try
+         {
+            return queryOnce(sql, params, handler, rows);
+         }
+         catch (DataException ex)
+         {
+            // Si ya se han procesado filas, el reintento las volvera a entregar al handler
+            if (rows[0] > 0)
+            {
+               throw ex;
+            }
+            checkRetry(ex, attempt);
+         }
+      }
+   }
+
+   /**
+    * Ejecuta una consulta SQL parametrizada sin reintentos (ver {@link #query(String, Object[], RowHandler)}).
+    * 
+    * @param processed Recibe, en su primera posicin, el nmero de filas procesadas.
+    */
+   private int queryOnce(String sql, Object[] params, RowHandler handler, int[] processed) throws DataException
+   {
+      PreparedStatement ps = null;
+      ResultSet rs = null;
+      boolean restoreAutoCommit = false;
+      int rows = 0;
+
+      // Memoriza la sentncia SQL
+      this.lastSqlStatement = sql;
+
+      Lease current = acquire();
+      Connection conn = current.entry.getConnection();
+      long start = System.nanoTime();
+
+      try
+      {
+         // Algunos drivers (p. ej. PostgreSQL) slo leen por bloques dentro de una transaccin
+         if (conn.getAutoCommit())
+         {
+            conn.setAutoCommit(false);
+            restoreAutoCommit = true;
+         }
+
+         ps = this.pool.prepareStatement(current.entry, sql);
+         ps.setFetchSize(getFetchSize());
+         bind(ps, params);
+
+         rs = ps.executeQuery();
+         while (rs.next())
+         {
+            processed[0] = ++rows;
+            if (!handler.processRow(rs))
+            {
+               break;
+            }
+         }
+
+         closeResultSet(rs);
+         rs = null;
+         ps.setFetchSize(0);
+         this.pool.recycleStatement(current.entry, sql, ps);
+         ps = null;
+
+         return rows;
+      }
+      catch (SQLException ex)
+      {
+         throw failure(current, ex);
+      }
+      finally
+      {
+         this.statistics.record(sql, start, rows);
+         closeResultSet(rs);
+         closeStatement(ps);
+
+         if (restoreAutoCommit)
+         {
+            try
+            {
+               conn.commit();
+               conn.setAutoCommit(true);
+            }
+            catch (SQLException ex)
+            {
+               // La conexin se descarta al devolverla si ha quedado inutilizable
+            }
+         }
+
+         releaseIfUnused(current);
+      }
+   }
+
+   /**
+    * Ejecuta una consulta SQL sin parmetros y procesa sus filas una a una.
+    * 
+    * @param sql Una cadena que contiene la sentncia SQL a ejecutar.
+    * @param handler Una instancia de {@link RowHandler} que procesa cada fila.
+    * 
+    * @return El nmero de filas procesadas.
+    * 
+    * @throws DataException
+    * 
+    * @see #query(String, Object[], RowHandler)
+    */
+   public int query(String sql, RowHandler handler) throws DataException
+   {
+      return query(sql, null, handler);
+   }
+
+   /**
+    * Ejecuta una sentncia SQL parametrizada una vez por cada conjunto de parmetros, envindolas a la base de datos 
+    * por lotes de {@link #getBatchSize()} sentncias.
+    * <br /><br />
+    * Todas las sentncias se ejecutan en una nica transaccin que se confirma al finalizar y se descarta si se 
+    * produce algn error. Si el hilo ya tiene una transaccin abierta, las sentncias forman parte de ella.
+    * 
+    * @param sql Una cadena que contiene la sentncia SQL a ejecutar (los parmetros se indican con {@code ?}).
+    * @param rows Los valores de los parmetros de cada ejecucin.
+    * 
+    * @return El nmero de registros afectados (las sentncias para las que el driver no informa del nmero de 
+    *    registros afectados cuentan como uno).
+    * 
+    * @throws DataException
+    */
+   public int executeBatch(String sql, Iterable<Object[]> rows) throws DataException
+   {
+      PreparedStatement ps = null;
+      int batchSize = getBatchSize();
+      int pending = 0;
+      int count = 0;
+
+      TransactionScope tx = beginTransaction();
+      Lease current = this.lease.get();
+      long start = System.nanoTime();
+
+      // Memoriza la sentncia SQL
+      this.lastSqlStatement = sql;
+
+      try
+      {
+         ps = this.pool.prepareStatement(current.entry, sql);
+
+         for (Object[] params : rows)
+         {
+            bind(ps, params);
+            ps.addBatch();
+
+            if (++pending >= batchSize)
+            {
+               count += countUpdates(ps.executeBatch());
+               pending = 0;
+            }
+         }
+
+         if (pending > 0)
+         {
+            count += countUpdates(ps.executeBatch());
+         }
+
+         this.pool.recycleStatement(current.entry, sql, ps);
+         ps = null;
+
+         tx.commit();
+
+         return count;
+      }
+      catch (SQLException ex)
+      {
+         throw failure(current, ex);
+      }
+      finally
+      {
+         this.statistics.record(sql, start, count);
+         closeStatement(ps);
+         tx.close();
+      }
+   }
+
+   /**
+    * Ejecuta una carga de datos en segundo plano.
+    * <br /><br />
+    * Las cargas se ejecutan en un ejecutor propio del agente con un mximo de {@code async.threads} hilos (por 
+    * defecto, y como mximo, uno menos que el tamao mximo del pool de conexiones) y {@code async.queue.size} tareas 
+    * en espera (100 por defecto). Si el ejecutor est saturado, la carga se ejecuta en el hilo actual antes de 
+    * devolver el control.
+    * <br /><br />
+    * Si el hilo actual conserva una conexin de este agente (transacciones, llamadas a {@link #connect()} o consultas 
+    * abiertas), la carga tambin se ejecuta en el hilo actual y usa la misma conexin: de lo contrario, el hilo podra 
+    * esperar el resultado reteniendo la conexin que necesita la carga.
+    * 
+    * @param callback Una instancia de {@link DataCallback} que implementa la carga de datos.
+    * 
+    * @return Una instancia de {@link Future} que permite esperar el resultado de la carga.
+    */
+   public <T> Future<T> executeAsync(final DataCallback<T> callback)
+   {
+      FutureTask<T> task = new FutureTask<T>(new Callable<T>()
+      {
+         @Override
+         public T call() throws Exception
+         {
+            return callback.execute(DataAgent.this);
+         }
+      });
+
+      if (this.lease.get() != null)
+      {
+         task.run();
+         return task;
+      }
+
+      try
+      {
+         getExecutor().execute(task);
+      }
+      catch (RejectedExecutionException ex)
+      {
+         task.run();
       }
-   }
 
+      return task;
+   }
+
+   /**
+    * Ejecuta en segundo plano una consulta SQL parametrizada y procesa sus filas una a una.
+    * 
+    * @param sql Una cadena que contiene la sentncia SQL a ejecutar (los parmetros se indican con {@code ?}).
+    * @param params Los valores de los parmetros (en el mismo orden que en la sentncia) o {@code null} si no tiene parmetros.
+    * @param handler Una instancia de {@link RowHandler} que procesa cada fila (se invoca desde otro hilo).
+    * 
+    * @return Una instancia de {@link Future} que permite esperar el nmero de filas procesadas.
+    * 
+    * @see #query(String, Object[], RowHandler)
+    */
+   public Future<Integer> executeAsync(final String sql, final Object[] params, final RowHandler handler)
+   {
+      return executeAsync(new DataCallback<Integer>()
+      {
+         @Override
+         public Integer execute(DataAgent agent) throws Exception
+         {
+            return agent.query(sql, params, handler);
+         }
+      });
+   }
 
    //==============================================
    // Static members
@@ -350,4 +1349,340 @@ public abstract class DataAgent
          // Descarta la excepcin
       }
    }
+
+
+   //==============================================
+   // Private members
+   //==============================================
+
+   /**
+    * Obtiene la conexin cedida al hilo actual, solicitndola al pool si es necesario.
+    */
+   private Lease acquire() throws DataException
+   {
+      Lease current = this.lease.get();
+
+      if (current == null)
+      {
+         current = new Lease(this.pool.lease());
+
+         try
+         {
+            current.entry.getConnection().setAutoCommit(this.autoCommit);
+         }
+         catch (SQLException ex)
+         {
+            this.pool.discard(current.entry);
+            throw new DataException(ex.getMessage(), ex);
+         }
+
+         this.lease.set(current);
+      }
+
+      return current;
+   }
+
+   /**
+    * Devuelve la conexin al pool si no hay llamadas a {@link #connect()} pendientes ni consultas abiertas.
+    */
+   private void releaseIfUnused(Lease current)
+   {
+      if (current.depth == 0 && current.cursors.isEmpty())
+      {
+         release(current);
+      }
+   }
+
+   /**
+    * Cierra las consultas abiertas y devuelve la conexin al pool.
+    */
+   private void release(Lease current)
+   {
+      for (Cursor cursor : current.cursors)
+      {
+         if (cursor.sql == null)
+         {
+            closeStatement(cursor.statement);
+         }
+         else
+         {
+            // Las sentncias preparadas vuelven a la cach de la conexin
+            closeResultSet(cursor.resultSet);
+            this.pool.recycleStatement(current.entry, cursor.sql, (PreparedStatement) cursor.statement);
+         }
+      }
+      current.cursors.clear();
+
+      // Descarta los cambios no confirmados antes de devolver la conexin
+      try
+      {
+         Connection conn = current.entry.getConnection();
+         if (!conn.isClosed() && !conn.getAutoCommit())
+         {
+            conn.rollback();
+         }
+      }
+      catch (SQLException ex)
+      {
+         // Descarta la excepcin
+      }
+
+      this.lease.remove();
+      this.pool.release(current.entry);
+   }
+
+   /**
+    * Convierte una excepcin SQL en una {@link DataException}. Si se debe a la prdida de la conexin, la conexin 
+    * se marca para descartarla al devolverla al pool.
+    */
+   private DataException failure(Lease current, SQLException ex)
+   {
+      // El detalle de los errores de un lote se encuentra en la excepcin encadenada
+      SQLException next = ex.getNextException();
+
+      if (current != null && (ConnectionPool.isConnectionLoss(ex) || (next != null && ConnectionPool.isConnectionLoss(next))))
+      {
+         current.entry.invalidate();
+      }
+
+      return new DataException(ex.getMessage() + (next != null ? " (" + next.getMessage() + ")" : ""), ex);
+   }
+
+   /**
+    * Determina si una consulta de lectura fallida puede reintentarse: el error debe deberse a la prdida de la 
+    * conexin, no se deben haber agotado los reintentos y el hilo no debe conservar la conexin (de lo contrario el 
+    * reintento se realizara sobre la misma conexin o fuera de la transaccin en curso).
+    * 
+    * @throws DataException Relanza la excepcin original si no puede reintentarse.
+    */
+   private void checkRetry(DataException ex, int attempt) throws DataException
+   {
+      if (attempt > this.retries || this.lease.get() != null || 
+          !(ex.getCause() instanceof SQLException) || !ConnectionPool.isConnectionLoss((SQLException) ex.getCause()))
+      {
+         throw ex;
+      }
+
+      log.warn("Connection lost on '" + this.properties.getId() + "', retrying query (" + attempt + "/" + this.retries + "): " + ex.getMessage());
+   }
+
+   /**
+    * Devuelve el ejecutor de cargas en segundo plano (se crea la primera vez que se usa).
+    */
+   private synchronized DataExecutor getExecutor()
+   {
+      if (this.executor == null)
+      {
+         // Se reserva al menos una conexin para los hilos que esperan el resultado de las cargas
+         int maxThreads = Math.max(1, this.pool.getMaxSize() - 1);
+         int threads = Math.max(1, properties.getParamInteger(ASYNC_THREADS, maxThreads));
+         if (threads > maxThreads)
+         {
+            log.warn("Connection '" + properties.getId() + "': " + ASYNC_THREADS + " (" + threads + ") must be lower than the connection pool size, using " + maxThreads);
+            threads = maxThreads;
+         }
+         int queueSize = Math.max(1, properties.getParamInteger(ASYNC_QUEUE_SIZE, 100));
+
+         this.executor = new DataExecutor("cosmo-data-" + properties.getId(), threads, queueSize);
+      }
+
+      return this.executor;
+   }
+
+   /**
+    * Ejecuta una consulta parametrizada y devuelve el valor de la primera fila y primera columna.
+    * 
+    * @param asInteger Indica si el valor se debe leer como entero.
+    */
+   private Object executeFirstValue(String sql, Object[] params, boolean asInteger) throws DataException
+   {
+      for (int attempt = 1; ; attempt++)
+      {
+         try
+         {
+            return executeFirstValueOnce(sql, params, asInteger);
+         }
+         catch (DataException ex)
+         {
+            checkRetry(ex, attempt);
+         }
+      }
+   }
+
+   /**
+    * Ejecuta una consulta parametrizada sin reintentos (ver {@link #executeFirstValue(String, Object[], boolean)}).
+    */
+   private Object executeFirstValueOnce(String sql, Object[] params, boolean asInteger) throws DataException
+   {
+      PreparedStatement ps = null;
+      ResultSet rs = null;
+
+      // Memoriza la sentncia SQL
+      this.lastSqlStatement = sql;
+
+      Lease current = acquire();
+      long start = System.nanoTime();
+
+      try
+      {
+         ps = this.pool.prepareStatement(current.entry, sql);
+         bind(ps, params);
+
+         rs = ps.executeQuery();
+         if (!rs.next())
+         {
+            throw new DataException("The query has no results.");
+         }
+
+         Object value = (asInteger ? (Object) Integer.valueOf(rs.getInt(1)) : rs.getString(1));
+
+         closeResultSet(rs);
+         this.pool.recycleStatement(current.entry, sql, ps);
+         ps = null;
+
+         return value;
+      }
+      catch (SQLException ex)
+      {
+         throw failure(current, ex);
+      }
+      finally
+      {
+         this.statistics.record(sql, start, -1);
+         if (ps != null)
+         {
+            closeResultSet(rs);
+            closeStatement(ps);
+         }
+         releaseIfUnused(current);
+      }
+   }
+
+   /**
+    * Suma el nmero de registros afectados por un lote de sentncias.
+    */
+   private static int countUpdates(int[] counts)
+   {
+      int total = 0;
+
+      for (int count : counts)
+      {
+         total += (count >= 0 ? count : (count == Statement.SUCCESS_NO_INFO ? 1 : 0));
+      }
+
+      return total;
+   }
+
+   /**
+    * Descarta los cambios no confirmados de una conexin.
+    */
+   private static void rollback(Connection conn)
+   {
+      try
+      {
+         conn.rollback();
+      }
+      catch (SQLException ex)
+      {
+         // Descarta la excepcin
+      }
+   }
+
+   /**
+    * Asigna los valores de los parmetros a una sentncia preparada.
+    */
+   private static void bind(PreparedStatement ps, Object[] params) throws SQLException
+   {
+      if (params == null)
+      {
+         return;
+      }
+
+      for (int i = 0; i < params.length; i++)
+      {
+         Object value = params[i];
+
+         if (value == null)
+         {
+            ps.setNull(i + 1, Types.NULL);
+         }
+         else if (value instanceof java.util.Date && !(value instanceof java.sql.Date || value instanceof java.sql.Time || value instanceof Timestamp))
+         {
+            ps.setTimestamp(i + 1, new Timestamp(((java.util.Date) value).getTime()));
+         }
+         else if (value instanceof Character)
+         {
+            ps.setString(i + 1, value.toString());
+         }
+         else
+         {
+            ps.setObject(i + 1, value);
+         }
+      }
+   }
+
+   /**
+    * Cierra correctamente un objeto {@link Statement}.
+    */
+   private static void closeStatement(Statement st)
+   {
+      try
+      {
+         if (st != null)
+         {
+            st.close();
+         }
+      }
+      catch (SQLException ex)
+      {
+         // Descarta la excepcin
+      }
+   }
+
+
+   //==============================================
+   // Inner classes
+   //==============================================
+
+   /**
+    * Representa la cesin de una conexin del pool al hilo actual.
+    */
+   private static class Lease
+   {
+      final ConnectionPool.Entry entry;
+      final ArrayList<Cursor> cursors;
+      final HashSet<String> invalidations;
+      final LinkedHashSet<Runnable> cacheInvalidations;
+      int depth;
+      int transactions;
+      boolean rollbackOnly;
+
+      Lease(ConnectionPool.Entry entry)
+      {
+         this.entry = entry;
+         this.cursors = new ArrayList<Cursor>();
+         this.invalidations = new HashSet<String>();
+         this.cacheInvalidations = new LinkedHashSet<Runnable>();
+         this.depth = 0;
+         this.transactions = 0;
+         this.rollbackOnly = false;
+      }
+   }
+
+   /**
+    * Representa una consulta abierta en la conexin cedida.
+    */
+   private static class Cursor
+   {
+      final Statement statement;
+      final String sql;
+      final ResultSet resultSet;
+
+      Cursor(Statement statement, String sql, ResultSet resultSet)
+      {
+         this.statement = statement;
+         this.sql = sql;
+         this.resultSet = resultSet;
+      }
+   }
 }
@@ -0,0 +1,25 @@
+package com.cosmo.data;
+
+/**
+ * Interface que deben implementar las cargas de datos ejecutadas en segundo plano mediante 
+ * {@link DataAgent#executeAsync(DataCallback)}.
+ *
+ * @param <T> Tipo del resultado de la carga.
+ *
+ * @author Gerard Llort
+ */
+public interface DataCallback<T>
+{
+   /**
+    * Ejecuta la carga de datos.<br />
+    * Se ejecuta en un hilo distinto al de la peticin: las conexiones que use se devuelven al pool al finalizar, por 
+    * lo que el resultado no debe contener objetos que dependan de ellas (p. ej. un {@link java.sql.ResultSet} abierto).
+    *
+    * @param agent El agente de datos que ejecuta la carga.
+    *
+    * @return El resultado de la carga (puede ser {@code null}).
+    *
+    * @throws Exception
+    */
+   public abstract T execute(DataAgent agent) throws Exception;
+}
@@ -0,0 +1,60 @@
+package com.cosmo.data;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Implementa el ejecutor (de tamao limitado) de las cargas de datos en segundo plano de un agente.
+ * <br /><br />
+ * Los hilos se crean bajo demanda y finalizan tras un minuto de inactividad. Al terminar cada tarea se devuelven al 
+ * pool todas las conexiones que haya dejado cedidas el hilo, de la misma forma que al finalizar una peticin.
+ *
+ * @author Gerard Llort
+ */
+class DataExecutor extends ThreadPoolExecutor
+{
+   //==============================================
+   // Constructors
+   //==============================================
+
+   /**
+    * Constructor de la clase {@link DataExecutor}.
+    *
+    * @param name Nombre base de los hilos.
+    * @param threads Nmero mximo de hilos.
+    * @param queueSize Nmero mximo de tareas en espera. Si se supera, las tareas se rechazan.
+    */
+   DataExecutor(final String name, int threads, int queueSize)
+   {
+      super(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory()
+      {
+         private final AtomicInteger count = new AtomicInteger(0);
+
+         @Override
+         public Thread newThread(Runnable runnable)
+         {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+         }
+      });
+
+      allowCoreThreadTimeOut(true);
+   }
+
+
+   //==============================================
+   // Methods
+   //==============================================
+
+   @Override
+   protected void afterExecute(Runnable runnable, Throwable error)
+   {
+      super.afterExecute(runnable, error);
+
+      DataFactory.releaseConnections();
+   }
+}
@@ -1,16 +1,31 @@
 package com.cosmo.data;
 
 import java.lang.reflect.InvocationTargetException;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.log4j.Logger;
 
 import com.cosmo.Workspace;
+import com.cosmo.logging.LogFactory;
 import com.cosmo.util.PluginProperties;
 import com.cosmo.util.StringUtils;
 
 public class DataFactory
 {
    // Mapa con las instancias nicas de los agentes de comunicaciones
-   private static HashMap<String, DataAgent> agents = null;
+   private static final ConcurrentHashMap<String, DataAgent> agents = new ConcurrentHashMap<String, DataAgent>();
+
+   // Agentes sustituidos por una recarga de la configuracin que an tienen conexiones cedidas
+   private static final ConcurrentLinkedQueue<DataAgent> retired = new ConcurrentLinkedQueue<DataAgent>();
+
+   // Objeto de sincronizacin para la creacin de agentes
+   private static final Object createLock = new Object();
+
+   static Logger log = LogFactory.getLogger(DataFactory.class);
 
 
    //==============================================
@@ -46,80 +61,243 @@ public class DataFactory
       return getInstance(workspace, null);
    }
 
-
-   //==============================================
-   // Private members
-   //==============================================
-
    /**
-    * Carga el agente de conexin a datos.
-    *
+    * Devuelve el agente al que se deben dirigir las consultas de slo lectura.
+    * <br /><br />
+    * Si la conexin declara rplicas de lectura (ver {@link ReplicaSet}) se devuelve una de ellas segn la poltica 
+    * de reparto configurada. Se devuelve la conexin primaria si no tiene rplicas, si el hilo actual tiene una 
+    * transaccin abierta en ella (para que las lecturas vean sus propias escrituras), si el agente no trabaja en modo 
+    * <em>auto-commit</em> o si no es posible obtener las rplicas.
+    * 
+    * @param workspace Una instancia de {@link Workspace} que representa el workspace actual.
+    * @param agentId Identificador de la conexin primaria.
+    * 
+    * @return Una instancia nica de {@link DataAgent} (sigleton).
+    * 
     * @throws DataException
     */
-   private static DataAgent loadProvider(Workspace workspace, String agentId) throws DataException
+   public static DataAgent getReadInstance(Workspace workspace, String agentId) throws DataException
    {
-      String className;
+      DataAgent primary = loadProvider(workspace, agentId);
+      ReplicaSet replicas = primary.getReplicas();
 
-      // Inicializa el diccionario de agentes de comunicacin
-      if (agents == null)
+      if (replicas.isEmpty() || !primary.isAutoCommit() || primary.isInTransaction())
       {
-         agents = new HashMap<String, DataAgent>();
+         return primary;
       }
 
-      // Si no se proporciona un identificador de agente, se usa el especificado por defecto en la configuracin.
-      if (StringUtils.isNullOrEmptyTrim(agentId))
+      try
       {
-         agentId = workspace.getProperties().getDataProperties().getDefaultDataAgentId();
-      }
+         DataAgent[] agents = new DataAgent[replicas.size()];
+         for (int i = 0; i < agents.length; i++)
+         {
+            agents[i] = loadProvider(workspace, replicas.getId(i));
+         }
 
-      if (agents.containsKey(agentId))
-      {
-         return agents.get(agentId);
+         return replicas.select(agents);
       }
-      else
+      catch (DataException ex)
       {
-         PluginProperties agent = workspace.getProperties().getDataProperties().getDataAgent(agentId);
+         log.warn("Read replicas of '" + primary.getProperties().getId() + "' not available, using primary: " + ex.getMessage());
+         return primary;
+      }
+   }
 
-         className = agent.getModuleClass();
-         if (StringUtils.isNullOrEmptyTrim(className))
-         {
-            throw new DataException("Data Services Configuration Exception: No data driver found");
-         }
+   /**
+    * Devuelve el agente al que se deben dirigir las consultas de slo lectura de la conexin por defecto.
+    * 
+    * @param workspace Una instancia de {@link Workspace} que representa el workspace actual.
+    * 
+    * @return Una instancia nica de {@link DataAgent} (sigleton).
+    * 
+    * @throws DataException
+    */
+   public static DataAgent getReadInstance(Workspace workspace) throws DataException
+   {
+      return getReadInstance(workspace, null);
+   }
 
-         try
-         {
-            Class<?> cls = Class.forName(className);
 
-            // Genera la instancia del agente solicitado
-            Class<?>[] types = { PluginProperties.class };
-            Object[] arguments = { agent };
-            DataAgent server = (DataAgent) cls.getDeclaredConstructor(types).newInstance(arguments);
+   /**
+    * Devuelve los agentes de datos instanciados hasta el momento (p. ej. para consultar sus estadsticas).
+    */
+   public static Collection<DataAgent> getInstances()
+   {
+      return Collections.unmodifiableCollection(agents.values());
+   }
 
-            // Almacena la instancia en la lista de instancias de agentes (Singleton)
-            agents.put(agentId, server);
+   /**
+    * Devuelve al pool todas las conexiones cedidas al hilo actual.<br />
+    * Debe invocarse al finalizar cada peticin, para liberar las conexiones que hayan quedado cedidas (p. ej. 
+    * porque el {@link java.sql.ResultSet} obtenido se ha ledo despus de invocar {@link DataAgent#disconnect()}).
+    */
+   public static void releaseConnections()
+   {
+      for (DataAgent agent : agents.values())
+      {
+         agent.releaseConnection();
+      }
 
-            return server;
-         }
-         catch (NoSuchMethodException ex)
+      // Los agentes retirados se descartan cuando han recuperado todas sus conexiones
+      Iterator<DataAgent> it = retired.iterator();
+      while (it.hasNext())
+      {
+         DataAgent agent = it.next();
+         agent.releaseConnection();
+         if (agent.isDrained())
          {
-            throw new DataException("NoSuchMethodException: " + className, ex);
+            it.remove();
          }
-         catch (InvocationTargetException ex)
+      }
+   }
+
+
+   /**
+    * Cierra todos los agentes de datos y sus pools de conexiones.<br />
+    * Se invoca al detener la aplicacin.
+    */
+   public static void shutdown()
+   {
+      synchronized (createLock)
+      {
+         for (DataAgent agent : agents.values())
          {
-            throw new DataException("InvocationTargetException: " + className, ex);
+            agent.shutdown();
          }
-         catch (ClassNotFoundException ex)
+         agents.clear();
+
+         for (DataAgent agent : retired)
          {
-            throw new DataException("ClassNotFoundException: " + className, ex);
+            agent.shutdown();
          }
-         catch (InstantiationException ex)
+         retired.clear();
+
+         ConnectionPool.shutdownEvictor();
+      }
+   }
+
+
+   //==============================================
+   // Private members
+   //==============================================
+
+   /**
+    * Carga el agente solicitado.
+    * <br /><br />
+    * La consulta de un agente existente no requiere ningn bloqueo. La creacin se realiza de forma exclusiva, 
+    * de manera que nunca se crean dos instancias del mismo agente.
+    * <br /><br />
+    * Al recargar la configuracin, el agente slo se sustituye si han cambiado los parmetros de la conexin y la 
+    * configuracin de la peticin es ms reciente que la usada para crearlo: las peticiones que an usan una versin 
+    * anterior obtienen el agente vigente. El agente sustituido se retira sin interrumpir las conexiones cedidas.
+    *
+    * @throws DataException
+    */
+   private static DataAgent loadProvider(Workspace workspace, String agentId) throws DataException
+   {
+      // Si no se proporciona un identificador de agente, se usa el especificado por defecto en la configuracin.
+      if (StringUtils.isNullOrEmptyTrim(agentId))
+      {
+         agentId = workspace.getProperties().getDataProperties().getDefaultDataAgentId();
+      }
+
+      PluginProperties agent = workspace.getProperties().getDataProperties().getDataAgent(agentId);
+      long version = workspace.getProperties().getVersion();
+
+      // Reutiliza la instancia existente salvo que la conexin haya cambiado en una versin posterior de la configuracin
+      DataAgent current = agents.get(agentId);
+      if (current != null && isCurrent(current, agent, version))
+      {
+         return current;
+      }
+
+      synchronized (createLock)
+      {
+         // Comprueba que ningn otro hilo haya creado el agente mientras se esperaba
+         current = agents.get(agentId);
+         if (current != null && isCurrent(current, agent, version))
          {
-            throw new DataException("InstantiationException: " + className, ex);
+            if (version > current.getConfigVersion())
+            {
+               current.setConfigVersion(version);
+            }
+            return current;
          }
-         catch (IllegalAccessException ex)
+
+         DataAgent server = createAgent(agent);
+         server.setConfigVersion(version);
+
+         // Almacena la instancia en la lista de instancias de agentes (Singleton)
+         agents.put(agentId, server);
+
+         // Si la instancia sustituye a otra (configuracin recargada), retira la anterior cuando se devuelvan sus conexiones
+         if (current != null)
          {
-            throw new DataException("IllegalAccessException: " + className, ex);
+            current.drain();
+            retired.add(current);
          }
+
+         return server;
+      }
+   }
+
+   /**
+    * Indica si un agente existente sirve para la configuracin de la peticin: la conexin no ha cambiado o la 
+    * configuracin de la peticin no es ms reciente que la usada para crear el agente.
+    */
+   private static boolean isCurrent(DataAgent current, PluginProperties agent, long version)
+   {
+      return (agent == null || version <= current.getConfigVersion() || agent.equals(current.getProperties()));
+   }
+
+   /**
+    * Crea una instancia del agente.
+    *
+    * @throws DataException
+    */
+   private static DataAgent createAgent(PluginProperties agent) throws DataException
+   {
+      String className;
+
+      if (agent == null)
+      {
+         throw new DataException("Data Services Configuration Exception: agent not found");
+      }
+
+      className = agent.getModuleClass();
+      if (StringUtils.isNullOrEmptyTrim(className))
+      {
+         throw new DataException("Data Services Configuration Exception: No data driver found");
+      }
+
+      try
+      {
+         Class<?> cls = Class.forName(className);
+
+         // Genera la instancia del agente solicitado
+         Class<?>[] types = { PluginProperties.class };
+         Object[] arguments = { agent };
+         return (DataAgent) cls.getDeclaredConstructor(types).newInstance(arguments);
+      }
+      catch (NoSuchMethodException ex)
+      {
+         throw new DataException("NoSuchMethodException: " + className, ex);
+      }
+      catch (InvocationTargetException ex)
+      {
+         throw new DataException("InvocationTargetException: " + className, ex);
+      }
+      catch (ClassNotFoundException ex)
+      {
+         throw new DataException("ClassNotFoundException: " + className, ex);
+      }
+      catch (InstantiationException ex)
+      {
+         throw new DataException("InstantiationException: " + className, ex);
+      }
+      catch (IllegalAccessException ex)
+      {
+         throw new DataException("IllegalAccessException: " + className, ex);
       }
    }
 }
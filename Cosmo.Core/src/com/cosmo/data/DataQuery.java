@@ -1,11 +1,20 @@
 package com.cosmo.data;
 
 import java.sql.ResultSet;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+import javax.sql.rowset.CachedRowSet;
 
 import com.cosmo.Workspace;
+import com.cosmo.util.StringUtils;
 
 /**
  * Representa una consulta de datos ejecutable mediante Cosmo Data Services.
+ * <br /><br />
+ * Si se indica un tiempo de vida ({@code cache-ttl}, en segundos), el resultado se guarda en la cach de resultados 
+ * de la conexin (ver {@link QueryResultCache}). El resultado depende de las tablas que aparecen en las clusulas 
+ * {@code FROM} y {@code JOIN} de la consulta y de las indicadas en {@code cache-tags} (separadas por comas).
  * 
  * @author Gerard Llort
  */
@@ -14,6 +23,8 @@ public class DataQuery
    private String id;
    private String connectionId;
    private String sqlQuery;
+   private int cacheTtl;
+   private String cacheTags;
    private ResultSet resultSet;
 
 
@@ -29,6 +40,8 @@ public class DataQuery
       this.id = "";
       this.connectionId = "";
       this.sqlQuery = "";
+      this.cacheTtl = 0;
+      this.cacheTags = "";
       this.resultSet = null;
    }
 
@@ -44,6 +57,8 @@ public class DataQuery
       this.id = id;
       this.connectionId = connectionId;
       this.sqlQuery = sqlQuery;
+      this.cacheTtl = 0;
+      this.cacheTags = "";
       this.resultSet = null;
    }
 
@@ -82,6 +97,32 @@ public class DataQuery
       this.sqlQuery = sql;
    }
 
+   /**
+    * Devuelve el tiempo de vida (en segundos) del resultado en la cach de resultados (0 indica que no se usa la cach).
+    */
+   public int getCacheTtl()
+   {
+      return cacheTtl;
+   }
+
+   public void setCacheTtl(int ttl)
+   {
+      this.cacheTtl = ttl;
+   }
+
+   /**
+    * Devuelve la lista (separada por comas) de tablas adicionales de las que depende el resultado.
+    */
+   public String getCacheTags()
+   {
+      return cacheTags;
+   }
+
+   public void setCacheTags(String tags)
+   {
+      this.cacheTags = tags;
+   }
+
    public ResultSet getResultSet()
    {
       return resultSet;
@@ -93,7 +134,10 @@ public class DataQuery
    //==============================================
 
    /**
-    * Ejecuta la consulta.
+    * Ejecuta la consulta.<br />
+    * Las consultas son de slo lectura, por lo que se ejecutan en una rplica si la conexin las tiene (ver {@link ReplicaSet}), 
+    * salvo las que se guardan en la cach de resultados: stas se ejecutan en la conexin primaria, ya que una rplica 
+    * podra devolver datos anteriores a una escritura reciente y la cach los conservara durante todo su tiempo de vida.
     * 
     * @param workspace Una instancia de {@link Workspace} que representa el workspace actual.
     * 
@@ -103,9 +147,99 @@ public class DataQuery
     */
    public ResultSet execute(Workspace workspace) throws DataException
    {
-      DataAgent da = DataFactory.getInstance(workspace, this.connectionId);
-      this.resultSet = da.executeSql(this.sqlQuery);
+      DataAgent primary = DataFactory.getInstance(workspace, this.connectionId);
+      QueryResultCache cache = primary.getQueryCache();
+
+      // Dentro de una transaccin se consulta siempre la base de datos (para ver los cambios propios)
+      if (this.cacheTtl <= 0 || !cache.isEnabled() || primary.isInTransaction())
+      {
+         this.resultSet = DataFactory.getReadInstance(workspace, this.connectionId).executeSql(this.sqlQuery);
+         return this.resultSet;
+      }
+
+      this.resultSet = cache.get(this.sqlQuery, DataAgent.NO_PARAMS);
+      if (this.resultSet == null)
+      {
+         long generation = cache.getGeneration();
+         ResultSet rs = primary.executeSql(this.sqlQuery);
+
+         try
+         {
+            this.resultSet = cache.put(this.sqlQuery, DataAgent.NO_PARAMS, rs, this.cacheTtl, getTables(), generation);
+         }
+         finally
+         {
+            DataAgent.closeResultSet(rs);
+         }
+      }
 
       return this.resultSet;
    }
+
+
+   /**
+    * Ejecuta la consulta en segundo plano (ver {@link DataAgent#executeAsync(DataCallback)}).<br />
+    * El resultado se obtiene desconectado (se lee por completo), ya que la conexin usada se devuelve al pool al 
+    * finalizar la carga. La consulta no forma parte de la transaccin que pueda tener abierta el hilo actual, salvo 
+    * que ste conserve una conexin del agente (en este caso la consulta se ejecuta en el hilo actual).
+    * 
+    * @param workspace Una instancia de {@link Workspace} que representa el workspace actual.
+    * 
+    * @return Una instancia de {@link Future} que permite obtener el {@link ResultSet} con los datos de la consulta.
+    * 
+    * @throws DataException
+    */
+   public Future<ResultSet> executeAsync(final Workspace workspace) throws DataException
+   {
+      DataAgent da = DataFactory.getInstance(workspace, this.connectionId);
+
+      return da.executeAsync(new DataCallback<ResultSet>()
+      {
+         @Override
+         public ResultSet execute(DataAgent agent) throws Exception
+         {
+            ResultSet rs = DataQuery.this.execute(workspace);
+
+            if (!(rs instanceof CachedRowSet))
+            {
+               try
+               {
+                  DataQuery.this.resultSet = QueryResultCache.snapshot(rs);
+               }
+               finally
+               {
+                  DataAgent.closeResultSet(rs);
+               }
+            }
+
+            return DataQuery.this.resultSet;
+         }
+      });
+   }
+
+
+   //==============================================
+   // Private members
+   //==============================================
+
+   /**
+    * Obtiene las tablas de las que depende el resultado de la consulta.
+    */
+   private Set<String> getTables()
+   {
+      Set<String> tables = QueryResultCache.getTables(this.sqlQuery);
+
+      if (!StringUtils.isNullOrEmptyTrim(this.cacheTags))
+      {
+         for (String table : this.cacheTags.split(","))
+         {
+            if (!StringUtils.isNullOrEmptyTrim(table))
+            {
+               tables.add(table.trim());
+            }
+         }
+      }
+
+      return tables;
+   }
 }
@@ -0,0 +1,568 @@
+package com.cosmo.data;
+
+import java.lang.reflect.InvocationTargetException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.sql.rowset.CachedRowSet;
+
+import com.cosmo.util.PluginProperties;
+
+/**
+ * Implementa una cach de resultados de consultas asociada a una conexin.
+ * <br /><br />
+ * Cada resultado se identifica por la sentncia SQL y sus parmetros, se conserva durante el tiempo de vida indicado
+ * al guardarlo y se etiqueta con los nombres de las tablas de las que depende. Las escrituras en una tabla (p. ej.
+ * mediante {@link com.cosmo.orm.OrmFactory}) invalidan todos los resultados etiquetados con ella.
+ * <br /><br />
+ * El tamao total de la cach est limitado por el parmetro de conexin {@code query.cache.size} (en KB, 4096 por
+ * defecto; 0 la desactiva). Cuando se supera, se descartan los resultados usados menos recientemente.
+ * <br /><br />
+ * Los resultados se guardan desconectados ({@link CachedRowSet}) y cada lectura obtiene su propia copia, de manera que
+ * puede recorrerse y cerrarse sin afectar al resto de lectores.
+ *
+ * @author Gerard Llort
+ */
+public class QueryResultCache
+{
+   private static final String QUERY_CACHE_SIZE = "query.cache.size";
+
+   // Patrn para obtener las tablas referenciadas en una sentncia SQL
+   private static final Pattern TABLE_PATTERN = Pattern.compile("\\b(?:from|join)\\s+([\\w.\"`\\[\\]]+)", Pattern.CASE_INSENSITIVE);
+
+   // Declaracin de variables locales
+   private long maxSize;
+   private long size;
+   private long generation;
+   private LinkedHashMap<String, Entry> entries;
+   private HashMap<String, Set<String>> tags;
+
+   // Mtricas
+   private final AtomicLong hitCount = new AtomicLong(0);
+   private final AtomicLong missCount = new AtomicLong(0);
+   private final AtomicLong evictionCount = new AtomicLong(0);
+   private final AtomicLong invalidationCount = new AtomicLong(0);
+
+
+   //==============================================
+   // Constructors
+   //==============================================
+
+   /**
+    * Constructor de la clase {@link QueryResultCache}.
+    *
+    * @param properties Una instancia de {@link PluginProperties} que contiene la configuracin de la conexin.
+    */
+   public QueryResultCache(PluginProperties properties)
+   {
+      this.maxSize = Math.max(0, properties.getParamInteger(QUERY_CACHE_SIZE, 4096)) * 1024L;
+      this.size = 0;
+      this.generation = 0;
+      this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+      this.tags = new HashMap<String, Set<String>>();
+   }
+
+
+   //==============================================
+   // Properties
+   //==============================================
+
+   /**
+    * Indica si la cach est activa.
+    */
+   public boolean isEnabled()
+   {
+      return (this.maxSize > 0);
+   }
+
+   /**
+    * Devuelve el tamao mximo (estimado, en bytes) de la cach.
+    */
+   public long getMaxSize()
+   {
+      return this.maxSize;
+   }
+
+   /**
+    * Devuelve el tamao actual (estimado, en bytes) de los resultados guardados en la cach.
+    */
+   public synchronized long getSize()
+   {
+      return this.size;
+   }
+
+   /**
+    * Devuelve la generacin de la cach, que se incrementa en cada invalidacin.<br />
+    * Debe obtenerse antes de ejecutar la consulta cuyo resultado se va a guardar (ver {@link #put(String, Object[], ResultSet, int, Collection, long)}).
+    */
+   public synchronized long getGeneration()
+   {
+      return this.generation;
+   }
+
+   /**
+    * Devuelve el nmero de resultados guardados en la cach.
+    */
+   public synchronized int getCount()
+   {
+      return this.entries.size();
+   }
+
+   /**
+    * Devuelve el nmero de lecturas resueltas por la cach.
+    */
+   public long getHitCount()
+   {
+      return this.hitCount.get();
+   }
+
+   /**
+    * Devuelve el nmero de lecturas que no se han encontrado en la cach (o haban caducado).
+    */
+   public long getMissCount()
+   {
+      return this.missCount.get();
+   }
+
+   /**
+    * Devuelve el nmero de resultados descartados por falta de espacio.
+    */
+   public long getEvictionCount()
+   {
+      return this.evictionCount.get();
+   }
+
+   /**
+    * Devuelve el nmero de resultados descartados por escrituras en las tablas de las que dependen.
+    */
+   public long getInvalidationCount()
+   {
+      return this.invalidationCount.get();
+   }
+
+
+   //==============================================
+   // Methods
+   //==============================================
+
+   /**
+    * Obtiene un resultado de la cach.
+    *
+    * @param sql Una cadena que contiene la sentncia SQL.
+    * @param params Los valores de los parmetros de la sentncia.
+    *
+    * @return Una copia del resultado guardado, posicionada antes de la primera fila, o {@code null} si no se
+    *    encuentra en la cach o ha caducado.
+    *
+    * @throws DataException
+    */
+   public ResultSet get(String sql, Object[] params) throws DataException
+   {
+      Entry entry;
+      String key = getKey(sql, params);
+
+      synchronized (this)
+      {
+         entry = this.entries.get(key);
+         if (entry != null && entry.expires < System.currentTimeMillis())
+         {
+            remove(key);
+            entry = null;
+         }
+      }
+
+      if (entry == null)
+      {
+         missCount.incrementAndGet();
+         return null;
+      }
+
+      hitCount.incrementAndGet();
+
+      return copy(entry.rows);
+   }
+
+   /**
+    * Guarda un resultado en la cach.<br />
+    * El resultado se lee por completo; el {@link ResultSet} original no se cierra.
+    *
+    * @param sql Una cadena que contiene la sentncia SQL.
+    * @param params Los valores de los parmetros de la sentncia.
+    * @param rs El {@link ResultSet} obtenido al ejecutar la sentncia.
+    * @param ttl Tiempo de vida (en segundos) del resultado.
+    * @param tables Nombres de las tablas de las que depende el resultado (pueden incluir el esquema).
+    * @param generation La generacin de la cach obtenida (con {@link #getGeneration()}) antes de ejecutar la consulta. 
+    *    Si desde entonces se ha producido alguna invalidacin, el resultado no se guarda (podra estar obsoleto).
+    *
+    * @return Una copia del resultado, posicionada antes de la primera fila.
+    *
+    * @throws DataException
+    */
+   public ResultSet put(String sql, Object[] params, ResultSet rs, int ttl, Collection<String> tables, long generation) throws DataException
+   {
+      CachedRowSet rows = createRowSet();
+      long bytes;
+
+      try
+      {
+         rows.populate(rs);
+         bytes = estimateSize(rows);
+         rows.beforeFirst();
+      }
+      catch (SQLException ex)
+      {
+         throw new DataException(ex.getMessage(), ex);
+      }
+
+      if (this.maxSize > 0 && ttl > 0 && bytes <= this.maxSize)
+      {
+         String key = getKey(sql, params);
+         Entry entry = new Entry(rows, System.currentTimeMillis() + (ttl * 1000L), bytes);
+
+         for (String table : tables)
+         {
+            entry.tags.add(normalize(table));
+         }
+
+         synchronized (this)
+         {
+            if (this.generation != generation)
+            {
+               return copy(rows);
+            }
+
+            remove(key);
+
+            this.entries.put(key, entry);
+            this.size += bytes;
+
+            for (String tag : entry.tags)
+            {
+               Set<String> keys = this.tags.get(tag);
+               if (keys == null)
+               {
+                  keys = new HashSet<String>();
+                  this.tags.put(tag, keys);
+               }
+               keys.add(key);
+            }
+
+            // Descarta los resultados usados menos recientemente hasta volver al tamao mximo
+            Iterator<String> it = this.entries.keySet().iterator();
+            while (this.size > this.maxSize && it.hasNext())
+            {
+               String eldest = it.next();
+               if (!eldest.equals(key))
+               {
+                  Entry removed = this.entries.get(eldest);
+                  it.remove();
+                  detach(eldest, removed);
+                  evictionCount.incrementAndGet();
+               }
+            }
+         }
+      }
+
+      return copy(rows);
+   }
+
+   /**
+    * Descarta todos los resultados que dependen de una tabla.
+    *
+    * @param table Nombre de la tabla (puede incluir el esquema).
+    */
+   public void invalidate(String table)
+   {
+      if (table == null)
+      {
+         return;
+      }
+
+      synchronized (this)
+      {
+         this.generation++;
+
+         Set<String> keys = this.tags.get(normalize(table));
+         if (keys == null)
+         {
+            return;
+         }
+
+         for (String key : new ArrayList<String>(keys))
+         {
+            remove(key);
+            invalidationCount.incrementAndGet();
+         }
+      }
+   }
+
+   /**
+    * Descarta todos los resultados de la cach.
+    */
+   public synchronized void clear()
+   {
+      this.generation++;
+      this.entries.clear();
+      this.tags.clear();
+      this.size = 0;
+   }
+
+   /**
+    * Obtiene los nombres de las tablas referenciadas en una sentncia SQL (clusulas {@code FROM}, {@code JOIN}, etc.).<br />
+    * Slo se reconoce la primera tabla de cada clusula, por lo que las consultas con varias tablas separadas por
+    * comas deben declarar el resto de forma explcita.
+    *
+    * @param sql Una cadena que contiene la sentncia SQL.
+    *
+    * @return Una lista con los nombres de las tablas.
+    */
+   public static Set<String> getTables(String sql)
+   {
+      Set<String> tables = new HashSet<String>();
+
+      if (sql != null)
+      {
+         Matcher matcher = TABLE_PATTERN.matcher(sql);
+         while (matcher.find())
+         {
+            tables.add(normalize(matcher.group(1)));
+         }
+      }
+
+      return tables;
+   }
+
+
+   //==============================================
+   // Private members
+   //==============================================
+
+   /**
+    * Elimina un resultado de la cach (debe invocarse con el bloqueo de la cach).
+    */
+   private void remove(String key)
+   {
+      Entry entry = this.entries.remove(key);
+      if (entry != null)
+      {
+         detach(key, entry);
+      }
+   }
+
+   /**
+    * Elimina las referencias a un resultado ya descartado (debe invocarse con el bloqueo de la cach).
+    */
+   private void detach(String key, Entry entry)
+   {
+      this.size -= entry.bytes;
+
+      for (String tag : entry.tags)
+      {
+         Set<String> keys = this.tags.get(tag);
+         if (keys != null)
+         {
+            keys.remove(key);
+            if (keys.isEmpty())
+            {
+               this.tags.remove(tag);
+            }
+         }
+      }
+   }
+
+   /**
+    * Genera la clave de un resultado.
+    */
+   private static String getKey(String sql, Object[] params)
+   {
+      StringBuilder key = new StringBuilder(sql);
+
+      if (params != null)
+      {
+         for (Object param : params)
+         {
+            key.append('\u0000');
+            if (param != null)
+            {
+               key.append(param.getClass().getName()).append(':').append(param);
+            }
+         }
+      }
+
+      return key.toString();
+   }
+
+   /**
+    * Normaliza el nombre de una tabla (sin esquema, delimitadores ni distincin entre maysculas y minsculas).
+    */
+   private static String normalize(String table)
+   {
+      String name = table.trim().replaceAll("[\"`\\[\\]]", "").toLowerCase();
+
+      int idx = name.lastIndexOf('.');
+      return (idx >= 0 ? name.substring(idx + 1) : name);
+   }
+
+   /**
+    * Estima la memoria ocupada por un resultado.
+    */
+   private static long estimateSize(CachedRowSet rows) throws SQLException
+   {
+      ResultSetMetaData meta = rows.getMetaData();
+      int columns = meta.getColumnCount();
+      long bytes = 256 + (columns * 128L);
+
+      rows.beforeFirst();
+      while (rows.next())
+      {
+         bytes += 32;
+         for (int col = 1; col <= columns; col++)
+         {
+            Object value = rows.getObject(col);
+            if (value instanceof String)
+            {
+               bytes += 40 + (((String) value).length() * 2L);
+            }
+            else if (value instanceof byte[])
+            {
+               bytes += 16 + ((byte[]) value).length;
+            }
+            else
+            {
+               bytes += 24;
+            }
+         }
+      }
+
+      return bytes;
+   }
+
+   /**
+    * Obtiene una copia desconectada de un resultado (el {@link ResultSet} original no se cierra).
+    *
+    * @throws DataException
+    */
+   static ResultSet snapshot(ResultSet rs) throws DataException
+   {
+      CachedRowSet rows = createRowSet();
+
+      try
+      {
+         rows.populate(rs);
+         rows.beforeFirst();
+         return rows;
+      }
+      catch (SQLException ex)
+      {
+         throw new DataException(ex.getMessage(), ex);
+      }
+   }
+
+   /**
+    * Obtiene una copia independiente de un resultado.
+    */
+   private static ResultSet copy(CachedRowSet rows) throws DataException
+   {
+      try
+      {
+         CachedRowSet copy = rows.createCopy();
+         copy.beforeFirst();
+         return copy;
+      }
+      catch (SQLException ex)
+      {
+         throw new DataException(ex.getMessage(), ex);
+      }
+   }
+
+   /**
+    * Crea una instancia de {@link CachedRowSet}.<br />
+    * Se usa {@code javax.sql.rowset.RowSetProvider} cuando est disponible (Java 7 o superior) y, en caso contrario,
+    * la implementacin de referencia.
+    */
+   private static CachedRowSet createRowSet() throws DataException
+   {
+      try
+      {
+         Class<?> factory = Class.forName("javax.sql.rowset.RowSetFactory");
+         Object instance = Class.forName("javax.sql.rowset.RowSetProvider").getMethod("newFactory").invoke(null);
+         return (CachedRowSet) factory.getMethod("createCachedRowSet").invoke(instance);
+      }
+      catch (ClassNotFoundException ex)
+      {
+         // Java 6: se usa directamente la implementacin de referencia
+      }
+      catch (NoSuchMethodException ex)
+      {
+         throw new DataException("NoSuchMethodException: javax.sql.rowset.RowSetProvider", ex);
+      }
+      catch (InvocationTargetException ex)
+      {
+         throw new DataException("InvocationTargetException: javax.sql.rowset.RowSetProvider", ex);
+      }
+      catch (IllegalAccessException ex)
+      {
+         throw new DataException("IllegalAccessException: javax.sql.rowset.RowSetProvider", ex);
+      }
+
+      try
+      {
+         return (CachedRowSet) Class.forName("com.sun.rowset.CachedRowSetImpl").getDeclaredConstructor().newInstance();
+      }
+      catch (ClassNotFoundException ex)
+      {
+         throw new DataException("ClassNotFoundException: com.sun.rowset.CachedRowSetImpl", ex);
+      }
+      catch (NoSuchMethodException ex)
+      {
+         throw new DataException("NoSuchMethodException: com.sun.rowset.CachedRowSetImpl", ex);
+      }
+      catch (InvocationTargetException ex)
+      {
+         throw new DataException("InvocationTargetException: com.sun.rowset.CachedRowSetImpl", ex);
+      }
+      catch (InstantiationException ex)
+      {
+         throw new DataException("InstantiationException: com.sun.rowset.CachedRowSetImpl", ex);
+      }
+      catch (IllegalAccessException ex)
+      {
+         throw new DataException("IllegalAccessException: com.sun.rowset.CachedRowSetImpl", ex);
+      }
+   }
+
+
+   //==============================================
+   // Inner classes
+   //==============================================
+
+   /**
+    * Representa un resultado guardado en la cach.
+    */
+   private static class Entry
+   {
+      final CachedRowSet rows;
+      final long expires;
+      final long bytes;
+      final Set<String> tags;
+
+      Entry(CachedRowSet rows, long expires, long bytes)
+      {
+         this.rows = rows;
+         this.expires = expires;
+         this.bytes = bytes;
+         this.tags = new HashSet<String>();
+      }
+   }
+}
@@ -0,0 +1,369 @@
+package com.cosmo.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+
+import com.cosmo.logging.LogFactory;
+import com.cosmo.util.PluginProperties;
+
+/**
+ * Implementa la medicin de los tiempos de ejecucin de las sentncias SQL de un agente de datos.
+ * <br /><br />
+ * Las sentncias se agrupan por su huella (la sentncia normalizada, en la que los valores literales se sustituyen
+ * por {@code ?}) y para cada huella se mantiene el nmero de ejecuciones, el tiempo total y mximo, el nmero de
+ * filas y un histograma de tiempos.
+ * <br /><br />
+ * Las sentncias que superan el umbral indicado en el parmetro de conexin {@code query.slow.threshold} (en
+ * milisegundos, 1000 por defecto; 0 lo desactiva) se registran en el log con su duracin, el nmero de filas y el
+ * identificador de la conexin. El nmero de huellas distintas est limitado por el parmetro {@code query.stats.size}
+ * (500 por defecto); el resto se acumulan en una nica entrada.
+ *
+ * @author Gerard Llort
+ */
+public class QueryStatistics
+{
+   /** Lmites superiores (en milisegundos) de los intervalos del histograma. El ltimo intervalo no tiene lmite. */
+   public static final long[] HISTOGRAM_BOUNDS = { 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+
+   /** Huella que agrupa las sentncias que exceden el nmero mximo de huellas */
+   public static final String OTHER_STATEMENTS = "(other)";
+
+   private static final String QUERY_SLOW_THRESHOLD = "query.slow.threshold";
+   private static final String QUERY_STATS_SIZE = "query.stats.size";
+   private static final int MAX_CACHED_FINGERPRINTS = 2000;
+
+   // Patrones de normalizacin de las sentncias
+   private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+   private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+   private static final Pattern IN_LIST = Pattern.compile("(?i)\\bin\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+   private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+   // Declaracin de variables locales
+   private String agentId;
+   private long slowThreshold;
+   private int maxStatements;
+   private final ConcurrentHashMap<String, StatementStats> statements;
+   private final ConcurrentHashMap<String, String> fingerprints;
+   private final AtomicLong slowCount;
+
+   Logger log = LogFactory.getLogger(getClass());
+
+
+   //==============================================
+   // Constructors
+   //==============================================
+
+   /**
+    * Constructor de la clase {@link QueryStatistics}.
+    *
+    * @param properties Una instancia de {@link PluginProperties} que contiene la configuracin de la conexin.
+    */
+   public QueryStatistics(PluginProperties properties)
+   {
+      this.agentId = properties.getId();
+      this.slowThreshold = properties.getParamInteger(QUERY_SLOW_THRESHOLD, 1000);
+      this.maxStatements = Math.max(1, properties.getParamInteger(QUERY_STATS_SIZE, 500));
+      this.statements = new ConcurrentHashMap<String, StatementStats>();
+      this.fingerprints = new ConcurrentHashMap<String, String>();
+      this.slowCount = new AtomicLong(0);
+   }
+
+
+   //==============================================
+   // Properties
+   //==============================================
+
+   /**
+    * Devuelve el umbral (en milisegundos) a partir del cual una sentncia se considera lenta (0 si est desactivado).
+    */
+   public long getSlowThreshold()
+   {
+      return this.slowThreshold;
+   }
+
+   /**
+    * Devuelve el nmero de sentncias lentas registradas.
+    */
+   public long getSlowCount()
+   {
+      return this.slowCount.get();
+   }
+
+   /**
+    * Devuelve las estadsticas de todas las huellas, ordenadas por tiempo total de ejecucin (de mayor a menor).
+    */
+   public List<StatementStats> getStatements()
+   {
+      List<StatementStats> list = new ArrayList<StatementStats>(this.statements.values());
+
+      Collections.sort(list, new Comparator<StatementStats>()
+      {
+         @Override
+         public int compare(StatementStats a, StatementStats b)
+         {
+            long ta = a.totalTime.get();
+            long tb = b.totalTime.get();
+            return (ta < tb ? 1 : (ta == tb ? 0 : -1));
+         }
+      });
+
+      return list;
+   }
+
+
+   //==============================================
+   // Methods
+   //==============================================
+
+   /**
+    * Registra la ejecucin de una sentncia.
+    *
+    * @param sql Una cadena que contiene la sentncia SQL ejecutada.
+    * @param start Instante de inicio de la ejecucin (obtenido mediante {@link System#nanoTime()}).
+    * @param rows Nmero de filas obtenidas o afectadas ({@code -1} si se desconoce o la ejecucin ha fallado).
+    */
+   public void record(String sql, long start, int rows)
+   {
+      long elapsed = System.nanoTime() - start;
+      String fingerprint = getFingerprint(sql);
+
+      StatementStats stats = this.statements.get(fingerprint);
+      if (stats == null)
+      {
+         if (this.statements.size() >= this.maxStatements)
+         {
+            fingerprint = OTHER_STATEMENTS;
+         }
+
+         StatementStats created = new StatementStats(fingerprint);
+         stats = this.statements.putIfAbsent(fingerprint, created);
+         if (stats == null)
+         {
+            stats = created;
+         }
+      }
+
+      stats.add(elapsed, rows);
+
+      long millis = TimeUnit.NANOSECONDS.toMillis(elapsed);
+      if (this.slowThreshold > 0 && millis >= this.slowThreshold)
+      {
+         this.slowCount.incrementAndGet();
+         log.warn("Slow query on '" + this.agentId + "': " + millis + " ms, " + (rows >= 0 ? String.valueOf(rows) : "?") + " rows: " + fingerprint);
+      }
+   }
+
+   /**
+    * Descarta todas las estadsticas acumuladas.
+    */
+   public void reset()
+   {
+      this.statements.clear();
+      this.slowCount.set(0);
+   }
+
+   /**
+    * Obtiene la huella de una sentncia SQL: los valores literales se sustituyen por {@code ?}, las listas
+    * {@code IN (?, ?, ...)} se reducen a {@code IN (...)} y se eliminan los espacios redundantes.
+    *
+    * @param sql Una cadena que contiene la sentncia SQL.
+    *
+    * @return Una cadena que contiene la sentncia normalizada.
+    */
+   public static String fingerprint(String sql)
+   {
+      if (sql == null)
+      {
+         return "";
+      }
+
+      String fp = STRING_LITERAL.matcher(sql).replaceAll("?");
+      fp = NUMBER_LITERAL.matcher(fp).replaceAll("?");
+      fp = IN_LIST.matcher(fp).replaceAll("IN (...)");
+      fp = WHITESPACE.matcher(fp).replaceAll(" ");
+
+      return fp.trim();
+   }
+
+
+   //==============================================
+   // Private members
+   //==============================================
+
+   /**
+    * Obtiene la huella de una sentncia, usando la cach de huellas ya calculadas.
+    */
+   private String getFingerprint(String sql)
+   {
+      String fp = this.fingerprints.get(sql);
+
+      if (fp == null)
+      {
+         fp = fingerprint(sql);
+
+         // Las sentncias con valores literales generan huellas nuevas en cada ejecucin: la cach se vaca al llenarse
+         if (this.fingerprints.size() >= MAX_CACHED_FINGERPRINTS)
+         {
+            this.fingerprints.clear();
+         }
+         this.fingerprints.put(sql, fp);
+      }
+
+      return fp;
+   }
+
+
+   //==============================================
+   // Inner classes
+   //==============================================
+
+   /**
+    * Representa las estadsticas acumuladas de una huella de sentncia.
+    */
+   public static class StatementStats
+   {
+      private final String fingerprint;
+      private final AtomicLong count = new AtomicLong(0);
+      private final AtomicLong totalTime = new AtomicLong(0);
+      private final AtomicLong maxTime = new AtomicLong(0);
+      private final AtomicLong rows = new AtomicLong(0);
+      private final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BOUNDS.length + 1);
+
+      StatementStats(String fingerprint)
+      {
+         this.fingerprint = fingerprint;
+      }
+
+      /**
+       * Devuelve la huella (sentncia normalizada).
+       */
+      public String getFingerprint()
+      {
+         return this.fingerprint;
+      }
+
+      /**
+       * Devuelve el nmero de ejecuciones.
+       */
+      public long getCount()
+      {
+         return this.count.get();
+      }
+
+      /**
+       * Devuelve el tiempo total (en milisegundos) empleado en las ejecuciones.
+       */
+      public long getTotalTime()
+      {
+         return TimeUnit.NANOSECONDS.toMillis(this.totalTime.get());
+      }
+
+      /**
+       * Devuelve el tiempo medio (en milisegundos) de ejecucin.
+       */
+      public double getAverageTime()
+      {
+         long n = this.count.get();
+         return (n > 0 ? (this.totalTime.get() / 1000000.0) / n : 0);
+      }
+
+      /**
+       * Devuelve el tiempo mximo (en milisegundos) de ejecucin.
+       */
+      public long getMaxTime()
+      {
+         return TimeUnit.NANOSECONDS.toMillis(this.maxTime.get());
+      }
+
+      /**
+       * Devuelve el nmero total de filas obtenidas o afectadas (slo las ejecuciones en las que se conoce).
+       */
+      public long getRows()
+      {
+         return this.rows.get();
+      }
+
+      /**
+       * Devuelve el nmero de ejecuciones de cada intervalo del histograma (ver {@link QueryStatistics#HISTOGRAM_BOUNDS}).
+       */
+      public long[] getHistogram()
+      {
+         long[] values = new long[this.histogram.length()];
+         for (int i = 0; i < values.length; i++)
+         {
+            values[i] = this.histogram.get(i);
+         }
+         return values;
+      }
+
+      /**
+       * Devuelve una estimacin de un percentil del tiempo de ejecucin: el lmite superior (en milisegundos) del
+       * intervalo del histograma que lo contiene o el tiempo mximo si se encuentra en el ltimo intervalo.
+       *
+       * @param percentile El percentil a calcular (entre 0 y 100).
+       */
+      public long getPercentile(double percentile)
+      {
+         long[] values = getHistogram();
+         long total = 0;
+         for (long value : values)
+         {
+            total += value;
+         }
+
+         if (total == 0)
+         {
+            return 0;
+         }
+
+         long target = (long) Math.ceil(total * percentile / 100.0);
+         long accumulated = 0;
+         for (int i = 0; i < HISTOGRAM_BOUNDS.length; i++)
+         {
+            accumulated += values[i];
+            if (accumulated >= target)
+            {
+               return HISTOGRAM_BOUNDS[i];
+            }
+         }
+
+         return getMaxTime();
+      }
+
+      /**
+       * Acumula una ejecucin.
+       */
+      void add(long elapsed, int rows)
+      {
+         this.count.incrementAndGet();
+         this.totalTime.addAndGet(elapsed);
+         if (rows > 0)
+         {
+            this.rows.addAndGet(rows);
+         }
+
+         long max = this.maxTime.get();
+         while (elapsed > max && !this.maxTime.compareAndSet(max, elapsed))
+         {
+            max = this.maxTime.get();
+         }
+
+         long millis = TimeUnit.NANOSECONDS.toMillis(elapsed);
+         int bucket = 0;
+         while (bucket < HISTOGRAM_BOUNDS.length && millis >= HISTOGRAM_BOUNDS[bucket])
+         {
+            bucket++;
+         }
+         this.histogram.incrementAndGet(bucket);
+      }
+   }
+}
@@ -0,0 +1,149 @@
+package com.cosmo.data;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.cosmo.util.PluginProperties;
+import com.cosmo.util.StringUtils;
+
+/**
+ * Representa el conjunto de rplicas de lectura asociadas a una conexin (primario).
+ * <br /><br />
+ * Las rplicas se declaran en la conexin primaria mediante los parmetros:
+ * <ul>
+ * <li>{@code replicas}: lista, separada por comas, de los identificadores de las conexiones que actan de rplica.</li>
+ * <li>{@code replicas.balance}: poltica de reparto de las lecturas, {@code round-robin} (por defecto) o
+ * {@code least-connections} (la rplica con menos conexiones cedidas).</li>
+ * </ul>
+ * Cada rplica es una conexin convencional (con su propio pool) definida en la configuracin de Data Services.
+ *
+ * @author Gerard Llort
+ */
+public class ReplicaSet
+{
+   private static final String REPLICAS = "replicas";
+   private static final String REPLICAS_BALANCE = "replicas.balance";
+
+   /**
+    * Enumera las polticas de reparto de las lecturas entre rplicas.
+    */
+   public enum BalanceType
+   {
+      /** Reparto secuencial */
+      RoundRobin,
+      /** Rplica con menos conexiones cedidas */
+      LeastConnections
+   }
+
+   // Declaracin de variables locales
+   private String[] ids;
+   private BalanceType balance;
+   private final AtomicInteger next = new AtomicInteger(0);
+
+
+   //==============================================
+   // Constructors
+   //==============================================
+
+   /**
+    * Constructor de la clase {@link ReplicaSet}.
+    *
+    * @param properties Una instancia de {@link PluginProperties} que contiene la configuracin de la conexin primaria.
+    */
+   public ReplicaSet(PluginProperties properties)
+   {
+      ArrayList<String> list = new ArrayList<String>();
+      String value = properties.getParamString(REPLICAS);
+
+      if (!StringUtils.isNullOrEmptyTrim(value))
+      {
+         for (String id : value.split(","))
+         {
+            if (!StringUtils.isNullOrEmptyTrim(id) && !id.trim().equals(properties.getId()))
+            {
+               list.add(id.trim());
+            }
+         }
+      }
+
+      this.ids = list.toArray(new String[list.size()]);
+      this.balance = "least-connections".equalsIgnoreCase(properties.getParamString(REPLICAS_BALANCE)) ? BalanceType.LeastConnections : BalanceType.RoundRobin;
+   }
+
+
+   //==============================================
+   // Properties
+   //==============================================
+
+   /**
+    * Indica si la conexin no tiene rplicas de lectura.
+    */
+   public boolean isEmpty()
+   {
+      return (this.ids.length == 0);
+   }
+
+   /**
+    * Devuelve el nmero de rplicas de lectura.
+    */
+   public int size()
+   {
+      return this.ids.length;
+   }
+
+   /**
+    * Devuelve el identificador de conexin de una rplica.
+    *
+    * @param index ndice de la rplica.
+    */
+   public String getId(int index)
+   {
+      return this.ids[index];
+   }
+
+   /**
+    * Devuelve la poltica de reparto de las lecturas.
+    */
+   public BalanceType getBalance()
+   {
+      return this.balance;
+   }
+
+
+   //==============================================
+   // Methods
+   //==============================================
+
+   /**
+    * Selecciona la rplica a la que se debe dirigir una lectura.
+    *
+    * @param replicas Los agentes de las rplicas, en el mismo orden en que se han declarado.
+    *
+    * @return El agente seleccionado.
+    */
+   public DataAgent select(DataAgent[] replicas)
+   {
+      // El punto de partida rota en ambas polticas, de forma que los empates se reparten
+      int start = (next.getAndIncrement() & Integer.MAX_VALUE) % replicas.length;
+
+      if (this.balance == BalanceType.RoundRobin)
+      {
+         return replicas[start];
+      }
+
+      DataAgent selected = replicas[start];
+      int min = selected.getPool().getActiveCount();
+      for (int i = 1; i < replicas.length && min > 0; i++)
+      {
+         DataAgent replica = replicas[(start + i) % replicas.length];
+         int active = replica.getPool().getActiveCount();
+         if (active < min)
+         {
+            selected = replica;
+            min = active;
+         }
+      }
+
+      return selected;
+   }
+}
@@ -0,0 +1,26 @@
+package com.cosmo.data;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Interface que deben implementar los objetos que procesan, fila a fila, los resultados de una consulta
+ * ejecutada mediante {@link DataAgent#query(String, Object[], RowHandler)}.
+ * <br /><br />
+ * El {@link ResultSet} slo es vlido durante la llamada: no debe guardarse ni cerrarse.
+ *
+ * @author Gerard Llort
+ */
+public interface RowHandler
+{
+   /**
+    * Procesa la fila actual de la consulta.
+    *
+    * @param rs Una instancia de {@link ResultSet} con el cursor posicionado en la fila a procesar.
+    *
+    * @return {@code true} para continuar con la siguiente fila o {@code false} para detener la lectura.
+    *
+    * @throws SQLException
+    */
+   public abstract boolean processRow(ResultSet rs) throws SQLException;
+}
@@ -0,0 +1,25 @@
+package com.cosmo.data;
+
+/**
+ * Interface que deben implementar las unidades de trabajo ejecutadas mediante 
+ * {@link DataAgent#withTransaction(TransactionCallback)}.
+ *
+ * @param <T> Tipo del resultado de la unidad de trabajo.
+ *
+ * @author Gerard Llort
+ */
+public interface TransactionCallback<T>
+{
+   /**
+    * Ejecuta la unidad de trabajo.<br />
+    * Todas las operaciones realizadas con el agente forman parte de la misma transaccin, que se confirma si el 
+    * mtodo finaliza correctamente y se descarta si lanza una excepcin.
+    *
+    * @param agent El agente de datos sobre el que est abierta la transaccin.
+    *
+    * @return El resultado de la unidad de trabajo (puede ser {@code null}).
+    *
+    * @throws Exception
+    */
+   public abstract T execute(DataAgent agent) throws Exception;
+}
@@ -0,0 +1,114 @@
+package com.cosmo.data;
+
+/**
+ * Representa una unidad de trabajo transaccional sobre un {@link DataAgent}.
+ * <br /><br />
+ * Mientras la transaccin est abierta, el hilo actual conserva la misma conexin del pool y todas las operaciones 
+ * realizadas con el agente (incluidas las del ORM) forman parte de la transaccin. Se obtiene mediante 
+ * {@link DataAgent#beginTransaction()} y debe cerrarse siempre en un bloque {@code finally}:
+ * <pre>
+ * TransactionScope tx = agent.beginTransaction();
+ * try
+ * {
+ *    agent.execute(...);
+ *    agent.execute(...);
+ *    tx.commit();
+ * }
+ * finally
+ * {
+ *    tx.close();
+ * }
+ * </pre>
+ * Las transacciones pueden anidarse: una transaccin abierta dentro de otra se une a la externa, que es la nica 
+ * que confirma o descarta los cambios. Si una transaccin interna no se confirma, la externa se descartar al cerrarse.
+ *
+ * @author Gerard Llort
+ */
+public class TransactionScope
+{
+   // Declaracin de variables locales
+   private DataAgent agent;
+   private boolean completed;
+
+
+   //==============================================
+   // Constructors
+   //==============================================
+
+   /**
+    * Constructor de la clase {@link TransactionScope}.
+    *
+    * @param agent Agente de datos al que pertenece la transaccin.
+    */
+   TransactionScope(DataAgent agent)
+   {
+      this.agent = agent;
+      this.completed = false;
+   }
+
+
+   //==============================================
+   // Properties
+   //==============================================
+
+   /**
+    * Indica si la transaccin est abierta (no se ha confirmado ni descartado).
+    */
+   public boolean isActive()
+   {
+      return !this.completed;
+   }
+
+
+   //==============================================
+   // Methods
+   //==============================================
+
+   /**
+    * Confirma la transaccin.<br />
+    * Si la transaccin est anidada, los cambios se confirmarn al confirmar la transaccin externa.
+    *
+    * @throws DataException
+    */
+   public void commit() throws DataException
+   {
+      if (this.completed)
+      {
+         throw new DataException("The transaction has already been completed");
+      }
+
+      this.completed = true;
+      this.agent.endTransaction(true);
+   }
+
+   /**
+    * Descarta la transaccin.<br />
+    * Si la transaccin est anidada, se descartar la transaccin externa completa.
+    */
+   public void rollback()
+   {
+      if (this.completed)
+      {
+         return;
+      }
+
+      this.completed = true;
+
+      try
+      {
+         this.agent.endTransaction(false);
+      }
+      catch (DataException ex)
+      {
+         // Descarta la excepcin
+      }
+   }
+
+   /**
+    * Cierra la transaccin, descartndola si no se ha confirmado.
+    */
+   public void close()
+   {
+      rollback();
+   }
+}
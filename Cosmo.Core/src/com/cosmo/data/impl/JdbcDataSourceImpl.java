@@ -52,23 +52,19 @@ public class JdbcDataSourceImpl extends DataAgent
    //==============================================
 
    /**
-    * Abre una conexin con la base de datos usando el mecanismo implementado por el agente de datos.
+    * Abre una nueva conexin fsica con la base de datos.
+    * 
+    * @return Una instancia de {@link Connection} que representa la nueva conexin.
     * 
     * @throws DataException 
     */
    @Override
-   public void connect() throws DataException
+   protected Connection openConnection() throws DataException
    {
-      Connection conn;
-      
       try 
       {
          Class.forName(this.jdbcDriver);
-
-         conn = DriverManager.getConnection(getConnectionUrl(), login, pwd);
-         conn.setAutoCommit(this.isAutoCommit());
-
-         this.setConnection(conn);
+         return DriverManager.getConnection(getConnectionUrl(), login, pwd);
       } 
       catch (ClassNotFoundException ex)
       {
@@ -80,32 +76,6 @@ public class JdbcDataSourceImpl extends DataAgent
       }
    }
 
-   /**
-    * Cierra la conexin con la base de datos.
-    */
-   @Override
-   public void disconnect()
-   {
-      if (this.getConnection() != null)
-      {
-         try
-         {
-            if (!this.getConnection().isClosed())
-            {
-               this.getConnection().close();
-            }
-         }
-         catch (SQLException e)
-         {
-            // Nothing to do
-         }
-         finally
-         {
-            this.setConnection(null);
-         }
-      }
-   }
-
 
    //==============================================
    // Private Members
@@ -1,5 +1,6 @@
 package com.cosmo.data.impl;
 
+import java.sql.Connection;
 import java.sql.SQLException;
 
 import com.cosmo.data.DataAgent;
@@ -31,10 +32,14 @@ public class MySqlDataSourceImpl extends DataAgent
    {
       super(properties);
 
+      source = new MysqlDataSource();
       source.setServerName(getProperties().getParamString(MySqlDataSourceImpl.DATASOURCE_DB_HOST));
       source.setDatabaseName(getProperties().getParamString(MySqlDataSourceImpl.DATASOURCE_DB_NAME));
       source.setUser(getProperties().getParamString(MySqlDataSourceImpl.DATASOURCE_USER_LOGIN));
       source.setPassword(getProperties().getParamString(MySqlDataSourceImpl.DATASOURCE_USER_PASSWORD));
+
+      // Permite leer las consultas por bloques (fetch size) mediante cursores del servidor
+      source.setUseCursorFetch(true);
    }
 
 
@@ -43,48 +48,22 @@ public class MySqlDataSourceImpl extends DataAgent
    //==============================================
 
    /**
-    * Abre una conexin con la base de datos usando el mecanismo implementado por el agente de datos.
+    * Abre una nueva conexin fsica con la base de datos.
+    * 
+    * @return Una instancia de {@link Connection} que representa la nueva conexin.
     * 
     * @throws DataException 
     */
    @Override
-   public void connect() throws DataException
+   protected Connection openConnection() throws DataException
    {
       try
       {
-         this.setConnection(source.getConnection());
+         return source.getConnection();
       }
       catch (SQLException ex)
       {
-         this.setConnection(null);
-
          throw new DataException(ex.getMessage(), ex);
       }
    }
-
-   /**
-    * Cierra la conexin con la base de datos.
-    */
-   @Override
-   public void disconnect()
-   {
-      if (this.getConnection() != null)
-      {
-         try
-         {
-            if (!this.getConnection().isClosed())
-            {
-               this.getConnection().close();
-            }
-         }
-         catch (SQLException e)
-         {
-            // Nothing to do
-         }
-         finally
-         {
-            this.setConnection(null);
-         }
-      }
-   }
 }
@@ -1,11 +1,13 @@
 package com.cosmo.data.lists;
 
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 
 import com.cosmo.Workspace;
 import com.cosmo.data.DataAgent;
 import com.cosmo.data.DataFactory;
+import com.cosmo.data.RowHandler;
 
 /**
  * Implementa una lista dinmica cuidos elementos se obtienen de una consulta SQL
@@ -229,9 +231,7 @@ public class DynamicList implements List
    @Override
    public ArrayList<ListItem> getListItems(Workspace workspace) throws Exception 
    {
-      ListItem item;
-      ResultSet rs;
-      DataAgent conn = null;
+      DataAgent conn;
 
       // Si existe cach y ya est cargada la lista la devuelve.
       if (this.cacheMode != CacheMode.None && this.isLoaded)
@@ -239,32 +239,21 @@ public class DynamicList implements List
          return items;
       }
 
-      try
-      {
-         items.clear();
+      items.clear();
 
-         conn = DataFactory.getInstance(workspace, this.connection);
-         rs = conn.executeSql(sql);
-         while (rs.next())
-         {
-            item = new ListItem(rs.getString(this.valueFieldName), 
-                                rs.getString(this.titleFieldName));
-            items.add(item);
-         }
-         
-         this.isLoaded = true;
-      }
-      catch (Exception ex)
+      // La consulta se recorre por bloques y se cierra al finalizar (no retiene la conexin); se lee de una rplica si la hay
+      conn = DataFactory.getReadInstance(workspace, this.connection);
+      conn.query(sql, null, new RowHandler()
       {
-         throw ex;
-      }
-      finally
-      {
-         if (connection != null)
+         @Override
+         public boolean processRow(ResultSet rs) throws SQLException
          {
-            conn.disconnect();
+            items.add(new ListItem(rs.getString(valueFieldName), rs.getString(titleFieldName)));
+            return true;
          }
-      }
+      });
+
+      this.isLoaded = true;
 
       return items;
    }
@@ -0,0 +1,432 @@
+package com.cosmo.orm;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.cosmo.orm.EntityMetadata.Column;
+
+/**
+ * Implementa una cach compartida (de segundo nivel) de instancias de un objeto CORM identificadas por su clave
+ * principal.
+ * <br /><br />
+ * La cach se declara para cada objeto CORM en la configuracin de ORM Services (ver {@link OrmServiceProperties}) y
+ * la usa {@link OrmFactory#get(Object)} antes de consultar la base de datos. Las escrituras realizadas mediante
+ * {@link OrmFactory} descartan la instancia afectada.
+ * <br /><br />
+ * Las cachs pertenecen a la aplicacin (una por conexin y objeto CORM, ver {@link OrmFactory#getEntityCaches()}) y 
+ * se conservan al recargar la configuracin, que slo establece su tiempo de vida y su tamao mximo (ver 
+ * {@link #configure(int, int)}). De este modo, las escrituras de las peticiones que an usan una versin anterior de 
+ * la configuracin descartan las instancias de la misma cach que leen las peticiones que usan la nueva.
+ * <br /><br />
+ * Cada instancia se conserva durante un tiempo de vida mximo y el nmero de instancias est limitado: cuando se
+ * supera, se descartan las instancias usadas menos recientemente. La cach guarda copias de las instancias y cada
+ * lectura obtiene su propia copia (ver {@link EntityMetadata#copy(Object, Object)}), de manera que las modificaciones
+ * que realice un usuario no afectan al resto.
+ *
+ * @author Gerard Llort
+ */
+public class EntityCache
+{
+   // Declaracin de variables locales
+   private final String className;
+   private volatile long ttl;
+   private volatile int maxSize;
+   private long generation;
+   private LinkedHashMap<Key, Entry> entries;
+
+   // Mtricas
+   private final AtomicLong hitCount = new AtomicLong(0);
+   private final AtomicLong missCount = new AtomicLong(0);
+   private final AtomicLong evictionCount = new AtomicLong(0);
+   private final AtomicLong invalidationCount = new AtomicLong(0);
+
+
+   //==============================================
+   // Constructors
+   //==============================================
+
+   /**
+    * Constructor de la clase {@link EntityCache}.
+    *
+    * @param className Nombre cualificado de la clase CORM.
+    * @param ttl Tiempo de vida (en segundos) de cada instancia.
+    * @param maxSize Nmero mximo de instancias.
+    */
+   public EntityCache(String className, int ttl, int maxSize)
+   {
+      this.className = className;
+      this.ttl = Math.max(0, ttl) * 1000L;
+      this.maxSize = Math.max(0, maxSize);
+      this.generation = 0;
+      this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+   }
+
+
+   //==============================================
+   // Properties
+   //==============================================
+
+   /**
+    * Devuelve el nombre cualificado de la clase CORM.
+    */
+   public String getClassName()
+   {
+      return this.className;
+   }
+
+   /**
+    * Indica si la cach est activa.
+    */
+   public boolean isEnabled()
+   {
+      return (this.ttl > 0 && this.maxSize > 0);
+   }
+
+   /**
+    * Devuelve el tiempo de vida (en milisegundos) de cada instancia.
+    */
+   public long getTtl()
+   {
+      return this.ttl;
+   }
+
+   /**
+    * Devuelve el nmero mximo de instancias.
+    */
+   public int getMaxSize()
+   {
+      return this.maxSize;
+   }
+
+   /**
+    * Devuelve el nmero de instancias guardadas en la cach.
+    */
+   public synchronized int getCount()
+   {
+      return this.entries.size();
+   }
+
+   /**
+    * Devuelve la generacin de la cach, que se incrementa en cada invalidacin.<br />
+    * Debe obtenerse antes de ejecutar la consulta cuya instancia se va a guardar (ver {@link #put(Key, Object, long)}).
+    */
+   public synchronized long getGeneration()
+   {
+      return this.generation;
+   }
+
+   /**
+    * Devuelve el nmero de lecturas resueltas por la cach.
+    */
+   public long getHitCount()
+   {
+      return this.hitCount.get();
+   }
+
+   /**
+    * Devuelve el nmero de lecturas que no se han podido resolver con la cach.
+    */
+   public long getMissCount()
+   {
+      return this.missCount.get();
+   }
+
+   /**
+    * Devuelve el nmero de instancias descartadas por tamao o caducidad.
+    */
+   public long getEvictionCount()
+   {
+      return this.evictionCount.get();
+   }
+
+   /**
+    * Devuelve el nmero de instancias descartadas por escrituras.
+    */
+   public long getInvalidationCount()
+   {
+      return this.invalidationCount.get();
+   }
+
+
+   //==============================================
+   // Methods
+   //==============================================
+
+   /**
+    * Obtiene una instancia de la cach.
+    *
+    * @param key La clave de la instancia.
+    * @param target La instancia que recibe una copia de los valores guardados.
+    *
+    * @return {@code target} o {@code null} si la instancia no est en la cach (o ha caducado).
+    *
+    * @throws OrmException
+    */
+   public Object get(Key key, Object target) throws OrmException
+   {
+      Entry entry;
+
+      synchronized (this)
+      {
+         entry = this.entries.get(key);
+         if (entry != null && entry.expires < System.currentTimeMillis())
+         {
+            this.entries.remove(key);
+            this.evictionCount.incrementAndGet();
+            entry = null;
+         }
+      }
+
+      if (entry == null)
+      {
+         this.missCount.incrementAndGet();
+         return null;
+      }
+
+      EntityMetadata.get(target.getClass()).copy(entry.instance, target);
+      this.hitCount.incrementAndGet();
+
+      return target;
+   }
+
+   /**
+    * Guarda una copia de una instancia en la cach.<br />
+    * La instancia no se guarda si la cach se ha invalidado desde que se obtuvo la generacin indicada, ya que la
+    * consulta podra haber ledo datos anteriores a la escritura.
+    *
+    * @param key La clave de la instancia.
+    * @param instance La instancia a guardar.
+    * @param generation La generacin de la cach (ver {@link #getGeneration()}) obtenida antes de la consulta.
+    *
+    * @throws OrmException
+    */
+   public void put(Key key, Object instance, long generation) throws OrmException
+   {
+      EntityMetadata metadata = EntityMetadata.get(instance.getClass());
+      Object copy = metadata.newInstance();
+      metadata.copy(instance, copy);
+
+      synchronized (this)
+      {
+         if (generation != this.generation)
+         {
+            return;
+         }
+
+         this.entries.put(key, new Entry(copy, System.currentTimeMillis() + this.ttl));
+
+         // Descarta las instancias usadas menos recientemente
+         Iterator<Entry> it = this.entries.values().iterator();
+         while (this.entries.size() > this.maxSize && it.hasNext())
+         {
+            it.next();
+            it.remove();
+            this.evictionCount.incrementAndGet();
+         }
+      }
+   }
+
+   /**
+    * Descarta una instancia de la cach.
+    *
+    * @param key La clave de la instancia.
+    */
+   public synchronized void remove(Key key)
+   {
+      this.generation++;
+      if (this.entries.remove(key) != null)
+      {
+         this.invalidationCount.incrementAndGet();
+      }
+   }
+
+   /**
+    * Devuelve la invalidacin de una instancia que se debe repetir al cerrar la transaccin en curso (ver 
+    * {@link com.cosmo.data.DataAgent#invalidateCache(Runnable)}).
+    *
+    * @param key La clave de la instancia.
+    */
+   public Runnable getEviction(Key key)
+   {
+      return new Eviction(this, key);
+   }
+
+   /**
+    * Establece el tiempo de vida y el nmero mximo de instancias (p. ej. al recargar la configuracin).<br />
+    * Si el nuevo tamao es menor, se descartan las instancias usadas menos recientemente.
+    *
+    * @param ttl Tiempo de vida (en segundos) de cada instancia.
+    * @param maxSize Nmero mximo de instancias.
+    */
+   public synchronized void configure(int ttl, int maxSize)
+   {
+      this.ttl = Math.max(0, ttl) * 1000L;
+      this.maxSize = Math.max(0, maxSize);
+
+      Iterator<Entry> it = this.entries.values().iterator();
+      while (this.entries.size() > this.maxSize && it.hasNext())
+      {
+         it.next();
+         it.remove();
+         this.evictionCount.incrementAndGet();
+      }
+   }
+
+   /**
+    * Descarta todas las instancias de la cach.
+    */
+   public synchronized void clear()
+   {
+      this.generation++;
+      this.invalidationCount.addAndGet(this.entries.size());
+      this.entries.clear();
+   }
+
+
+   //==============================================
+   // Inner classes
+   //==============================================
+
+   /**
+    * Representa la clave de una instancia: la conexin, la clase CORM y los valores de la clave principal.
+    */
+   public static class Key
+   {
+      private final String dataSourceId;
+      private final Class<?> ormClass;
+      private final Object[] values;
+      private final int hash;
+
+      private Key(String dataSourceId, Class<?> ormClass, Object[] values)
+      {
+         this.dataSourceId = dataSourceId;
+         this.ormClass = ormClass;
+         this.values = values;
+         this.hash = 31 * (31 * dataSourceId.hashCode() + ormClass.hashCode()) + Arrays.hashCode(values);
+      }
+
+      /**
+       * Genera la clave de una instancia.
+       *
+       * @param dataSourceId Identificador de la conexin.
+       * @param data Una instancia de un objeto CORM.
+       *
+       * @return La clave o {@code null} si el objeto no tiene clave principal o alguno de sus valores es {@code null}.
+       *
+       * @throws OrmException
+       */
+      public static Key create(String dataSourceId, Object data) throws OrmException
+      {
+         List<Column> keys = EntityMetadata.get(data.getClass()).getPrimaryKeys();
+
+         if (dataSourceId == null || keys.isEmpty())
+         {
+            return null;
+         }
+
+         try
+         {
+            Object[] values = new Object[keys.size()];
+            for (int i = 0; i < values.length; i++)
+            {
+               values[i] = keys.get(i).getValue(data);
+               if (values[i] == null)
+               {
+                  return null;
+               }
+            }
+
+            return new Key(dataSourceId, data.getClass(), values);
+         }
+         catch (IllegalAccessException ex)
+         {
+            throw new OrmException(ex.getMessage(), ex);
+         }
+         catch (InvocationTargetException ex)
+         {
+            throw new OrmException(ex.getMessage(), ex);
+         }
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return this.hash;
+      }
+
+      @Override
+      public boolean equals(Object obj)
+      {
+         if (this == obj)
+         {
+            return true;
+         }
+         if (!(obj instanceof Key))
+         {
+            return false;
+         }
+
+         Key other = (Key) obj;
+         return (this.ormClass == other.ormClass && this.dataSourceId.equals(other.dataSourceId) && Arrays.equals(this.values, other.values));
+      }
+   }
+
+   /**
+    * Representa la invalidacin de una instancia de la cach.<br />
+    * Dos invalidaciones de la misma instancia son iguales, de manera que una transaccin slo la repite una vez.
+    */
+   private static class Eviction implements Runnable
+   {
+      private final EntityCache cache;
+      private final Key key;
+
+      Eviction(EntityCache cache, Key key)
+      {
+         this.cache = cache;
+         this.key = key;
+      }
+
+      @Override
+      public void run()
+      {
+         this.cache.remove(this.key);
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return 31 * System.identityHashCode(this.cache) + this.key.hashCode();
+      }
+
+      @Override
+      public boolean equals(Object obj)
+      {
+         if (!(obj instanceof Eviction))
+         {
+            return false;
+         }
+
+         Eviction other = (Eviction) obj;
+         return (this.cache == other.cache && this.key.equals(other.key));
+      }
+   }
+
+   /**
+    * Representa una instancia guardada en la cach.
+    */
+   private static class Entry
+   {
+      final Object instance;
+      final long expires;
+
+      Entry(Object instance, long expires)
+      {
+         this.instance = instance;
+         this.expires = expires;
+      }
+   }
+}
@@ -0,0 +1,1034 @@
+package com.cosmo.orm;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.cosmo.orm.annotations.CormFieldSetter;
+import com.cosmo.orm.annotations.CormForeignKey;
+import com.cosmo.orm.annotations.CormObject;
+import com.cosmo.orm.annotations.CormObjectField;
+import com.cosmo.orm.annotations.CormObjectField.FieldSortType;
+import com.cosmo.orm.annotations.CormObjectFieldStaticList;
+
+/**
+ * Representa el mapeo de un objeto CORM (Cosmo ORM) obtenido a partir de sus anotaciones.
+ * <br /><br />
+ * Los metadatos de cada clase se obtienen una sola vez, la primera vez que se solicitan mediante
+ * {@link #get(Class)}, y se conservan en una cach compartida. De este modo los drivers, la factora y los controles
+ * no necesitan recorrer los mtodos de la clase ni leer sus anotaciones en cada operacin.
+ * <br /><br />
+ * Adems de las columnas (en el orden en que se declaran), las claves principales, las columnas de ordenacin y los
+ * mtodos de asignacin, los metadatos contienen los fragmentos SQL (listas de columnas, filtro por clave principal
+ * y ordenacin) que son comunes a todas las sentncias de la entidad.
+ * <br /><br />
+ * Los mtodos de acceso se hacen accesibles al obtener los metadatos y el tipo de datos de cada mtodo de asignacin 
+ * se resuelve una nica vez (ver {@link ValueType}), de manera que la lectura de cada fila (ver {@link EntityReader}) 
+ * no necesita volver a comprobar los tipos ni las anotaciones.
+ *
+ * @author Gerard Llort
+ */
+public class EntityMetadata
+{
+   /**
+    * Enumera los tipos de datos soportados por los mtodos de asignacin.
+    */
+   public enum ValueType
+   {
+      /** Texto ({@link String}) */
+      String,
+      /** Carcter ({@code char} o {@link Character}) */
+      Char,
+      /** Entero ({@code int} o {@link Integer}) */
+      Integer,
+      /** Entero largo ({@code long} o {@link Long}) */
+      Long,
+      /** Entero corto ({@code short} o {@link Short}) */
+      Short,
+      /** Byte ({@code byte} o {@link Byte}) */
+      Byte,
+      /** Decimal de doble precisin ({@code double} o {@link Double}) */
+      Double,
+      /** Decimal de precisin simple ({@code float} o {@link Float}) */
+      Float,
+      /** Decimal de precisin arbitraria ({@link BigDecimal}) */
+      BigDecimal,
+      /** Fecha ({@link Date}) */
+      Date,
+      /** Hora ({@link Time}) */
+      Time,
+      /** Fecha y hora ({@link Timestamp}) */
+      Timestamp,
+      /** Booleano ({@code boolean} o {@link Boolean}) */
+      Boolean,
+      /** Cualquier otro tipo (se lee mediante {@link ResultSet#getObject(int)}) */
+      Object
+   }
+
+   // Cach de metadatos por clase
+   private static final ConcurrentHashMap<Class<?>, EntityMetadata> cache = new ConcurrentHashMap<Class<?>, EntityMetadata>();
+
+   // Declaracin de variables locales
+   private final Class<?> ormClass;
+   private final CormObject cormObject;
+   private final Constructor<?> constructor;
+   private final List<Column> columns;
+   private final List<Column> gridColumns;
+   private final List<Column> primaryKeys;
+   private final List<Column> sortColumns;
+   private final List<Column> insertColumns;
+   private final List<Column> generatedColumns;
+   private final List<Column> upsertColumns;
+   private final List<Column> updateColumns;
+   private final List<Column> setColumns;
+   private final Column versionColumn;
+   private final Setter versionSetter;
+   private final List<Setter> setters;
+   private final HashMap<String, Column> columnsByName;
+   private final Column[] copyColumns;
+   private final Setter[] copySetters;
+   private final boolean copyable;
+   private final String columnList;
+   private final String selectList;
+   private final String gridSelectList;
+   private final String insertColumnList;
+   private final String insertValueList;
+   private final String updateSetList;
+   private final String keyFilter;
+   private final String orderBy;
+
+
+   //==============================================
+   // Constructors
+   //==============================================
+
+   /**
+    * Constructor de la clase {@link EntityMetadata}.<br />
+    * Para obtener los metadatos de una clase debe usarse {@link #get(Class)}.
+    *
+    * @param ormClass Una referencia a la clase.
+    */
+   private EntityMetadata(Class<?> ormClass)
+   {
+      ArrayList<Column> cols = new ArrayList<Column>();
+      ArrayList<Column> grid = new ArrayList<Column>();
+      ArrayList<Column> keys = new ArrayList<Column>();
+      ArrayList<Column> sorted = new ArrayList<Column>();
+      ArrayList<Column> inserts = new ArrayList<Column>();
+      ArrayList<Column> generated = new ArrayList<Column>();
+      ArrayList<Column> updates = new ArrayList<Column>();
+      ArrayList<Setter> sets = new ArrayList<Setter>();
+      Column version = null;
+
+      this.ormClass = ormClass;
+      this.cormObject = ormClass.getAnnotation(CormObject.class);
+      this.constructor = getDefaultConstructor(ormClass);
+
+      // Recorre los mtodos de la clase una nica vez
+      for (Method method : ormClass.getMethods())
+      {
+         CormObjectField cf = method.getAnnotation(CormObjectField.class);
+         if (cf != null)
+         {
+            Column column = new Column(method, cf);
+            cols.add(column);
+
+            if (cf.showInObjectListGrid())
+            {
+               grid.add(column);
+            }
+            if (cf.isPrimaryKey())
+            {
+               keys.add(column);
+            }
+            else if (cf.isVersion() && version == null)
+            {
+               version = column;
+            }
+            else
+            {
+               updates.add(column);
+            }
+            if (cf.sort() != FieldSortType.None)
+            {
+               sorted.add(column);
+            }
+            if (!cf.readOnly() && !cf.isAutogenerated())
+            {
+               inserts.add(column);
+            }
+            if (cf.isAutogenerated())
+            {
+               generated.add(column);
+            }
+         }
+
+         CormFieldSetter cfs = method.getAnnotation(CormFieldSetter.class);
+         if (cfs != null && method.getParameterTypes().length > 0)
+         {
+            method.setAccessible(true);
+            sets.add(new Setter(method, cfs));
+         }
+      }
+
+      // Las sentncias UPDATE usan primero los campos de la clusula SET y a continuacin los de la clave principal
+      this.setColumns = Collections.unmodifiableList(new ArrayList<Column>(updates));
+      updates.addAll(keys);
+
+      // Columna de versin (bloqueo optimista)
+      Setter versionSet = null;
+      for (Setter setter : sets)
+      {
+         if (version != null && setter.getName().equalsIgnoreCase(version.getName()))
+         {
+            versionSet = setter;
+         }
+      }
+      this.versionColumn = version;
+      this.versionSetter = versionSet;
+
+      this.columns = Collections.unmodifiableList(cols);
+      this.gridColumns = Collections.unmodifiableList(grid);
+      this.primaryKeys = Collections.unmodifiableList(keys);
+      this.sortColumns = Collections.unmodifiableList(sorted);
+      this.insertColumns = Collections.unmodifiableList(inserts);
+      this.generatedColumns = Collections.unmodifiableList(generated);
+
+      // Las sentncias UPSERT incluyen siempre la clave principal, que identifica el registro en conflicto
+      ArrayList<Column> upserts = new ArrayList<Column>(inserts);
+      for (Column key : keys)
+      {
+         if (!upserts.contains(key))
+         {
+            upserts.add(key);
+         }
+      }
+      this.upsertColumns = Collections.unmodifiableList(upserts);
+      this.updateColumns = Collections.unmodifiableList(updates);
+      this.setters = Collections.unmodifiableList(sets);
+
+      this.columnsByName = new HashMap<String, Column>();
+      for (Column column : cols)
+      {
+         this.columnsByName.put(column.getName().toLowerCase(), column);
+      }
+
+      // Parejas columna/mtodo de asignacin que permiten copiar el estado de una instancia
+      ArrayList<Column> copyCols = new ArrayList<Column>();
+      ArrayList<Setter> copySets = new ArrayList<Setter>();
+      boolean complete = !sets.isEmpty();
+      for (Setter setter : sets)
+      {
+         Column column = this.columnsByName.get(setter.getName().toLowerCase());
+         if (column != null && Setter.getValueType(column.getType()) == setter.getValueType() &&
+             (setter.getValueType() != ValueType.Object || setter.getType().isAssignableFrom(column.getType())))
+         {
+            copyCols.add(column);
+            copySets.add(setter);
+         }
+         else
+         {
+            complete = false;
+         }
+      }
+      this.copyColumns = copyCols.toArray(new Column[copyCols.size()]);
+      this.copySetters = copySets.toArray(new Setter[copySets.size()]);
+      this.copyable = complete;
+
+      // Fragmentos SQL
+      this.columnList = join(cols, false, "");
+      this.selectList = join(cols, true, "");
+      this.gridSelectList = join(grid, true, "");
+      this.insertColumnList = join(inserts, false, "");
+      this.insertValueList = repeat("?", ", ", inserts.size());
+      this.updateSetList = join(updates.subList(0, updates.size() - keys.size()), false, " = ?");
+      this.keyFilter = joinKeys(keys);
+      this.orderBy = joinSort(sorted);
+   }
+
+
+   //==============================================
+   // Properties
+   //==============================================
+
+   /**
+    * Devuelve la clase CORM.
+    */
+   public Class<?> getEntityClass()
+   {
+      return this.ormClass;
+   }
+
+   /**
+    * Indica si la clase es un objeto CORM vlido: dispone de la anotacin {@link CormObject} y de al menos una
+    * anotacin {@link CormObjectField}.
+    */
+   public boolean isValid()
+   {
+      return (this.cormObject != null && !this.columns.isEmpty());
+   }
+
+   /**
+    * Devuelve la anotacin {@link CormObject} de la clase o {@code null} si no es un objeto CORM.
+    */
+   public CormObject getCormObject()
+   {
+      return this.cormObject;
+   }
+
+   /**
+    * Devuelve el nombre de la tabla de base de datos o {@code null} si la clase no es un objeto CORM.
+    */
+   public String getTableName()
+   {
+      return (this.cormObject == null ? null : this.cormObject.dbTable());
+   }
+
+   /**
+    * Devuelve todas las columnas, en el orden en que se declaran.
+    */
+   public List<Column> getColumns()
+   {
+      return this.columns;
+   }
+
+   /**
+    * Devuelve una columna a partir de su nombre en la base de datos (sin distinguir maysculas y minsculas).
+    *
+    * @param name Nombre de la columna.
+    *
+    * @return La columna o {@code null} si el objeto no tiene ninguna columna con el nombre indicado.
+    */
+   public Column getColumn(String name)
+   {
+      return (name == null ? null : this.columnsByName.get(name.toLowerCase()));
+   }
+
+   /**
+    * Devuelve las columnas que se muestran en los listados de objetos.
+    */
+   public List<Column> getGridColumns()
+   {
+      return this.gridColumns;
+   }
+
+   /**
+    * Devuelve las columnas que forman la clave principal.
+    */
+   public List<Column> getPrimaryKeys()
+   {
+      return this.primaryKeys;
+   }
+
+   /**
+    * Indica si la clase tiene clave/s primaria/s definida/s.
+    */
+   public boolean hasPrimaryKey()
+   {
+      return !this.primaryKeys.isEmpty();
+   }
+
+   /**
+    * Devuelve las columnas por las que se ordenan los listados.
+    */
+   public List<Column> getSortColumns()
+   {
+      return this.sortColumns;
+   }
+
+   /**
+    * Indica si la clase dispone de columnas ordenadas.
+    */
+   public boolean hasSortedColumns()
+   {
+      return !this.sortColumns.isEmpty();
+   }
+
+   /**
+    * Devuelve las columnas que forman parte de una sentncia INSERT (se excluyen las de slo lectura y las autogeneradas).
+    */
+   public List<Column> getInsertColumns()
+   {
+      return this.insertColumns;
+   }
+
+   /**
+    * Devuelve las columnas que se actualizan en una sentncia UPDATE (todas excepto la clave principal y la columna de 
+    * versin).
+    */
+   public List<Column> getSetColumns()
+   {
+      return this.setColumns;
+   }
+
+   /**
+    * Devuelve la columna de versin usada para el bloqueo optimista o {@code null} si el objeto no la declara (ver 
+    * {@link CormObjectField#isVersion()}).
+    */
+   public Column getVersionColumn()
+   {
+      return this.versionColumn;
+   }
+
+   /**
+    * Devuelve las columnas cuyo valor genera la base de datos al insertar el registro.
+    */
+   public List<Column> getGeneratedColumns()
+   {
+      return this.generatedColumns;
+   }
+
+   /**
+    * Devuelve las columnas que forman parte de una sentncia UPSERT (las columnas de la sentncia INSERT seguidas de 
+    * las columnas de la clave principal que no formen parte de ellas).
+    */
+   public List<Column> getUpsertColumns()
+   {
+      return this.upsertColumns;
+   }
+
+   /**
+    * Devuelve las columnas que forman parte de una sentncia UPDATE: primero las de la clusula SET y a continuacin
+    * las de la clave principal (clusula WHERE).
+    */
+   public List<Column> getUpdateColumns()
+   {
+      return this.updateColumns;
+   }
+
+   /**
+    * Devuelve los mtodos de asignacin de valores (anotados con {@link CormFieldSetter}).
+    */
+   public List<Setter> getSetters()
+   {
+      return this.setters;
+   }
+
+   /**
+    * Devuelve la lista de todas las columnas separadas por comas (p. ej. {@code id, name}).
+    */
+   public String getColumnList()
+   {
+      return this.columnList;
+   }
+
+   /**
+    * Devuelve la lista de columnas de una consulta de listado, con sus etiquetas como alias
+    * (p. ej. {@code id As "Id", name As "Name"}).
+    *
+    * @param showAllColumns {@code true} incluye todas las columnas y {@code false} slo las que se muestran en los listados.
+    */
+   public String getSelectList(boolean showAllColumns)
+   {
+      return (showAllColumns ? this.selectList : this.gridSelectList);
+   }
+
+   /**
+    * Devuelve la lista de columnas de una sentncia INSERT (ver {@link #getInsertColumns()}).
+    */
+   public String getInsertColumnList()
+   {
+      return this.insertColumnList;
+   }
+
+   /**
+    * Devuelve la lista de parmetros de la clusula VALUES de una sentncia INSERT (p. ej. {@code ?, ?, ?}).
+    */
+   public String getInsertValueList()
+   {
+      return this.insertValueList;
+   }
+
+   /**
+    * Devuelve la lista de asignaciones de la clusula SET de una sentncia UPDATE (p. ej. {@code name = ?, date = ?}).
+    */
+   public String getUpdateSetList()
+   {
+      return this.updateSetList;
+   }
+
+   /**
+    * Devuelve la condicin que identifica un registro por su clave principal (p. ej. {@code id = ? AND code = ?}).
+    */
+   public String getKeyFilter()
+   {
+      return this.keyFilter;
+   }
+
+   /**
+    * Devuelve la lista de columnas de la clusula ORDER BY (p. ej. {@code name Asc, date Desc}) o una cadena vaca
+    * si no hay columnas ordenadas.
+    */
+   public String getOrderBy()
+   {
+      return this.orderBy;
+   }
+
+
+   //==============================================
+   // Methods
+   //==============================================
+
+   /**
+    * Crea una nueva instancia de la clase mediante su constructor sin parmetros.
+    *
+    * @return La nueva instancia.
+    *
+    * @throws OrmException
+    */
+   public Object newInstance() throws OrmException
+   {
+      if (this.constructor == null)
+      {
+         throw new OrmException(this.ormClass.getName() + " does not have a default constructor.");
+      }
+
+      try
+      {
+         return this.constructor.newInstance();
+      }
+      catch (Exception ex)
+      {
+         throw new OrmException(ex.getMessage(), ex);
+      }
+   }
+
+   /**
+    * Obtiene una instantnea de los valores de las columnas actualizables de una instancia (ver {@link #getSetColumns()}), 
+    * que permite conocer posteriormente qu columnas se han modificado (ver {@link #getDirtyColumns(Object, Object[])}).
+    *
+    * @param instance La instancia del objeto CORM.
+    *
+    * @return Los valores, en el mismo orden que {@link #getSetColumns()}.
+    *
+    * @throws OrmException
+    */
+   public Object[] getSnapshot(Object instance) throws OrmException
+   {
+      Object[] values = new Object[this.setColumns.size()];
+
+      try
+      {
+         for (int i = 0; i < values.length; i++)
+         {
+            Object value = this.setColumns.get(i).getValue(instance);
+
+            // Las fechas son mutables: se guarda una copia para detectar modificaciones sobre la misma instancia
+            values[i] = (value instanceof Date ? ((Date) value).clone() : value);
+         }
+      }
+      catch (IllegalAccessException ex)
+      {
+         throw new OrmException(ex.getMessage(), ex);
+      }
+      catch (InvocationTargetException ex)
+      {
+         throw new OrmException(ex.getMessage(), ex);
+      }
+
+      return values;
+   }
+
+   /**
+    * Obtiene las columnas actualizables cuyo valor ha cambiado respecto a una instantnea.
+    *
+    * @param instance La instancia del objeto CORM.
+    * @param snapshot La instantnea obtenida mediante {@link #getSnapshot(Object)}.
+    *
+    * @return Las columnas modificadas (vaca si no hay cambios).
+    *
+    * @throws OrmException
+    */
+   public List<Column> getDirtyColumns(Object instance, Object[] snapshot) throws OrmException
+   {
+      ArrayList<Column> dirty = new ArrayList<Column>();
+
+      try
+      {
+         for (int i = 0; i < snapshot.length; i++)
+         {
+            Object value = this.setColumns.get(i).getValue(instance);
+            if (value == null ? snapshot[i] != null : !value.equals(snapshot[i]))
+            {
+               dirty.add(this.setColumns.get(i));
+            }
+         }
+      }
+      catch (IllegalAccessException ex)
+      {
+         throw new OrmException(ex.getMessage(), ex);
+      }
+      catch (InvocationTargetException ex)
+      {
+         throw new OrmException(ex.getMessage(), ex);
+      }
+
+      return dirty;
+   }
+
+   /**
+    * Incrementa el valor de la columna de versin de una instancia, de la misma manera que lo hace la sentncia 
+    * UPDATE ({@code null} se considera 0).
+    *
+    * @param instance La instancia del objeto CORM.
+    *
+    * @throws OrmException
+    */
+   public void incrementVersion(Object instance) throws OrmException
+   {
+      if (this.versionColumn == null || this.versionSetter == null)
+      {
+         return;
+      }
+
+      try
+      {
+         Object current = this.versionColumn.getValue(instance);
+         long next = (current instanceof Number ? ((Number) current).longValue() : 0) + 1;
+
+         switch (this.versionSetter.getValueType())
+         {
+            case Long:       this.versionSetter.setValue(instance, next); break;
+            case Short:      this.versionSetter.setValue(instance, (short) next); break;
+            case BigDecimal: this.versionSetter.setValue(instance, BigDecimal.valueOf(next)); break;
+            default:         this.versionSetter.setValue(instance, (int) next); break;
+         }
+      }
+      catch (IllegalAccessException ex)
+      {
+         throw new OrmException(ex.getMessage(), ex);
+      }
+      catch (InvocationTargetException ex)
+      {
+         throw new OrmException(ex.getMessage(), ex);
+      }
+   }
+
+   /**
+    * Indica si el estado de una instancia puede copiarse completamente a otra mediante {@link #copy(Object, Object)}, 
+    * es decir, si cada mtodo de asignacin tiene una columna del mismo nombre y tipo de la que obtener el valor.
+    */
+   public boolean isCopyable()
+   {
+      return this.copyable;
+   }
+
+   /**
+    * Copia el valor de las columnas de una instancia a otra instancia de la misma clase.
+    *
+    * @param source La instancia de la que se obtienen los valores.
+    * @param target La instancia que recibe los valores.
+    *
+    * @throws OrmException
+    */
+   public void copy(Object source, Object target) throws OrmException
+   {
+      try
+      {
+         for (int i = 0; i < this.copySetters.length; i++)
+         {
+            this.copySetters[i].setValue(target, this.copyColumns[i].getValue(source));
+         }
+      }
+      catch (IllegalAccessException ex)
+      {
+         throw new OrmException(ex.getMessage(), ex);
+      }
+      catch (InvocationTargetException ex)
+      {
+         throw new OrmException(ex.getMessage(), ex);
+      }
+   }
+
+   /**
+    * Obtiene los metadatos de una clase.
+    *
+    * @param ormClass Una referencia a la clase CORM.
+    *
+    * @return La instancia de {@link EntityMetadata} correspondiente a la clase.
+    */
+   public static EntityMetadata get(Class<?> ormClass)
+   {
+      EntityMetadata metadata = cache.get(ormClass);
+
+      if (metadata == null)
+      {
+         // Si dos hilos la obtienen a la vez, ambos construyen los metadatos pero slo se conserva una instancia
+         metadata = new EntityMetadata(ormClass);
+         EntityMetadata existing = cache.putIfAbsent(ormClass, metadata);
+         if (existing != null)
+         {
+            metadata = existing;
+         }
+      }
+
+      return metadata;
+   }
+
+
+   //==============================================
+   // Private members
+   //==============================================
+
+   /**
+    * Obtiene el constructor sin parmetros de una clase (aunque no sea pblico).
+    */
+   private static Constructor<?> getDefaultConstructor(Class<?> ormClass)
+   {
+      for (Constructor<?> ctor : ormClass.getDeclaredConstructors())
+      {
+         if (ctor.getGenericParameterTypes().length == 0)
+         {
+            ctor.setAccessible(true);
+            return ctor;
+         }
+      }
+
+      return null;
+   }
+
+   /**
+    * Genera una lista de columnas separadas por comas.
+    *
+    * @param useLabels Indica si se debe agregar la etiqueta de cada columna como alias.
+    * @param suffix Texto que se agrega tras cada columna.
+    */
+   private static String join(List<Column> cols, boolean useLabels, String suffix)
+   {
+      StringBuilder sql = new StringBuilder();
+
+      for (Column column : cols)
+      {
+         sql.append((sql.length() == 0 ? "" : ", "));
+         sql.append(column.getName());
+         if (useLabels)
+         {
+            sql.append(" As \"").append(column.getLabel()).append("\"");
+         }
+         sql.append(suffix);
+      }
+
+      return sql.toString();
+   }
+
+   /**
+    * Genera la condicin de filtro por clave principal.
+    */
+   private static String joinKeys(List<Column> keys)
+   {
+      StringBuilder sql = new StringBuilder();
+
+      for (Column column : keys)
+      {
+         sql.append((sql.length() == 0 ? "" : " And "));
+         sql.append(column.getName());
+         sql.append(" = ?");
+      }
+
+      return sql.toString();
+   }
+
+   /**
+    * Genera la lista de columnas de la clusula ORDER BY.
+    */
+   private static String joinSort(List<Column> sorted)
+   {
+      StringBuilder sql = new StringBuilder();
+
+      for (Column column : sorted)
+      {
+         sql.append((sql.length() == 0 ? "" : ", "));
+         sql.append(column.getName());
+         sql.append(column.getSort() == FieldSortType.Descending ? " Desc" : " Asc");
+      }
+
+      return sql.toString();
+   }
+
+   /**
+    * Repite un texto separndolo con un separador.
+    */
+   private static String repeat(String text, String separator, int count)
+   {
+      StringBuilder sb = new StringBuilder();
+
+      for (int i = 0; i < count; i++)
+      {
+         sb.append((i == 0 ? "" : separator));
+         sb.append(text);
+      }
+
+      return sb.toString();
+   }
+
+
+   //==============================================
+   // Inner classes
+   //==============================================
+
+   /**
+    * Representa una columna (propiedad anotada con {@link CormObjectField}) de un objeto CORM.
+    */
+   public static class Column
+   {
+      private final Method getter;
+      private final CormObjectField field;
+      private final CormForeignKey foreignKey;
+      private final CormObjectFieldStaticList staticList;
+      private final String name;
+
+      Column(Method getter, CormObjectField field)
+      {
+         getter.setAccessible(true);
+
+         this.getter = getter;
+         this.field = field;
+         this.foreignKey = getter.getAnnotation(CormForeignKey.class);
+         this.staticList = getter.getAnnotation(CormObjectFieldStaticList.class);
+         this.name = field.dbTableColumn();
+      }
+
+      /**
+       * Devuelve el nombre de la columna en la base de datos.
+       */
+      public String getName()
+      {
+         return this.name;
+      }
+
+      /**
+       * Devuelve la etiqueta de la columna.
+       */
+      public String getLabel()
+      {
+         return this.field.label();
+      }
+
+      /**
+       * Devuelve la anotacin {@link CormObjectField} de la columna.
+       */
+      public CormObjectField getField()
+      {
+         return this.field;
+      }
+
+      /**
+       * Devuelve el mtodo que obtiene el valor de la columna.
+       */
+      public Method getGetter()
+      {
+         return this.getter;
+      }
+
+      /**
+       * Devuelve el tipo de datos (Java) de la columna.
+       */
+      public Class<?> getType()
+      {
+         return this.getter.getReturnType();
+      }
+
+      /**
+       * Devuelve la anotacin {@link CormForeignKey} de la columna o {@code null} si la columna no es una clave 
+       * externa.
+       */
+      public CormForeignKey getForeignKey()
+      {
+         return this.foreignKey;
+      }
+
+      /**
+       * Devuelve la anotacin {@link CormObjectFieldStaticList} de la columna o {@code null} si la columna no tiene 
+       * una lista de valores esttica.
+       */
+      public CormObjectFieldStaticList getStaticList()
+      {
+         return this.staticList;
+      }
+
+      /**
+       * Indica si el valor de la columna se muestra mediante la descripcin de un registro relacionado (clave 
+       * externa con descripcin o lista de valores esttica).
+       */
+      public boolean isRelation()
+      {
+         return (this.staticList != null || (this.foreignKey != null && !this.foreignKey.dbTableLabel().isEmpty()));
+      }
+
+      /**
+       * Indica si la columna forma parte de la clave principal.
+       */
+      public boolean isPrimaryKey()
+      {
+         return this.field.isPrimaryKey();
+      }
+
+      /**
+       * Devuelve el tipo de ordenacin de la columna en los listados.
+       */
+      public FieldSortType getSort()
+      {
+         return this.field.sort();
+      }
+
+      /**
+       * Obtiene el valor de la columna de una instancia.
+       *
+       * @param instance La instancia del objeto CORM.
+       *
+       * @throws IllegalAccessException
+       * @throws InvocationTargetException
+       */
+      public Object getValue(Object instance) throws IllegalAccessException, InvocationTargetException
+      {
+         return this.getter.invoke(instance);
+      }
+   }
+
+   /**
+    * Representa un mtodo de asignacin de valores (anotado con {@link CormFieldSetter}) de un objeto CORM.
+    */
+   public static class Setter
+   {
+      private final Method setter;
+      private final String name;
+      private final Class<?> type;
+      private final ValueType valueType;
+
+      Setter(Method setter, CormFieldSetter field)
+      {
+         this.setter = setter;
+         this.name = field.dbTableColumn();
+         this.type = setter.getParameterTypes()[0];
+         this.valueType = getValueType(this.type);
+      }
+
+      /**
+       * Devuelve el nombre de la columna en la base de datos.
+       */
+      public String getName()
+      {
+         return this.name;
+      }
+
+      /**
+       * Devuelve el tipo de datos (Java) del parmetro del mtodo.
+       */
+      public Class<?> getType()
+      {
+         return this.type;
+      }
+
+      /**
+       * Devuelve el tipo de datos resuelto del parmetro del mtodo.
+       */
+      public ValueType getValueType()
+      {
+         return this.valueType;
+      }
+
+      /**
+       * Indica si el parmetro del mtodo es de un tipo primitivo (no admite {@code null}).
+       */
+      public boolean isPrimitive()
+      {
+         return this.type.isPrimitive();
+      }
+
+      /**
+       * Devuelve el mtodo de asignacin.
+       */
+      public Method getMethod()
+      {
+         return this.setter;
+      }
+
+      /**
+       * Asigna el valor de la columna a una instancia.
+       *
+       * @param instance La instancia del objeto CORM.
+       * @param value El valor a asignar.
+       *
+       * @throws IllegalAccessException
+       * @throws InvocationTargetException
+       */
+      public void setValue(Object instance, Object value) throws IllegalAccessException, InvocationTargetException
+      {
+         this.setter.invoke(instance, value);
+      }
+
+      /**
+       * Lee el valor de una columna de la fila actual de una consulta con el tipo de datos del mtodo.<br />
+       * Los valores {@code NULL} se devuelven como {@code null}, salvo si el parmetro es de un tipo primitivo, en 
+       * cuyo caso se devuelve el valor por defecto del tipo.
+       *
+       * @param rs Una instancia de {@link ResultSet} posicionada en la fila a leer.
+       * @param column ndice (empezando por 1) de la columna.
+       *
+       * @throws SQLException
+       */
+      public Object read(ResultSet rs, int column) throws SQLException
+      {
+         Object value;
+
+         switch (this.valueType)
+         {
+            case String:     return rs.getString(column);
+            case Integer:    value = rs.getInt(column); break;
+            case Long:       value = rs.getLong(column); break;
+            case Short:      value = rs.getShort(column); break;
+            case Byte:       value = rs.getByte(column); break;
+            case Double:     value = rs.getDouble(column); break;
+            case Float:      value = rs.getFloat(column); break;
+            case Boolean:    value = rs.getBoolean(column); break;
+            case BigDecimal: return rs.getBigDecimal(column);
+            case Date:       return rs.getDate(column);
+            case Time:       return rs.getTime(column);
+            case Timestamp:  return rs.getTimestamp(column);
+            case Char:
+               String text = rs.getString(column);
+               if (text == null || text.length() == 0)
+               {
+                  return (isPrimitive() ? java.lang.Character.valueOf('\0') : null);
+               }
+               return java.lang.Character.valueOf(text.charAt(0));
+            default:         return rs.getObject(column);
+         }
+
+         return (!isPrimitive() && rs.wasNull() ? null : value);
+      }
+
+      /**
+       * Resuelve el tipo de datos de un parmetro.
+       */
+      private static ValueType getValueType(Class<?> type)
+      {
+         if (type == String.class)                                  return ValueType.String;
+         else if (type == char.class || type == Character.class)    return ValueType.Char;
+         else if (type == int.class || type == Integer.class)       return ValueType.Integer;
+         else if (type == long.class || type == Long.class)         return ValueType.Long;
+         else if (type == short.class || type == Short.class)       return ValueType.Short;
+         else if (type == byte.class || type == Byte.class)         return ValueType.Byte;
+         else if (type == double.class || type == Double.class)     return ValueType.Double;
+         else if (type == float.class || type == Float.class)       return ValueType.Float;
+         else if (type == boolean.class || type == Boolean.class)   return ValueType.Boolean;
+         else if (type == BigDecimal.class)                         return ValueType.BigDecimal;
+         else if (type == Time.class)                               return ValueType.Time;
+         else if (type == Timestamp.class)                          return ValueType.Timestamp;
+         else if (type == Date.class || type == java.sql.Date.class) return ValueType.Date;
+
+         return ValueType.Object;
+      }
+   }
+}
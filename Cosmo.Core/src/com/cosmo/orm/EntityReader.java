@@ -0,0 +1,186 @@
+package com.cosmo.orm;
+
+import java.lang.reflect.InvocationTargetException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import com.cosmo.orm.EntityMetadata.Column;
+import com.cosmo.orm.EntityMetadata.Setter;
+
+/**
+ * Implementa la lectura de las filas de una consulta en instancias de un objeto CORM.
+ * <br /><br />
+ * La correspondencia entre los mtodos de asignacin y las columnas de la consulta se resuelve una nica vez, al
+ * crear el lector: cada fila se lee por ndice de columna y con el tipo de datos ya resuelto de cada mtodo (ver
+ * {@link Setter#read(ResultSet, int)}). Un mismo lector puede usarse para todas las filas de una consulta o, si las
+ * columnas son siempre las mismas, para todas las consultas de una misma sentncia.
+ * <br /><br />
+ * Los mtodos de asignacin que no corresponden a ninguna columna de la consulta se ignoran.
+ *
+ * @author Gerard Llort
+ */
+public class EntityReader
+{
+   // Declaracin de variables locales
+   private final EntityMetadata metadata;
+   private final Setter[] setters;
+   private final int[] columns;
+
+
+   //==============================================
+   // Constructors
+   //==============================================
+
+   /**
+    * Constructor de la clase {@link EntityReader} para una consulta cuyas columnas se conocen de antemano.
+    *
+    * @param metadata Los metadatos del objeto CORM.
+    * @param selected Las columnas de la consulta, en el mismo orden en que aparecen en la clusula SELECT.
+    */
+   public EntityReader(EntityMetadata metadata, List<Column> selected)
+   {
+      HashMap<String, Integer> indexes = new HashMap<String, Integer>();
+
+      for (int i = 0; i < selected.size(); i++)
+      {
+         String name = selected.get(i).getName().toLowerCase();
+         if (!indexes.containsKey(name))
+         {
+            indexes.put(name, i + 1);
+         }
+      }
+
+      this.metadata = metadata;
+      ArrayList<Setter> mapped = new ArrayList<Setter>();
+      this.columns = resolve(metadata, indexes, mapped);
+      this.setters = mapped.toArray(new Setter[mapped.size()]);
+   }
+
+   /**
+    * Constructor de la clase {@link EntityReader} para una consulta cualquiera: las columnas se identifican por su
+    * nombre (o etiqueta) en los metadatos de la consulta.
+    *
+    * @param metadata Los metadatos del objeto CORM.
+    * @param rs Una instancia de {@link ResultSet} que contiene la consulta.
+    *
+    * @throws SQLException
+    */
+   public EntityReader(EntityMetadata metadata, ResultSet rs) throws SQLException
+   {
+      HashMap<String, Integer> indexes = new HashMap<String, Integer>();
+      ResultSetMetaData rsmd = rs.getMetaData();
+
+      for (int i = rsmd.getColumnCount(); i >= 1; i--)
+      {
+         // En caso de duplicados prevalece la primera columna (se recorren en orden inverso)
+         indexes.put(rsmd.getColumnName(i).toLowerCase(), i);
+         indexes.put(rsmd.getColumnLabel(i).toLowerCase(), i);
+      }
+
+      this.metadata = metadata;
+      ArrayList<Setter> mapped = new ArrayList<Setter>();
+      this.columns = resolve(metadata, indexes, mapped);
+      this.setters = mapped.toArray(new Setter[mapped.size()]);
+   }
+
+
+   //==============================================
+   // Properties
+   //==============================================
+
+   /**
+    * Devuelve los metadatos del objeto CORM.
+    */
+   public EntityMetadata getMetadata()
+   {
+      return this.metadata;
+   }
+
+
+   //==============================================
+   // Methods
+   //==============================================
+
+   /**
+    * Lee la fila actual de una consulta en una instancia existente.
+    *
+    * @param rs Una instancia de {@link ResultSet} posicionada en la fila a leer.
+    * @param instance La instancia del objeto CORM que recibe los valores.
+    *
+    * @throws SQLException
+    */
+   public void read(ResultSet rs, Object instance) throws SQLException
+   {
+      try
+      {
+         for (int i = 0; i < this.setters.length; i++)
+         {
+            this.setters[i].setValue(instance, this.setters[i].read(rs, this.columns[i]));
+         }
+      }
+      catch (IllegalAccessException ex)
+      {
+         throw new SQLException(ex.getMessage(), ex);
+      }
+      catch (InvocationTargetException ex)
+      {
+         throw new SQLException(ex.getMessage(), ex);
+      }
+   }
+
+   /**
+    * Lee la fila actual de una consulta en una nueva instancia.
+    *
+    * @param rs Una instancia de {@link ResultSet} posicionada en la fila a leer.
+    *
+    * @return La nueva instancia del objeto CORM.
+    *
+    * @throws SQLException
+    * @throws OrmException
+    */
+   public Object read(ResultSet rs) throws SQLException, OrmException
+   {
+      Object instance = this.metadata.newInstance();
+      read(rs, instance);
+
+      return instance;
+   }
+
+
+   //==============================================
+   // Private members
+   //==============================================
+
+   /**
+    * Obtiene el ndice de columna de cada mtodo de asignacin.
+    *
+    * @param indexes ndices de las columnas de la consulta por nombre (en minsculas).
+    * @param mapped Lista que recibe los mtodos de asignacin que tienen columna en la consulta.
+    */
+   private static int[] resolve(EntityMetadata metadata, HashMap<String, Integer> indexes, List<Setter> mapped)
+   {
+      ArrayList<Integer> found = new ArrayList<Integer>();
+
+      for (Setter setter : metadata.getSetters())
+      {
+         Integer index = indexes.get(setter.getName().toLowerCase());
+         if (index != null)
+         {
+            mapped.add(setter);
+            found.add(index);
+         }
+      }
+
+      int[] columns = new int[found.size()];
+      for (int i = 0; i < columns.length; i++)
+      {
+         columns[i] = found.get(i);
+      }
+
+      return columns;
+   }
+}
@@ -0,0 +1,149 @@
+package com.cosmo.orm;
+
+import java.util.HashMap;
+
+import javax.servlet.http.HttpServletRequest;
+
+import com.cosmo.Workspace;
+import com.cosmo.orm.EntityCache.Key;
+
+/**
+ * Implementa el mapa de identidades de una peticin: las instancias de objetos CORM obtenidas durante la peticin,
+ * identificadas por su clave principal.
+ * <br /><br />
+ * Mientras dura la peticin, {@link OrmFactory#get(Object)} devuelve siempre la misma instancia para una misma clave
+ * sin volver a consultar la base de datos, aunque se usen distintas instancias de {@link OrmFactory}. Las escrituras
+ * realizadas mediante {@link OrmFactory} descartan la instancia afectada.
+ * <br /><br />
+ * Junto con cada instancia se guarda una instantnea de sus valores al obtenerla, que permite a
+ * {@link OrmFactory#update(Object)} actualizar slo las columnas modificadas.
+ * <br /><br />
+ * El mapa se guarda como atributo de la peticin, de manera que se descarta al finalizar sta.
+ *
+ * @author Gerard Llort
+ */
+public class IdentityMap
+{
+   private static final String REQUEST_ATTRIBUTE = IdentityMap.class.getName();
+
+   // Declaracin de variables locales
+   private HashMap<Key, Object> objects;
+   private HashMap<Key, Object[]> snapshots;
+
+
+   //==============================================
+   // Constructors
+   //==============================================
+
+   /**
+    * Constructor de la clase {@link IdentityMap}.<br />
+    * Para obtener el mapa de una peticin debe usarse {@link #getInstance(Workspace)}.
+    */
+   private IdentityMap()
+   {
+      this.objects = new HashMap<Key, Object>();
+      this.snapshots = new HashMap<Key, Object[]>();
+   }
+
+
+   //==============================================
+   // Properties
+   //==============================================
+
+   /**
+    * Devuelve el nmero de instancias del mapa.
+    */
+   public int getCount()
+   {
+      return this.objects.size();
+   }
+
+
+   //==============================================
+   // Methods
+   //==============================================
+
+   /**
+    * Obtiene una instancia del mapa.
+    *
+    * @param key La clave de la instancia.
+    *
+    * @return La instancia o {@code null} si no se ha obtenido durante la peticin.
+    */
+   public Object get(Key key)
+   {
+      return this.objects.get(key);
+   }
+
+   /**
+    * Obtiene la instantnea de los valores de una instancia al obtenerla (ver {@link EntityMetadata#getSnapshot(Object)}).
+    *
+    * @param key La clave de la instancia.
+    * @param instance La instancia.
+    *
+    * @return La instantnea o {@code null} si la instancia no es la que contiene el mapa para la clave indicada.
+    */
+   public Object[] getSnapshot(Key key, Object instance)
+   {
+      return (this.objects.get(key) == instance ? this.snapshots.get(key) : null);
+   }
+
+   /**
+    * Agrega una instancia al mapa.
+    *
+    * @param key La clave de la instancia.
+    * @param instance La instancia.
+    * @param snapshot La instantnea de los valores de la instancia (ver {@link EntityMetadata#getSnapshot(Object)}).
+    */
+   public void put(Key key, Object instance, Object[] snapshot)
+   {
+      this.objects.put(key, instance);
+      this.snapshots.put(key, snapshot);
+   }
+
+   /**
+    * Descarta una instancia del mapa.
+    *
+    * @param key La clave de la instancia.
+    */
+   public void remove(Key key)
+   {
+      this.objects.remove(key);
+      this.snapshots.remove(key);
+   }
+
+   /**
+    * Descarta todas las instancias del mapa.
+    */
+   public void clear()
+   {
+      this.objects.clear();
+      this.snapshots.clear();
+   }
+
+   /**
+    * Obtiene el mapa de identidades de la peticin en curso.
+    *
+    * @param workspace Una instancia de {@link Workspace} que representa el contexto actual de la aplicacin.
+    *
+    * @return El mapa o {@code null} si el workspace no est asociado a ninguna peticin.
+    */
+   public static IdentityMap getInstance(Workspace workspace)
+   {
+      HttpServletRequest request = (workspace == null ? null : workspace.getServerRequest());
+
+      if (request == null)
+      {
+         return null;
+      }
+
+      IdentityMap map = (IdentityMap) request.getAttribute(IdentityMap.REQUEST_ATTRIBUTE);
+      if (map == null)
+      {
+         map = new IdentityMap();
+         request.setAttribute(IdentityMap.REQUEST_ATTRIBUTE, map);
+      }
+
+      return map;
+   }
+}
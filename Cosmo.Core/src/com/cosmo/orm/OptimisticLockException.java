@@ -0,0 +1,36 @@
+package com.cosmo.orm;
+
+/**
+ * Excepcin que indica que no se ha podido actualizar un objeto CORM porque el registro ha sido modificado (o 
+ * eliminado) por otro usuario desde que se obtuvo (ver {@link com.cosmo.orm.annotations.CormObjectField#isVersion()}).
+ * 
+ * @author Gerard Llort
+ */
+public class OptimisticLockException extends OrmException
+{
+   /** Serial Version UID */
+   private static final long serialVersionUID = -2741068360932471512L;
+
+
+   //==============================================
+   // Contructors
+   //==============================================
+
+   /**
+    * Constructor de la clase {@link OptimisticLockException}.
+    */
+   public OptimisticLockException() 
+   { 
+      super(); 
+   }
+
+   /**
+    * Constructor de la clase {@link OptimisticLockException}.
+    * 
+    * @param msg Mensaje descriptivo de la excepcin.
+    */
+   public OptimisticLockException(String msg) 
+   { 
+      super(msg); 
+   }
+}
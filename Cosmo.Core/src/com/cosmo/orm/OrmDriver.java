@@ -2,9 +2,14 @@ package com.cosmo.orm;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 
 import com.cosmo.data.DataAgent;
 import com.cosmo.data.DataException;
+import com.cosmo.orm.EntityMetadata.Column;
+import com.cosmo.orm.annotations.CormForeignKey;
 
 /**
  * Declara una clase abstracta que debe servir como base para la implementacin de drivers ORM para Cosmo (CORM).
@@ -83,6 +88,55 @@ public abstract class OrmDriver
       return select(ormObject, true);
    }
 
+   /**
+    * Genera una sentncia SELECT a partir de un objeto CORM que selecciona los registros que cumplen unos criterios 
+    * (filtros, ordenacin y paginacin).
+    * 
+    * @param ormClass Una referencia a un objeto CORM (clase POJO que est anotada con anotaciones CORM).
+    * @param query Una instancia de {@link OrmQuery} que contiene los criterios de la consulta.
+    * 
+    * @return Una instancia de {@link ResultSet} que contiene los datos obtenidos en la consulta.
+    * 
+    * @throws InvalidMappingException
+    * @throws DataException 
+    * @throws SQLException 
+    * @throws Exception 
+    */
+   public abstract ResultSet select(Class<?> ormClass, OrmQuery query) throws InvalidMappingException, SQLException, DataException, Exception;
+
+   /**
+    * Obtiene el nmero total de registros de un objeto CORM que cumplen los filtros de una consulta (la ordenacin y 
+    * la paginacin se ignoran).
+    * 
+    * @param ormClass Una referencia a un objeto CORM (clase POJO que est anotada con anotaciones CORM).
+    * @param query Una instancia de {@link OrmQuery} que contiene los criterios de la consulta o {@code null} para 
+    *    contar todos los registros.
+    * 
+    * @return El nmero de registros.
+    * 
+    * @throws InvalidMappingException
+    * @throws DataException 
+    * @throws SQLException 
+    * @throws Exception 
+    */
+   public abstract int count(Class<?> ormClass, OrmQuery query) throws InvalidMappingException, SQLException, DataException, Exception;
+
+   /**
+    * Obtiene las descripciones de los registros relacionados mediante una clave externa.<br />
+    * Los registros se obtienen con una sola consulta ({@code WHERE campo IN (...)}) para todos los valores, en lugar 
+    * de una consulta por valor.
+    * 
+    * @param foreignKey La anotacin {@link CormForeignKey} que describe la relacin.
+    * @param keys Los valores (distintos y no nulos) de la clave externa.
+    * 
+    * @return Un mapa con la descripcin de cada registro encontrado, indexado por el valor (como texto) de la clave.
+    * 
+    * @throws DataException 
+    * @throws SQLException 
+    * @throws Exception 
+    */
+   public abstract HashMap<String, String> getLabels(CormForeignKey foreignKey, Collection<?> keys) throws SQLException, DataException, Exception;
+
    /**
     * Obtiene un registro a partir de una instancia de un objeto CORM.
     * 
@@ -134,6 +188,74 @@ public abstract class OrmDriver
     */
    public abstract void update(Object data) throws InvalidMappingException, SQLException, DataException, Exception;
 
+   /**
+    * Actualiza slo algunas columnas del registro de la tabla de datos que indica el valor asociado a/los campo/s 
+    * identificador/es.
+    * 
+    * @param data Una instancia de un objeto CORM que contiene los datos para la actualizacin.
+    * @param columns Las columnas a actualizar (ver {@link EntityMetadata#getDirtyColumns(Object, Object[])}).
+    * 
+    * @throws Exception 
+    * @throws DataException 
+    * @throws SQLException 
+    * @throws InvalidMappingException 
+    */
+   public abstract void update(Object data, List<Column> columns) throws InvalidMappingException, SQLException, DataException, Exception;
+
+   /**
+    * Inserta un registro o, si ya existe un registro con la misma clave principal, lo actualiza, mediante una nica 
+    * sentncia atmica.<br />
+    * Los campos autogenerados se establecen en la instancia con los valores asignados por la base de datos.
+    * 
+    * @param data Una instancia de un objeto CORM con todos los campos de la clave principal establecidos.
+    * 
+    * @throws Exception 
+    * @throws DataException 
+    * @throws SQLException 
+    * @throws InvalidMappingException 
+    */
+   public abstract void upsert(Object data) throws InvalidMappingException, SQLException, DataException, Exception;
+
+   /**
+    * Inserta un conjunto de instancias de un objeto CORM.<br />
+    * La implementacin por defecto inserta los objetos uno a uno; los drivers pueden sobrescribir este mtodo para 
+    * enviar las sentncias por lotes.
+    * 
+    * @param data Coleccin de instancias a insertar.
+    * 
+    * @throws InvalidMappingException
+    * @throws DataException 
+    * @throws SQLException 
+    * @throws Exception 
+    */
+   public void insertAll(Collection<?> data) throws InvalidMappingException, SQLException, DataException, Exception
+   {
+      for (Object item : data)
+      {
+         insert(item);
+      }
+   }
+
+   /**
+    * Actualiza un conjunto de instancias de un objeto CORM.<br />
+    * La implementacin por defecto actualiza los objetos uno a uno; los drivers pueden sobrescribir este mtodo para 
+    * enviar las sentncias por lotes.
+    * 
+    * @param data Coleccin de instancias a actualizar.
+    * 
+    * @throws InvalidMappingException
+    * @throws DataException 
+    * @throws SQLException 
+    * @throws Exception 
+    */
+   public void updateAll(Collection<?> data) throws InvalidMappingException, SQLException, DataException, Exception
+   {
+      for (Object item : data)
+      {
+         update(item);
+      }
+   }
+
 
    //==============================================
    // Properties
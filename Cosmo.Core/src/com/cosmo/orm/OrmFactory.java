@@ -2,10 +2,15 @@ package com.cosmo.orm;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -13,11 +18,15 @@ import com.cosmo.Workspace;
 import com.cosmo.data.DataAgent;
 import com.cosmo.data.DataException;
 import com.cosmo.data.DataFactory;
+import com.cosmo.data.TransactionCallback;
 import com.cosmo.net.HttpRequestUtils;
-import com.cosmo.orm.annotations.CormFieldSetter;
+import com.cosmo.orm.EntityMetadata.Column;
+import com.cosmo.orm.EntityMetadata.Setter;
+import com.cosmo.orm.OrmServiceProperties.CacheSettings;
 import com.cosmo.orm.annotations.CormObject;
 import com.cosmo.orm.annotations.CormObjectField;
-import com.cosmo.orm.annotations.CormObjectField.FieldSortType;
+import com.cosmo.orm.annotations.CormObjectFieldStaticList;
+import com.cosmo.util.GridData;
 
 /**
  * Implementa un acceso uniforme a los drivers CORM.<br />
@@ -27,8 +36,14 @@ import com.cosmo.orm.annotations.CormObjectField.FieldSortType;
  */
 public class OrmFactory 
 {
+   // Cachs compartidas de objetos CORM (por conexin y clase), comunes a todas las versiones de la configuracin
+   private static final ConcurrentHashMap<String, EntityCache> entityCaches = new ConcurrentHashMap<String, EntityCache>();
+
    // Declaracin de variables locales
    OrmDriver driver;
+   OrmDriver readDriver;
+   private String dataSourceId;
+   private Workspace workspace;
 
 
    //==============================================
@@ -43,7 +58,10 @@ public class OrmFactory
     */
    public OrmFactory(String dataSourceId, Workspace workspace) throws OrmDriverException
    {
+      this.dataSourceId = dataSourceId;
+      this.workspace = workspace;
       this.driver = loadDriver(dataSourceId, workspace);
+      this.readDriver = null;
    }
 
 
@@ -82,7 +100,7 @@ public class OrmFactory
     */
    public ResultSet select(Class<?> ormObject) throws InvalidMappingException, SQLException, DataException, Exception
    {
-      return driver.select(ormObject);
+      return getReadDriver().select(ormObject);
    }
 
    /**
@@ -99,29 +117,199 @@ public class OrmFactory
     */
    public ResultSet select(Class<?> ormObject, boolean showAllColumns) throws InvalidMappingException, SQLException, DataException, Exception
    {
-      return driver.select(ormObject, showAllColumns);
+      return getReadDriver().select(ormObject, showAllColumns);
    }
 
    /**
-    * Genera una sentncia SELECT a partir de una instancia de un objeto CORM.
+    * Obtiene los registros que cumplen unos criterios (filtros, ordenacin y paginacin).
     * 
     * @param ormObject Una referencia a un objeto CORM (clase POJO que est anotada con anotaciones CORM).
+    * @param query Una instancia de {@link OrmQuery} que contiene los criterios de la consulta.
     * 
     * @return Una instancia de {@link ResultSet} que contiene los datos obtenidos en la consulta.
     * 
     * @throws InvalidMappingException
-    * @throws ClassNotFoundException 
+    * @throws SQLException
+    * @throws DataException
+    * @throws Exception
+    */
+   public ResultSet select(Class<?> ormObject, OrmQuery query) throws InvalidMappingException, SQLException, DataException, Exception
+   {
+      return getReadDriver().select(ormObject, query);
+   }
+
+   /**
+    * Obtiene el nmero total de registros que cumplen los filtros de una consulta.
+    * 
+    * @param ormObject Una referencia a un objeto CORM (clase POJO que est anotada con anotaciones CORM).
+    * @param query Una instancia de {@link OrmQuery} que contiene los criterios de la consulta o {@code null} para 
+    *    contar todos los registros.
+    * 
+    * @return El nmero de registros.
+    * 
+    * @throws InvalidMappingException
+    * @throws SQLException
+    * @throws DataException
+    * @throws Exception
+    */
+   public int count(Class<?> ormObject, OrmQuery query) throws InvalidMappingException, SQLException, DataException, Exception
+   {
+      return getReadDriver().count(ormObject, query);
+   }
+
+   /**
+    * Obtiene las descripciones de los valores de una columna relacionada (clave externa con descripcin o lista de 
+    * valores esttica) para un conjunto de registros.<br />
+    * Las claves externas se resuelven con una sola consulta para todos los valores, de manera que un listado de N 
+    * registros no precisa N consultas adicionales.
+    * 
+    * @param ormObject Una referencia a un objeto CORM (clase POJO que est anotada con anotaciones CORM).
+    * @param column Nombre de la columna en la base de datos.
+    * @param values Los valores de la columna (p. ej. de todas las instancias de una pgina de resultados).
+    * 
+    * @return Un mapa con la descripcin de cada valor encontrado, indexado por el valor (como texto).
+    * 
+    * @throws InvalidMappingException
+    * @throws SQLException
+    * @throws DataException
+    * @throws Exception
+    */
+   public HashMap<String, String> getRelatedLabels(Class<?> ormObject, String column, Collection<?> values) throws InvalidMappingException, SQLException, DataException, Exception
+   {
+      Column col = EntityMetadata.get(ormObject).getColumn(column);
+
+      if (col == null)
+      {
+         throw new InvalidMappingException(ormObject.getName() + " does not have a column named '" + column + "'.");
+      }
+
+      return getRelatedLabels(col, values);
+   }
+
+   /**
+    * Sustituye los valores de las columnas relacionadas (clave externa con descripcin o lista de valores esttica) 
+    * de un listado por sus descripciones.<br />
+    * Se realiza una sola consulta por relacin para todas las filas del listado. Las columnas que forman parte de 
+    * la clave principal no se modifican, ya que identifican las filas.
+    * 
+    * @param ormObject Una referencia a un objeto CORM (clase POJO que est anotada con anotaciones CORM).
+    * @param data Una instancia de {@link GridData} que contiene el listado (la primera fila contiene los ttulos y 
+    *    las columnas deben tener establecido el nombre del campo, ver {@link GridData#setColumnField(int, String)}).
+    * 
+    * @throws InvalidMappingException
+    * @throws SQLException
+    * @throws DataException
+    * @throws Exception
+    */
+   public void resolveRelations(Class<?> ormObject, GridData data) throws InvalidMappingException, SQLException, DataException, Exception
+   {
+      EntityMetadata metadata = EntityMetadata.get(ormObject);
+
+      for (int col = 0; col < data.getColumnCount(); col++)
+      {
+         Column column = metadata.getColumn(data.getColumnField(col));
+         if (column == null || !column.isRelation() || data.isColumnPrimaryKey(col))
+         {
+            continue;
+         }
+
+         // Obtiene los valores distintos de la columna
+         LinkedHashSet<Object> values = new LinkedHashSet<Object>();
+         for (int row = 1; row < data.getRowCount(); row++)
+         {
+            Object value = data.getCell(row, col);
+            if (value != null)
+            {
+               values.add(value);
+            }
+         }
+         if (values.isEmpty())
+         {
+            continue;
+         }
+
+         // Sustituye los valores por sus descripciones
+         HashMap<String, String> labels = getRelatedLabels(column, values);
+         for (int row = 1; row < data.getRowCount(); row++)
+         {
+            Object value = data.getCell(row, col);
+            String label = (value == null ? null : labels.get(value.toString()));
+            if (label != null)
+            {
+               data.setCell(row, col, label);
+            }
+         }
+      }
+   }
+
+   /**
+    * Obtiene una instancia de un objeto CORM a partir de los valores de su clave principal.
+    * <br /><br />
+    * Durante una misma peticin se devuelve siempre la misma instancia para una misma clave (ver {@link IdentityMap}). 
+    * Si el objeto tiene declarada una cach compartida (ver {@link EntityCache}), la instancia se obtiene de ella 
+    * antes de consultar la base de datos. Las instancias que se guardan en la cach compartida se leen siempre de la 
+    * conexin primaria, ya que una rplica podra devolver datos anteriores a una escritura reciente.
+    * 
+    * @param data Una instancia del objeto CORM con todos los campos de la clave principal establecidos.
+    * 
+    * @return La instancia con los datos del registro o {@code null} si el registro no existe.
+    * 
+    * @throws InvalidMappingException
     * @throws DataException 
     * @throws SQLException 
     * @throws Exception 
     */
    public Object get(Object data) throws InvalidMappingException, SQLException, DataException, Exception
    {
-      return driver.get(data);
+      EntityCache.Key key = EntityCache.Key.create(dataSourceId, data);
+      if (key == null)
+      {
+         return getReadDriver().get(data);
+      }
+
+      // Busca la instancia en el mapa de identidades de la peticin
+      IdentityMap map = IdentityMap.getInstance(workspace);
+      Object instance = (map != null ? map.get(key) : null);
+      if (instance != null)
+      {
+         return instance;
+      }
+
+      // Busca la instancia en la cach compartida y, si no est, la obtiene de la base de datos
+      EntityCache cache = getEntityCache(data.getClass());
+      if (cache != null)
+      {
+         instance = cache.get(key, data);
+      }
+      if (instance == null)
+      {
+         if (cache != null)
+         {
+            long generation = cache.getGeneration();
+            instance = driver.get(data);
+            if (instance != null)
+            {
+               cache.put(key, instance, generation);
+            }
+         }
+         else
+         {
+            instance = getReadDriver().get(data);
+         }
+      }
+
+      if (instance != null && map != null)
+      {
+         map.put(key, instance, EntityMetadata.get(instance.getClass()).getSnapshot(instance));
+      }
+
+      return instance;
    }
 
    /**
-    * Genera una sentncia INSERT INTO a partir de una instancian de clase.
+    * Genera una sentncia INSERT INTO a partir de una instancian de clase.<br />
+    * Los campos autogenerados (p. ej. la clave principal) se establecen en la instancia con los valores asignados por 
+    * la base de datos.
     * 
     * @param data Clase que contiene los datos a insertar.
     * 
@@ -133,14 +321,23 @@ public class OrmFactory
    public void insert(Object data) throws InvalidMappingException, SQLException, DataException, Exception 
    {
       driver.insert(data);
+      invalidateQueryCache(data.getClass());
+      invalidateEntity(data);
    }
 
    /**
     * Actualiza la informacin del registro de la tabla de datos que indica el valor asociado a/los campo/s identificador/es.
+    * <br /><br />
+    * Si la instancia se ha obtenido mediante {@link #get(Object)} durante la peticin actual, slo se actualizan las 
+    * columnas cuyo valor ha cambiado desde entonces (si no ha cambiado ninguna, no se accede a la base de datos). En 
+    * caso contrario se actualizan todas las columnas.
+    * <br /><br />
+    * Si el objeto declara una columna de versin (ver {@link CormObjectField#isVersion()}), la actualizacin falla 
+    * con {@link OptimisticLockException} si el registro ha sido modificado desde que se obtuvo.
     * 
-    * @param ormClass Una referencia a un objeto CORM (clase POJO que est anotada con anotaciones CORM).
-    * @param request Una instancia de {@link HttpServletRequest} que contiene los datos (parmetros) usados para ejecutar la sentncia UPDATE.
+    * @param data Una instancia de un objeto CORM que contiene los datos para la actualizacin.
     * 
+    * @throws OptimisticLockException
     * @throws Exception 
     * @throws DataException 
     * @throws SQLException 
@@ -148,7 +345,52 @@ public class OrmFactory
     */
    public void update(Object data) throws InvalidMappingException, SQLException, DataException, Exception
    {
-      driver.update(data);
+      EntityMetadata metadata = EntityMetadata.get(data.getClass());
+      EntityCache.Key key = EntityCache.Key.create(dataSourceId, data);
+      IdentityMap map = (key != null ? IdentityMap.getInstance(workspace) : null);
+      Object[] snapshot = (map != null ? map.getSnapshot(key, data) : null);
+
+      if (snapshot == null)
+      {
+         driver.update(data);
+      }
+      else
+      {
+         List<Column> dirty = metadata.getDirtyColumns(data, snapshot);
+         if (dirty.isEmpty())
+         {
+            return;
+         }
+
+         driver.update(data, dirty);
+      }
+
+      invalidateQueryCache(data.getClass());
+      invalidateEntity(data);
+
+      // La instancia sigue siendo la de la peticin, con los valores que se acaban de guardar
+      if (snapshot != null)
+      {
+         map.put(key, data, metadata.getSnapshot(data));
+      }
+   }
+
+   /**
+    * Inserta un registro o, si ya existe un registro con la misma clave principal, lo actualiza, mediante una nica 
+    * sentncia atmica (sin consultar previamente si el registro existe).
+    * 
+    * @param data Una instancia de un objeto CORM con todos los campos de la clave principal establecidos.
+    * 
+    * @throws Exception 
+    * @throws DataException 
+    * @throws SQLException 
+    * @throws InvalidMappingException 
+    */
+   public void upsert(Object data) throws InvalidMappingException, SQLException, DataException, Exception
+   {
+      driver.upsert(data);
+      invalidateQueryCache(data.getClass());
+      invalidateEntity(data);
    }
 
    /**
@@ -164,6 +406,70 @@ public class OrmFactory
    public void delete(Object data) throws InvalidMappingException, SQLException, DataException, Exception
    {
       driver.delete(data);
+      invalidateQueryCache(data.getClass());
+      invalidateEntity(data);
+   }
+
+   /**
+    * Ejecuta una unidad de trabajo en una transaccin.
+    * <br /><br />
+    * Todas las operaciones realizadas durante la unidad de trabajo con esta instancia (o con cualquier otra que use 
+    * la misma conexin) comparten la misma conexin y transaccin, que se confirma al finalizar o se descarta si se 
+    * produce una excepcin.
+    * 
+    * @param callback Una instancia de {@link TransactionCallback} que implementa la unidad de trabajo.
+    * 
+    * @return El resultado de la unidad de trabajo.
+    * 
+    * @throws DataException
+    */
+   public <T> T withTransaction(TransactionCallback<T> callback) throws DataException
+   {
+      return driver.getConnection().withTransaction(callback);
+   }
+
+   /**
+    * Inserta un conjunto de instancias de un objeto CORM.<br />
+    * Las sentncias se envan a la base de datos por lotes (parmetro {@code batch.size} de la conexin) en una nica 
+    * transaccin.
+    * 
+    * @param data Coleccin de instancias (de la misma clase CORM) a insertar.
+    * 
+    * @throws InvalidMappingException
+    * @throws DataException 
+    * @throws SQLException 
+    * @throws Exception 
+    */
+   public void insertAll(Collection<?> data) throws InvalidMappingException, SQLException, DataException, Exception 
+   {
+      driver.insertAll(data);
+      invalidateQueryCache(data);
+      for (Object item : data)
+      {
+         invalidateEntity(item);
+      }
+   }
+
+   /**
+    * Actualiza un conjunto de instancias de un objeto CORM.<br />
+    * Las sentncias se envan a la base de datos por lotes (parmetro {@code batch.size} de la conexin) en una nica 
+    * transaccin.
+    * 
+    * @param data Coleccin de instancias (de la misma clase CORM) a actualizar.
+    * 
+    * @throws InvalidMappingException
+    * @throws DataException 
+    * @throws SQLException 
+    * @throws Exception 
+    */
+   public void updateAll(Collection<?> data) throws InvalidMappingException, SQLException, DataException, Exception 
+   {
+      driver.updateAll(data);
+      invalidateQueryCache(data);
+      for (Object item : data)
+      {
+         invalidateEntity(item);
+      }
    }
 
 
@@ -171,6 +477,14 @@ public class OrmFactory
    // Static members
    //==============================================
 
+   /**
+    * Devuelve las cachs compartidas de objetos CORM creadas hasta el momento (p. ej. para consultar sus estadsticas).
+    */
+   public static Collection<EntityCache> getEntityCaches()
+   {
+      return Collections.unmodifiableCollection(entityCaches.values());
+   }
+
    /**
     * Recupera una instancia desde la URL.
     * 
@@ -188,70 +502,61 @@ public class OrmFactory
     */
    public static Object getObjectFromRequest(Class<?> ormClass, HttpServletRequest request) throws InvalidMappingException, OrmException
    {
-      Object instance = null;
-      CormFieldSetter cfs;
-      Class<?> paramType;
+      Object instance;
+      EntityMetadata metadata = EntityMetadata.get(ormClass);
 
       // Comprueba si el objeto proporcionado es un objeto CORM vlido
-      if (!OrmFactory.isValidCormObject(ormClass))
+      if (!metadata.isValid())
       {
          throw new InvalidMappingException(ormClass.getName() + " is not a CORM object.");
       }
 
       // Genera la instancia de la clase
-      try
-      {
-         Constructor<?>[] ctors = ormClass.getDeclaredConstructors();
-         for (Constructor<?> ctor : ctors)
-         {
-            if (ctor.getGenericParameterTypes().length == 0)
-            {
-               ctor.setAccessible(true);
-               instance = ctor.newInstance();
-            }
-         }
-      }
-      catch (Exception ex)
-      {
-         throw new OrmException(ex.getMessage(), ex);
-      }
+      instance = metadata.newInstance();
 
       // Establece los valores de las propiedades con el contenido de los parmetros contenidos en el Request
       try
       {
-         for (Method method : ormClass.getMethods())
+         for (Setter setter : metadata.getSetters())
          {
-            if (method.isAnnotationPresent(CormFieldSetter.class))
+            String name = setter.getName();
+
+            // Establece el valor segn el tipo de datos (resuelto en los metadatos)
+            switch (setter.getValueType())
             {
-               method.setAccessible(true);
-               cfs = method.getAnnotation(CormFieldSetter.class);
-               paramType = method.getParameterTypes()[0];
-
-               // Establece el valor segn el tipo de datos
-               if ((paramType == String.class) || (paramType == char.class))
-               {
-                  method.invoke(instance, HttpRequestUtils.getValue(request, cfs.dbTableColumn(), ""));
-               }
-               else if ((paramType == Integer.class) || (paramType == int.class) || 
-                        (paramType == Long.class) || (paramType == long.class) || 
-                        (paramType == Short.class) || (paramType == short.class) || 
-                        (paramType == Byte.class) || (paramType == byte.class))
-               {
-                  method.invoke(instance, HttpRequestUtils.getInt(request, cfs.dbTableColumn()));
-               }
-               else if ((paramType == Float.class) || (paramType == float.class) || 
-                        (paramType == Double.class) || (paramType == double.class))
-               {
-                  method.invoke(instance, HttpRequestUtils.getDouble(request, cfs.dbTableColumn()));
-               }
-               else if ((paramType == Boolean.class) || (paramType == boolean.class))
-               {
-                  method.invoke(instance, HttpRequestUtils.getBoolean(request, cfs.dbTableColumn()));
-               }
-               else if (paramType == Date.class)
-               {
-                  method.invoke(instance, HttpRequestUtils.getDate(request, cfs.dbTableColumn()));
-               }
+               case String:
+                  setter.setValue(instance, HttpRequestUtils.getValue(request, name, ""));
+                  break;
+               case Char:
+                  String text = HttpRequestUtils.getValue(request, name, "");
+                  setter.setValue(instance, text.length() > 0 ? text.charAt(0) : '\0');
+                  break;
+               case Integer:
+                  setter.setValue(instance, HttpRequestUtils.getInt(request, name));
+                  break;
+               case Long:
+                  setter.setValue(instance, HttpRequestUtils.getInt(request, name).longValue());
+                  break;
+               case Short:
+                  setter.setValue(instance, HttpRequestUtils.getInt(request, name).shortValue());
+                  break;
+               case Byte:
+                  setter.setValue(instance, HttpRequestUtils.getInt(request, name).byteValue());
+                  break;
+               case Double:
+                  setter.setValue(instance, HttpRequestUtils.getDouble(request, name));
+                  break;
+               case Float:
+                  setter.setValue(instance, HttpRequestUtils.getDouble(request, name).floatValue());
+                  break;
+               case Boolean:
+                  setter.setValue(instance, HttpRequestUtils.getBoolean(request, name));
+                  break;
+               case Date:
+                  setter.setValue(instance, HttpRequestUtils.getDate(request, name));
+                  break;
+               default:
+                  break;
             }
          }
       }
@@ -275,18 +580,7 @@ public class OrmFactory
     */
    public static boolean isValidCormObject(Class<?> ormClass)
    {
-      if (!ormClass.isAnnotationPresent(CormObject.class))
-      {
-         return false;
-      }
-
-      boolean isValid = false;
-      for (Method method : ormClass.getMethods())
-      {
-         isValid = isValid || method.isAnnotationPresent(CormObjectField.class);
-      }
-
-      return isValid;
+      return EntityMetadata.get(ormClass).isValid();
    }
 
    /**
@@ -300,10 +594,10 @@ public class OrmFactory
     */
    public static String getDbTableName(Class<?> ormClass) throws InvalidMappingException
    {
-      CormObject co = ormClass.getAnnotation(CormObject.class);
-      if (co != null)
+      String table = EntityMetadata.get(ormClass).getTableName();
+      if (table != null)
       {
-         return co.dbTable();
+         return table;
       }
 
       throw new InvalidMappingException(ormClass.getName() + " is not a CORM object.");
@@ -318,21 +612,9 @@ public class OrmFactory
     */
    public static boolean havePrimaryKey(Class<?> ormClass)
    {
-      if (!ormClass.isAnnotationPresent(CormObject.class))
-      {
-         return false;
-      }
+      EntityMetadata metadata = EntityMetadata.get(ormClass);
 
-      boolean isValid = false;
-      for (Method method : ormClass.getMethods())
-      {
-         if (method.isAnnotationPresent(CormObjectField.class))
-         {
-            isValid = isValid || method.getAnnotation(CormObjectField.class).isPrimaryKey();
-         }
-      }
-
-      return isValid;
+      return (metadata.getCormObject() != null && metadata.hasPrimaryKey());
    }
 
    /**
@@ -344,28 +626,189 @@ public class OrmFactory
     */
    public static boolean haveSortedFields(Class<?> ormClass)
    {
-      CormObjectField cfg;
+      return EntityMetadata.get(ormClass).hasSortedColumns();
+   }
+
 
-      for (Method method : ormClass.getMethods())
+   //==============================================
+   // Private members
+   //==============================================
+
+   /**
+    * Descarta de la cach de resultados de la conexin las consultas que dependen de la tabla de un objeto CORM 
+    * (ver {@link com.cosmo.data.QueryResultCache}).
+    */
+   private void invalidateQueryCache(Class<?> ormClass)
+   {
+      String table = EntityMetadata.get(ormClass).getTableName();
+
+      if (table != null)
       {
-         cfg = method.getAnnotation(CormObjectField.class);
+         driver.getConnection().invalidateQueryCache(table);
+      }
+   }
 
-         if (cfg != null)
+   /**
+    * Descarta de la cach de resultados las consultas que dependen de las tablas de un conjunto de objetos CORM.
+    */
+   private void invalidateQueryCache(Collection<?> data)
+   {
+      Class<?> last = null;
+
+      for (Object item : data)
+      {
+         if (item != null && item.getClass() != last)
          {
-            if (cfg.sort() != FieldSortType.None)
+            last = item.getClass();
+            invalidateQueryCache(last);
+         }
+      }
+   }
+
+   /**
+    * Obtiene las descripciones de los valores de una columna relacionada.
+    */
+   private HashMap<String, String> getRelatedLabels(Column column, Collection<?> values) throws SQLException, DataException, Exception
+   {
+      HashMap<String, String> labels = new HashMap<String, String>();
+
+      if (column.getStaticList() != null)
+      {
+         // Las listas estticas se resuelven sin consultar la base de datos
+         CormObjectFieldStaticList list = column.getStaticList();
+         for (int i = 0; i < list.values().length && i < list.labels().length; i++)
+         {
+            labels.put(list.values()[i], list.labels()[i]);
+         }
+      }
+      else if (column.isRelation())
+      {
+         LinkedHashSet<Object> keys = new LinkedHashSet<Object>();
+         for (Object value : values)
+         {
+            if (value != null)
             {
-               return true;
+               keys.add(value);
             }
          }
+
+         if (!keys.isEmpty())
+         {
+            labels = getReadDriver().getLabels(column.getForeignKey(), keys);
+         }
+      }
+
+      return labels;
+   }
+
+   /**
+    * Descarta una instancia del mapa de identidades de la peticin y de la cach compartida del objeto CORM.<br />
+    * Si hay una transaccin abierta, la instancia se descarta de nuevo de la cach compartida al cerrarla, para 
+    * descartar la versin que otros hilos hayan ledo antes de confirmarse los cambios.
+    * 
+    * @throws OrmException 
+    */
+   private void invalidateEntity(Object data) throws OrmException
+   {
+      EntityCache.Key key = (data == null ? null : EntityCache.Key.create(dataSourceId, data));
+
+      if (key == null)
+      {
+         return;
+      }
+
+      IdentityMap map = IdentityMap.getInstance(workspace);
+      if (map != null)
+      {
+         map.remove(key);
+      }
+
+      // Se descarta de la cach aunque la configuracin de la peticin no la declare (p. ej. si es anterior a una recarga)
+      EntityCache cache = entityCaches.get(getEntityCacheKey(data.getClass()));
+      if (cache != null)
+      {
+         driver.getConnection().invalidateCache(cache.getEviction(key));
+      }
+   }
+
+   /**
+    * Devuelve la cach compartida que se debe usar para las lecturas de un objeto CORM.<br />
+    * No se usa la cach si el objeto no la tiene declarada, si no puede copiarse (ver {@link EntityMetadata#isCopyable()}) 
+    * o si hay una transaccin abierta en la conexin, ya que las lecturas podran obtener datos no confirmados.
+    */
+   private EntityCache getEntityCache(Class<?> ormClass)
+   {
+      if (workspace == null || driver.getConnection().isInTransaction() || !EntityMetadata.get(ormClass).isCopyable())
+      {
+         return null;
+      }
+
+      CacheSettings settings = workspace.getProperties().getOrmProperties().getEntityCacheSettings(ormClass);
+      if (settings == null)
+      {
+         return null;
+      }
+
+      // La cach se crea la primera vez que se usa y se adapta a la configuracin vigente
+      String cacheKey = getEntityCacheKey(ormClass);
+      EntityCache cache = entityCaches.get(cacheKey);
+      if (cache == null)
+      {
+         EntityCache created = new EntityCache(ormClass.getName(), settings.getTtl(), settings.getSize());
+         cache = entityCaches.putIfAbsent(cacheKey, created);
+         if (cache == null)
+         {
+            cache = created;
+         }
+      }
+      if (cache.getTtl() != settings.getTtl() * 1000L || cache.getMaxSize() != settings.getSize())
+      {
+         cache.configure(settings.getTtl(), settings.getSize());
       }
 
-      return false;
+      return cache;
    }
 
+   /**
+    * Genera la clave de la cach compartida de un objeto CORM en la conexin de la instancia.
+    */
+   private String getEntityCacheKey(Class<?> ormClass)
+   {
+      return dataSourceId + ":" + ormClass.getName();
+   }
 
-   //==============================================
-   // Private members
-   //==============================================
+   /**
+    * Devuelve el driver que se debe usar para las lecturas.<br />
+    * Si la conexin tiene rplicas de lectura se usa una de ellas, salvo que haya una transaccin abierta en la 
+    * conexin primaria (ver {@link DataFactory#getReadInstance(Workspace, String)}).
+    * 
+    * @throws OrmDriverException 
+    */
+   private OrmDriver getReadDriver() throws OrmDriverException
+   {
+      DataAgent conn;
+
+      try
+      {
+         conn = DataFactory.getReadInstance(workspace, dataSourceId);
+      }
+      catch (DataException ex)
+      {
+         throw new OrmDriverException("CORM driver loader: " + ex.getMessage(), ex);
+      }
+
+      if (conn == driver.getConnection())
+      {
+         return driver;
+      }
+
+      if (readDriver == null || readDriver.getConnection() != conn)
+      {
+         readDriver = loadDriver(conn);
+      }
+
+      return readDriver;
+   }
 
    /**
     * Carga el controlador de usuarios.
@@ -374,14 +817,28 @@ public class OrmFactory
     */
    private static OrmDriver loadDriver(String dataSourceId, Workspace workspace) throws OrmDriverException
    {
-      OrmDriver provider;
-      DataAgent conn = null;
-
       try 
       {
          // Genera la conexin
-         conn = DataFactory.getInstance(workspace, dataSourceId);
+         return loadDriver(DataFactory.getInstance(workspace, dataSourceId));
+      }
+      catch (DataException ex)
+      {
+         throw new OrmDriverException("CORM driver loader: " + ex.getMessage(), ex);
+      }
+   }
+
+   /**
+    * Carga el controlador compatible con una conexin.
+    * 
+    * @throws OrmDriverException 
+    */
+   private static OrmDriver loadDriver(DataAgent conn) throws OrmDriverException
+   {
+      OrmDriver provider;
 
+      try 
+      {
          // Invoca el constructor del driver
          Class<?> cls = Class.forName(conn.getCompatibleOrmDriver());
          Constructor<?> cons = cls.getConstructor(DataAgent.class);
@@ -409,9 +866,5 @@ public class OrmFactory
       {
          throw new OrmDriverException("CORM driver loader: IllegalAccessException: " + (conn != null ? conn.getCompatibleOrmDriver() : "[unknown ORM driver]"), ex);
       }
-      catch (DataException ex)
-      {
-         throw new OrmDriverException("CORM driver loader: " + (conn != null ? conn.getCompatibleOrmDriver() : "[unknown ORM driver]"), ex);
-      }
    }
 }
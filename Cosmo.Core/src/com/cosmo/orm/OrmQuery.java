@@ -0,0 +1,301 @@
+package com.cosmo.orm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Representa los criterios de una consulta sobre un objeto CORM: filtros, ordenacin y paginacin.
+ * <br /><br />
+ * Las columnas se indican por su nombre en la base de datos ({@code dbTableColumn}) y se validan contra los metadatos
+ * del objeto (ver {@link EntityMetadata}) antes de generar la sentncia, de manera que nunca se incorporan textos
+ * arbitrarios a la sentncia SQL. Todos los valores se envan como parmetros.
+ * <br /><br />
+ * La paginacin puede realizarse por desplazamiento ({@link #setPage(int, int)}) o por clave
+ * ({@link #setAfter(Object...)}): en este ltimo caso se obtienen las filas posteriores a la ltima fila de la pgina
+ * anterior, lo que evita recorrer las filas descartadas en las pginas avanzadas.
+ *
+ * @author Gerard Llort
+ */
+public class OrmQuery
+{
+   /**
+    * Enumera los operadores de comparacin de los filtros.
+    */
+   public enum Operator
+   {
+      /** Igual a */
+      Equals,
+      /** Distinto de */
+      NotEquals,
+      /** Mayor que */
+      GreaterThan,
+      /** Mayor o igual que */
+      GreaterOrEqual,
+      /** Menor que */
+      LessThan,
+      /** Menor o igual que */
+      LessOrEqual,
+      /** Coincide con un patrn ({@code %} y {@code _}) */
+      Like,
+      /** Es nulo (no usa valor) */
+      IsNull,
+      /** No es nulo (no usa valor) */
+      IsNotNull
+   }
+
+   // Declaracin de variables locales
+   private boolean showAllColumns;
+   private int limit;
+   private int offset;
+   private Object[] after;
+   private ArrayList<Filter> filters;
+   private ArrayList<Order> orders;
+
+
+   //==============================================
+   // Constructors
+   //==============================================
+
+   /**
+    * Constructor de la clase {@link OrmQuery}.<br />
+    * Sin criterios, la consulta obtiene todos los registros con todas las columnas.
+    */
+   public OrmQuery()
+   {
+      this.showAllColumns = true;
+      this.limit = 0;
+      this.offset = 0;
+      this.after = null;
+      this.filters = new ArrayList<Filter>();
+      this.orders = new ArrayList<Order>();
+   }
+
+
+   //==============================================
+   // Properties
+   //==============================================
+
+   /**
+    * Indica si se obtienen todas las columnas o slo las que se muestran en los listados.
+    */
+   public boolean isShowAllColumns()
+   {
+      return showAllColumns;
+   }
+
+   /**
+    * Establece si se obtienen todas las columnas ({@code true}) o slo las que se muestran en los listados ({@code false}).
+    */
+   public void setShowAllColumns(boolean showAllColumns)
+   {
+      this.showAllColumns = showAllColumns;
+   }
+
+   /**
+    * Devuelve el nmero mximo de filas a obtener (0 si no hay lmite).
+    */
+   public int getLimit()
+   {
+      return limit;
+   }
+
+   /**
+    * Establece el nmero mximo de filas a obtener (0 si no hay lmite).
+    */
+   public void setLimit(int limit)
+   {
+      this.limit = Math.max(0, limit);
+   }
+
+   /**
+    * Devuelve el nmero de filas que se descartan al inicio de la consulta.
+    */
+   public int getOffset()
+   {
+      return offset;
+   }
+
+   /**
+    * Establece el nmero de filas que se descartan al inicio de la consulta.
+    */
+   public void setOffset(int offset)
+   {
+      this.offset = Math.max(0, offset);
+   }
+
+   /**
+    * Establece la pgina a obtener (paginacin por desplazamiento).
+    *
+    * @param page Nmero de pgina (empezando por 1).
+    * @param pageSize Nmero de filas por pgina.
+    */
+   public void setPage(int page, int pageSize)
+   {
+      setLimit(pageSize);
+      setOffset((Math.max(1, page) - 1) * this.limit);
+   }
+
+   /**
+    * Devuelve los valores de las columnas de ordenacin de la ltima fila de la pgina anterior (paginacin por
+    * clave) o {@code null} si no se usa.
+    */
+   public Object[] getAfter()
+   {
+      return after;
+   }
+
+   /**
+    * Establece la paginacin por clave: la consulta obtiene las filas posteriores (segn la ordenacin) a la fila
+    * que tiene los valores indicados.
+    *
+    * @param values Los valores de las columnas de ordenacin (ver {@link #getOrders()}) de la ltima fila de la
+    *    pgina anterior, en el mismo orden. Si no se ha establecido ninguna ordenacin, los valores corresponden a
+    *    las columnas ordenadas del objeto seguidas de su clave principal. Los valores pueden ser {@code null}: los
+    *    NULL se ordenan como el valor ms alto de cada columna.
+    */
+   public void setAfter(Object... values)
+   {
+      this.after = (values == null || values.length == 0 ? null : values);
+   }
+
+   /**
+    * Devuelve los filtros de la consulta (se combinan mediante {@code AND}).
+    */
+   public List<Filter> getFilters()
+   {
+      return Collections.unmodifiableList(filters);
+   }
+
+   /**
+    * Devuelve la ordenacin de la consulta. Si est vaca se usa la ordenacin declarada en el objeto CORM.
+    */
+   public List<Order> getOrders()
+   {
+      return Collections.unmodifiableList(orders);
+   }
+
+
+   //==============================================
+   // Methods
+   //==============================================
+
+   /**
+    * Agrega un filtro de igualdad.
+    *
+    * @param column Nombre de la columna en la base de datos.
+    * @param value Valor de comparacin.
+    *
+    * @return La propia instancia, para encadenar llamadas.
+    */
+   public OrmQuery addFilter(String column, Object value)
+   {
+      return addFilter(column, Operator.Equals, value);
+   }
+
+   /**
+    * Agrega un filtro.
+    *
+    * @param column Nombre de la columna en la base de datos.
+    * @param operator Operador de comparacin.
+    * @param value Valor de comparacin (se ignora en los operadores {@link Operator#IsNull} y {@link Operator#IsNotNull}).
+    *
+    * @return La propia instancia, para encadenar llamadas.
+    */
+   public OrmQuery addFilter(String column, Operator operator, Object value)
+   {
+      this.filters.add(new Filter(column, operator, value));
+      return this;
+   }
+
+   /**
+    * Agrega una columna de ordenacin.
+    *
+    * @param column Nombre de la columna en la base de datos.
+    * @param ascending {@code true} para ordenar de forma ascendente o {@code false} para hacerlo de forma descendente.
+    *
+    * @return La propia instancia, para encadenar llamadas.
+    */
+   public OrmQuery addOrder(String column, boolean ascending)
+   {
+      this.orders.add(new Order(column, ascending));
+      return this;
+   }
+
+
+   //==============================================
+   // Inner classes
+   //==============================================
+
+   /**
+    * Representa un filtro de la consulta.
+    */
+   public static class Filter
+   {
+      private final String column;
+      private final Operator operator;
+      private final Object value;
+
+      Filter(String column, Operator operator, Object value)
+      {
+         this.column = column;
+         this.operator = operator;
+         this.value = value;
+      }
+
+      /**
+       * Devuelve el nombre de la columna en la base de datos.
+       */
+      public String getColumn()
+      {
+         return column;
+      }
+
+      /**
+       * Devuelve el operador de comparacin.
+       */
+      public Operator getOperator()
+      {
+         return operator;
+      }
+
+      /**
+       * Devuelve el valor de comparacin.
+       */
+      public Object getValue()
+      {
+         return value;
+      }
+   }
+
+   /**
+    * Representa una columna de ordenacin de la consulta.
+    */
+   public static class Order
+   {
+      private final String column;
+      private final boolean ascending;
+
+      public Order(String column, boolean ascending)
+      {
+         this.column = column;
+         this.ascending = ascending;
+      }
+
+      /**
+       * Devuelve el nombre de la columna en la base de datos.
+       */
+      public String getColumn()
+      {
+         return column;
+      }
+
+      /**
+       * Indica si la ordenacin es ascendente.
+       */
+      public boolean isAscending()
+      {
+         return ascending;
+      }
+   }
+}
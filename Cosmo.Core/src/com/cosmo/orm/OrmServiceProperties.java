@@ -9,6 +9,7 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import com.cosmo.orm.apps.OrmApplication;
+import com.cosmo.util.StringUtils;
 
 /**
  * Contenedor encargado de leer y almacenar toda la configuracin de UI Services.
@@ -21,6 +22,7 @@ public class OrmServiceProperties
    private static final String XML_TAG_SERVICE = "orm-services";
    private static final String XML_TAG_CORM_APP = "corm-app";
    private static final String XML_TAG_APPACTION = "app-action";
+   private static final String XML_TAG_CORM_CACHE = "corm-cache";
 
    private static final String XML_ATT_CLASS = "class";
    private static final String XML_ATT_CONNECTION = "connection";
@@ -28,9 +30,17 @@ public class OrmServiceProperties
    private static final String XML_ATT_TITLE = "title";
    private static final String XML_ATT_DESCRIPTION = "description";
    private static final String XML_ATT_ID = "id";
+   private static final String XML_ATT_PAGESIZE = "page-size";
+   private static final String XML_ATT_TTL = "ttl";
+   private static final String XML_ATT_SIZE = "size";
+
+   // Valores por defecto de las cachs de objetos CORM
+   private static final int DEFAULT_CACHE_TTL = 300;
+   private static final int DEFAULT_CACHE_SIZE = 1000;
    
    // Declaracin de variables locales para UI Services
    private HashMap<String, OrmApplication> ormApps;
+   private HashMap<String, CacheSettings> cacheSettings;
 
 
    //==============================================
@@ -79,6 +89,20 @@ public class OrmServiceProperties
       return this.ormApps.get(appId);
    }
 
+   /**
+    * Obtiene la configuracin de la cach compartida de un objeto CORM.<br />
+    * Las cachs pertenecen a la aplicacin y se conservan entre versiones de la configuracin (ver 
+    * {@link OrmFactory#getEntityCaches()}).
+    *
+    * @param ormClass Una referencia a un objeto CORM (clase POJO que est anotada con anotaciones CORM).
+    *
+    * @return Una instancia de {@link CacheSettings} o {@code null} si no se ha declarado ninguna cach para el objeto.
+    */
+   public CacheSettings getEntityCacheSettings(Class<?> ormClass)
+   {
+      return this.cacheSettings.get(ormClass.getName());
+   }
+
    /**
     * Lee y almacena las propiedades de configuracin de UI Services.
     * 
@@ -94,6 +118,7 @@ public class OrmServiceProperties
       OrmApplication oa;
 
       this.ormApps = new HashMap<String, OrmApplication>();
+      this.cacheSettings = new HashMap<String, CacheSettings>();
 
       // Comprueba si existe la definicin
       attribList = doc.getElementsByTagName(OrmServiceProperties.XML_TAG_SERVICE);
@@ -116,6 +141,7 @@ public class OrmServiceProperties
             oa.setConnectionId(appElement.getAttribute(OrmServiceProperties.XML_ATT_CONNECTION));
             oa.setTitle(appElement.getAttribute(OrmServiceProperties.XML_ATT_TITLE));
             oa.setDescription(appElement.getAttribute(OrmServiceProperties.XML_ATT_DESCRIPTION));
+            oa.setPageSize(getIntAttribute(appElement, OrmServiceProperties.XML_ATT_PAGESIZE, OrmApplication.DEFAULT_PAGE_SIZE));
 
             attribList = appElement.getElementsByTagName(OrmServiceProperties.XML_TAG_APPACTION);
             for (int aidx = 0; aidx < attribList.getLength(); aidx++) 
@@ -143,5 +169,86 @@ public class OrmServiceProperties
             this.ormApps.put(oa.getId(), oa);
          }
       }
+
+      // Obtiene las cachs de objetos CORM
+      attribList = doc.getElementsByTagName(OrmServiceProperties.XML_TAG_CORM_CACHE);
+      for (int cidx = 0; cidx < attribList.getLength(); cidx++)
+      {
+         Node cacheNode = attribList.item(cidx);
+         if (cacheNode.getNodeType() == Node.ELEMENT_NODE)
+         {
+            Element cacheElement = (Element) cacheNode;
+
+            CacheSettings settings = new CacheSettings(getIntAttribute(cacheElement, OrmServiceProperties.XML_ATT_TTL, OrmServiceProperties.DEFAULT_CACHE_TTL),
+                                                       getIntAttribute(cacheElement, OrmServiceProperties.XML_ATT_SIZE, OrmServiceProperties.DEFAULT_CACHE_SIZE));
+            if (settings.getTtl() > 0 && settings.getSize() > 0)
+            {
+               this.cacheSettings.put(cacheElement.getAttribute(OrmServiceProperties.XML_ATT_CLASS).trim(), settings);
+            }
+         }
+      }
+   }
+
+
+   //==============================================
+   // Private members
+   //==============================================
+
+   /**
+    * Obtiene el valor numrico de un atributo.
+    *
+    * @return El valor del atributo o {@code defaultValue} si no existe o no es numrico.
+    */
+   private static int getIntAttribute(Element element, String name, int defaultValue)
+   {
+      if (StringUtils.isNullOrEmptyTrim(element.getAttribute(name)))
+      {
+         return defaultValue;
+      }
+
+      try
+      {
+         return Integer.parseInt(element.getAttribute(name).trim());
+      }
+      catch (NumberFormatException ex)
+      {
+         return defaultValue;
+      }
+   }
+
+
+   //==============================================
+   // Inner classes
+   //==============================================
+
+   /**
+    * Representa la configuracin de la cach compartida de un objeto CORM (ver {@link EntityCache}).
+    */
+   public static class CacheSettings
+   {
+      private final int ttl;
+      private final int size;
+
+      CacheSettings(int ttl, int size)
+      {
+         this.ttl = ttl;
+         this.size = size;
+      }
+
+      /**
+       * Devuelve el tiempo de vida (en segundos) de cada instancia.
+       */
+      public int getTtl()
+      {
+         return this.ttl;
+      }
+
+      /**
+       * Devuelve el nmero mximo de instancias.
+       */
+      public int getSize()
+      {
+         return this.size;
+      }
    }
 }
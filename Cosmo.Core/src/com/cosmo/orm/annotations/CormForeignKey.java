@@ -25,4 +25,11 @@ public @interface CormForeignKey
     * Nombre del campo en la BBDD.
     */
    String dbTableField();
+
+   /**
+    * Nombre del campo en la BBDD que contiene la descripcin del registro relacionado.<br />
+    * Si se especifica, los listados muestran la descripcin en lugar del valor de la clave (ver
+    * {@link com.cosmo.orm.OrmFactory#resolveRelations(Class, com.cosmo.util.GridData)}).
+    */
+   String dbTableLabel() default "";
 }
@@ -59,6 +59,12 @@ public @interface CormObjectField
     */
    boolean isAutogenerated() default false;
    
+   /**
+    * Indica si el campo es la columna de versin del registro (numrica), usada para el bloqueo optimista: cada 
+    * actualizacin incrementa su valor y falla si el registro ha sido modificado desde que se obtuvo.
+    */
+   boolean isVersion() default false;
+   
    /**
     * Nombre del campo en la BBDD.
     */
@@ -10,6 +10,9 @@ import com.cosmo.net.URL;
  */
 public class OrmApplication 
 {
+   /** Nmero de registros por pgina por defecto */
+   public static final int DEFAULT_PAGE_SIZE = 50;
+
    // Declaracin de variables locales
    private String id;
    private String className;
@@ -19,6 +22,7 @@ public class OrmApplication
    private boolean canCreate;
    private boolean canDelete;
    private boolean canEdit;
+   private int pageSize;
 
 
    //==============================================
@@ -33,6 +37,7 @@ public class OrmApplication
       this.canCreate = false;
       this.canDelete = false;
       this.canEdit = false;
+      this.pageSize = OrmApplication.DEFAULT_PAGE_SIZE;
    }
 
 
@@ -120,6 +125,22 @@ public class OrmApplication
       this.canEdit = enabled;
    }
 
+   /**
+    * Devuelve el nmero de registros por pgina del listado (0 si el listado no se pagina).
+    */
+   public int getPageSize() 
+   {
+      return pageSize;
+   }
+
+   /**
+    * Establece el nmero de registros por pgina del listado (0 si el listado no se pagina).
+    */
+   public void setPageSize(int pageSize) 
+   {
+      this.pageSize = Math.max(0, pageSize);
+   }
+
 
    //==============================================
    // Methods
@@ -6,7 +6,9 @@ import javax.servlet.http.HttpServletResponse;
 
 import com.cosmo.net.HttpRequestUtils;
 import com.cosmo.net.URL;
+import com.cosmo.orm.EntityMetadata;
 import com.cosmo.orm.OrmFactory;
+import com.cosmo.orm.OrmQuery;
 import com.cosmo.ui.Page;
 import com.cosmo.ui.PageContext;
 import com.cosmo.ui.PageContext.ContentColumns;
@@ -38,6 +40,7 @@ public class OrmDataService extends Page
    public final String PARAMETER_COMMAND = "cmd";
    public final String PARAMETER_HOSTPAGE = "hp";
    public final String PARAMETER_APPID = "appid";
+   public final String PARAMETER_PAGE = "pg";
 
    public final String COMMAND_DELETE = "del";
    public final String COMMAND_EDIT = "edit";
@@ -108,7 +111,7 @@ public class OrmDataService extends Page
          }
          else if (HttpRequestUtils.getValue(request, PARAMETER_COMMAND, "").equals(COMMAND_EDIT))
          {
-            ormp.update(instance);
+            update(ormp, instance);
          }
          else if (HttpRequestUtils.getValue(request, PARAMETER_COMMAND, "").equals(COMMAND_DELETE))
          {
@@ -188,11 +191,43 @@ public class OrmDataService extends Page
             btnBar.addButton(new ButtonBarItem("Refrescar", createActionUrl(app, cls, COMMAND_REPORT, false), Icon.ICON_IMAGE_REFRESH));
             pc.addContent(btnBar, ContentColumns.MAIN);
 
+            // Obtiene slo los registros de la pgina solicitada
+            OrmQuery query = new OrmQuery();
+            query.setShowAllColumns(false);
+
+            int page = 1;
+            int pages = 1;
+            if (app.getPageSize() > 0)
+            {
+               OrmFactory ormp = new OrmFactory(app.getConnectionId(), getWorkspace());
+               int count = ormp.count(cls, null);
+
+               pages = Math.max(1, (count + app.getPageSize() - 1) / app.getPageSize());
+               page = Math.min(Math.max(1, HttpRequestUtils.getInt(request, PARAMETER_PAGE, 1)), pages);
+               query.setPage(page, app.getPageSize());
+            }
+
             GridControl grid = new GridControl(getWorkspace(), CTRL_GRID);
             grid.addRowAction(new GridRowAction("", createActionUrl(app, cls, COMMAND_EDIT, true), "icon-pencil"));
             grid.addRowAction(new GridRowAction("", createActionUrl(app, cls, COMMAND_DELETE, true), "icon-remove-circle"));
-            grid.setData(app.getConnectionId(), cls, false);
+            grid.setData(app.getConnectionId(), cls, query);
             pc.addContent(grid, ContentColumns.MAIN);
+
+            // Muestra la navegacin entre pginas
+            if (pages > 1)
+            {
+               ButtonBarControl pager = new ButtonBarControl(getWorkspace());
+               if (page > 1)
+               {
+                  pager.addButton(new ButtonBarItem("Anterior", createPageUrl(app, page - 1), Icon.ICON_IMAGE_CHEVRON_LEFT));
+               }
+               pager.addButton(new ButtonBarItem("Pgina " + page + " de " + pages, createPageUrl(app, page)));
+               if (page < pages)
+               {
+                  pager.addButton(new ButtonBarItem("Segent", createPageUrl(app, page + 1), Icon.ICON_IMAGE_CHEVRON_RIGHT));
+               }
+               pc.addContent(pager, ContentColumns.MAIN);
+            }
          }
       }
       catch (Exception ex)
@@ -255,4 +290,42 @@ public class OrmDataService extends Page
       return url;
    }
 
+   /**
+    * Actualiza un registro con los datos enviados por el formulario.<br />
+    * El registro se obtiene antes de la base de datos (ver {@link OrmFactory#get(Object)}) y se le aplican los 
+    * valores enviados, de manera que la actualizacin slo escribe las columnas que han cambiado. Se actualizan todas 
+    * las columnas si el registro no existe o si sus valores no pueden copiarse (ver {@link EntityMetadata#isCopyable()}).
+    */
+   private void update(OrmFactory ormp, Object instance) throws Exception
+   {
+      EntityMetadata metadata = EntityMetadata.get(instance.getClass());
+      Object current = null;
+
+      if (metadata.isCopyable())
+      {
+         // La lectura establece los valores en la instancia que recibe: se usa una copia para conservar los enviados
+         Object probe = metadata.newInstance();
+         metadata.copy(instance, probe);
+         current = ormp.get(probe);
+      }
+
+      if (current == null)
+      {
+         ormp.update(instance);
+         return;
+      }
+
+      // Se copian todos los valores enviados (incluida la columna de versin, para el bloqueo optimista)
+      metadata.copy(instance, current);
+      ormp.update(current);
+   }
+
+   /**
+    * Genera la URL de una pgina del listado.
+    */
+   private String createPageUrl(OrmApplication app, int page)
+   {
+      return createActionUrl(app, null, COMMAND_REPORT, false) + "&" + PARAMETER_PAGE + "=" + page;
+   }
+
 }
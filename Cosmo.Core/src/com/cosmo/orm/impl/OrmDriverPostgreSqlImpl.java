@@ -1,29 +1,45 @@
 package com.cosmo.orm.impl;
 
+import java.io.StringReader;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.math.BigDecimal;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Time;
-import java.sql.Timestamp;
-import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.http.HttpServletRequest;
 
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
 import com.cosmo.data.DataAgent;
 import com.cosmo.data.DataException;
+import com.cosmo.data.RowHandler;
+import com.cosmo.data.TransactionScope;
+import com.cosmo.orm.EntityMetadata;
+import com.cosmo.orm.EntityMetadata.Column;
+import com.cosmo.orm.EntityReader;
+import com.cosmo.orm.annotations.CormForeignKey;
+import com.cosmo.orm.annotations.CormObjectField.FieldSortType;
 import com.cosmo.orm.InvalidMappingException;
 import com.cosmo.orm.OrmDriver;
-import com.cosmo.orm.OrmFactory;
-import com.cosmo.orm.annotations.CormFieldSetter;
-import com.cosmo.orm.annotations.CormObjectField;
-import com.cosmo.orm.annotations.CormObjectField.FieldSortType;
+import com.cosmo.orm.OptimisticLockException;
+import com.cosmo.orm.OrmException;
+import com.cosmo.orm.OrmQuery;
+import com.cosmo.orm.OrmQuery.Filter;
+import com.cosmo.orm.OrmQuery.Order;
 
 /**
  * Implementa el proveedor de Cosmo ORM (CORM) para PostgreSQL 9.X.
+ * <br /><br />
+ * Las sentncias SQL de cada objeto CORM (SELECT, INSERT, UPDATE, DELETE y COPY) se generan una nica vez a partir de 
+ * sus metadatos (ver {@link EntityMetadata}) y se conservan en una cach compartida. Todas son parametrizadas, de 
+ * manera que se ejecutan mediante las sentncias preparadas de la conexin y PostgreSQL reutiliza su plan de ejecucin.
  * 
  * @author Gerard Llort
  */
@@ -32,6 +48,9 @@ public class OrmDriverPostgreSqlImpl extends OrmDriver
    private final static String PROVIDER_NAME = "PostgreSQL CORM Driver";
    private final static String JDBC_DRIVER_CLASS = "org.postgresql.Driver";
 
+   // Cach de sentncias SQL por clase CORM
+   private final static ConcurrentHashMap<Class<?>, EntityStatements> statements = new ConcurrentHashMap<Class<?>, EntityStatements>();
+
 
    //==============================================
    // Constructors
@@ -84,74 +103,81 @@ public class OrmDriverPostgreSqlImpl extends OrmDriver
     */
    public ResultSet select(Class<?> ormClass, boolean showAllColumns) throws InvalidMappingException, SQLException, DataException, Exception
    {
-      boolean first;
-      StringBuilder sql = new StringBuilder();
-      CormObjectField cf;
       ResultSet rs;
+      String sql = getStatements(ormClass).getSelect(showAllColumns);
 
-      // Comprueba si el objeto proporcionado es un objeto CORM vlido
-      if (!OrmFactory.isValidCormObject(ormClass))
-      {
-         throw new InvalidMappingException(ormClass.getName() + " is not a CORM object.");
-      }
+      // Memoriza la sentncia SQL generada
+      this.setLastSqlSentence(sql);
 
-      // Configura la clusula SELECT
+      // Ejecuta la sentncia SQL
+      this.getConnection().connect();
+      rs = this.getConnection().executeSql(sql, DataAgent.NO_PARAMS);
+      this.getConnection().disconnect();
+
+      return rs;
+   }
+
+   /**
+    * Genera una sentncia SELECT a partir de un objeto CORM y unos criterios de consulta.
+    * <br /><br />
+    * Si la consulta se pagina, la ordenacin se completa con las columnas de la clave principal para que el orden 
+    * de las filas sea estable entre pginas.
+    * 
+    * @param ormClass Una referencia a un objeto CORM (clase POJO que est anotada con anotaciones CORM).
+    * @param query Una instancia de {@link OrmQuery} que contiene los criterios de la consulta.
+    * 
+    * @return Una instancia de {@link ResultSet} que contiene los datos obtenidos en la consulta.
+    * 
+    * @throws InvalidMappingException
+    * @throws DataException 
+    * @throws SQLException 
+    * @throws Exception 
+    */
+   @Override
+   public ResultSet select(Class<?> ormClass, OrmQuery query) throws InvalidMappingException, SQLException, DataException, Exception
+   {
+      ResultSet rs;
+      StringBuilder sql = new StringBuilder();
+      ArrayList<Object> params = new ArrayList<Object>();
+      EntityMetadata metadata = getStatements(ormClass).metadata;
+      boolean paged = (query.getLimit() > 0 || query.getOffset() > 0 || query.getAfter() != null);
+      List<Order> orders = getOrders(metadata, query, paged);
+
+      // Configura las clusulas SELECT y FROM
       sql.append(SQL_SELECT);
       sql.append(" ");
-
-      first = true;
-      for (Method method : ormClass.getMethods())
-      {
-         cf = method.getAnnotation(CormObjectField.class);
-         if (cf != null)
-         {
-            if ((showAllColumns) || (!showAllColumns && cf.showInObjectListGrid()))
-            {
-               sql.append((first ? "" : ", "));
-               sql.append(cf.dbTableColumn() + " As \"" + cf.label() + "\"");
-               first = false;
-            }
-         }
-      }
+      sql.append(metadata.getSelectList(query.isShowAllColumns()));
       sql.append(" ");
-
-      // Configura la clusula FROM
       sql.append(SQL_FROM);
       sql.append(" ");
-      sql.append(OrmFactory.getDbTableName(ormClass));
-      sql.append(" ");
+      sql.append(metadata.getTableName());
+
+      // Configura la clusula WHERE
+      appendWhere(sql, metadata, query, orders, params);
 
       // Configura la clusula ORDER BY
-      if (OrmFactory.haveSortedFields(ormClass))
+      for (int i = 0; i < orders.size(); i++)
       {
-         sql.append(SQL_ORDERBY);
+         sql.append((i == 0 ? " " + SQL_ORDERBY + " " : ", "));
+         sql.append(orders.get(i).getColumn());
          sql.append(" ");
+         sql.append(orders.get(i).isAscending() ? SQL_ORDERBY_ASC + " " + SQL_NULLS_LAST : SQL_ORDERBY_DESC + " " + SQL_NULLS_FIRST);
+      }
 
-         // Obtiene la lista de campos
-         first = true;
-         for (Method method : ormClass.getMethods())
-         {
-            cf = method.getAnnotation(CormObjectField.class);
-            if (cf != null)
-            {
-               if (cf.sort() == FieldSortType.Ascending)
-               {
-                  sql.append((first ? "" : ", "));
-                  sql.append(cf.dbTableColumn() + " ");
-                  sql.append(SQL_ORDERBY_ASC);
-
-                  first = false;
-               }
-               else if (cf.sort() == FieldSortType.Descending)
-               {
-                  sql.append((first ? "" : ", "));
-                  sql.append(cf.dbTableColumn() + " ");
-                  sql.append(SQL_ORDERBY_DESC);
-
-                  first = false;
-               }
-            }
-         }
+      // Configura la paginacin
+      if (query.getLimit() > 0)
+      {
+         sql.append(" ");
+         sql.append(SQL_LIMIT);
+         sql.append(" ?");
+         params.add(query.getLimit());
+      }
+      if (query.getOffset() > 0)
+      {
+         sql.append(" ");
+         sql.append(SQL_OFFSET);
+         sql.append(" ?");
+         params.add(query.getOffset());
       }
 
       // Memoriza la sentncia SQL generada
@@ -159,220 +185,203 @@ public class OrmDriverPostgreSqlImpl extends OrmDriver
 
       // Ejecuta la sentncia SQL
       this.getConnection().connect();
-      rs = this.getConnection().executeSql(sql.toString());
+      rs = this.getConnection().executeSql(sql.toString(), params.toArray());
       this.getConnection().disconnect();
 
       return rs;
    }
 
    /**
-    * Genera una sentncia SELECT a partir de una instancia de un objeto CORM.
+    * Obtiene el nmero total de registros de un objeto CORM que cumplen los filtros de una consulta.
     * 
-    * @param ormObject Una referencia a un objeto CORM (clase POJO que est anotada con anotaciones CORM).
+    * @param ormClass Una referencia a un objeto CORM (clase POJO que est anotada con anotaciones CORM).
+    * @param query Una instancia de {@link OrmQuery} que contiene los criterios de la consulta o {@code null} para 
+    *    contar todos los registros.
     * 
-    * @return Una instancia de {@link ResultSet} que contiene los datos obtenidos en la consulta.
+    * @return El nmero de registros.
     * 
     * @throws InvalidMappingException
-    * @throws ClassNotFoundException 
     * @throws DataException 
     * @throws SQLException 
     * @throws Exception 
     */
-   public Object get(Object data) throws InvalidMappingException, SQLException, DataException, Exception
+   @Override
+   public int count(Class<?> ormClass, OrmQuery query) throws InvalidMappingException, SQLException, DataException, Exception
    {
-      boolean first;
       StringBuilder sql = new StringBuilder();
-      CormObjectField cf;
-      CormFieldSetter cfs;
-      ResultSet rs;
-
-      // Comprueba si el objeto proporcionado es un objeto CORM vlido
-      if (!OrmFactory.isValidCormObject(data.getClass()))
-      {
-         throw new InvalidMappingException(data.getClass() + " is not a CORM object.");
-      }
+      ArrayList<Object> params = new ArrayList<Object>();
+      EntityMetadata metadata = getStatements(ormClass).metadata;
 
-      // Configura la clusula SELECT
       sql.append(SQL_SELECT);
       sql.append(" ");
-
-      first = true;
-      for (Method method : data.getClass().getMethods())
-      {
-         cf = method.getAnnotation(CormObjectField.class);
-         if (cf != null)
-         {
-            sql.append((first ? "" : ", "));
-            sql.append(cf.dbTableColumn());
-
-            first = false;
-         }
-      }
+      sql.append(SQL_COUNT);
       sql.append(" ");
-
-      // Configura la clusula FROM
       sql.append(SQL_FROM);
       sql.append(" ");
-      sql.append(OrmFactory.getDbTableName(data.getClass()));
-      sql.append(" ");
+      sql.append(metadata.getTableName());
 
-      // Genera la clusua WHERE
-      sql.append(getFilter(data));
+      if (query != null)
+      {
+         appendWhere(sql, metadata, query, null, params);
+      }
 
       // Memoriza la sentncia SQL generada
       this.setLastSqlSentence(sql.toString());
 
-      // Ejecuta la sentncia SQL
-      this.getConnection().connect();
-      rs = this.getConnection().executeSql(sql.toString());
-      this.getConnection().disconnect();
+      return this.getConnection().executeScalar(sql.toString(), params.toArray());
+   }
+
+   /**
+    * Obtiene las descripciones de los registros relacionados mediante una clave externa.<br />
+    * Los valores se consultan en grupos de {@value #MAX_IN_VALUES} para no superar el nmero mximo de parmetros 
+    * de una sentncia.
+    * 
+    * @param foreignKey La anotacin {@link CormForeignKey} que describe la relacin.
+    * @param keys Los valores (distintos y no nulos) de la clave externa.
+    * 
+    * @return Un mapa con la descripcin de cada registro encontrado, indexado por el valor (como texto) de la clave.
+    * 
+    * @throws DataException 
+    * @throws SQLException 
+    * @throws Exception 
+    */
+   @Override
+   public HashMap<String, String> getLabels(CormForeignKey foreignKey, Collection<?> keys) throws SQLException, DataException, Exception
+   {
+      HashMap<String, String> labels = new HashMap<String, String>();
+      ArrayList<Object> chunk = new ArrayList<Object>();
 
-      // Recopila los datos en el objeto
-      if (rs.next())
+      for (Object key : keys)
       {
-         for (Method method : data.getClass().getMethods())
+         if (key != null)
          {
-            if (method.isAnnotationPresent(CormFieldSetter.class))
-            {
-               cfs = method.getAnnotation(CormFieldSetter.class);
-
-               Class<?>[] argTypes = method.getParameterTypes();
-               if (argTypes.length > 0)
-               {
-                  // Texto
-                  if ((argTypes[0] == String.class) || (argTypes[0] == char.class))
-                  {
-                     method.invoke(data, rs.getString(cfs.dbTableColumn()));
-                  }
-                  // Enteros
-                  else if (argTypes[0] == Integer.class || argTypes[0] == int.class)
-                  {
-                     method.invoke(data, rs.getInt(cfs.dbTableColumn()));
-                  }
-                  else if (argTypes[0] == Long.class || argTypes[0] == long.class)
-                  {
-                     method.invoke(data, rs.getLong(cfs.dbTableColumn()));
-                  }
-                  else if (argTypes[0] == Short.class || argTypes[0] == short.class)
-                  {
-                     method.invoke(data, rs.getShort(cfs.dbTableColumn()));
-                  }
-                  else if (argTypes[0] == Byte.class || argTypes[0] == byte.class)
-                  {
-                     method.invoke(data, rs.getByte(cfs.dbTableColumn()));
-                  }
-                  // Decimales
-                  else if (argTypes[0] == Double.class || argTypes[0] == double.class)
-                  {
-                     method.invoke(data, rs.getDouble(cfs.dbTableColumn()));
-                  }
-                  else if (argTypes[0] == Float.class || argTypes[0] == float.class)
-                  {
-                     method.invoke(data, rs.getFloat(cfs.dbTableColumn()));
-                  }
-                  else if (argTypes[0] == BigDecimal.class)
-                  {
-                     method.invoke(data, rs.getBigDecimal(cfs.dbTableColumn()));
-                  }
-                  // Fechas y horas
-                  else if (argTypes[0] == Date.class)
-                  {
-                     method.invoke(data, rs.getDate(cfs.dbTableColumn()));
-                  }
-                  else if (argTypes[0] == Time.class)
-                  {
-                     method.invoke(data, rs.getTime(cfs.dbTableColumn()));
-                  }
-                  else if (argTypes[0] == Timestamp.class)
-                  {
-                     method.invoke(data, rs.getTimestamp(cfs.dbTableColumn()));
-                  }
-                  // Booleanos
-                  else if (argTypes[0] == boolean.class || argTypes[0] == Boolean.class)
-                  {
-                     method.invoke(data, rs.getBoolean(cfs.dbTableColumn()));
-                  }
-               }
-            }
+            chunk.add(key);
+         }
+         if (chunk.size() == MAX_IN_VALUES)
+         {
+            getLabels(foreignKey, chunk, labels);
+            chunk.clear();
          }
-
-         return data;
       }
-      else
+      if (!chunk.isEmpty())
       {
-         return null;
+         getLabels(foreignKey, chunk, labels);
       }
+
+      return labels;
    }
 
    /**
-    * Genera una sentncia INSERT INTO a partir de una instancia de un objeto CORM.
+    * Genera una sentncia SELECT a partir de una instancia de un objeto CORM.
     * 
-    * @param data Clase que contiene los datos a insertar.
+    * @param ormObject Una referencia a un objeto CORM (clase POJO que est anotada con anotaciones CORM).
+    * 
+    * @return Una instancia de {@link ResultSet} que contiene los datos obtenidos en la consulta.
     * 
     * @throws InvalidMappingException
+    * @throws ClassNotFoundException 
     * @throws DataException 
     * @throws SQLException 
     * @throws Exception 
     */
-   public void insert(Object data) throws InvalidMappingException, SQLException, DataException, Exception
+   public Object get(final Object data) throws InvalidMappingException, SQLException, DataException, Exception
    {
-      boolean first;
-      StringBuilder sql = new StringBuilder();
-      CormObjectField cf;
+      final EntityStatements sql = getStatements(data.getClass());
 
-      // Comprueba si el objeto proporcionado es un objeto CORM vlido
-      if (!OrmFactory.isValidCormObject(data.getClass()))
-      {
-         throw new InvalidMappingException(data.getClass().getName() + " is not a CORM object.");
-      }
-
-      // Genera la clusula INSERT
-      sql.append(SQL_INSERT);
-      sql.append(" ");
-      sql.append(OrmFactory.getDbTableName(data.getClass()));
-      sql.append(" (");
+      // Memoriza la sentncia SQL generada
+      this.setLastSqlSentence(sql.get);
 
-      first = true;
-      for (Method method : data.getClass().getMethods())
+      // Ejecuta la sentncia SQL y recopila los datos en el objeto
+      int rows = this.getConnection().query(sql.get, getParameterValues(sql.metadata.getPrimaryKeys(), data), new RowHandler()
       {
-         cf = method.getAnnotation(CormObjectField.class);
-
-         if (cf != null && !cf.readOnly() && !cf.isAutogenerated())
+         @Override
+         public boolean processRow(ResultSet rs) throws SQLException
          {
-            sql.append((first ? "" : ", "));
-            sql.append(cf.dbTableColumn());
-            first = false;
+            sql.reader.read(rs, data);
+            return false;
          }
-      }
+      });
 
-      sql.append(") ");
+      return (rows > 0 ? data : null);
+   }
 
-      // Genera la clusula VALUES
-      sql.append(SQL_INSERT_VALUES);
-      sql.append(" (");
+   /**
+    * Genera una sentncia INSERT INTO a partir de una instancia de un objeto CORM.<br />
+    * Si el objeto tiene campos autogenerados, la sentncia los devuelve ({@code RETURNING}) y se establecen en la 
+    * instancia, de manera que no es necesario volver a consultar el registro para conocer su clave.
+    * 
+    * @param data Clase que contiene los datos a insertar.
+    * 
+    * @throws InvalidMappingException
+    * @throws DataException 
+    * @throws SQLException 
+    * @throws Exception 
+    */
+   public void insert(Object data) throws InvalidMappingException, SQLException, DataException, Exception
+   {
+      EntityStatements sql = getStatements(data.getClass());
+      Object[] params = getParameterValues(sql.metadata.getInsertColumns(), data);
 
-      first = true;
-      for (Method method : data.getClass().getMethods())
+      if (sql.generated == null)
       {
-         cf = method.getAnnotation(CormObjectField.class);
+         // Memoriza la sentncia SQL generada
+         this.setLastSqlSentence(sql.insert);
 
-         if (cf != null && !cf.readOnly() && !cf.isAutogenerated())
-         {
-            sql.append((first ? "" : ", "));
-            sql.append(getFormatedValue(method, data));
+         // Ejecuta la sentncia SQL
+         this.getConnection().connect();
+         this.getConnection().execute(sql.insert, params);
+         this.getConnection().disconnect();
+      }
+      else
+      {
+         // Memoriza la sentncia SQL generada
+         this.setLastSqlSentence(sql.insertReturning);
 
-            first = false;
-         }
+         // Ejecuta la sentncia SQL y establece los campos autogenerados
+         this.getConnection().connect();
+         this.getConnection().executeReturning(sql.insertReturning, params, getGeneratedHandler(sql.generated, data));
+         this.getConnection().disconnect();
       }
+   }
 
-      sql.append(")");
+   /**
+    * Inserta un registro o, si ya existe un registro con la misma clave principal, lo actualiza mediante una nica 
+    * sentncia {@code INSERT ... ON CONFLICT (clave) DO UPDATE} (PostgreSQL 9.5 o superior).
+    * <br /><br />
+    * A diferencia de consultar el registro y despus insertarlo o actualizarlo, la operacin es atmica y requiere 
+    * un solo acceso a la base de datos. Los campos autogenerados se establecen en la instancia.
+    * 
+    * @param data Una instancia de un objeto CORM con todos los campos de la clave principal establecidos.
+    * 
+    * @throws InvalidMappingException
+    * @throws DataException 
+    * @throws SQLException 
+    * @throws Exception 
+    */
+   @Override
+   public void upsert(Object data) throws InvalidMappingException, SQLException, DataException, Exception
+   {
+      EntityStatements sql = getStatements(data.getClass());
+      if (!sql.metadata.hasPrimaryKey())
+      {
+         throw new InvalidMappingException(data.getClass().getName() + " does not have declared primary key.");
+      }
+
+      Object[] params = getParameterValues(sql.metadata.getUpsertColumns(), data);
 
       // Memoriza la sentncia SQL generada
-      this.setLastSqlSentence(sql.toString());
+      this.setLastSqlSentence(sql.upsert);
 
       // Ejecuta la sentncia SQL
       this.getConnection().connect();
-      this.getConnection().execute(sql.toString());
+      if (sql.upserted == null)
+      {
+         this.getConnection().execute(sql.upsert, params);
+      }
+      else
+      {
+         this.getConnection().executeReturning(sql.upsert, params, getGeneratedHandler(sql.upserted, data));
+      }
       this.getConnection().disconnect();
    }
 
@@ -389,34 +398,18 @@ public class OrmDriverPostgreSqlImpl extends OrmDriver
     */
    public void delete(Object data) throws InvalidMappingException, SQLException, DataException, Exception
    {
-      // boolean first;
-      StringBuilder sql = new StringBuilder();
-
-      // Comprueba si el objeto proporcionado es un objeto CORM vlido
-      if (!OrmFactory.isValidCormObject(data.getClass()))
-      {
-         throw new InvalidMappingException(data.getClass().getName() + " is not a CORM object.");
-      }
-      else if (!OrmFactory.havePrimaryKey(data.getClass()))
+      EntityStatements sql = getStatements(data.getClass());
+      if (!sql.metadata.hasPrimaryKey())
       {
          throw new InvalidMappingException(data.getClass().getName() + " does not have declared primary key.");
       }
 
-      // Genera la clusula INSERT
-      sql.append(SQL_DELETE);
-      sql.append(" ");
-      sql.append(OrmFactory.getDbTableName(data.getClass()));
-      sql.append(" ");
-
-      // Genera la clusua WHERE
-      sql.append(getFilter(data));
-
       // Memoriza la sentncia SQL generada
-      this.setLastSqlSentence(sql.toString());
+      this.setLastSqlSentence(sql.delete);
 
       // Ejecuta la sentncia SQL
       this.getConnection().connect();
-      this.getConnection().execute(sql.toString());
+      this.getConnection().execute(sql.delete, getParameterValues(sql.metadata.getPrimaryKeys(), data));
       this.getConnection().disconnect();
    }
 
@@ -433,57 +426,134 @@ public class OrmDriverPostgreSqlImpl extends OrmDriver
     */
    public void update(Object data) throws InvalidMappingException, SQLException, DataException, Exception
    {
-      boolean first;
-      StringBuilder sql = new StringBuilder();
-      CormObjectField cfg;
+      EntityStatements sql = getStatements(data.getClass());
 
-      // Comprueba si el objeto proporcionado es un objeto CORM vlido
-      if (!OrmFactory.isValidCormObject(data.getClass()))
-      {
-         throw new InvalidMappingException(data.getClass().getName() + " is not a CORM object.");
-      }
+      executeUpdate(sql, sql.update, sql.metadata.getUpdateColumns(), data);
+   }
 
-      // Genera la clusula INSERT
-      sql.append(SQL_UPDATE);
-      sql.append(" ");
-      sql.append(OrmFactory.getDbTableName(data.getClass()));
-      sql.append(" ");
+   /**
+    * Actualiza slo algunas columnas del registro de la tabla de datos que indica el valor asociado a/los campo/s 
+    * identificador/es, de manera que no se reescriben (ni se reindexan) las columnas que no han cambiado.
+    * 
+    * @param data Una instancia de un objeto CORM que contiene los datos para la actualizacin.
+    * @param columns Las columnas a actualizar.
+    * 
+    * @throws Exception 
+    * @throws DataException 
+    * @throws SQLException 
+    * @throws InvalidMappingException 
+    */
+   @Override
+   public void update(Object data, List<Column> columns) throws InvalidMappingException, SQLException, DataException, Exception
+   {
+      EntityStatements sql = getStatements(data.getClass());
+      PartialUpdate update = sql.getPartialUpdate(columns);
 
-      // Genera la clusula SET
-      sql.append(SQL_SET);
-      sql.append(" ");
+      executeUpdate(sql, update.statement, update.fields, data);
+   }
 
-      first = true;
-      for (Method method : data.getClass().getMethods())
+   /**
+    * Inserta un conjunto de instancias de un objeto CORM.
+    * <br /><br />
+    * Las sentncias se envan por lotes en una nica transaccin. Si la conexin tiene activado el parmetro 
+    * {@code corm.insert.copy}, los registros se cargan mediante {@code COPY ... FROM STDIN}, que es notablemente ms 
+    * rpido para cargas masivas.
+    * 
+    * @param data Coleccin de instancias (de la misma clase CORM) a insertar.
+    * 
+    * @throws InvalidMappingException
+    * @throws DataException 
+    * @throws SQLException 
+    * @throws Exception 
+    */
+   @Override
+   public void insertAll(Collection<?> data) throws InvalidMappingException, SQLException, DataException, Exception
+   {
+      if (data.isEmpty())
       {
-         cfg = method.getAnnotation(CormObjectField.class);
+         return;
+      }
 
-         if (cfg != null)
+      EntityStatements sql = getStatements(getCollectionClass(data));
+
+      if (this.getConnection().getProperties().getParamBoolean(CORM_INSERT_COPY, false))
+      {
+         this.getConnection().connect();
+         try
          {
-            if (!cfg.isPrimaryKey())
+            if (this.getConnection().getConnection() instanceof PGConnection)
             {
-               sql.append((first ? "" : ", "));
-               sql.append(method.getAnnotation(CormObjectField.class).dbTableColumn());
-               sql.append(" = ");
-               sql.append(getFormatedValue(method, data));
-
-               first = false;
+               copyAll(sql, data);
+               return;
             }
          }
+         finally
+         {
+            this.getConnection().disconnect();
+         }
       }
 
-      sql.append(" ");
+      // Memoriza la sentncia SQL generada
+      this.setLastSqlSentence(sql.insert);
 
-      // Genera la clusua WHERE
-      sql.append(getFilter(data));
+      this.getConnection().executeBatch(sql.insert, getParameterRows(sql.metadata.getInsertColumns(), data));
+   }
+
+   /**
+    * Actualiza un conjunto de instancias de un objeto CORM.<br />
+    * Las sentncias se envan por lotes en una nica transaccin.
+    * 
+    * @param data Coleccin de instancias (de la misma clase CORM) a actualizar.
+    * 
+    * @throws InvalidMappingException
+    * @throws DataException 
+    * @throws SQLException 
+    * @throws Exception 
+    */
+   @Override
+   public void updateAll(Collection<?> data) throws InvalidMappingException, SQLException, DataException, Exception
+   {
+      if (data.isEmpty())
+      {
+         return;
+      }
+
+      EntityStatements sql = getStatements(getCollectionClass(data));
+      Column version = sql.metadata.getVersionColumn();
 
       // Memoriza la sentncia SQL generada
-      this.setLastSqlSentence(sql.toString());
+      this.setLastSqlSentence(sql.update);
 
-      // Ejecuta la sentncia SQL
-      this.getConnection().connect();
-      this.getConnection().execute(sql.toString());
-      this.getConnection().disconnect();
+      if (version == null)
+      {
+         this.getConnection().executeBatch(sql.update, getParameterRows(sql.metadata.getUpdateColumns(), data));
+         return;
+      }
+
+      // Con bloqueo optimista, si algn registro no se actualiza se descarta todo el lote
+      ArrayList<Column> fields = new ArrayList<Column>(sql.metadata.getUpdateColumns());
+      fields.add(version);
+
+      TransactionScope tx = this.getConnection().beginTransaction();
+      try
+      {
+         int rows = this.getConnection().executeBatch(sql.update, getParameterRows(fields, data));
+         if (rows < data.size())
+         {
+            throw new OptimisticLockException(sql.metadata.getEntityClass().getName() + ": " + (data.size() - rows) + " records have been modified or deleted by another user.");
+         }
+
+         tx.commit();
+      }
+      finally
+      {
+         tx.close();
+      }
+
+      for (Object item : data)
+      {
+         sql.metadata.incrementVersion(item);
+      }
    }
 
 
@@ -497,6 +567,17 @@ public class OrmDriverPostgreSqlImpl extends OrmDriver
    private final static String SQL_ORDERBY = "ORDER BY";
    private final static String SQL_ORDERBY_ASC = "Asc";
    private final static String SQL_ORDERBY_DESC = "Desc";
+   private final static String SQL_NULLS_FIRST = "Nulls First";
+   private final static String SQL_NULLS_LAST = "Nulls Last";
+   private final static String SQL_LIMIT = "LIMIT";
+   private final static String SQL_OFFSET = "OFFSET";
+   private final static String SQL_COUNT = "COUNT(*)";
+   private final static String SQL_OPERATOR_OR = "Or";
+   private final static String SQL_LIKE = "Like";
+   private final static String SQL_IS_NULL = "Is Null";
+   private final static String SQL_IS_NOT_NULL = "Is Not Null";
+   private final static String SQL_FALSE = "False";
+   private final static String SQL_IN = "IN";
    private final static String SQL_INSERT = "INSERT INTO";
    private final static String SQL_INSERT_VALUES = "VALUES";
    private final static String SQL_DELETE = "DELETE FROM";
@@ -504,144 +585,873 @@ public class OrmDriverPostgreSqlImpl extends OrmDriver
    private final static String SQL_OPERATOR_AND = "And";
    private final static String SQL_UPDATE = "UPDATE";
    private final static String SQL_SET = "SET";
+   private final static String SQL_COPY = "COPY";
+   private final static String SQL_COPY_FROM_CSV = "FROM STDIN WITH CSV";
+   private final static String SQL_RETURNING = "RETURNING";
+   private final static String SQL_ON_CONFLICT = "ON CONFLICT";
+   private final static String SQL_DO_UPDATE = "DO UPDATE SET";
+   private final static String SQL_DO_NOTHING = "DO NOTHING";
+   private final static String SQL_EXCLUDED = "EXCLUDED";
+   private final static String SQL_COALESCE = "COALESCE";
+   private final static String SQL_NOT_DISTINCT = "IS NOT DISTINCT FROM";
+
+   // Nmero mximo de valores de cada clusula IN
+   private final static int MAX_IN_VALUES = 500;
+
+   // Parmetro de la conexin que activa la carga masiva mediante COPY
+   private final static String CORM_INSERT_COPY = "corm.insert.copy";
 
-   private final static String POSTGRESQL_DATE_FORMAT = "yyyy/MM/dd";
-   private final static String POSTGRESQL_DECIMAL_FORMAT = "#.#############################################";
-
-   private final static String POSTGRESQL_NULL = "NULL";
+   /**
+    * Obtiene las sentncias SQL de un objeto CORM (se generan la primera vez que se solicitan).
+    * 
+    * @throws InvalidMappingException Si la clase no es un objeto CORM vlido.
+    */
+   private EntityStatements getStatements(Class<?> ormClass) throws InvalidMappingException
+   {
+      EntityStatements sql = statements.get(ormClass);
+
+      if (sql == null)
+      {
+         EntityMetadata metadata = EntityMetadata.get(ormClass);
+         if (!metadata.isValid())
+         {
+            throw new InvalidMappingException(ormClass.getName() + " is not a CORM object.");
+         }
+
+         sql = new EntityStatements(metadata);
+         EntityStatements existing = statements.putIfAbsent(ormClass, sql);
+         if (existing != null)
+         {
+            sql = existing;
+         }
+      }
+
+      return sql;
+   }
 
    /**
-    * Convierte un valor String en una cadena que lo representa.
+    * Obtiene la ordenacin de una consulta, validando las columnas contra los metadatos del objeto.
+    * 
+    * @param paged Indica si la consulta se pagina: en ese caso se agregan las columnas de la clave principal que no 
+    *    formen parte de la ordenacin, de manera que el orden de las filas sea estable.
     */
-   private String convertToSql(String text)
+   private List<Order> getOrders(EntityMetadata metadata, OrmQuery query, boolean paged) throws InvalidMappingException
    {
-      return addStringDelimiters(text.replace("'", "''"));
+      ArrayList<Order> orders = new ArrayList<Order>();
+      ArrayList<String> used = new ArrayList<String>();
+
+      if (query.getOrders().isEmpty())
+      {
+         for (Column column : metadata.getSortColumns())
+         {
+            orders.add(new Order(column.getName(), column.getSort() != FieldSortType.Descending));
+            used.add(column.getName());
+         }
+      }
+      else
+      {
+         for (Order order : query.getOrders())
+         {
+            Column column = getColumn(metadata, order.getColumn());
+            orders.add(new Order(column.getName(), order.isAscending()));
+            used.add(column.getName());
+         }
+      }
+
+      if (paged)
+      {
+         for (Column column : metadata.getPrimaryKeys())
+         {
+            if (!used.contains(column.getName()))
+            {
+               orders.add(new Order(column.getName(), true));
+            }
+         }
+      }
+
+      return orders;
    }
 
    /**
-    * Convierte un valor Date en una cadena que lo representa.
+    * Genera la clusula WHERE de una consulta: los filtros y, si se usa paginacin por clave, la condicin que 
+    * selecciona las filas posteriores a la ltima fila de la pgina anterior.
+    * 
+    * @param orders La ordenacin de la consulta (ver {@link #getOrders(EntityMetadata, OrmQuery, boolean)}) o 
+    *    {@code null} si se debe ignorar la paginacin por clave.
+    * @param params Lista a la que se agregan los valores de los parmetros de la clusula.
     */
-   private String convertToSql(Integer value)
+   private void appendWhere(StringBuilder sql, EntityMetadata metadata, OrmQuery query, List<Order> orders, List<Object> params) throws InvalidMappingException, OrmException
    {
-      return value.toString();
+      boolean first = true;
+
+      for (Filter filter : query.getFilters())
+      {
+         Column column = getColumn(metadata, filter.getColumn());
+
+         sql.append((first ? " " + SQL_WHERE + " " : " " + SQL_OPERATOR_AND + " "));
+         sql.append(column.getName());
+         first = false;
+
+         if (filter.getOperator() == OrmQuery.Operator.IsNull || (filter.getOperator() == OrmQuery.Operator.Equals && filter.getValue() == null))
+         {
+            sql.append(" ").append(SQL_IS_NULL);
+            continue;
+         }
+         else if (filter.getOperator() == OrmQuery.Operator.IsNotNull || (filter.getOperator() == OrmQuery.Operator.NotEquals && filter.getValue() == null))
+         {
+            sql.append(" ").append(SQL_IS_NOT_NULL);
+            continue;
+         }
+
+         switch (filter.getOperator())
+         {
+            case NotEquals:      sql.append(" <> ?"); break;
+            case GreaterThan:    sql.append(" > ?"); break;
+            case GreaterOrEqual: sql.append(" >= ?"); break;
+            case LessThan:       sql.append(" < ?"); break;
+            case LessOrEqual:    sql.append(" <= ?"); break;
+            case Like:           sql.append(" ").append(SQL_LIKE).append(" ?"); break;
+            default:             sql.append(" = ?"); break;
+         }
+         params.add(filter.getValue());
+      }
+
+      // Paginacin por clave: (c1 > ?) Or (c1 = ? And c2 > ?) Or ...
+      // Los NULL se ordenan al final en orden ascendente y al principio en orden descendente (ver ORDER BY), de
+      // manera que se comparan como el valor ms alto: las igualdades con NULL usan Is Null y las comparaciones
+      // incluyen o excluyen las filas con NULL segn su posicin.
+      if (orders != null && query.getAfter() != null)
+      {
+         Object[] after = query.getAfter();
+         if (after.length != orders.size())
+         {
+            throw new OrmException("Keyset pagination needs " + orders.size() + " values (found " + after.length + ").");
+         }
+
+         sql.append((first ? " " + SQL_WHERE + " (" : " " + SQL_OPERATOR_AND + " ("));
+         boolean firstTerm = true;
+         for (int i = 0; i < orders.size(); i++)
+         {
+            String column = orders.get(i).getColumn();
+
+            // En orden ascendente no hay ninguna fila posterior a un NULL
+            if (orders.get(i).isAscending() && after[i] == null)
+            {
+               continue;
+            }
+
+            sql.append((firstTerm ? "(" : " " + SQL_OPERATOR_OR + " ("));
+            firstTerm = false;
+            for (int j = 0; j < i; j++)
+            {
+               sql.append(orders.get(j).getColumn());
+               if (after[j] == null)
+               {
+                  sql.append(" ").append(SQL_IS_NULL);
+               }
+               else
+               {
+                  sql.append(" = ?");
+                  params.add(after[j]);
+               }
+               sql.append(" ").append(SQL_OPERATOR_AND).append(" ");
+            }
+
+            if (orders.get(i).isAscending())
+            {
+               sql.append("(").append(column).append(" > ? ").append(SQL_OPERATOR_OR).append(" ");
+               sql.append(column).append(" ").append(SQL_IS_NULL).append(")");
+               params.add(after[i]);
+            }
+            else if (after[i] == null)
+            {
+               sql.append(column).append(" ").append(SQL_IS_NOT_NULL);
+            }
+            else
+            {
+               sql.append(column).append(" < ?");
+               params.add(after[i]);
+            }
+            sql.append(")");
+         }
+         if (firstTerm)
+         {
+            sql.append(SQL_FALSE);
+         }
+         sql.append(")");
+      }
    }
 
    /**
-    * Convierte un valor Date en una cadena que lo representa.
+    * Ejecuta una sentncia UPDATE.<br />
+    * Si el objeto declara una columna de versin, se agrega su valor actual como ltimo parmetro (ver 
+    * {@link #getUpdateSql(EntityMetadata, List)}) y, si no se actualiza ningn registro, se lanza una excepcin. Si 
+    * se actualiza, se incrementa la versin de la instancia.
+    * 
+    * @param fields Las columnas de los parmetros de la sentncia (sin la columna de versin).
+    * 
+    * @throws OptimisticLockException Si el registro ha sido modificado o eliminado desde que se obtuvo.
     */
-   private String convertToSql(Date date)
+   private void executeUpdate(EntityStatements sql, String statement, List<Column> fields, Object data) throws SQLException, DataException, Exception
    {
-      SimpleDateFormat dt = new SimpleDateFormat(POSTGRESQL_DATE_FORMAT); 
-      return addStringDelimiters(dt.format(date));
+      Column version = sql.metadata.getVersionColumn();
+      Object[] params = getParameterValues(fields, data);
+
+      if (version != null)
+      {
+         Object[] values = new Object[params.length + 1];
+         System.arraycopy(params, 0, values, 0, params.length);
+         values[params.length] = getParameterValue(version, data);
+         params = values;
+      }
+
+      // Memoriza la sentncia SQL generada
+      this.setLastSqlSentence(statement);
+
+      // Ejecuta la sentncia SQL
+      this.getConnection().connect();
+      int rows = this.getConnection().execute(statement, params);
+      this.getConnection().disconnect();
+
+      if (version != null)
+      {
+         if (rows == 0)
+         {
+            throw new OptimisticLockException(data.getClass().getName() + " has been modified or deleted by another user.");
+         }
+         sql.metadata.incrementVersion(data);
+      }
+   }
+
+   /**
+    * Genera el procesador de la fila devuelta por una sentncia con clusula {@code RETURNING}, que establece en la 
+    * instancia los campos devueltos (los autogenerados y, en las sentncias {@code INSERT ... ON CONFLICT}, la columna 
+    * de versin).
+    */
+   private static RowHandler getGeneratedHandler(final EntityReader reader, final Object data)
+   {
+      return new RowHandler()
+      {
+         @Override
+         public boolean processRow(ResultSet rs) throws SQLException
+         {
+            reader.read(rs, data);
+            return false;
+         }
+      };
    }
 
    /**
-    * Convierte un valor Float en una cadena que lo representa.
+    * Obtiene las descripciones de un grupo de registros relacionados mediante una nica consulta.
+    * 
+    * @param labels Mapa que recibe la descripcin de cada registro encontrado.
     */
-   private String convertToSql(Float value)
+   private void getLabels(CormForeignKey foreignKey, List<Object> keys, final HashMap<String, String> labels) throws SQLException, DataException, Exception
    {
-      DecimalFormat df = new DecimalFormat(OrmDriverPostgreSqlImpl.POSTGRESQL_DECIMAL_FORMAT);
-      return df.format(value);
+      StringBuilder sql = new StringBuilder();
+
+      sql.append(SQL_SELECT);
+      sql.append(" ");
+      sql.append(foreignKey.dbTableField());
+      sql.append(", ");
+      sql.append(foreignKey.dbTableLabel());
+      sql.append(" ");
+      sql.append(SQL_FROM);
+      sql.append(" ");
+      sql.append(foreignKey.dbTableName());
+      sql.append(" ");
+      sql.append(SQL_WHERE);
+      sql.append(" ");
+      sql.append(foreignKey.dbTableField());
+      sql.append(" ");
+      sql.append(SQL_IN);
+      sql.append(" (");
+      for (int i = 0; i < keys.size(); i++)
+      {
+         sql.append((i == 0 ? "?" : ", ?"));
+      }
+      sql.append(")");
+
+      // Memoriza la sentncia SQL generada
+      this.setLastSqlSentence(sql.toString());
+
+      this.getConnection().query(sql.toString(), keys.toArray(), new RowHandler()
+      {
+         @Override
+         public boolean processRow(ResultSet rs) throws SQLException
+         {
+            labels.put(rs.getString(1), rs.getString(2));
+            return true;
+         }
+      });
    }
 
    /**
-    * Convierte un valor Double en una cadena que lo representa.
+    * Obtiene una columna de un objeto CORM a partir de su nombre.
+    * 
+    * @throws InvalidMappingException Si el objeto no tiene ninguna columna con el nombre indicado.
     */
-   private String convertToSql(Double value)
+   private Column getColumn(EntityMetadata metadata, String name) throws InvalidMappingException
    {
-      DecimalFormat df = new DecimalFormat(OrmDriverPostgreSqlImpl.POSTGRESQL_DECIMAL_FORMAT);
-      return df.format(value);
+      Column column = metadata.getColumn(name);
+
+      if (column == null)
+      {
+         throw new InvalidMappingException(metadata.getEntityClass().getName() + " does not have a column named '" + name + "'.");
+      }
+
+      return column;
    }
 
    /**
-    * Convierte un valor Boolean en una cadena que lo representa.
+    * Genera una sentncia SELECT que obtiene todos los registros de un objeto CORM.
+    * 
+    * @param showAllColumns {@code true} incluye todas las columnas y {@code false} slo las de los listados.
     */
-   private String convertToSql(Boolean value)
+   private static String getSelectSql(EntityMetadata metadata, boolean showAllColumns)
    {
-      return addStringDelimiters(value ? "1" : "0");
+      StringBuilder sql = new StringBuilder();
+
+      // Configura la clusula SELECT
+      sql.append(SQL_SELECT);
+      sql.append(" ");
+      sql.append(metadata.getSelectList(showAllColumns));
+      sql.append(" ");
+
+      // Configura la clusula FROM
+      sql.append(SQL_FROM);
+      sql.append(" ");
+      sql.append(metadata.getTableName());
+
+      // Configura la clusula ORDER BY
+      if (metadata.hasSortedColumns())
+      {
+         sql.append(" ");
+         sql.append(SQL_ORDERBY);
+         sql.append(" ");
+         sql.append(metadata.getOrderBy());
+      }
+
+      return sql.toString();
    }
 
    /**
-    * Agrega delimitadores de String a una cadena.
+    * Genera una sentncia SELECT parametrizada que obtiene un registro por su clave principal (los parmetros 
+    * corresponden a {@link EntityMetadata#getPrimaryKeys()}).
     */
-   private String addStringDelimiters(String text)
+   private static String getGetSql(EntityMetadata metadata)
    {
-      return "'" + text + "'";
+      StringBuilder sql = new StringBuilder();
+
+      // Configura la clusula SELECT
+      sql.append(SQL_SELECT);
+      sql.append(" ");
+      sql.append(metadata.getColumnList());
+      sql.append(" ");
+
+      // Configura la clusula FROM
+      sql.append(SQL_FROM);
+      sql.append(" ");
+      sql.append(metadata.getTableName());
+      sql.append(" ");
+
+      // Genera la clusua WHERE
+      sql.append(SQL_WHERE);
+      sql.append(" ");
+      sql.append(metadata.getKeyFilter());
+
+      return sql.toString();
    }
 
-   private String getFormatedValue(Method method, Object data) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException
+   /**
+    * Genera una sentncia INSERT parametrizada (los parmetros corresponden a {@link EntityMetadata#getInsertColumns()}).
+    */
+   private static String getInsertSql(EntityMetadata metadata)
    {
-      Object retData;
+      StringBuilder sql = new StringBuilder();
 
-      // Invoca el mtodo para obtener el valor
-      retData = method.invoke(data);
+      // Genera la clusula INSERT
+      sql.append(SQL_INSERT);
+      sql.append(" ");
+      sql.append(metadata.getTableName());
+      sql.append(" (");
+      sql.append(metadata.getInsertColumnList());
+      sql.append(") ");
+
+      // Genera la clusula VALUES
+      sql.append(SQL_INSERT_VALUES);
+      sql.append(" (");
+      sql.append(metadata.getInsertValueList());
+      sql.append(")");
+
+      return sql.toString();
+   }
 
-      // Si es NULL devuelve el valor NULL dependiente del motor de BBDD
-      if (retData == null)
+   /**
+    * Genera la clusula {@code RETURNING} que devuelve un conjunto de columnas de un objeto CORM.
+    * 
+    * @return La clusula (precedida de un espacio) o una cadena vaca si no hay columnas que devolver.
+    */
+   private static String getReturningSql(List<Column> columns)
+   {
+      StringBuilder sql = new StringBuilder();
+
+      for (Column column : columns)
       {
-         return POSTGRESQL_NULL;
+         sql.append((sql.length() == 0 ? " " + SQL_RETURNING + " " : ", "));
+         sql.append(column.getName());
       }
-      // Texto
-      else if ((method.getReturnType() == String.class) || (method.getReturnType() == char.class))
+
+      return sql.toString();
+   }
+
+   /**
+    * Obtiene las columnas que devuelve la sentncia {@code INSERT ... ON CONFLICT}: los campos autogenerados y la 
+    * columna de versin, que la base de datos incrementa en caso de conflicto.
+    */
+   private static List<Column> getUpsertReturningColumns(EntityMetadata metadata)
+   {
+      List<Column> columns = new ArrayList<Column>(metadata.getGeneratedColumns());
+      Column version = metadata.getVersionColumn();
+
+      if (version != null && !columns.contains(version))
       {
-         return convertToSql((String) retData);
+         columns.add(version);
       }
-      // Enteros
-      else if (method.getReturnType() == Integer.class || method.getReturnType() == int.class ||
-               method.getReturnType() == Long.class || method.getReturnType() == long.class ||
-               method.getReturnType() == Short.class || method.getReturnType() == short.class ||
-               method.getReturnType() == Byte.class || method.getReturnType() == byte.class)
+
+      return columns;
+   }
+
+   /**
+    * Genera la sentncia {@code INSERT ... ON CONFLICT} de un objeto CORM.<br />
+    * En caso de conflicto en la clave principal se actualizan el resto de columnas insertadas con los valores 
+    * propuestos ({@code EXCLUDED}). La sentncia devuelve las columnas de {@link #getUpsertReturningColumns(EntityMetadata)}.
+    */
+   private static String getUpsertSql(EntityMetadata metadata)
+   {
+      StringBuilder sql = new StringBuilder();
+      StringBuilder set = new StringBuilder();
+      List<Column> columns = metadata.getUpsertColumns();
+
+      // Genera la clusula INSERT
+      sql.append(SQL_INSERT);
+      sql.append(" ");
+      sql.append(metadata.getTableName());
+      sql.append(" (");
+      for (int i = 0; i < columns.size(); i++)
       {
-         return convertToSql((Integer) retData);
+         sql.append((i == 0 ? "" : ", "));
+         sql.append(columns.get(i).getName());
+
+         if (columns.get(i) == metadata.getVersionColumn())
+         {
+            // La columna de versin se incrementa en lugar de sobreescribirse
+            set.append((set.length() == 0 ? "" : ", "));
+            set.append(columns.get(i).getName());
+            set.append(" = ");
+            set.append(SQL_COALESCE);
+            set.append("(");
+            set.append(metadata.getTableName());
+            set.append(".");
+            set.append(columns.get(i).getName());
+            set.append(", 0) + 1");
+         }
+         else if (!columns.get(i).isPrimaryKey())
+         {
+            set.append((set.length() == 0 ? "" : ", "));
+            set.append(columns.get(i).getName());
+            set.append(" = ");
+            set.append(SQL_EXCLUDED);
+            set.append(".");
+            set.append(columns.get(i).getName());
+         }
       }
-      // Decimales
-      else if (method.getReturnType() == Double.class || method.getReturnType() == double.class)
+      sql.append(") ");
+
+      // Genera la clusula VALUES
+      sql.append(SQL_INSERT_VALUES);
+      sql.append(" (");
+      for (int i = 0; i < columns.size(); i++)
       {
-         return convertToSql((Double) retData);
+         sql.append((i == 0 ? "?" : ", ?"));
       }
-      else if (method.getReturnType() == Float.class || method.getReturnType() == float.class)
+      sql.append(")");
+
+      // Genera la clusula ON CONFLICT
+      sql.append(" ");
+      sql.append(SQL_ON_CONFLICT);
+      sql.append(" (");
+      for (int i = 0; i < metadata.getPrimaryKeys().size(); i++)
       {
-         return convertToSql((Float) retData);
+         sql.append((i == 0 ? "" : ", "));
+         sql.append(metadata.getPrimaryKeys().get(i).getName());
       }
-      // Fechas y horas
-      else if (method.getReturnType() == Date.class)
+      sql.append(") ");
+      if (set.length() == 0)
       {
-         return convertToSql((Date) retData);
+         sql.append(SQL_DO_NOTHING);
       }
-      // Booleanos
-      else if (method.getReturnType() == boolean.class || method.getReturnType() == Boolean.class)
+      else
       {
-         return convertToSql((Boolean) retData);
+         sql.append(SQL_DO_UPDATE);
+         sql.append(" ");
+         sql.append(set);
       }
 
-      return "";
+      sql.append(getReturningSql(getUpsertReturningColumns(metadata)));
+
+      return sql.toString();
    }
 
-   private String getFilter(Object data) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException
+   /**
+    * Genera una sentncia UPDATE parametrizada (los parmetros corresponden a {@link EntityMetadata#getUpdateColumns()}).
+    */
+   private static String getUpdateSql(EntityMetadata metadata, List<Column> columns)
    {
-      boolean first;
       StringBuilder sql = new StringBuilder();
+      Column version = metadata.getVersionColumn();
+
+      // Genera la clusula UPDATE
+      sql.append(SQL_UPDATE);
+      sql.append(" ");
+      sql.append(metadata.getTableName());
+      sql.append(" ");
+
+      // Genera la clusula SET
+      sql.append(SQL_SET);
+      sql.append(" ");
+      for (int i = 0; i < columns.size(); i++)
+      {
+         sql.append((i == 0 ? "" : ", "));
+         sql.append(columns.get(i).getName());
+         sql.append(" = ?");
+      }
+      if (version != null)
+      {
+         sql.append((columns.isEmpty() ? "" : ", "));
+         sql.append(version.getName());
+         sql.append(" = ");
+         sql.append(SQL_COALESCE);
+         sql.append("(");
+         sql.append(version.getName());
+         sql.append(", 0) + 1");
+      }
 
+      // Genera la clusula WHERE
+      sql.append(" ");
+      sql.append(SQL_WHERE);
+      sql.append(" ");
+      sql.append(metadata.getKeyFilter());
+      if (version != null)
+      {
+         sql.append(" ");
+         sql.append(SQL_OPERATOR_AND);
+         sql.append(" ");
+         sql.append(version.getName());
+         sql.append(" ");
+         sql.append(SQL_NOT_DISTINCT);
+         sql.append(" ?");
+      }
+
+      return sql.toString();
+   }
+
+   /**
+    * Genera una sentncia DELETE parametrizada (los parmetros corresponden a {@link EntityMetadata#getPrimaryKeys()}).
+    */
+   private static String getDeleteSql(EntityMetadata metadata)
+   {
+      StringBuilder sql = new StringBuilder();
+
+      sql.append(SQL_DELETE);
+      sql.append(" ");
+      sql.append(metadata.getTableName());
+      sql.append(" ");
       sql.append(SQL_WHERE);
       sql.append(" ");
+      sql.append(metadata.getKeyFilter());
+
+      return sql.toString();
+   }
 
-      first = true;
-      for (Method method : data.getClass().getMethods())
+   /**
+    * Genera una sentncia {@code COPY ... FROM STDIN} para las columnas de {@link EntityMetadata#getInsertColumns()}.
+    */
+   private static String getCopySql(EntityMetadata metadata)
+   {
+      StringBuilder sql = new StringBuilder();
+
+      sql.append(SQL_COPY);
+      sql.append(" ");
+      sql.append(metadata.getTableName());
+      sql.append(" (");
+      sql.append(metadata.getInsertColumnList());
+      sql.append(") ");
+      sql.append(SQL_COPY_FROM_CSV);
+
+      return sql.toString();
+   }
+
+   /**
+    * Obtiene los valores de los parmetros de una instancia para los campos indicados.
+    */
+   private Object[] getParameterValues(List<Column> fields, Object data) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException
+   {
+      Object[] values = new Object[fields.size()];
+
+      for (int i = 0; i < fields.size(); i++)
       {
-         if (method.isAnnotationPresent(CormObjectField.class))
+         values[i] = getParameterValue(fields.get(i), data);
+      }
+
+      return values;
+   }
+
+   /**
+    * Obtiene los valores de los parmetros de un conjunto de instancias para los campos indicados.
+    */
+   private List<Object[]> getParameterRows(List<Column> fields, Collection<?> data) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException
+   {
+      ArrayList<Object[]> rows = new ArrayList<Object[]>(data.size());
+
+      for (Object item : data)
+      {
+         rows.add(getParameterValues(fields, item));
+      }
+
+      return rows;
+   }
+
+   /**
+    * Obtiene la clase CORM de los elementos de una coleccin (todos deben ser de la misma clase).
+    */
+   private Class<?> getCollectionClass(Collection<?> data) throws InvalidMappingException
+   {
+      Class<?> ormClass = data.iterator().next().getClass();
+
+      for (Object item : data)
+      {
+         if (item.getClass() != ormClass)
+         {
+            throw new InvalidMappingException("All objects must be instances of " + ormClass.getName() + " (found " + item.getClass().getName() + ").");
+         }
+      }
+
+      return ormClass;
+   }
+
+   /**
+    * Inserta un conjunto de instancias mediante {@code COPY ... FROM STDIN} (formato CSV).
+    * <br /><br />
+    * Los registros se envan en bloques del tamao de lote configurado en la conexin, dentro de una nica transaccin.
+    */
+   private void copyAll(EntityStatements entity, Collection<?> data) throws InvalidMappingException, SQLException, DataException, Exception
+   {
+      List<Column> fields = entity.metadata.getInsertColumns();
+      String sql = entity.copy;
+      StringBuilder buffer = new StringBuilder();
+      int batchSize = this.getConnection().getBatchSize();
+      int pending = 0;
+
+      // Memoriza la sentncia SQL generada
+      this.setLastSqlSentence(sql);
+
+      TransactionScope tx = this.getConnection().beginTransaction();
+      long start = System.nanoTime();
+      int rows = -1;
+      try
+      {
+         CopyManager copy = ((PGConnection) this.getConnection().getConnection()).getCopyAPI();
+
+         for (Object item : data)
          {
-            if (method.getAnnotation(CormObjectField.class).isPrimaryKey())
+            for (int i = 0; i < fields.size(); i++)
             {
-               sql.append((first ? "" : " " + SQL_OPERATOR_AND + " "));
-               sql.append(method.getAnnotation(CormObjectField.class).dbTableColumn());
-               sql.append(" = ");
-               sql.append(getFormatedValue(method, data));
+               buffer.append((i == 0 ? "" : ","));
+               buffer.append(toCsvValue(getParameterValue(fields.get(i), item)));
+            }
+            buffer.append("\n");
 
-               first = false;
+            if (++pending >= batchSize)
+            {
+               copy.copyIn(sql, new StringReader(buffer.toString()));
+               buffer.setLength(0);
+               pending = 0;
             }
          }
+
+         if (pending > 0)
+         {
+            copy.copyIn(sql, new StringReader(buffer.toString()));
+         }
+         rows = data.size();
+
+         tx.commit();
       }
+      catch (SQLException ex)
+      {
+         throw this.getConnection().failure(ex);
+      }
+      finally
+      {
+         // La carga mediante COPY no pasa por el agente: se registra aqu en sus estadsticas
+         this.getConnection().getStatistics().record(sql, start, rows);
+         tx.close();
+      }
+   }
 
-      return sql.toString();
+   /**
+    * Convierte un valor en un campo CSV para la sentncia {@code COPY} ({@code null} se representa con un campo vaco).
+    */
+   private String toCsvValue(Object value)
+   {
+      if (value == null)
+      {
+         return "";
+      }
+      else if (value instanceof Number || value instanceof Boolean)
+      {
+         return value.toString();
+      }
+
+      // Texto, fechas y cualquier otro valor se envan entre comillas (un texto vaco no equivale a NULL)
+      return "\"" + value.toString().replace("\"", "\"\"") + "\"";
+   }
+
+   /**
+    * Obtiene el valor de un campo para usarlo como parmetro de una sentncia preparada.
+    */
+   private Object getParameterValue(Column column, Object data) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException
+   {
+      // Invoca el mtodo para obtener el valor
+      Object retData = column.getValue(data);
+
+      // Las fechas se envan sin hora (tipo DATE), igual que en la versin basada en literales
+      if (retData != null && column.getType() == Date.class)
+      {
+         return new java.sql.Date(((Date) retData).getTime());
+      }
+
+      return retData;
+   }
+
+
+   //==============================================
+   // Inner classes
+   //==============================================
+
+   /**
+    * Contiene las sentncias SQL (parametrizadas) de un objeto CORM.
+    */
+   private static class EntityStatements
+   {
+      // Nmero mximo de combinaciones de columnas de las actualizaciones parciales que se guardan
+      private static final int MAX_PARTIAL_UPDATES = 64;
+
+      final EntityMetadata metadata;
+      final String select;
+      final String selectGrid;
+      final String get;
+      final String insert;
+      final String insertReturning;
+      final String upsert;
+      final String update;
+      final String delete;
+      final String copy;
+      final EntityReader reader;
+      final EntityReader generated;
+      final EntityReader upserted;
+      final ConcurrentHashMap<BitSet, PartialUpdate> partialUpdates;
+
+      EntityStatements(EntityMetadata metadata)
+      {
+         this.metadata = metadata;
+         this.select = getSelectSql(metadata, true);
+         this.selectGrid = getSelectSql(metadata, false);
+         this.get = getGetSql(metadata);
+         this.insert = getInsertSql(metadata);
+         this.insertReturning = this.insert + getReturningSql(metadata.getGeneratedColumns());
+         this.upsert = (metadata.hasPrimaryKey() ? getUpsertSql(metadata) : null);
+         this.update = getUpdateSql(metadata, metadata.getSetColumns());
+         this.delete = getDeleteSql(metadata);
+         this.copy = getCopySql(metadata);
+
+         // Las columnas de la consulta por clave principal son todas las columnas, en el orden de los metadatos
+         this.reader = new EntityReader(metadata, metadata.getColumns());
+
+         // Las columnas de la clusula RETURNING son los campos autogenerados
+         this.generated = (metadata.getGeneratedColumns().isEmpty() ? null : new EntityReader(metadata, metadata.getGeneratedColumns()));
+
+         // La clusula RETURNING de INSERT ... ON CONFLICT incluye adems la columna de versin
+         List<Column> upserted = getUpsertReturningColumns(metadata);
+         this.upserted = (upserted.isEmpty() || !metadata.hasPrimaryKey() ? null : new EntityReader(metadata, upserted));
+
+         this.partialUpdates = new ConcurrentHashMap<BitSet, PartialUpdate>();
+      }
+
+      String getSelect(boolean showAllColumns)
+      {
+         return (showAllColumns ? this.select : this.selectGrid);
+      }
+
+      /**
+       * Obtiene la sentncia UPDATE de un subconjunto de columnas actualizables.<br />
+       * Las sentncias se guardan segn la combinacin de columnas (posiciones en {@link EntityMetadata#getSetColumns()}), 
+       * de manera que slo se generan una vez.
+       *
+       * @throws InvalidMappingException si alguna columna no es actualizable.
+       */
+      PartialUpdate getPartialUpdate(List<Column> columns) throws InvalidMappingException
+      {
+         List<Column> setColumns = this.metadata.getSetColumns();
+         BitSet mask = new BitSet(setColumns.size());
+
+         for (Column column : columns)
+         {
+            int index = setColumns.indexOf(column);
+            if (index < 0)
+            {
+               throw new InvalidMappingException(this.metadata.getEntityClass().getName() + ": column " + column.getName() + " can not be updated.");
+            }
+            mask.set(index);
+         }
+
+         PartialUpdate update = this.partialUpdates.get(mask);
+         if (update == null)
+         {
+            // Las columnas se ordenan segn los metadatos, de manera que cada combinacin tiene una nica sentncia
+            ArrayList<Column> ordered = new ArrayList<Column>();
+            for (int i = mask.nextSetBit(0); i >= 0; i = mask.nextSetBit(i + 1))
+            {
+               ordered.add(setColumns.get(i));
+            }
+
+            update = new PartialUpdate(getUpdateSql(this.metadata, ordered), ordered, this.metadata.getPrimaryKeys());
+            if (this.partialUpdates.size() < MAX_PARTIAL_UPDATES)
+            {
+               this.partialUpdates.putIfAbsent(mask, update);
+            }
+         }
+
+         return update;
+      }
+   }
+
+   /**
+    * Contiene la sentncia UPDATE de un subconjunto de columnas y la lista de columnas de sus parmetros.
+    */
+   private static class PartialUpdate
+   {
+      final String statement;
+      final List<Column> fields;
+
+      PartialUpdate(String statement, List<Column> columns, List<Column> keys)
+      {
+         ArrayList<Column> fields = new ArrayList<Column>(columns);
+         fields.addAll(keys);
+
+         this.statement = statement;
+         this.fields = fields;
+      }
    }
 }
@@ -3,6 +3,9 @@ package com.cosmo.reports;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 
@@ -160,10 +163,15 @@ public abstract class ReportsEngine
 
       try
       {
-         // Ejecuta todas las consultas necesarias para el informe
+         // Ejecuta en paralelo todas las consultas necesarias para el informe y espera a que finalicen
+         HashMap<String, Future<ResultSet>> loads = new HashMap<String, Future<ResultSet>>();
          for (DataQuery dq : getReport().getDataQueries())
          {
-            data.put(dq.getId(), dq.execute(getWorkspace()));
+            loads.put(dq.getId(), dq.executeAsync(getWorkspace()));
+         }
+         for (Map.Entry<String, Future<ResultSet>> load : loads.entrySet())
+         {
+            data.put(load.getKey(), load.getValue().get());
          }
 
          // Genera el HEADER
@@ -181,6 +189,11 @@ public abstract class ReportsEngine
          // Almacena el cdigo XHTML resultante
          getReport().setRenderedXhtml(XmlUtils.trimXml(xhtml.toString()));
       }
+      catch (ExecutionException ex)
+      {
+         log.error("Error rendering report '" + getReport().getId() + "': " + ex.getCause().getMessage(), ex.getCause());
+         throw new ReportException(ex.getCause().getMessage(), ex);
+      }
       catch (Exception ex)
       {
          log.error("Error rendering report '" + getReport().getId() + "': " + ex.getMessage(), ex);
@@ -19,7 +19,6 @@ import com.cosmo.security.auth.AuthorizationFactory;
 public class UserSession 
 {
    // Declaracin de variables locales
-   private Workspace workspace;
    private User currentUser;
    private Date created;
    private UserSecurityPolicy securityInfo;
@@ -47,8 +46,6 @@ public class UserSession
 
       initialize();
 
-      this.workspace = workspace;
-      
       // Instancia el proveedor de autenticacin
       authenticator = AuthenticationFactory.getInstance(workspace);
 
@@ -91,8 +88,6 @@ public class UserSession
    {
       initialize();
 
-      this.workspace = workspace;
-
       // Verifica que la seguridad se encuentre habilitada
       Authentication authenticator = AuthenticationFactory.getInstance(workspace);
       if (authenticator == null)
@@ -160,14 +155,6 @@ public class UserSession
       return created;
    }
 
-   /**
-    * Devuelve el workspace para el que es vlida la sesin de usuario.
-    */
-   public Workspace getWorkspace() 
-   {
-      return workspace;
-   }
-
 
    //==============================================
    // Methods
@@ -176,8 +163,10 @@ public class UserSession
    /**
     * Destruye la sesin de usuario, eliminando cualquir dato que contenga.<br />
     * Este mtodo equivale a realizar la accin de <em>logout</em> en el agente activo.
+    * 
+    * @param workspace Una instancia de {@link Workspace} que representa el workspace actual.
     */
-   public void destroy()
+   public void destroy(Workspace workspace)
    {
       try
       {
@@ -290,7 +279,6 @@ public class UserSession
     */
    private void initialize()
    {
-      this.workspace = null;
       this.currentUser = null;
       this.created = new Date();
       this.securityInfo = null;
@@ -92,7 +92,9 @@ public abstract class AuthenticationFactory
 		{
          Class<?> cls = Class.forName(className);
          Constructor<?> cons = cls.getConstructor(Workspace.class);
-         provider = (Authentication) cons.newInstance(workspace);
+
+         // El agente es nico para toda la aplicacin: se le proporciona el workspace de mbito de aplicacin
+         provider = (Authentication) cons.newInstance(workspace.getApplicationContext().getWorkspace());
          
          return provider;
 		}
@@ -128,7 +128,9 @@ public abstract class AuthorizationFactory
 		{
          Class<?> cls = Class.forName(className);
          Constructor<?> cons = cls.getConstructor(Workspace.class);
-         provider = (Authorization) cons.newInstance(workspace);
+
+         // El agente es nico para toda la aplicacin: se le proporciona el workspace de mbito de aplicacin
+         provider = (Authorization) cons.newInstance(workspace.getApplicationContext().getWorkspace());
          
          return provider;
 		}
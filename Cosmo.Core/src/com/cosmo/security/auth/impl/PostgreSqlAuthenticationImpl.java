@@ -9,9 +9,11 @@ import java.util.HashMap;
 import javax.servlet.http.HttpServletRequest;
 
 import com.cosmo.Workspace;
+import com.cosmo.WorkspaceFactory;
 import com.cosmo.data.DataAgent;
 import com.cosmo.data.DataException;
 import com.cosmo.data.DataFactory;
+import com.cosmo.data.RowHandler;
 import com.cosmo.security.User;
 import com.cosmo.security.UserAlreadyExistsException;
 import com.cosmo.security.UserNotFoundException;
@@ -111,14 +113,14 @@ public class PostgreSqlAuthenticationImpl implements Authentication
       {
          sql = "SELECT * " +
                "FROM  " + TABLE_NAME + " " +
-               "WHERE Lower(usrlogin) = '" + login.trim().toLowerCase() + "' And " +
-               "      usrpwd = '" + CryptoUtils.encrypt(password) + "'";
+               "WHERE Lower(usrlogin) = ? And " +
+               "      usrpwd = ?";
 
          conn = DataFactory.getInstance(workspace);
          // ds = this.workspace.getProperties().getDataProperties().getDataSource();
          // conn = new DataConnection(ds);
          // conn.connect();
-         ResultSet rs = conn.executeSql(sql);
+         ResultSet rs = conn.executeSql(sql, login.trim().toLowerCase(), CryptoUtils.encrypt(password));
          if (rs.next())
          {
             user = new User();
@@ -144,8 +146,8 @@ public class PostgreSqlAuthenticationImpl implements Authentication
          sql = "UPDATE " + TABLE_NAME + " " +
                "SET usrlastlogin  = current_timestamp, " +
                "    usrlogoncount = usrlogoncount + 1 " +
-               "WHERE Lower(usrlogin) = '" + login.trim().toLowerCase() + "'";
-         conn.execute(sql);
+               "WHERE Lower(usrlogin) = ?";
+         conn.execute(sql, login.trim().toLowerCase());
 
          // Confirma los cambios en la bbdd
          if (!conn.isAutoCommit()) conn.commit();
@@ -262,14 +264,14 @@ public class PostgreSqlAuthenticationImpl implements Authentication
          // Comprueba si existe el usuario
          sSQL = "SELECT Count(*) " +
                 "FROM " + TABLE_NAME + " " +
-                "WHERE Lower(usrlogin) = '" + login.trim().toLowerCase() + "'";
+                "WHERE Lower(usrlogin) = ?";
 
          conn = DataFactory.getInstance(workspace);
          // ds = this.workspace.getProperties().getDataProperties().getDataSource();
          // conn = new DataConnection(ds);
          // conn.connect();
 
-         return (conn.executeScalar(sSQL) > 0);
+         return (conn.executeScalar(sSQL, login.trim().toLowerCase()) > 0);
       }
       catch (Exception ex)
       {
@@ -302,29 +304,23 @@ public class PostgreSqlAuthenticationImpl implements Authentication
          // Comprueba si existe algn usuario con mismo LOGIN o CORREO
          sSQL = "SELECT Count(*) " +
                 "FROM " + TABLE_NAME + " " +
-                "WHERE Lower(usrlogin) = '" + user.getLogin().trim().toLowerCase() + "' Or " +
-                "      Lower(usrmail)  = '" + user.getMail().trim().toLowerCase()  + "'";
+                "WHERE Lower(usrlogin) = ? Or " +
+                "      Lower(usrmail)  = ?";
 
          conn = DataFactory.getInstance(workspace);
          // ds = this.workspace.getProperties().getDataProperties().getDataSource();
          // conn = new DataConnection(ds);
          // conn.connect();
-         rs = conn.executeSql(sSQL);
+         rs = conn.executeSql(sSQL, user.getLogin().trim().toLowerCase(), user.getMail().trim().toLowerCase());
          if (rs.next() && rs.getInt(1) > 0)
          {
             throw new UserAlreadyExistsException();
          }
 
          sSQL = "INSERT INTO " + TABLE_NAME + " (usrlogin, usrmail, usrpwd, usrname, usrcreated, usrlastlogin, usrlogoncount) " +
-                "VALUES ('" + user.getLogin() + "', " +
-                "        '" + user.getMail() + "', " +
-                "        '" + CryptoUtils.encrypt(password) + "', " +
-                "        '" + user.getName() + "', " +
-                "             current_timestamp, " +
-                "             null, " +
-                "         " + 0 + ")";
+                "VALUES (?, ?, ?, ?, current_timestamp, null, 0)";
 
-         conn.execute(sSQL);
+         conn.execute(sSQL, user.getLogin(), user.getMail(), CryptoUtils.encrypt(password), user.getName());
 
          // Confirma los cambios en la bbdd
          if (!conn.isAutoCommit()) conn.commit();
@@ -361,12 +357,12 @@ public class PostgreSqlAuthenticationImpl implements Authentication
       try 
       {
          sSQL = "UPDATE " + TABLE_NAME + " " +
-                "SET   usrmail = '" + DataAgent.sqlFormatTextValue(user.getMail()) + "', " +
-                "      usrname = '" + DataAgent.sqlFormatTextValue(user.getName()) + "' " +
-                "WHERE Lower(usrlogin) = '" + user.getLogin().trim().toLowerCase() + "'";
+                "SET   usrmail = ?, " +
+                "      usrname = ? " +
+                "WHERE Lower(usrlogin) = ?";
 
          conn = DataFactory.getInstance(workspace);
-         conn.execute(sSQL);
+         conn.execute(sSQL, user.getMail().trim(), user.getName().trim(), user.getLogin().trim().toLowerCase());
 
          // Confirma los cambios en la bbdd
          if (!conn.isAutoCommit()) conn.commit();
@@ -407,10 +403,10 @@ public class PostgreSqlAuthenticationImpl implements Authentication
       {
          // Elimina el usuario
          sSQL = "DELETE FROM " + TABLE_NAME + " " +
-                "WHERE Lower(usrlogin) = '" + login.trim().toLowerCase() + "'";
+                "WHERE Lower(usrlogin) = ?";
 
          conn = DataFactory.getInstance(workspace);
-         conn.execute(sSQL);
+         conn.execute(sSQL, login.trim().toLowerCase());
 
          // Confirma los cambios en la bbdd
          if (!conn.isAutoCommit()) conn.commit();
@@ -448,21 +444,21 @@ public class PostgreSqlAuthenticationImpl implements Authentication
          // Comprueba que exista el usuario y que el password actual sea el correcto
          sSQL = "SELECT Count(*) " +
                 "FROM  " + TABLE_NAME + " " +
-                "WHERE Lower(usrlogin) = '" + login.trim().toLowerCase() + "' And " +
-                "      usrpwd = '" + CryptoUtils.encrypt(oldPassword) + "'";
+                "WHERE Lower(usrlogin) = ? And " +
+                "      usrpwd = ?";
 
          conn = DataFactory.getInstance(workspace);
-         if (conn.executeScalar(sSQL) <= 0)
+         if (conn.executeScalar(sSQL, login.trim().toLowerCase(), CryptoUtils.encrypt(oldPassword)) <= 0)
          {
             throw new UserNotFoundException();
          }
 
          // Actualiza la contrasea del usuario
          sSQL = "UPDATE " + TABLE_NAME + " " +
-                "SET   usrpwd = '" + CryptoUtils.encrypt(newPassword) + "' " +
-                "WHERE Lower(usrlogin) = '" + login.trim().toLowerCase() + "'";
+                "SET   usrpwd = ? " +
+                "WHERE Lower(usrlogin) = ?";
 
-         conn.execute(sSQL);
+         conn.execute(sSQL, CryptoUtils.encrypt(newPassword), login.trim().toLowerCase());
 
          // Confirma los cambios en la bbdd
          if (!conn.isAutoCommit()) conn.commit();
@@ -490,10 +486,9 @@ public class PostgreSqlAuthenticationImpl implements Authentication
    public ArrayList<User> getUsers() throws AuthenticationException
    {
       String sSQL;
-      ResultSet rs;
       DataAgent conn = null;
 
-      ArrayList<User> users = new ArrayList<User>();
+      final ArrayList<User> users = new ArrayList<User>();
 
       try 
       {
@@ -502,11 +497,15 @@ public class PostgreSqlAuthenticationImpl implements Authentication
                 "ORDER BY usrlogin Asc";
 
          conn = DataFactory.getInstance(workspace);
-         rs = conn.executeSql(sSQL);
-         while (rs.next())
+         conn.query(sSQL, null, new RowHandler()
          {
-            users.add(readUser(rs));
-         }
+            @Override
+            public boolean processRow(ResultSet rs) throws SQLException
+            {
+               users.add(readUser(rs));
+               return true;
+            }
+         });
 
          return users;
       }
@@ -536,26 +535,31 @@ public class PostgreSqlAuthenticationImpl implements Authentication
    public ArrayList<User> findUsers(String filter) throws AuthenticationException
    {
       String sSQL;
-      ResultSet rs;
       DataAgent conn = null;
 
-      ArrayList<User> users = new ArrayList<User>();
+      final ArrayList<User> users = new ArrayList<User>();
 
       try 
       {
          sSQL = "SELECT   * " +
                 "FROM     " + TABLE_NAME + " " +
-                "WHERE usrlogin LIKE '%" + DataAgent.sqlFormatTextValue(filter) + "%' Or " +
-                "      usrname  LIKE '%" + DataAgent.sqlFormatTextValue(filter) + "%' Or " +
-                "      usrmail  LIKE '%" + DataAgent.sqlFormatTextValue(filter) + "%' " +
+                "WHERE usrlogin LIKE ? Or " +
+                "      usrname  LIKE ? Or " +
+                "      usrmail  LIKE ? " +
                 "ORDER BY usrlogin Asc";
 
+         String pattern = "%" + filter.trim() + "%";
+
          conn = DataFactory.getInstance(workspace);
-         rs = conn.executeSql(sSQL);
-         while (rs.next())
+         conn.query(sSQL, new Object[] { pattern, pattern, pattern }, new RowHandler()
          {
-            users.add(readUser(rs));
-         }
+            @Override
+            public boolean processRow(ResultSet rs) throws SQLException
+            {
+               users.add(readUser(rs));
+               return true;
+            }
+         });
 
          return users;
       }
@@ -594,7 +598,7 @@ public class PostgreSqlAuthenticationImpl implements Authentication
                 "ORDER BY usrlogin Asc";
 
          conn = DataFactory.getInstance(workspace);
-         return conn.executeSql(sSQL);
+         return conn.executeSql(sSQL, DataAgent.NO_PARAMS);
       }
       catch (Exception ex)
       {
@@ -664,8 +668,8 @@ public class PostgreSqlAuthenticationImpl implements Authentication
          sql = "DELETE FROM " + TABLE_LOCKS + " " +
                "WHERE ((DATE_PART('day', CURRENT_TIMESTAMP - lastattempt) * 24 + " +
                "        DATE_PART('hour', CURRENT_TIMESTAMP - lastattempt)) * 60 + " +
-               "        DATE_PART('minute', CURRENT_TIMESTAMP - lastattempt) >= " + timeout + ")";
-         conn.execute(sql);
+               "        DATE_PART('minute', CURRENT_TIMESTAMP - lastattempt) >= ?)";
+         conn.execute(sql, timeout);
 
          // Consulta si el usuario dispone de un registro bloqueado:
          // Dispone de N intentos (o ms) y el ltimo intento hace menos de M minutos que se produjo
@@ -673,10 +677,10 @@ public class PostgreSqlAuthenticationImpl implements Authentication
                "FROM " + TABLE_LOCKS + " " +
                "WHERE ((DATE_PART('day', CURRENT_TIMESTAMP - lastattempt) * 24 + " +
                "        DATE_PART('hour', CURRENT_TIMESTAMP - lastattempt)) * 60 + " +
-               "        DATE_PART('minute', CURRENT_TIMESTAMP - lastattempt) < " + timeout + ") And " +
-               "        lower(login) = '" + DataAgent.sqlFormatTextValue(login) + "' And " +
-               "        fails >= " + attempts;
-         int nregs = conn.executeScalar(sql);
+               "        DATE_PART('minute', CURRENT_TIMESTAMP - lastattempt) < ?) And " +
+               "        lower(login) = ? And " +
+               "        fails >= ?";
+         int nregs = conn.executeScalar(sql, timeout, login.trim(), attempts);
 
          return (nregs > 0);
       } 
@@ -717,23 +721,27 @@ public class PostgreSqlAuthenticationImpl implements Authentication
          // Consulta si el login tiene un registro asociado
          sql = "SELECT Count(*) " +
                "FROM  " + TABLE_LOCKS + " " +
-               "WHERE lower(login) = '" + DataAgent.sqlFormatTextValue(login) + "'";
-         int nregs = conn.executeScalar(sql);
+               "WHERE lower(login) = ?";
+         int nregs = conn.executeScalar(sql, login.trim());
 
          if (nregs > 0)
          {
             sql = "UPDATE " + TABLE_LOCKS + " " +
                   "SET lastattempt = CURRENT_TIMESTAMP, fails = fails + 1 " +
-                  "WHERE lower(login) = '" + DataAgent.sqlFormatTextValue(login) + "'";
-            conn.execute(sql);
+                  "WHERE lower(login) = ?";
+            conn.execute(sql, login.trim());
          }
          else if (nregs <= 0)
          {
             if (loginExist(login))
             {
+               // El agente es compartido por toda la aplicacin: la direccin se obtiene de la peticin en curso
+               Workspace requestWorkspace = WorkspaceFactory.getCurrentWorkspace();
+               String ipAddress = (requestWorkspace != null ? requestWorkspace.getServerRequest().getRemoteAddr() : "");
+
                sql = "INSERT INTO " + TABLE_LOCKS + " (login, fails, lastattempt, ipaddress) " +
-                     "VALUES ('" + DataAgent.sqlFormatTextValue(login) + "', 1, CURRENT_TIMESTAMP, '" + workspace.getServerRequest().getRemoteAddr() + "')";
-               conn.execute(sql);
+                     "VALUES (?, 1, CURRENT_TIMESTAMP, ?)";
+               conn.execute(sql, login.trim(), ipAddress);
             }
          }
 
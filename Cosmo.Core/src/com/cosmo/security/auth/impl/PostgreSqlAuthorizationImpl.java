@@ -1,12 +1,15 @@
 package com.cosmo.security.auth.impl;
 
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 
 import com.cosmo.Workspace;
 import com.cosmo.data.DataAgent;
 import com.cosmo.data.DataFactory;
+import com.cosmo.data.RowHandler;
+import com.cosmo.data.TransactionCallback;
 import com.cosmo.security.Activity;
 import com.cosmo.security.Permission;
 import com.cosmo.security.Role;
@@ -106,7 +109,7 @@ public class PostgreSqlAuthorizationImpl implements Authorization
    {
       String sql;
       DataAgent conn = null;
-      ArrayList<Role> roles = new ArrayList<Role>();
+      final ArrayList<Role> roles = new ArrayList<Role>();
 
       try
       {
@@ -117,11 +120,15 @@ public class PostgreSqlAuthorizationImpl implements Authorization
          sql = "SELECT * " +
                "FROM " + TABLE_ROLES + " " +
                "ORDER BY roleid";
-         ResultSet rs = conn.executeSql(sql);
-         while (rs.next())
+         conn.query(sql, null, new RowHandler()
          {
-            roles.add(readRole(rs));
-         }
+            @Override
+            public boolean processRow(ResultSet rs) throws SQLException
+            {
+               roles.add(readRole(rs));
+               return true;
+            }
+         });
       }
       catch (Exception ex) 
       {
@@ -144,7 +151,7 @@ public class PostgreSqlAuthorizationImpl implements Authorization
    {
       String sql;
       DataAgent conn = null;
-      ArrayList<Role> roles = new ArrayList<Role>();
+      final ArrayList<Role> roles = new ArrayList<Role>();
 
       try
       {
@@ -154,13 +161,17 @@ public class PostgreSqlAuthorizationImpl implements Authorization
          // Obtiene la lista de roles del usuario
          sql = "SELECT * " +
                "FROM     " + TABLE_ROLES + " Inner Join " + TABLE_USER_ROLES + " On (" + TABLE_ROLES + ".roleid=" + TABLE_USER_ROLES + ".roleid) " +
-               "WHERE    " + TABLE_USER_ROLES + ".usrlogin='" + DataAgent.sqlFormatTextValue(login) + "' " + 
+               "WHERE    " + TABLE_USER_ROLES + ".usrlogin = ? " + 
                "ORDER BY " + TABLE_ROLES + ".roleid";
-         ResultSet rs = conn.executeSql(sql);
-         while (rs.next())
+         conn.query(sql, new Object[] { login.trim() }, new RowHandler()
          {
-            roles.add(readRole(rs));
-         }
+            @Override
+            public boolean processRow(ResultSet rs) throws SQLException
+            {
+               roles.add(readRole(rs));
+               return true;
+            }
+         });
       }
       catch (Exception ex) 
       {
@@ -189,11 +200,8 @@ public class PostgreSqlAuthorizationImpl implements Authorization
 
          // Agrega el nuevo rol
          sql = "INSERT INTO " + TABLE_ROLES + " (roleid, roledescription, roleappid, rolesu) " +
-               "VALUES ('" + DataAgent.sqlFormatTextValue(role.getId()) + "', " +
-                       "'" + DataAgent.sqlFormatTextValue(role.getDescription()) + "', " +
-                       "'" + DataAgent.sqlFormatTextValue(role.getApplicationId()) + "', " +
-                             (role.isSuperUser() ? "true" : "false") + ")";
-         conn.execute(sql);
+               "VALUES (?, ?, ?, ?)";
+         conn.execute(sql, role.getId().trim(), role.getDescription().trim(), role.getApplicationId().trim(), role.isSuperUser());
       }
       catch (Exception ex) 
       {
@@ -215,9 +223,8 @@ public class PostgreSqlAuthorizationImpl implements Authorization
     * 
     * @throws AuthorizationException 
     */
-   public void deleteRole(String roleId) throws AuthorizationException
+   public void deleteRole(final String roleId) throws AuthorizationException
    {
-      String sql;
       DataAgent conn = null;
 
       try
@@ -225,32 +232,37 @@ public class PostgreSqlAuthorizationImpl implements Authorization
          // Obtiene la conexin
          conn = DataFactory.getInstance(workspace);
 
-         // Elimina las asociaciones con actividades 
-         sql = "DELETE FROM " + TABLE_ROLE_ACTIVITIES + " " +
-               "WHERE roleid='" + DataAgent.sqlFormatTextValue(roleId) + "'";
-         conn.execute(sql);
-
-         // Elimina las asociaciones con usuarios
-         sql = "DELETE FROM " + TABLE_USER_ROLES + " " +
-               "WHERE roleid='" + DataAgent.sqlFormatTextValue(roleId) + "'";
-         conn.execute(sql);
-
-         // Elimina el rol
-         sql = "DELETE FROM " + TABLE_ROLES + " " +
-               "WHERE roleid='" + DataAgent.sqlFormatTextValue(roleId) + "'";
-         conn.execute(sql);
+         // Las tres sentncias se ejecutan en una nica transaccin
+         conn.withTransaction(new TransactionCallback<Object>()
+         {
+            @Override
+            public Object execute(DataAgent agent) throws Exception
+            {
+               String sql;
+
+               // Elimina las asociaciones con actividades 
+               sql = "DELETE FROM " + TABLE_ROLE_ACTIVITIES + " " +
+                     "WHERE roleid = ?";
+               agent.execute(sql, roleId.trim());
+
+               // Elimina las asociaciones con usuarios
+               sql = "DELETE FROM " + TABLE_USER_ROLES + " " +
+                     "WHERE roleid = ?";
+               agent.execute(sql, roleId.trim());
+
+               // Elimina el rol
+               sql = "DELETE FROM " + TABLE_ROLES + " " +
+                     "WHERE roleid = ?";
+               agent.execute(sql, roleId.trim());
+
+               return null;
+            }
+         });
       }
       catch (Exception ex) 
       {
          throw new AuthorizationException(ex.getMessage(), ex);
       }
-      finally
-      {
-         if (conn != null)
-         {
-            conn.disconnect();
-         }
-      }
    }
 
    /**
@@ -273,11 +285,11 @@ public class PostgreSqlAuthorizationImpl implements Authorization
 
          // Agrega el nuevo rol
          sql = "UPDATE " + TABLE_ROLES + " " +
-               "SET roledescription = '" + DataAgent.sqlFormatTextValue(role.getDescription()) + "', " +
-               "    roleappid       = '" + DataAgent.sqlFormatTextValue(role.getApplicationId()) + "', " +
-               "    rolesu          =  " + (role.isSuperUser() ? "true" : "false") + " " +
-               "WHERE roleid = '" + DataAgent.sqlFormatTextValue(role.getId()) + "'";
-         conn.execute(sql);
+               "SET roledescription = ?, " +
+               "    roleappid       = ?, " +
+               "    rolesu          = ? " +
+               "WHERE roleid = ?";
+         conn.execute(sql, role.getDescription().trim(), role.getApplicationId().trim(), role.isSuperUser(), role.getId().trim());
       }
       catch (Exception ex) 
       {
@@ -308,7 +320,7 @@ public class PostgreSqlAuthorizationImpl implements Authorization
    {
       String sql;
       DataAgent conn = null;
-      ArrayList<Activity> activities = new ArrayList<Activity>();
+      final ArrayList<Activity> activities = new ArrayList<Activity>();
 
       try
       {
@@ -319,11 +331,15 @@ public class PostgreSqlAuthorizationImpl implements Authorization
          sql = "SELECT * " +
                "FROM " + TABLE_ACTIVITIES + " " +
                "ORDER BY actid";
-         ResultSet rs = conn.executeSql(sql);
-         while (rs.next())
+         conn.query(sql, null, new RowHandler()
          {
-            activities.add(readActivity(rs));
-         }
+            @Override
+            public boolean processRow(ResultSet rs) throws SQLException
+            {
+               activities.add(readActivity(rs));
+               return true;
+            }
+         });
       }
       catch (Exception ex) 
       {
@@ -344,7 +360,7 @@ public class PostgreSqlAuthorizationImpl implements Authorization
    {
       String sql;
       DataAgent conn = null;
-      ArrayList<Activity> activities = new ArrayList<Activity>();
+      final ArrayList<Activity> activities = new ArrayList<Activity>();
 
       try
       {
@@ -355,13 +371,17 @@ public class PostgreSqlAuthorizationImpl implements Authorization
          sql = "SELECT   " + TABLE_ACTIVITIES + ".* " +
                "FROM     " + TABLE_ROLES + " Inner Join " + TABLE_ROLE_ACTIVITIES + " On (" + TABLE_ROLES + ".roleid=" + TABLE_ROLE_ACTIVITIES + ".roleid) " +
                "                             Inner Join " + TABLE_ACTIVITIES + " On (" + TABLE_ROLE_ACTIVITIES + ".actid=" + TABLE_ACTIVITIES + ".actid) " +
-               "WHERE    " + TABLE_ROLES + ".roleid = '" + DataAgent.sqlFormatTextValue(roleId) + "' " +
+               "WHERE    " + TABLE_ROLES + ".roleid = ? " +
                "ORDER BY " + TABLE_ACTIVITIES + ".actid";
-         ResultSet rs = conn.executeSql(sql);
-         while (rs.next())
+         conn.query(sql, new Object[] { roleId.trim() }, new RowHandler()
          {
-            activities.add(readActivity(rs));
-         }
+            @Override
+            public boolean processRow(ResultSet rs) throws SQLException
+            {
+               activities.add(readActivity(rs));
+               return true;
+            }
+         });
       }
       catch (Exception ex) 
       {
@@ -384,7 +404,7 @@ public class PostgreSqlAuthorizationImpl implements Authorization
    {
       String sql;
       DataAgent conn = null;
-      ArrayList<Permission> permissions = new ArrayList<Permission>();
+      final ArrayList<Permission> permissions = new ArrayList<Permission>();
 
       try
       {
@@ -396,14 +416,18 @@ public class PostgreSqlAuthorizationImpl implements Authorization
                "FROM     " + TABLE_USER_ROLES + " Inner Join " + TABLE_ROLES + "           On (" + TABLE_ROLES + ".roleid = " + TABLE_USER_ROLES + ".roleid) " +
                "                                  Inner Join " + TABLE_ROLE_ACTIVITIES + " On (" + TABLE_ROLES + ".roleid = " + TABLE_ROLE_ACTIVITIES + ".roleid) " +
                "                                  Inner Join " + TABLE_ACTIVITIES + "      On (" + TABLE_ROLE_ACTIVITIES + ".actid = " + TABLE_ACTIVITIES + ".actid) " +
-               "WHERE    " + TABLE_USER_ROLES + ".usrlogin = '" + DataAgent.sqlFormatTextValue(login) + "' " +
+               "WHERE    " + TABLE_USER_ROLES + ".usrlogin = ? " +
                "ORDER BY " + TABLE_ROLE_ACTIVITIES + ".actid";
 
-         ResultSet rs = conn.executeSql(sql);
-         while (rs.next())
+         conn.query(sql, new Object[] { login.trim() }, new RowHandler()
          {
-            permissions.add(new Permission(readActivity(rs), true));
-         }
+            @Override
+            public boolean processRow(ResultSet rs) throws SQLException
+            {
+               permissions.add(new Permission(readActivity(rs), true));
+               return true;
+            }
+         });
       }
       catch (Exception ex) 
       {
@@ -432,11 +456,8 @@ public class PostgreSqlAuthorizationImpl implements Authorization
 
          // Agrega la nueva actividad
          sql = "INSERT INTO " + TABLE_ACTIVITIES + " (actid, actdescription, actdefaultgrant, actenabled) " +
-               "VALUES ('" + DataAgent.sqlFormatTextValue(activity.getId()) + "', " +
-                       "'" + DataAgent.sqlFormatTextValue(activity.getDescription()) + "', " +
-                             (activity.isGrantedByDefault() ? "true" : "false") + ", " +
-                             (activity.isEnabled() ? "true" : "false") + ")";
-         conn.execute(sql);
+               "VALUES (?, ?, ?, ?)";
+         conn.execute(sql, activity.getId().trim(), activity.getDescription().trim(), activity.isGrantedByDefault(), activity.isEnabled());
       }
       catch (Exception ex) 
       {
@@ -458,9 +479,8 @@ public class PostgreSqlAuthorizationImpl implements Authorization
     * 
     * @throws AuthorizationException 
     */
-   public void deleteActivity(String activityId) throws AuthorizationException
+   public void deleteActivity(final String activityId) throws AuthorizationException
    {
-      String sql;
       DataAgent conn = null;
 
       try
@@ -468,27 +488,32 @@ public class PostgreSqlAuthorizationImpl implements Authorization
          // Obtiene la conexin
          conn = DataFactory.getInstance(workspace);
 
-         // Elimina las asociaciones con roles
-         sql = "DELETE FROM " + TABLE_ROLE_ACTIVITIES + " " +
-               "WHERE actid='" + DataAgent.sqlFormatTextValue(activityId) + "'";
-         conn.execute(sql);
+         // Las dos sentncias se ejecutan en una nica transaccin
+         conn.withTransaction(new TransactionCallback<Object>()
+         {
+            @Override
+            public Object execute(DataAgent agent) throws Exception
+            {
+               String sql;
+
+               // Elimina las asociaciones con roles
+               sql = "DELETE FROM " + TABLE_ROLE_ACTIVITIES + " " +
+                     "WHERE actid = ?";
+               agent.execute(sql, activityId.trim());
+
+               // Elimina la actividad
+               sql = "DELETE FROM " + TABLE_ACTIVITIES + " " +
+                     "WHERE actid = ?";
+               agent.execute(sql, activityId.trim());
 
-         // Elimina el rol
-         sql = "DELETE FROM " + TABLE_ACTIVITIES + " " +
-               "WHERE actid='" + DataAgent.sqlFormatTextValue(activityId) + "'";
-         conn.execute(sql);
+               return null;
+            }
+         });
       }
       catch (Exception ex) 
       {
          throw new AuthorizationException(ex.getMessage(), ex);
       }
-      finally
-      {
-         if (conn != null)
-         {
-            conn.disconnect();
-         }
-      }
    }
 
    /**
@@ -511,11 +536,11 @@ public class PostgreSqlAuthorizationImpl implements Authorization
 
          // Agrega el nuevo rol
          sql = "UPDATE " + TABLE_ACTIVITIES + " " +
-               "SET actdescription  = '" + DataAgent.sqlFormatTextValue(activity.getDescription()) + "', " +
-               "    actdefaultgrant =  " + (activity.isGrantedByDefault() ? "true" : "false") + ", " +
-               "    actenabled      =  " + (activity.isEnabled() ? "true" : "false") + " " +
-               "WHERE actid = '" + DataAgent.sqlFormatTextValue(activity.getId()) + "'";
-         conn.execute(sql);
+               "SET actdescription  = ?, " +
+               "    actdefaultgrant = ?, " +
+               "    actenabled      = ? " +
+               "WHERE actid = ?";
+         conn.execute(sql, activity.getDescription().trim(), activity.isGrantedByDefault(), activity.isEnabled(), activity.getId().trim());
       }
       catch (Exception ex) 
       {
@@ -555,10 +580,8 @@ public class PostgreSqlAuthorizationImpl implements Authorization
 
          // Agrega la nueva asociacin
          sql = "INSERT INTO " + TABLE_ROLE_ACTIVITIES + " (actid, roleid, isgranted) " +
-               "VALUES ('" + DataAgent.sqlFormatTextValue(activityId) + "', " +
-                       "'" + DataAgent.sqlFormatTextValue(roleId) + "', " +
-                             (isGranted ? "true" : "false") + ")";
-         conn.execute(sql);
+               "VALUES (?, ?, ?)";
+         conn.execute(sql, activityId.trim(), roleId.trim(), isGranted);
       }
       catch (Exception ex) 
       {
@@ -593,9 +616,9 @@ public class PostgreSqlAuthorizationImpl implements Authorization
 
          // Si existe esta asociacin, la elimina
          sql = "DELETE FROM " + TABLE_ROLE_ACTIVITIES + " " +
-               "WHERE  actid  = '" + DataAgent.sqlFormatTextValue(activityId) + "' And " +
-               "       roleid = '" + DataAgent.sqlFormatTextValue(roleId) + "'";
-         conn.execute(sql);
+               "WHERE  actid  = ? And " +
+               "       roleid = ?";
+         conn.execute(sql, activityId.trim(), roleId.trim());
       }
       catch (Exception ex) 
       {
@@ -618,21 +641,13 @@ public class PostgreSqlAuthorizationImpl implements Authorization
    /**
     * Lee un rol desde una consulta (ResultSet) que contenga todos los campos de ROLES.
     */
-   private Role readRole(ResultSet rs) throws Exception
+   private Role readRole(ResultSet rs) throws SQLException
    {
       Role role = new Role();
-
-      try
-      {
-         role.setId(rs.getString("roleid"));
-         role.setDescription(rs.getString("roledescription"));
-         role.setApplicationId(rs.getString("roleappid"));
-         role.setSuperUser(rs.getBoolean("rolesu"));
-      }
-      catch (Exception ex) 
-      {
-         throw ex;
-      }
+      role.setId(rs.getString("roleid"));
+      role.setDescription(rs.getString("roledescription"));
+      role.setApplicationId(rs.getString("roleappid"));
+      role.setSuperUser(rs.getBoolean("rolesu"));
 
       return role;
    }
@@ -640,21 +655,13 @@ public class PostgreSqlAuthorizationImpl implements Authorization
    /**
     * Lee una actividad desde una consulta (ResultSet) que contenga todos los campos de ACTIVITIES.
     */
-   private Activity readActivity(ResultSet rs) throws Exception
+   private Activity readActivity(ResultSet rs) throws SQLException
    {
       Activity activity = new Activity();
-
-      try
-      {
-         activity.setId(rs.getString("actid"));
-         activity.setDescription(rs.getString("actdescription"));
-         activity.setGrantedByDefault(rs.getBoolean("actdefaultgrant"));
-         activity.setEnabled(rs.getBoolean("actenabled"));
-      }
-      catch (Exception ex) 
-      {
-         throw ex;
-      }
+      activity.setId(rs.getString("actid"));
+      activity.setDescription(rs.getString("actdescription"));
+      activity.setGrantedByDefault(rs.getBoolean("actdefaultgrant"));
+      activity.setEnabled(rs.getBoolean("actenabled"));
 
       return activity;
    }
@@ -12,6 +12,7 @@ import javax.servlet.http.HttpServletResponse;
 import com.cosmo.Cosmo;
 import com.cosmo.Workspace;
 import com.cosmo.WorkspaceFactory;
+import com.cosmo.data.DataFactory;
 import com.cosmo.security.UserSession;
 import com.cosmo.ui.annotations.CacheScope;
 import com.cosmo.ui.render.LoadPageRenderException;
@@ -36,7 +37,6 @@ public abstract class Page extends HttpServlet
    private static final long serialVersionUID = -2313025410371254322L;
 
    private String uuid;
-   private Workspace workspace;
    private PageRenderer renderProvider;
 
 
@@ -59,11 +59,13 @@ public abstract class Page extends HttpServlet
    //==============================================
 
    /**
-    * Devuelve la instancia de {@link Workspace} que representa el workspace actual.
+    * Devuelve la instancia de {@link Workspace} que representa el workspace de la peticin en curso.<br />
+    * Una misma instancia de {@link Page} atiende peticiones concurrentes, por lo que el workspace no se guarda
+    * en la pgina sino que se asocia al hilo que atiende la peticin.
     */
    public Workspace getWorkspace() 
    {
-      return workspace;
+      return WorkspaceFactory.getCurrentWorkspace();
    }
 
    /**
@@ -71,7 +73,7 @@ public abstract class Page extends HttpServlet
     */
    public UserSession getUserSession()
    {
-      return workspace.getUserSession();
+      return getWorkspace().getUserSession();
    }
 
    /**
@@ -145,7 +147,7 @@ public abstract class Page extends HttpServlet
          // Si no hay renderizador asignado, lo carga
          if (this.renderProvider == null)
          {
-            this.renderProvider = PageRendererFactory.getInstance(workspace);
+            this.renderProvider = PageRendererFactory.getInstance(getWorkspace());
          }
 
          // Invoca la renderizacin al proveedor
@@ -240,8 +242,8 @@ public abstract class Page extends HttpServlet
 
       try 
       {
-         // Obtiene el workspace
-         this.workspace = WorkspaceFactory.getInstance(getServletContext(), request, response);
+         // Obtiene el workspace (queda asociado al hilo actual hasta el final de la peticin)
+         WorkspaceFactory.getInstance(getServletContext(), request, response);
 
          // Ejecuta el ciclo de vida de la pgina y obtiene el modelo de pgina
          pc = PageLifecycle.execute(this, request, response);
@@ -269,6 +271,11 @@ public abstract class Page extends HttpServlet
       {
          throw new ServletException(ex.getMessage(), ex);
       }
+      finally
+      {
+         DataFactory.releaseConnections();
+         WorkspaceFactory.releaseCurrentWorkspace();
+      }
    }
 
    /**
@@ -321,7 +328,6 @@ public abstract class Page extends HttpServlet
     */
    private void initPage()
    {
-      this.workspace = null;
       this.renderProvider = null;
 
       this.uuid = UUID.randomUUID().toString();
@@ -2,11 +2,16 @@ package com.cosmo.ui;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import javax.servlet.http.HttpServletRequest;
 
 import com.cosmo.Cosmo;
 import com.cosmo.Workspace;
+import com.cosmo.data.DataAgent;
+import com.cosmo.data.DataCallback;
+import com.cosmo.data.DataException;
 import com.cosmo.ui.controls.Control;
 import com.cosmo.ui.controls.ErrorMessageControl;
 import com.cosmo.ui.render.PageRenderer;
@@ -31,6 +36,7 @@ public class PageContext
    private ArrayList<Control> rightContents;
    private StringBuilder xhtml;
    private PageRenderer renderProvider;
+   private final ArrayList<Future<?>> dataLoads = new ArrayList<Future<?>>();
 
    /**
     * Enumera las distintas regiones dnde se pueden agregar controles en la pgina.
@@ -229,6 +235,80 @@ public class PageContext
       return null;
    }
 
+   /**
+    * Inicia una carga de datos en segundo plano (ver {@link DataAgent#executeAsync(DataCallback)}).
+    * <br /><br />
+    * Permite ejecutar en paralelo las cargas independientes de una pgina: el ciclo de vida de la pgina espera a que 
+    * finalicen todas (ver {@link #joinDataLoads()}) despus de {@code loadPageEvent()} y antes de renderizar, de 
+    * manera que el tiempo de carga se aproxima al de la carga ms lenta en lugar de a la suma de todas ellas.
+    * 
+    * @param agent El agente de datos que ejecuta la carga.
+    * @param load Una instancia de {@link DataCallback} que implementa la carga (p. ej. asigna los datos a un control).
+    * 
+    * @return Una instancia de {@link Future} que permite obtener el resultado de la carga.
+    */
+   public <T> Future<T> forkDataLoad(DataAgent agent, DataCallback<T> load)
+   {
+      Future<T> future = agent.executeAsync(load);
+
+      synchronized (this.dataLoads)
+      {
+         this.dataLoads.add(future);
+      }
+
+      return future;
+   }
+
+   /**
+    * Espera a que finalicen todas las cargas de datos iniciadas mediante {@link #forkDataLoad(DataAgent, DataCallback)}.
+    * 
+    * @throws DataException si alguna de las cargas ha fallado (se propaga el primer error) o si se interrumpe la espera.
+    */
+   public void joinDataLoads() throws DataException
+   {
+      ArrayList<Future<?>> pending;
+      Throwable error = null;
+
+      synchronized (this.dataLoads)
+      {
+         pending = new ArrayList<Future<?>>(this.dataLoads);
+         this.dataLoads.clear();
+      }
+
+      for (Future<?> future : pending)
+      {
+         try
+         {
+            future.get();
+         }
+         catch (ExecutionException ex)
+         {
+            if (error == null)
+            {
+               error = ex.getCause();
+            }
+         }
+         catch (InterruptedException ex)
+         {
+            for (Future<?> other : pending)
+            {
+               other.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new DataException("Interrupted while waiting for page data loads", ex);
+         }
+      }
+
+      if (error instanceof DataException)
+      {
+         throw (DataException) error;
+      }
+      else if (error != null)
+      {
+         throw new DataException(error.getMessage(), error);
+      }
+   }
+
    /**
     * Representa un error (excepcin).
     * 
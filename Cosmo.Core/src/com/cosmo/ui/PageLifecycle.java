@@ -39,7 +39,8 @@ public class PageLifecycle
     * El guin de llamadas a eventos es el siguiente:<br /><ul>
     * <li>- {@code initPageEvent()}: Slo si es la primera vez que se accede a la pgina.</li>
     * <li>- {@code formSendedEvent()}: Slo si se reciben datos de un formulario Cosmo.</li>
-    * <li>- {@code loadPageEvent()}</li>
+    * <li>- {@code loadPageEvent()}: Las cargas de datos iniciadas con {@link PageContext#forkDataLoad(com.cosmo.data.DataAgent, com.cosmo.data.DataCallback)} 
+    * finalizan antes de renderizar.</li>
     * </ul>
     * 
     * @param page Una instancia de {@link Page} que representa la pgina para la que se desea ejecutar el ciclo de vida.
@@ -103,6 +104,12 @@ public class PageLifecycle
 
          // Lanza el evento loadPageEvent
          pc = page.loadPageEvent(pc, request, response);
+
+         // Espera a que finalicen las cargas de datos en segundo plano iniciadas por la pgina
+         if (pc != null)
+         {
+            pc.joinDataLoads();
+         }
       }
       catch (Exception ex)
       {
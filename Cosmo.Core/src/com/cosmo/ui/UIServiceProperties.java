@@ -1,6 +1,8 @@
 package com.cosmo.ui;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 import javax.servlet.ServletContext;
 
@@ -10,7 +12,9 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import com.cosmo.ui.templates.Rule;
+import com.cosmo.ui.templates.RuleMatcher;
 import com.cosmo.ui.templates.Template;
+import com.cosmo.ui.templates.TemplateFactory;
 import com.cosmo.ui.templates.TemplateLoadException;
 import com.cosmo.ui.templates.TemplateUnavailableException;
 import com.cosmo.util.StringUtils;
@@ -24,15 +28,17 @@ public class UIServiceProperties
 {
    // Definicin de tags y atributos para UI Services
    private static final String XML_UI_TAG = "ui-services";
+   private static final String XML_UI_TAG_TEMPLATE_RULES = "template-rules";
    private static final String XML_UI_TAG_TEMPLATE_RULE = "template-rule";
    private static final String XML_UI_ATT_DEFAULTTEMPLATE = "default-template";
+   private static final String XML_UI_ATT_CACHESIZE = "cache-size";
    private static final String XML_UI_ATT_RULE_CONTAINS = "contains";
    private static final String XML_UI_ATT_RULE_TEMPLATE = "template";
 
    // Declaracin de variables locales para UI Services
    private String defaultTemplateId;
    private ArrayList<Rule> templateRules;
-   
+   private RuleMatcher ruleMatcher;
 
 
    //==============================================
@@ -48,6 +54,7 @@ public class UIServiceProperties
    {
       this.defaultTemplateId = "";
       this.templateRules = new ArrayList<Rule>();
+      this.ruleMatcher = null;
 
       loadProperties(xmlDocument);
    }
@@ -71,6 +78,25 @@ public class UIServiceProperties
    // Methods
    //==============================================
 
+   /**
+    * Devuelve los identificadores de todas las plantillas referenciadas por la configuracin (reglas y plantilla por defecto).
+    */
+   public Set<String> getTemplateIds()
+   {
+      Set<String> ids = new LinkedHashSet<String>();
+
+      for (Rule rule : this.templateRules)
+      {
+         ids.add(rule.getTemplateId());
+      }
+      if (!StringUtils.isNullOrEmptyTrim(this.defaultTemplateId))
+      {
+         ids.add(this.defaultTemplateId);
+      }
+
+      return ids;
+   }
+
    /**
     * Aplica las reglas de presentacin para obtener la plantilla adecuada.
     * 
@@ -80,20 +106,31 @@ public class UIServiceProperties
     * @throws TemplateUnavailableException 
     */
    public Template checkRules(ServletContext context, String browserAgent) throws TemplateUnavailableException, TemplateLoadException
+   {
+      return TemplateFactory.getTemplate(context, getTemplateId(browserAgent));
+   }
+
+   /**
+    * Aplica las reglas de presentacin para obtener el identificador de la plantilla adecuada.
+    * 
+    * @param browserAgent Cadena de texto proporcionada por el navegador cliente.
+    * @return Una cadena que contiene el identificador de la plantilla a aplicar.
+    * 
+    * @throws TemplateUnavailableException 
+    */
+   public String getTemplateId(String browserAgent) throws TemplateUnavailableException
    {
       // Aplica las reglas
-      for (Rule rule : this.templateRules)
+      int index = this.ruleMatcher.match(browserAgent);
+      if (index >= 0)
       {
-         if (rule.matchRule(browserAgent))
-         {
-            return new Template(context, rule.getTemplateId());
-         }
+         return this.templateRules.get(index).getTemplateId();
       }
 
       // Aplica la plantilla por defecto
-      if (StringUtils.isNullOrEmptyTrim(this.defaultTemplateId))
+      if (!StringUtils.isNullOrEmptyTrim(this.defaultTemplateId))
       {
-         return new Template(context, this.defaultTemplateId);
+         return this.defaultTemplateId;
       }
 
       // No se ha encontrado plantilla: se genera una excepcin
@@ -111,6 +148,8 @@ public class UIServiceProperties
       Element eElement;
       NodeList nList;
 
+      int cacheSize = RuleMatcher.DEFAULT_CACHE_SIZE;
+
       this.templateRules = new ArrayList<Rule>();
 
       nList = doc.getElementsByTagName(UIServiceProperties.XML_UI_TAG);
@@ -123,6 +162,28 @@ public class UIServiceProperties
             this.defaultTemplateId = eElement.getAttribute(UIServiceProperties.XML_UI_ATT_DEFAULTTEMPLATE);
          }
 
+         // La plantilla por defecto tambin puede declararse en el tag de reglas
+         nList = doc.getElementsByTagName(UIServiceProperties.XML_UI_TAG_TEMPLATE_RULES);
+         if (nList.getLength() >= 1 && nList.item(0).getNodeType() == Node.ELEMENT_NODE)
+         {
+            eElement = (Element) nList.item(0);
+            if (!StringUtils.isNullOrEmptyTrim(eElement.getAttribute(UIServiceProperties.XML_UI_ATT_DEFAULTTEMPLATE)))
+            {
+               this.defaultTemplateId = eElement.getAttribute(UIServiceProperties.XML_UI_ATT_DEFAULTTEMPLATE);
+            }
+            if (!StringUtils.isNullOrEmptyTrim(eElement.getAttribute(UIServiceProperties.XML_UI_ATT_CACHESIZE)))
+            {
+               try
+               {
+                  cacheSize = Integer.parseInt(eElement.getAttribute(UIServiceProperties.XML_UI_ATT_CACHESIZE).trim());
+               }
+               catch (NumberFormatException ex)
+               {
+                  cacheSize = RuleMatcher.DEFAULT_CACHE_SIZE;
+               }
+            }
+         }
+
          nList = doc.getElementsByTagName(UIServiceProperties.XML_UI_TAG_TEMPLATE_RULE);
          for (int temp = 0; temp < nList.getLength(); temp++) 
          {
@@ -137,5 +198,8 @@ public class UIServiceProperties
             }
          }
       }
+
+      // Compila las reglas
+      this.ruleMatcher = new RuleMatcher(this.templateRules, cacheSize);
    }
 }
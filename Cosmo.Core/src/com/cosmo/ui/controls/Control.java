@@ -4,6 +4,7 @@ import java.util.UUID;
 
 import com.cosmo.Cosmo;
 import com.cosmo.Workspace;
+import com.cosmo.WorkspaceFactory;
 import com.cosmo.util.StringUtils;
 
 /**
@@ -83,11 +84,13 @@ public abstract class Control
    }
 
    /**
-    * Devuelve la instancia de {@link Workspace} usada para generar el control.
+    * Devuelve la instancia de {@link Workspace} de la peticin en curso.<br />
+    * Fuera de una peticin (o si el hilo no est atendiendo ninguna) devuelve el workspace usado para crear el control.
     */
    public Workspace getWorkspace()
    {
-      return this.workspace;
+      Workspace current = WorkspaceFactory.getCurrentWorkspace();
+      return (current != null ? current : this.workspace);
    }
 
 
@@ -1,7 +1,6 @@
 package com.cosmo.ui.controls;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Iterator;
 
@@ -10,8 +9,9 @@ import javax.servlet.http.HttpSession;
 
 import com.cosmo.Cosmo;
 import com.cosmo.Workspace;
+import com.cosmo.orm.EntityMetadata;
+import com.cosmo.orm.EntityMetadata.Column;
 import com.cosmo.orm.InvalidMappingException;
-import com.cosmo.orm.OrmFactory;
 import com.cosmo.orm.annotations.CormObject;
 import com.cosmo.orm.annotations.CormObjectField;
 import com.cosmo.ui.controls.FormButton.ButtonType;
@@ -166,7 +166,8 @@ public class FormControl extends Control
       FormFieldset group;
 
       // Comprueba que sea un objeto CORM
-      ct = ormClass.getAnnotation(CormObject.class);
+      EntityMetadata metadata = EntityMetadata.get(ormClass);
+      ct = metadata.getCormObject();
       if (ct == null)
       {
          throw new InvalidMappingException("No CormObject annotation detected on POJO class.");
@@ -179,11 +180,12 @@ public class FormControl extends Control
       group = new FormFieldset("");
       group.setTitle(ct.title());
       group.setDescription(ct.description());
-      for (Method method : ormClass.getMethods())
+      for (Column column : metadata.getColumns())
       {
-         cfg = method.getAnnotation(CormObjectField.class);
+         cfg = column.getField();
 
-         if (cfg != null && !cfg.isAutogenerated())
+         // La columna de versin no se muestra al crear registros (la establece la base de datos)
+         if (cfg != null && !cfg.isAutogenerated() && column != metadata.getVersionColumn())
          {
             if (cfg.fieldClass() == FormFieldText.class)
             {
@@ -242,72 +244,79 @@ public class FormControl extends Control
       FormFieldset group;
 
       // Comprueba si el objeto proporcionado es un objeto CORM vlido
-      if (!OrmFactory.isValidCormObject(data.getClass()))
+      EntityMetadata metadata = EntityMetadata.get(data.getClass());
+      if (!metadata.isValid())
       {
          throw new InvalidMappingException(data.getClass() + " is not a CORM object.");
       }
 
       // Obtiene las propiedades de la clase y las mapea al formulario
-      ct = data.getClass().getAnnotation(CormObject.class);
+      ct = metadata.getCormObject();
       this.name = ct.formName();
 
       // Obtiene la lista de campos y los mapea a un grupo
       group = new FormFieldset("");
       group.setTitle(ct.title());
       group.setDescription(ct.description());
-      for (Method method : data.getClass().getMethods())
+      for (Column column : metadata.getColumns())
       {
-         cfg = method.getAnnotation(CormObjectField.class);
+         cfg = column.getField();
 
          if (cfg != null && !cfg.isAutogenerated())
          {
-            if (cfg.fieldClass() == FormFieldText.class)
+            if (column == metadata.getVersionColumn())
+            {
+               // La columna de versin se enva oculta, para el bloqueo optimista de la actualizacin
+               Object version = column.getValue(data);
+               this.addHiddenValue(new FormFieldHidden(cfg.dbTableColumn(), (version == null ? StringUtils.EMPTY : version.toString())));
+            }
+            else if (cfg.fieldClass() == FormFieldText.class)
             {
                FormFieldText fld = new FormFieldText(cfg.dbTableColumn(), cfg.label());
-               fld.setValue(method.invoke(data));
+               fld.setValue(column.getValue(data));
                group.addField(fld);
             }
             else if (cfg.fieldClass() == FormFieldTextArea.class)
             {
                FormFieldTextArea fld = new FormFieldTextArea(cfg.dbTableColumn(), cfg.label());
-               fld.setValue(method.invoke(data));
+               fld.setValue(column.getValue(data));
                group.addField(fld);
             }
             else if (cfg.fieldClass() == FormFieldInteger.class)
             {
                FormFieldInteger fld = new FormFieldInteger(cfg.dbTableColumn(), cfg.label());
-               fld.setValue(method.invoke(data));
+               fld.setValue(column.getValue(data));
                group.addField(fld);
             }
             else if (cfg.fieldClass() == FormFieldNumber.class)
             {
                FormFieldNumber fld = new FormFieldNumber(cfg.dbTableColumn(), cfg.label());
-               fld.setValue(method.invoke(data));
+               fld.setValue(column.getValue(data));
                group.addField(fld);
             }
             else if (cfg.fieldClass() == FormFieldList.class)
             {
                FormFieldList fld = new FormFieldList(cfg.dbTableColumn(), cfg.label());
                fld.setList(getWorkspace().getProperties().getDataProperties().getDataList(cfg.list()));
-               fld.setValue(method.invoke(data));
+               fld.setValue(column.getValue(data));
                group.addField(fld);
             }
             else if (cfg.fieldClass() == FormFieldBoolean.class)
             {
                FormFieldBoolean fld = new FormFieldBoolean(cfg.dbTableColumn(), cfg.label());
-               fld.setValue(method.invoke(data));
+               fld.setValue(column.getValue(data));
                group.addField(fld);
             }
             else if (cfg.fieldClass() == FormFieldDate.class)
             {
                FormFieldDate fld = new FormFieldDate(cfg.dbTableColumn(), cfg.label());
-               fld.setValue(method.invoke(data));
+               fld.setValue(column.getValue(data));
                group.addField(fld);
             }
             else if (cfg.fieldClass() == FormFieldCaptcha.class)
             {
                FormFieldCaptcha fld = new FormFieldCaptcha(cfg.dbTableColumn(), cfg.label());
-               fld.setValue(method.invoke(data));
+               fld.setValue(column.getValue(data));
                group.addField(fld);
             }
          }
@@ -1,6 +1,5 @@
 package com.cosmo.ui.controls;
 
-import java.lang.reflect.Method;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -9,9 +8,11 @@ import javax.servlet.http.HttpServletRequest;
 
 import com.cosmo.Workspace;
 import com.cosmo.data.DataException;
+import com.cosmo.orm.EntityMetadata;
+import com.cosmo.orm.EntityMetadata.Column;
 import com.cosmo.orm.InvalidMappingException;
 import com.cosmo.orm.OrmFactory;
-import com.cosmo.orm.annotations.CormObjectField;
+import com.cosmo.orm.OrmQuery;
 import com.cosmo.ui.templates.TemplateControl;
 import com.cosmo.util.GridData;
 import com.cosmo.util.StringUtils;
@@ -194,6 +195,26 @@ public class GridControl extends Control
     * @throws InvalidMappingException 
     */
    public void setData(String dataSourceId, Class<?> ormClass, boolean showAllColumns) throws InvalidMappingException, SQLException, DataException, Exception 
+   {
+      OrmQuery query = new OrmQuery();
+      query.setShowAllColumns(showAllColumns);
+
+      setData(dataSourceId, ormClass, query);
+   }
+
+   /**
+    * Establece los datos del grid a partir de una consulta paginada, ordenada y/o filtrada a una tabla de datos ORM.
+    * 
+    * @param dataSourceId Identificador de la connexión a datos que se usará para obtener los datos.
+    * @param ormClass Una clase Cosmo ORM (CORM) que contiene la definición de la misma.
+    * @param query Una instancia de {@link OrmQuery} que contiene los criterios de la consulta.
+    * 
+    * @throws Exception 
+    * @throws DataException 
+    * @throws SQLException 
+    * @throws InvalidMappingException 
+    */
+   public void setData(String dataSourceId, Class<?> ormClass, OrmQuery query) throws InvalidMappingException, SQLException, DataException, Exception 
    {
       ResultSet rs;
 
@@ -202,13 +223,16 @@ public class GridControl extends Control
 
       // Obtiene el ResultSet
       OrmFactory ormp = new OrmFactory(dataSourceId, getWorkspace());
-      rs = ormp.select(ormClass, showAllColumns);
+      rs = ormp.select(ormClass, query);
 
       // Establece los datos en el grid
       this.gridData.setCells(rs, true);
 
       // Establece los índices de las columnas que contienen las claves principales
-      setGridMetaData(ormClass, showAllColumns);
+      setGridMetaData(ormClass, query.isShowAllColumns());
+
+      // Muestra la descripción de los valores relacionados
+      ormp.resolveRelations(ormClass, this.gridData);
    }
 
    /**
@@ -325,24 +349,15 @@ public class GridControl extends Control
    private void setGridMetaData(Class<?> ormClass, boolean showAllColumns)
    {
       int idx = 0;
-      CormObjectField cfg;
+      EntityMetadata metadata = EntityMetadata.get(ormClass);
 
       this.rowIds = new ArrayList<Integer>();
 
-      for (Method method : ormClass.getMethods())
+      for (Column column : (showAllColumns ? metadata.getColumns() : metadata.getGridColumns()))
       {
-         if (method.isAnnotationPresent(CormObjectField.class))
-         {
-            cfg = method.getAnnotation(CormObjectField.class);
-
-            if (showAllColumns || (!showAllColumns && cfg.showInObjectListGrid()))
-            {
-               cfg = method.getAnnotation(CormObjectField.class);
-               this.gridData.setColumnField(idx, cfg.dbTableColumn());
-               this.gridData.setColumnPrimaryKey(idx, cfg.isPrimaryKey());
-               idx++;
-            }
-         }
+         this.gridData.setColumnField(idx, column.getName());
+         this.gridData.setColumnPrimaryKey(idx, column.isPrimaryKey());
+         idx++;
       }
    }
 
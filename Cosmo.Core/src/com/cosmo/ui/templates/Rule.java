@@ -43,7 +43,7 @@ public class Rule
    public Rule(RuleType type, String pattern, String templateId)
    {
       this.type = type;
-      this.pattern = pattern;
+      this.pattern = (pattern == null ? "" : pattern.toLowerCase());
       this.templateId = templateId;
    }
 
@@ -88,7 +88,8 @@ public class Rule
    //==============================================
 
    /**
-    * Evalua la regla para un determinado <em>Browser Agent</em>.
+    * Evalua la regla para un determinado <em>Browser Agent</em>.<br />
+    * Para evaluar un conjunto de reglas debe usarse {@link RuleMatcher}, que las evala todas en un solo recorrido.
     * 
     * @param browserAgent La cadena de texto que proporciona el navegador (<em>Browser Agent</em>).
     * 
@@ -96,7 +97,7 @@ public class Rule
     */
    public boolean matchRule(String browserAgent)
    {
-      return browserAgent.toLowerCase().contains(pattern);
+      return (browserAgent == null ? "" : browserAgent.toLowerCase()).contains(pattern);
    }
 
 
@@ -0,0 +1,252 @@
+package com.cosmo.ui.templates;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implementa la evaluacin compilada de las reglas de aplicacin de plantillas.
+ * <br /><br />
+ * Los patrones de todas las reglas se compilan en un nico autmata Aho-Corasick, de forma que la cadena
+ * <em>User-Agent</em> se recorre una sola vez sea cual sea el nmero de reglas. Se mantiene la semntica
+ * original: gana la primera regla (en orden de declaracin) cuyo patrn est contenido en la cadena.
+ * <br /><br />
+ * Los resultados se guardan en una cach LRU de tamao limitado, ya que el nmero de <em>User-Agent</em>
+ * distintos que recibe una aplicacin suele ser reducido.
+ *
+ * @author Gerard Llort
+ */
+public class RuleMatcher
+{
+   /** Tamao por defecto de la cach de resultados */
+   public static final int DEFAULT_CACHE_SIZE = 512;
+
+   // Valor que indica que ninguna regla se cumple
+   private static final int NO_MATCH = -1;
+
+   // Declaracin de variables locales
+   private Node root;
+   private Map<String, Integer> cache;
+
+
+   //==============================================
+   // Constructors
+   //==============================================
+
+   /**
+    * Constructor de la clase {@link RuleMatcher}.
+    *
+    * @param rules Lista de reglas (en orden de prioridad).
+    * @param cacheSize Nmero mximo de cadenas <em>User-Agent</em> cuyo resultado se guarda en cach (0 desactiva la cach).
+    */
+   public RuleMatcher(List<Rule> rules, final int cacheSize)
+   {
+      this.root = compile(rules);
+      this.cache = null;
+
+      if (cacheSize > 0)
+      {
+         this.cache = new LinkedHashMap<String, Integer>(16, 0.75f, true)
+         {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest)
+            {
+               return size() > cacheSize;
+            }
+         };
+      }
+   }
+
+
+   //==============================================
+   // Methods
+   //==============================================
+
+   /**
+    * Obtiene la primera regla que se cumple para un determinado <em>Browser Agent</em>.
+    *
+    * @param browserAgent La cadena de texto que proporciona el navegador (<em>Browser Agent</em>). Puede ser {@code null}.
+    *
+    * @return El ndice (en la lista de reglas) de la primera regla que se cumple o {@code -1} si no se cumple ninguna.
+    */
+   public int match(String browserAgent)
+   {
+      Integer index;
+
+      if (browserAgent == null)
+      {
+         browserAgent = "";
+      }
+
+      if (this.cache == null)
+      {
+         return scan(browserAgent);
+      }
+
+      synchronized (this.cache)
+      {
+         index = this.cache.get(browserAgent);
+      }
+
+      if (index == null)
+      {
+         index = scan(browserAgent);
+
+         synchronized (this.cache)
+         {
+            this.cache.put(browserAgent, index);
+         }
+      }
+
+      return index;
+   }
+
+
+   //==============================================
+   // Private members
+   //==============================================
+
+   /**
+    * Recorre la cadena con el autmata.
+    */
+   private int scan(String browserAgent)
+   {
+      Node node = this.root;
+      int best = this.root.output;
+
+      for (int i = 0; i < browserAgent.length() && best != 0; i++)
+      {
+         char c = Character.toLowerCase(browserAgent.charAt(i));
+
+         while (node != this.root && node.next(c) == null)
+         {
+            node = node.fail;
+         }
+
+         Node next = node.next(c);
+         node = (next != null ? next : this.root);
+
+         if (node.output != NO_MATCH && (best == NO_MATCH || node.output < best))
+         {
+            best = node.output;
+         }
+      }
+
+      return best;
+   }
+
+   /**
+    * Construye el autmata a partir de los patrones de las reglas.
+    */
+   private static Node compile(List<Rule> rules)
+   {
+      Node root = new Node();
+
+      // Construye el trie con los patrones (en minsculas)
+      for (int idx = 0; idx < rules.size(); idx++)
+      {
+         String pattern = rules.get(idx).getPattern();
+         Node node = root;
+
+         for (int i = 0; i < pattern.length(); i++)
+         {
+            char c = Character.toLowerCase(pattern.charAt(i));
+            Node next = node.next(c);
+            if (next == null)
+            {
+               next = node.add(c);
+            }
+            node = next;
+         }
+
+         // Slo se conserva la regla de mayor prioridad para cada patrn
+         if (node.output == NO_MATCH || idx < node.output)
+         {
+            node.output = idx;
+         }
+      }
+
+      // Calcula los enlaces de fallo (recorrido en anchura) y propaga la salida de menor ndice
+      LinkedList<Node> queue = new LinkedList<Node>();
+      for (Node child : root.children)
+      {
+         child.fail = root;
+         child.output = min(child.output, root.output);
+         queue.add(child);
+      }
+
+      while (!queue.isEmpty())
+      {
+         Node node = queue.removeFirst();
+
+         for (int i = 0; i < node.children.size(); i++)
+         {
+            Node child = node.children.get(i);
+            char c = node.labels.get(i);
+
+            Node fail = node.fail;
+            while (fail != root && fail.next(c) == null)
+            {
+               fail = fail.fail;
+            }
+            Node target = fail.next(c);
+            child.fail = (target != null && target != child ? target : root);
+            child.output = min(child.output, child.fail.output);
+
+            queue.add(child);
+         }
+      }
+
+      return root;
+   }
+
+   /**
+    * Devuelve el menor ndice de regla de dos salidas.
+    */
+   private static int min(int a, int b)
+   {
+      if (a == NO_MATCH) return b;
+      if (b == NO_MATCH) return a;
+      return Math.min(a, b);
+   }
+
+
+   //==============================================
+   // Inner classes
+   //==============================================
+
+   /**
+    * Representa un estado del autmata.
+    */
+   private static class Node
+   {
+      ArrayList<Character> labels = new ArrayList<Character>(2);
+      ArrayList<Node> children = new ArrayList<Node>(2);
+      Node fail = null;
+      int output = NO_MATCH;
+
+      Node next(char c)
+      {
+         for (int i = 0; i < labels.size(); i++)
+         {
+            if (labels.get(i).charValue() == c)
+            {
+               return children.get(i);
+            }
+         }
+         return null;
+      }
+
+      Node add(char c)
+      {
+         Node node = new Node();
+         labels.add(c);
+         children.add(node);
+         return node;
+      }
+   }
+}
@@ -11,6 +11,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import javax.servlet.ServletContext;
@@ -24,7 +25,9 @@ import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 /**
- * Representa una plantilla de presentacin de Cosmno.
+ * Representa una plantilla de presentacin de Cosmno.<br />
+ * Una vez cargada, la instancia es de slo lectura y se comparte entre todas las sesiones que usan la plantilla.
+ * Para obtener una plantilla debe usarse {@link TemplateFactory#getTemplate(ServletContext, String)}.
  * 
  * @author Gerard Llort
  */
@@ -39,6 +42,7 @@ public class Template
    private String author;
    private String version;
    private String copyright;
+   private long lastModified;
    private HashMap<String, String> layouts;
    private HashMap<String, TemplateControl> controls;
    private ArrayList<TemplateLink> headLinks;
@@ -83,7 +87,7 @@ public class Template
     * @param context Contexto de la llamada al workspace.
     * @param id Identificador de la plantilla.
     */
-   public Template(ServletContext context, String id) throws TemplateLoadException 
+   Template(ServletContext context, String id) throws TemplateLoadException 
    {
       initialize();
 
@@ -122,12 +126,20 @@ public class Template
       return copyright;
    }
 
+   /**
+    * Devuelve la fecha de modificacin del archivo de definicin en el momento de cargar la plantilla.
+    */
+   public long getLastModified()
+   {
+      return lastModified;
+   }
+
    /**
     * Devuelve un iterador que permite recorrer todos los elementos LINK de cabecera.
     */
    public Iterator<TemplateLink> getLinks()
    {
-      return this.headLinks.iterator();
+      return Collections.unmodifiableList(this.headLinks).iterator();
    }
 
    /**
@@ -135,7 +147,7 @@ public class Template
     */
    public Iterator<TemplateScript> getScripts()
    {
-      return this.headScripts.iterator();
+      return Collections.unmodifiableList(this.headScripts).iterator();
    }
 
 
@@ -191,6 +203,26 @@ public class Template
    }
 
 
+   //==============================================
+   // Static members
+   //==============================================
+
+   /**
+    * Obtiene el archivo de definicin de una plantilla.
+    * 
+    * @param context Contexto de la llamada al workspace.
+    * @param templateId Identificador de la plantilla.
+    * 
+    * @return Una instancia de {@link File} que representa el archivo de definicin de la plantilla.
+    */
+   static File getTemplateFile(ServletContext context, String templateId)
+   {
+      return new File(context.getRealPath(File.separator + Template.PATH_TEMPLATES + 
+                                          File.separator + templateId + File.separator + 
+                                          Template.FILENAME_TEMPLATE));
+   }
+
+
    //==============================================
    // Private members
    //==============================================
@@ -205,7 +237,6 @@ public class Template
     */
    private void loadTemplate(ServletContext context, String templateId) throws TemplateLoadException
    {
-      String fileName;
       String href;
       Node nNode;
       Node nPart;
@@ -218,10 +249,9 @@ public class Template
 
       try
       {
-         fileName = File.separator + Template.PATH_TEMPLATES + 
-                    File.separator + templateId + File.separator + 
-                    Template.FILENAME_TEMPLATE;
-         is = new FileInputStream(context.getRealPath(fileName));
+         File file = getTemplateFile(context, templateId);
+         this.lastModified = file.lastModified();
+         is = new FileInputStream(file);
 
          DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
          DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
@@ -404,6 +434,7 @@ public class Template
       this.name = "";
       this.author = "";
       this.version = "";
+      this.lastModified = 0;
       this.layouts = new HashMap<String, String>();
       this.controls = new HashMap<String, TemplateControl>();
       this.headLinks = new ArrayList<TemplateLink>();
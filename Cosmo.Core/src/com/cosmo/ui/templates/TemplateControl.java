@@ -1,10 +1,14 @@
 package com.cosmo.ui.templates;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 /**
- * Representa una especificaci de control en una plantilla.
+ * Representa una especificaci de control en una plantilla.<br />
+ * Las instancias se construyen al cargar la plantilla y, a partir de entonces, son de slo lectura ya que 
+ * las plantillas se comparten entre todas las sesiones (ver {@link TemplateFactory}).
  * 
  * @author Gerard Llort
  */
@@ -43,22 +47,16 @@ public class TemplateControl
       return id;
    }
 
-   public void setId(String id)
-   {
-      this.id = id;
-   }
-
-
    //==============================================
    // Methods
    //==============================================
 
-   public void addScript(TemplateScript script)
+   void addScript(TemplateScript script)
    {
       this.scripts.add(script);
    }
 
-   public void addLink(TemplateLink link)
+   void addLink(TemplateLink link)
    {
       this.links.add(link);
    }
@@ -69,7 +67,7 @@ public class TemplateControl
     * @param id Identificador nico del control.
     * @param xhtml Cdigo XHTML correspondiente a la parte del control.
     */
-   public void addControlPart(String id, String xhtml)
+   void addControlPart(String id, String xhtml)
    {
       this.parts.put(id, xhtml);
    }
@@ -90,9 +88,9 @@ public class TemplateControl
     * 
     * @return Un array de instancias de {@link TemplateLink} que representa la lista de links necesarios para el control.
     */
-   public ArrayList<TemplateLink> getLinks()
+   public List<TemplateLink> getLinks()
    {
-      return this.links;
+      return Collections.unmodifiableList(this.links);
    }
 
    /**
@@ -100,8 +98,8 @@ public class TemplateControl
     * 
     * @return Un array de instancias de {@link TemplateScript} que apunta a la lista de scripts necesarios para el control.
     */
-   public ArrayList<TemplateScript> getScripts()
+   public List<TemplateScript> getScripts()
    {
-      return this.scripts;
+      return Collections.unmodifiableList(this.scripts);
    }
 }
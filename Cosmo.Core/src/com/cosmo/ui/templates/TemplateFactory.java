@@ -0,0 +1,81 @@
+package com.cosmo.ui.templates;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.ServletContext;
+
+/**
+ * Implementa un registro de plantillas de presentacin compartido por toda la aplicacin.
+ * <br /><br />
+ * Cada plantilla se lee y analiza una sola vez; las peticiones posteriores reciben la misma instancia 
+ * (de slo lectura) de {@link Template}. Si la fecha de modificacin del archivo de definicin cambia, 
+ * la plantilla se vuelve a cargar.
+ * 
+ * @author Gerard Llort
+ */
+public class TemplateFactory 
+{
+   // Plantillas cargadas, indexadas por la ruta del archivo de definicin
+   private static final ConcurrentHashMap<String, Template> templates = new ConcurrentHashMap<String, Template>();
+
+   // Objeto de sincronizacin para la carga de plantillas
+   private static final Object loadLock = new Object();
+
+
+   //==============================================
+   // Static members
+   //==============================================
+
+   /**
+    * Obtiene una plantilla de presentacin.
+    * 
+    * @param context Contexto de la llamada al workspace.
+    * @param templateId Identificador de la plantilla.
+    * 
+    * @return La instancia compartida de {@link Template} correspondiente al identificador.
+    * 
+    * @throws TemplateLoadException
+    */
+   public static Template getTemplate(ServletContext context, String templateId) throws TemplateLoadException
+   {
+      File file = Template.getTemplateFile(context, templateId);
+      String key = file.getPath();
+
+      Template template = templates.get(key);
+      if (template != null && template.getLastModified() == file.lastModified())
+      {
+         return template;
+      }
+
+      synchronized (loadLock)
+      {
+         // Comprueba que ningn otro hilo haya cargado la plantilla mientras se esperaba
+         template = templates.get(key);
+         if (template == null || template.getLastModified() != file.lastModified())
+         {
+            template = new Template(context, templateId);
+            templates.put(key, template);
+         }
+      }
+
+      return template;
+   }
+
+   /**
+    * Descarta todas las plantillas cargadas.<br />
+    * Las plantillas se volvern a cargar la prxima vez que se soliciten.
+    */
+   public static void clear()
+   {
+      templates.clear();
+   }
+
+   /**
+    * Devuelve el nmero de plantillas cargadas.
+    */
+   public static int getTemplateCount()
+   {
+      return templates.size();
+   }
+}
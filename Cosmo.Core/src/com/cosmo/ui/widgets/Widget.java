@@ -1,6 +1,7 @@
 package com.cosmo.ui.widgets;
 
 import com.cosmo.Workspace;
+import com.cosmo.WorkspaceFactory;
 import com.cosmo.ui.templates.TemplateUnavailableException;
 import java.text.DecimalFormat;
 
@@ -53,7 +54,8 @@ public abstract class Widget
     */
    public Workspace getWorkspace() 
    {
-      return this.workspace;
+      Workspace current = WorkspaceFactory.getCurrentWorkspace();
+      return (current != null ? current : this.workspace);
    }
 
    /**
@@ -192,6 +192,31 @@ public class PluginProperties
       return getParamInteger(key, 0);
    }
 
+   /**
+    * Indica si otra instancia contiene la misma configuracin (identificador, clase y parmetros).
+    */
+   @Override
+   public boolean equals(Object obj)
+   {
+      if (this == obj)
+      {
+         return true;
+      }
+      if (!(obj instanceof PluginProperties))
+      {
+         return false;
+      }
+
+      PluginProperties other = (PluginProperties) obj;
+      return (equals(this.id, other.id) && equals(this.moduleClass, other.moduleClass) && this.params.equals(other.params));
+   }
+
+   @Override
+   public int hashCode()
+   {
+      return 31 * (31 * (this.id == null ? 0 : this.id.hashCode()) + (this.moduleClass == null ? 0 : this.moduleClass.hashCode())) + this.params.hashCode();
+   }
+
    /**
     * Transforma la informacin de la instancia en una cadena con informacin comprensible. 
     */
@@ -203,4 +228,14 @@ public class PluginProperties
              " DRIVER = " + this.getModuleClass() + "\n" +
              " PARAMS = " + this.params.toString() + "\n";
    }
+
+
+   //==============================================
+   // Private members
+   //==============================================
+
+   private static boolean equals(String a, String b)
+   {
+      return (a == null ? b == null : a.equals(b));
+   }
 }
@@ -7,6 +7,7 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import com.cosmo.data.DataException;
 import com.cosmo.data.DataQuery;
 
 /**
@@ -21,6 +22,8 @@ public class XmlUtils
    private static final String XML_ATT_DRIVER = "driver";
    private static final String XML_ATT_VALUE = "value";
    private static final String XML_ATT_CONNECTION = "connection";
+   private static final String XML_ATT_CACHETTL = "cache-ttl";
+   private static final String XML_ATT_CACHETAGS = "cache-tags";
 
    private static final String XML_TAG_PARAMETER = "param";
    private static final String XML_TAG_DATAQUERY = "dataquery";
@@ -139,8 +142,10 @@ public class XmlUtils
     * @param doc Una instancia de {@link Document} que representa el archivo XML.
     * 
     * @return Un mapa de instancias {@link DataQuery} que contienen los datos de las consultas.
+    * 
+    * @throws DataException si el tiempo de vida en la cach ({@code cache-ttl}) de alguna consulta no es vlido.
     */
-   public static HashMap<String, DataQuery> readDataQueries(Document doc)
+   public static HashMap<String, DataQuery> readDataQueries(Document doc) throws DataException
    {
       Element pluginElement;
       DataQuery dq;
@@ -158,6 +163,11 @@ public class XmlUtils
             dq.setId(pluginElement.getAttribute(XML_ATT_ID));
             dq.setConnectionId(pluginElement.getAttribute(XML_ATT_CONNECTION));
             dq.setSqlQuery(pluginElement.getFirstChild().getNodeValue());
+            dq.setCacheTags(pluginElement.getAttribute(XML_ATT_CACHETAGS));
+            if (!StringUtils.isNullOrEmptyTrim(pluginElement.getAttribute(XML_ATT_CACHETTL)))
+            {
+               dq.setCacheTtl(readCacheTtl(pluginElement, dq));
+            }
             queries.put(dq.getId(), dq);
          }
       }
@@ -165,6 +175,33 @@ public class XmlUtils
       return queries;
    }
    
+   /**
+    * Lee el tiempo de vida en la cach ({@code cache-ttl}, en segundos) de una consulta.
+    *
+    * @throws DataException si el valor no es un nmero entero positivo o cero.
+    */
+   private static int readCacheTtl(Element element, DataQuery dq) throws DataException
+   {
+      String value = element.getAttribute(XML_ATT_CACHETTL).trim();
+      int ttl;
+
+      try
+      {
+         ttl = Integer.parseInt(value);
+      }
+      catch (NumberFormatException ex)
+      {
+         throw new DataException("Data Services Configuration Exception: invalid " + XML_ATT_CACHETTL + " '" + value + "' in data query '" + dq.getId() + "' (connection '" + dq.getConnectionId() + "')", ex);
+      }
+
+      if (ttl < 0)
+      {
+         throw new DataException("Data Services Configuration Exception: negative " + XML_ATT_CACHETTL + " '" + value + "' in data query '" + dq.getId() + "' (connection '" + dq.getConnectionId() + "')");
+      }
+
+      return ttl;
+   }
+
    /**
     * Lee todas las definiciones de plugin de un determinado tipo.
     *
@@ -0,0 +1,172 @@
+package com.cosmo.manager.pages;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.cosmo.data.ConnectionPool;
+import com.cosmo.data.DataAgent;
+import com.cosmo.data.DataFactory;
+import com.cosmo.data.QueryResultCache;
+import com.cosmo.data.QueryStatistics;
+import com.cosmo.data.QueryStatistics.StatementStats;
+import com.cosmo.ui.Page;
+import com.cosmo.ui.PageContext;
+import com.cosmo.ui.PageContext.ContentColumns;
+import com.cosmo.ui.PageContext.PageLayout;
+import com.cosmo.ui.controls.BreadcrumbsControl;
+import com.cosmo.ui.controls.BreadcrumbsItem;
+import com.cosmo.ui.controls.DynamicMessageControl;
+import com.cosmo.ui.controls.GridControl;
+import com.cosmo.ui.controls.HeaderControl;
+import com.cosmo.ui.controls.Icon;
+import com.cosmo.util.GridData;
+
+/**
+ * Pgina que muestra las estadsticas de ejecucin de las sentncias SQL de las conexiones de datos.
+ *
+ * @author Gerard Llort
+ */
+@WebServlet(description = "Data statistics page", urlPatterns = { "/DataStatisticsPage" })
+public class DataStatisticsPage extends Page
+{
+   /** Serial Version UID */
+   private static final long   serialVersionUID = 4105380375929815446L;
+
+   private static final String ID_GRID_AGENTS     = "agents";
+   private static final String ID_GRID_STATEMENTS = "statements";
+   private static final String ID_MSG             = "msg";
+
+   @Override
+   public PageContext initPageEvent(PageContext pc, HttpServletRequest request, HttpServletResponse response)
+   {
+      pc.setLayout(PageLayout.TwoColumnsLeft);
+      pc.setTitle("Cosmo - Data statistics");
+
+      BreadcrumbsControl navbar = new BreadcrumbsControl(getWorkspace());
+      navbar.addItem(new BreadcrumbsItem("Home", "HomePage", Icon.ICON_IMAGE_HOME));
+      navbar.addItem(new BreadcrumbsItem("Data statistics", ""));
+      pc.addContent(navbar, ContentColumns.MAIN);
+
+      HeaderControl header = new HeaderControl(getWorkspace());
+      header.setTitle("Data statistics");
+      header.setDescription("Connection pools, query cache and SQL statement timings.");
+      pc.addContent(header, ContentColumns.MAIN);
+
+      DynamicMessageControl msg = new DynamicMessageControl(getWorkspace(), ID_MSG);
+      msg.setVisible(false);
+      pc.addContent(msg, ContentColumns.MAIN);
+
+      GridControl grid = new GridControl(getWorkspace(), ID_GRID_AGENTS);
+      grid.setTitle("Connections");
+      grid.setFirstRowTitles(true);
+      pc.addContent(grid, ContentColumns.MAIN);
+
+      grid = new GridControl(getWorkspace(), ID_GRID_STATEMENTS);
+      grid.setTitle("SQL statements (by total time)");
+      grid.setFirstRowTitles(true);
+      pc.addContent(grid, ContentColumns.MAIN);
+
+      return pc;
+   }
+
+   @Override
+   public PageContext loadPageEvent(PageContext pc, HttpServletRequest request, HttpServletResponse response)
+   {
+      int row;
+      int col;
+
+      try
+      {
+         // Conexiones
+         GridData agents = new GridData();
+         row = 0;
+         col = 0;
+         agents.setCell(row, col++, "Connection");
+         agents.setCell(row, col++, "Active");
+         agents.setCell(row, col++, "Idle");
+         agents.setCell(row, col++, "Leases");
+         agents.setCell(row, col++, "Cached results");
+         agents.setCell(row, col++, "Cache hits");
+         agents.setCell(row, col++, "Cache misses");
+         agents.setCell(row, col++, "Slow queries");
+         row++;
+
+         // Sentncias
+         GridData statements = new GridData();
+         int srow = 0;
+         col = 0;
+         statements.setCell(srow, col++, "Connection");
+         statements.setCell(srow, col++, "Statement");
+         statements.setCell(srow, col++, "Executions");
+         statements.setCell(srow, col++, "Total (ms)");
+         statements.setCell(srow, col++, "Avg (ms)");
+         statements.setCell(srow, col++, "p95 (ms)");
+         statements.setCell(srow, col++, "Max (ms)");
+         statements.setCell(srow, col++, "Rows");
+         srow++;
+
+         for (DataAgent agent : DataFactory.getInstances())
+         {
+            String id = agent.getProperties().getId();
+            ConnectionPool pool = agent.getPool();
+            QueryResultCache cache = agent.getQueryCache();
+            QueryStatistics stats = agent.getStatistics();
+
+            col = 0;
+            agents.setCell(row, col++, id);
+            agents.setCell(row, col++, pool.getActiveCount());
+            agents.setCell(row, col++, pool.getIdleCount());
+            agents.setCell(row, col++, pool.getLeaseCount());
+            agents.setCell(row, col++, cache.getCount());
+            agents.setCell(row, col++, cache.getHitCount());
+            agents.setCell(row, col++, cache.getMissCount());
+            agents.setCell(row, col++, stats.getSlowCount());
+            row++;
+
+            for (StatementStats ss : stats.getStatements())
+            {
+               col = 0;
+               statements.setCell(srow, col++, id);
+               statements.setCell(srow, col++, ss.getFingerprint());
+               statements.setCell(srow, col++, ss.getCount());
+               statements.setCell(srow, col++, ss.getTotalTime());
+               statements.setCell(srow, col++, String.format("%.2f", ss.getAverageTime()));
+               statements.setCell(srow, col++, ss.getPercentile(95));
+               statements.setCell(srow, col++, ss.getMaxTime());
+               statements.setCell(srow, col++, ss.getRows());
+               srow++;
+            }
+         }
+
+         GridControl grid = (GridControl) pc.getControl(ID_GRID_AGENTS);
+         grid.setData(agents);
+
+         grid = (GridControl) pc.getControl(ID_GRID_STATEMENTS);
+         grid.setData(statements);
+      }
+      catch (Exception ex)
+      {
+         DynamicMessageControl msg = (DynamicMessageControl) pc.getControl(ID_MSG);
+         msg.setVisible(true);
+         msg.setType(DynamicMessageControl.MessageTypes.Error);
+         msg.setMessage("ERROR: " + ex.getMessage());
+      }
+
+      return pc;
+   }
+
+   @Override
+   public PageContext formSendedEvent(PageContext pc, HttpServletRequest request, HttpServletResponse response)
+   {
+      return pc;
+   }
+
+   @Override
+   public PageContext pageException(PageContext pc, Exception exception)
+   {
+      pc.showException(getWorkspace(), exception);
+
+      return pc;
+   }
+}
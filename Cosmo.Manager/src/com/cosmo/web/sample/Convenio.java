@@ -218,7 +218,7 @@ public class Convenio
    }
 
    @CormObjectField(fieldClass = FormFieldList.class, list = "cities", dbTableColumn = "tomciudad", label = "Ciudad", showInObjectListGrid = false)
-   @CormForeignKey(dbTableName = "v_cities", dbTableField = "code")
+   @CormForeignKey(dbTableName = "v_cities", dbTableField = "code", dbTableLabel = "name")
    public String getTomciudad()
    {
       return tomciudad;
@@ -120,7 +120,7 @@ public class Travel
    }
 
    @CormObjectField(fieldClass = FormFieldList.class, list = "users", dbTableColumn = "organizer", label = "Organizador", showInObjectListGrid = true)
-   @CormForeignKey(dbTableName = "cosmo_users", dbTableField = "usrlogin")
+   @CormForeignKey(dbTableName = "cosmo_users", dbTableField = "usrlogin", dbTableLabel = "usrname")
    public String getOrganizer()
    {
       return organizer;
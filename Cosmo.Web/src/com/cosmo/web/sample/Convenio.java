@@ -267,7 +267,8 @@ public class Convenio
                      label                = "Ciudad",
                      showInObjectListGrid = false)
    @CormForeignKey(  dbTableName          = "v_cities", 
-                     dbTableField         = "code" )
+                     dbTableField         = "code",
+                     dbTableLabel         = "name" )
    public String getTomciudad() 
    {
       return tomciudad;
@@ -146,7 +146,8 @@ public class Travel
                      label                = "Organizador",
                      showInObjectListGrid = true)
    @CormForeignKey(  dbTableName          = "cosmo_users", 
-                     dbTableField         = "usrlogin" )
+                     dbTableField         = "usrlogin",
+                     dbTableLabel         = "usrname" )
    public String getOrganizer()
    {
       return organizer;